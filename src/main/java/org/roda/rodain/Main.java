@@ -4,6 +4,7 @@ import java.io.PrintStream;
 
 import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.I18n;
+import org.roda.rodain.core.batch.BatchExport;
 import org.roda.rodain.core.utils.LoggingOutputStream;
 import org.roda.rodain.ui.RodaInApplication;
 import org.slf4j.Logger;
@@ -29,6 +30,12 @@ public class Main {
       return;
     }
      */
+    if (args.length > 0 && BatchExport.ARG_BATCH.equals(args[0])) {
+      // headless mode, the JavaFX toolkit isn't started
+      System.setProperty("java.awt.headless", "true");
+      System.exit(BatchExport.run(args));
+    }
+
     System.setErr(new PrintStream(new LoggingOutputStream()));
 
     RodaInApplication.start(args);
@@ -1,5 +1,6 @@
 package org.roda.rodain.core;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -19,9 +20,11 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.filechooser.FileSystemView;
 
@@ -32,6 +35,7 @@ import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.rodain.core.rules.filters.IgnoredFilter;
 import org.roda.rodain.core.utils.FolderBasedUTF8Control;
+import org.roda.rodain.core.utils.WatchedFileCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,9 +53,11 @@ import ch.qos.logback.core.joran.spi.JoranException;
  */
 public class ConfigurationManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationManager.class.getName());
+  private static final int MAX_CACHED_FILES = 256;
+  private static final long MAX_CACHED_FILES_SIZE = 16 * 1024 * 1024L;
 
   private static final Path rodainPath = computeRodainPath();
-  private static Path schemasPath, templatesPath, logPath, metadataPath, helpPath, externalConfigPath,
+  private static Path schemasPath, templatesPath, logPath, metadataPath, helpPath, snapshotsPath, externalConfigPath,
     externalAppConfigPath;
   private static PropertiesConfiguration style = load("styles"), internalConfig = load("config"), externalConfig,
     externalAppConfig;
@@ -61,6 +67,12 @@ public class ConfigurationManager {
 
   private static Set<Path> allSchemas;
 
+  // the templates, schemas and help files of the RODA-in folder, until they
+  // change
+  private static final WatchedFileCache fileCache = new WatchedFileCache(MAX_CACHED_FILES, MAX_CACHED_FILES_SIZE);
+  // the templates of the application resources, which never change
+  private static final Map<String, String> internalTemplates = new ConcurrentHashMap<>();
+
   private ConfigurationManager() {
   }
 
@@ -110,6 +122,10 @@ public class ConfigurationManager {
 
       copyHelpFiles();
 
+      fileCache.watch(templatesPath);
+      fileCache.watch(schemasPath);
+      fileCache.watch(helpPath);
+
     } catch (IOException e) {
       LOGGER.error("Error creating folders or copying config files", e);
     } catch (MissingResourceException e) {
@@ -155,6 +171,11 @@ public class ConfigurationManager {
     if (!Files.exists(helpPath)) {
       Files.createDirectory(helpPath);
     }
+    // create file system snapshots folder
+    snapshotsPath = rodainPath.resolve(Constants.FOLDER_SNAPSHOTS);
+    if (!Files.exists(snapshotsPath)) {
+      Files.createDirectory(snapshotsPath);
+    }
   }
 
   private static void configureLogback() {
@@ -319,6 +340,14 @@ public class ConfigurationManager {
     return rodainPath;
   }
 
+  /**
+   * @return The path of the folder where the file system snapshots are kept,
+   *         or null if the configuration wasn't initialized.
+   */
+  public static Path getSnapshotsPath() {
+    return snapshotsPath;
+  }
+
   /**
    * @return The locale of the application.
    */
@@ -338,9 +367,9 @@ public class ConfigurationManager {
 
   public static String getHelpFile() {
     Path helpFile = helpPath.resolve("help_" + getLocale().toString() + ".html");
-    if (!Files.exists(helpFile)) {
+    if (!fileCache.exists(helpFile)) {
       helpFile = helpPath.resolve("help_en.html");
-      if (!Files.exists(helpFile)) {
+      if (!fileCache.exists(helpFile)) {
         helpFile = helpPath.resolve("help.html");
       }
     }
@@ -366,6 +395,25 @@ public class ConfigurationManager {
     return getFile(completeKey);
   }
 
+  /**
+   * @param templateName
+   *          The name of the template
+   * @return The modification time of the template file in the RODA-in folder,
+   *         or 0 if the template is read from the application resources
+   */
+  public static long getTemplateLastModified(String templateName) {
+    String completeKey = Constants.CONF_K_PREFIX_METADATA + templateName + Constants.CONF_K_SUFFIX_TEMPLATE;
+    if (externalConfig.containsKey(completeKey)) {
+      Path filePath = templatesPath.resolve(externalConfig.getString(completeKey));
+      long lastModified = fileCache.getLastModified(filePath);
+      if (lastModified >= 0) {
+        return lastModified;
+      }
+    }
+    // the template is read from the application resources
+    return 0;
+  }
+
   /**
    * @param templateType
    *          The name of the template
@@ -375,17 +423,33 @@ public class ConfigurationManager {
     String completeKey = Constants.CONF_K_PREFIX_METADATA + templateType + Constants.CONF_K_SUFFIX_SCHEMA;
     if (externalConfig.containsKey(completeKey)) {
       Path filePath = schemasPath.resolve(externalConfig.getString(completeKey));
-      if (Files.exists(filePath)) {
-        try {
-          return Files.newInputStream(filePath);
-        } catch (IOException e) {
-          LOGGER.error("Unable to get schema file '{}'", filePath, e);
+      try {
+        byte[] content = fileCache.getBytes(filePath);
+        if (content != null) {
+          return new ByteArrayInputStream(content);
         }
+      } catch (IOException e) {
+        LOGGER.error("Unable to get schema file '{}'", filePath, e);
       }
     }
     return null;
   }
 
+  /**
+   * @param templateType
+   *          The name of the template
+   * @return The modification time of the schema file associated to the
+   *         template, or -1 if there isn't one
+   */
+  public static long getSchemaLastModified(String templateType) {
+    String completeKey = Constants.CONF_K_PREFIX_METADATA + templateType + Constants.CONF_K_SUFFIX_SCHEMA;
+    if (externalConfig.containsKey(completeKey)) {
+      Path filePath = schemasPath.resolve(externalConfig.getString(completeKey));
+      return fileCache.getLastModified(filePath);
+    }
+    return -1;
+  }
+
   /**
    * @param templateType
    *          The name of the template
@@ -395,7 +459,7 @@ public class ConfigurationManager {
     String completeKey = Constants.CONF_K_PREFIX_METADATA + templateType + Constants.CONF_K_SUFFIX_SCHEMA;
     if (externalConfig.containsKey(completeKey)) {
       Path filePath = schemasPath.resolve(externalConfig.getString(completeKey));
-      if (Files.exists(filePath)) {
+      if (fileCache.exists(filePath)) {
         return filePath;
       }
     }
@@ -411,17 +475,24 @@ public class ConfigurationManager {
     try {
       if (externalConfig.containsKey(completeKey)) {
         Path filePath = templatesPath.resolve(externalConfig.getString(completeKey));
-        if (Files.exists(filePath)) {
-          return ControllerUtils.readFile(filePath);
+        String content = fileCache.getText(filePath, ControllerUtils::decode);
+        if (content != null) {
+          return content;
         }
       }
-      String fileName = internalConfig.getString(completeKey);
-      URL temp = ClassLoader.getSystemResource(Constants.FOLDER_TEMPLATES + Constants.MISC_FWD_SLASH + fileName);
-      if (temp == null) {
-        return "";
+      String resource = Constants.FOLDER_TEMPLATES + Constants.MISC_FWD_SLASH + internalConfig.getString(completeKey);
+      String content = internalTemplates.get(resource);
+      if (content == null) {
+        URL temp = ClassLoader.getSystemResource(resource);
+        if (temp == null) {
+          content = "";
+        } else {
+          InputStream contentStream = temp.openStream();
+          content = ControllerUtils.convertStreamToString(contentStream);
+        }
+        internalTemplates.put(resource, content);
       }
-      InputStream contentStream = temp.openStream();
-      return ControllerUtils.convertStreamToString(contentStream);
+      return content;
     } catch (IOException e) {
       LOGGER.error("Error reading metadata file", e);
     }
@@ -489,6 +560,27 @@ public class ConfigurationManager {
     return getConfigAsBoolean(key, false);
   }
 
+  /**
+   * @param key
+   *          The name of the property (config)
+   * @param defaultValue
+   *          The value to return when the property is missing or isn't a
+   *          number
+   * @return The value of the property (config)
+   */
+  public static int getConfigAsInteger(String key, int defaultValue) {
+    String value = getConfig(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      LOGGER.warn("Invalid numeric value '{}' for config '{}', using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
   /**
    * @param key
    *          The name of the property (config)
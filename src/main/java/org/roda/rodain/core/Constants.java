@@ -90,6 +90,7 @@ public final class Constants {
   public static final String FOLDER_LOG = "log";
   public static final String FOLDER_METADATA = "metadata";
   public static final String FOLDER_HELP = "help";
+  public static final String FOLDER_SNAPSHOTS = "snapshots";
 
   // configs keys prefixes & sufixes
   public static final String CONF_K_PREFIX_METADATA = "metadata.";
@@ -125,6 +126,19 @@ public final class Constants {
   public static final String CONF_K_EXPORT_LAST_SIP_OUTPUT_FOLDER = "export.lastSipOutputFolder";
   public static final String CONF_K_ID_PREFIX = "idPrefix";
   public static final String CONF_K_SIP_CREATION_ALWAYS_JUMP_FOLDER = "sipPreviewCreator.createSip.alwaysJumpFolder";
+  public static final String CONF_K_WALK_FILE_TREE_PARALLELISM = "walkFileTree.parallelism";
+  public static final String CONF_K_VISITOR_STACK_PARALLELISM = "visitorStack.parallelism";
+  public static final String CONF_K_FILE_SYSTEM_SNAPSHOT_ENABLED = "fileSystemSnapshot.enabled";
+  public static final String CONF_K_FILE_SYSTEM_SNAPSHOT_MAX_AGE = "fileSystemSnapshot.maxAge";
+  public static final String CONF_K_FILE_SYSTEM_SNAPSHOT_MAX_SIZE = "fileSystemSnapshot.maxSize";
+  public static final String CONF_K_FILE_SYSTEM_SNAPSHOT_KEEP_ATTRIBUTES = "fileSystemSnapshot.keepAttributes";
+  public static final String CONF_K_DIRECTORY_WATCHER_MAX_DIRECTORIES = "directoryWatcher.maxDirectories";
+  public static final String CONF_K_DIRECTORY_WATCHER_DEBOUNCE = "directoryWatcher.debounce";
+  public static final String CONF_K_SIP_EXPORT_PARALLELISM = "sipExport.parallelism";
+  public static final String CONF_K_SIP_EXPORT_MAX_IN_PROGRESS_SIZE = "sipExport.maxInProgressSize";
+  public static final String CONF_K_CHECKSUM_CACHE_ENABLED = "checksumCache.enabled";
+  public static final String CONF_K_METADATA_VALIDATION_PARALLELISM = "metadataValidation.parallelism";
+  public static final String CONF_K_INVENTORY_REPORT_COMPRESS = "inventoryReport.compress";
   // METS Header fields
   public static final String CONF_K_METS_HEADER_FIELDS_PREFIX = "metsheader.";
   public static final String CONF_K_METS_HEADER_FIELDS_SUFFIX = ".fields";
@@ -169,6 +183,7 @@ public final class Constants {
   // configs files
   public static final String CONFIG_FILE = "config.properties";
   public static final String APP_CONFIG_FILE = ".app.properties";
+  public static final String CHECKSUM_CACHE_FILE = ".checksums.bin";
   // configs values
   public static final String CONF_V_TRUE = MISC_TRUE;
   public static final String CONF_V_FALSE = MISC_FALSE;
@@ -358,6 +373,7 @@ public final class Constants {
   public static final String I18N_MAIN_ADD_FOLDER = "Main.addFolder";
   public static final String I18N_MAIN_CHECK_VERSION = "Main.checkVersion";
   public static final String I18N_MAIN_CLASS_SCHEME = "Main.classScheme";
+  public static final String I18N_MAIN_CONFIRM_OPEN_PROJECT_HEADER = "Main.confirmOpenProject.header";
   public static final String I18N_MAIN_CONFIRM_RESET_CONTENT = "Main.confirmReset.content";
   public static final String I18N_MAIN_CONFIRM_RESET_HEADER = "Main.confirmReset.header";
   public static final String I18N_MAIN_CREATE_CS = "Main.createCS";
@@ -378,8 +394,11 @@ public final class Constants {
   public static final String I18N_MAIN_NO_UPDATES_CONTENT = "Main.noUpdates.content";
   public static final String I18N_MAIN_NO_UPDATES_HEADER = "Main.noUpdates.header";
   public static final String I18N_MAIN_OPEN_CONFIGURATION_FOLDER = "Main.openConfigurationFolder";
+  public static final String I18N_MAIN_OPEN_PROJECT = "Main.openProject";
+  public static final String I18N_MAIN_PROJECT_FILES = "Main.projectFiles";
   public static final String I18N_MAIN_QUIT = "Main.quit";
   public static final String I18N_MAIN_RESET = "Main.reset";
+  public static final String I18N_MAIN_SAVE_PROJECT = "Main.saveProject";
   public static final String I18N_MAIN_SHOW_FILES = "Main.showFiles";
   public static final String I18N_MAIN_SHOW_HELP = "Main.showHelp";
   public static final String I18N_MAIN_SHOW_IGNORED = "Main.showIgnored";
@@ -388,6 +407,7 @@ public final class Constants {
   public static final String I18N_MAIN_UPDATE_LANG_HEADER = "Main.updateLang.header";
   public static final String I18N_MAIN_UPDATE_LANG_TITLE = "Main.updateLang.title";
   public static final String I18N_MAIN_USE_JAVA8 = "Main.useJava8";
+  public static final String I18N_MAIN_VALIDATE_METADATA = "Main.validateMetadata";
   public static final String I18N_MAIN_VIEW = "Main.view";
   public static final String I18N_METADATA_DIFF_FOLDER_DESCRIPTION = "metadata.diffFolder.description";
   public static final String I18N_METADATA_DIFF_FOLDER_TITLE = "metadata.diffFolder.title";
@@ -476,6 +496,10 @@ public final class Constants {
   public static final String I18N_START = "start";
   public static final String I18N_TYPE = "type";
   public static final String I18N_VALID_METADATA = "validMetadata";
+  public static final String I18N_VALIDATIONMODAL_ERRORS = "ValidationModal.errors";
+  public static final String I18N_VALIDATIONMODAL_SKIPPED = "ValidationModal.skipped";
+  public static final String I18N_VALIDATIONMODAL_SUBTITLE = "ValidationModal.subtitle";
+  public static final String I18N_VALIDATIONMODAL_TITLE = "ValidationModal.title";
   public static final String I18N_VERSION = "version";
   public static final String I18N_RENAME_REPRESENTATION = "RenameModalProcessing.renameRepresentation";
   public static final String I18N_RENAME = "rename";
@@ -102,6 +102,15 @@ public class Controller {
     return ControllerUtils.validateSchema(content, schemaInputStream);
   }
 
+  public static boolean validateSchema(Path fileToValidate, String schemaType) throws SAXException, IOException {
+    String fileContent = ControllerUtils.readFile(fileToValidate);
+    return validateSchema(fileContent, schemaType);
+  }
+
+  public static boolean validateSchema(String content, String schemaType) throws SAXException {
+    return ControllerUtils.validateSchema(content, schemaType);
+  }
+
   public static String loadMetadataFile(Path path) throws IOException {
     return ControllerUtils.readFile(path);
   }
@@ -40,6 +40,7 @@ import org.json.JSONTokener;
 import org.roda.rodain.core.schema.ClassificationSchema;
 import org.roda.rodain.core.schema.DescriptiveMetadata;
 import org.roda.rodain.core.utils.ResourceResolver;
+import org.roda.rodain.core.utils.SchemaCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -70,7 +71,18 @@ public final class ControllerUtils {
    * @throws IOException
    */
   protected static String readFile(Path path) throws IOException {
-    byte[] encoded = Files.readAllBytes(path);
+    return decode(Files.readAllBytes(path));
+  }
+
+  /**
+   * Decodes the content of a file read as bytes, like
+   * {@link #readFile(Path)}.
+   *
+   * @param encoded
+   *          The content of the file
+   * @return A String with the content of the file
+   */
+  protected static String decode(byte[] encoded) {
     String temp = new String(encoded, Charset.forName(Constants.RODAIN_DEFAULT_ENCODING));
     // Consume BOM if it exists
     temp = removeUTF8BOM(temp);
@@ -121,6 +133,34 @@ public final class ControllerUtils {
     return isValid;
   }
 
+  /**
+   * Validates a XML against the schema of a metadata type, using the cached
+   * compiled schema.
+   *
+   * @param content
+   *          The String content of the XML to be validated.
+   * @param schemaType
+   *          The name of the template or metadata type of the schema.
+   * @return True if the content can be validated using the schema, false
+   *         otherwise.
+   * @throws SAXException
+   */
+  protected static boolean validateSchema(String content, String schemaType) throws SAXException {
+    boolean isValid = false;
+    try {
+      Validator validator = SchemaCache.getValidator(schemaType);
+      if (validator == null) {
+        throw new SAXException("There's no schema for the metadata type " + schemaType);
+      }
+      validator.validate(new StreamSource(new StringReader(content)));
+      isValid = true;
+    } catch (IOException e) {
+      LOGGER.error("Can't access the schema file", e);
+    }
+
+    return isValid;
+  }
+
   private static boolean validateSchemaWithoutCatch(String content, InputStream schemaStream)
     throws IOException, SAXException {
     // build the schema
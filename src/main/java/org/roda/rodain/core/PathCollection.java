@@ -1,16 +1,21 @@
 package org.roda.rodain.core;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.roda.rodain.core.Constants.PathState;
 import org.roda.rodain.ui.source.items.SourceTreeDirectory;
 import org.roda.rodain.ui.source.items.SourceTreeItem;
@@ -26,14 +31,19 @@ import org.slf4j.LoggerFactory;
  * state of a path can be changed and, with this class, this information is
  * always coherent, since all of them report the changes to it.
  * </p>
+ * <p>
+ * The paths are kept in a tree indexed by path segment, so looking up the
+ * children of a path or propagating a state to a subtree only touches the
+ * nodes of that subtree, and recomputing the state of the ancestors only
+ * touches the nodes from the path to the root.
+ * </p>
  *
  * @author Andre Pereira apereira@keep.pt
  * @since 12-11-2015.
  */
 public class PathCollection {
   private static final Logger LOGGER = LoggerFactory.getLogger(PathCollection.class.getName());
-  private static Map<Path, PathState> states = new ConcurrentHashMap<>();
-  private static Map<Path, SourceTreeItem> items = new HashMap<>();
+  private static PathNode root = new PathNode(null, "");
 
   private PathCollection() {
   }
@@ -44,9 +54,27 @@ public class PathCollection {
    * @param path
    *          The path to be added to the collection
    */
-  public static void simpleAddPath(Path path) {
-    if (!"".equals(path.toString()) && !states.containsKey(path)) {
-      states.put(path, PathState.NORMAL);
+  public static synchronized void simpleAddPath(Path path) {
+    if (isEmpty(path)) {
+      return;
+    }
+    PathNode node = getOrCreateNode(path);
+    if (node.state == null) {
+      node.setState(PathState.NORMAL);
+    }
+  }
+
+  /**
+   * Adds a batch of paths to the collection, setting the state of the ones that
+   * aren't in the collection as NORMAL.
+   *
+   * @param paths
+   *          The paths to be added to the collection
+   * @see #simpleAddPath(Path)
+   */
+  public static synchronized void simpleAddPaths(Collection<Path> paths) {
+    for (Path path : paths) {
+      simpleAddPath(path);
     }
   }
 
@@ -69,62 +97,57 @@ public class PathCollection {
    * @param st
    *          The state of the item.
    */
-  public static void addPath(Path path, PathState st) {
-    if ("".equals(path)) {
+  public static synchronized void addPath(Path path, PathState st) {
+    if (isEmpty(path)) {
       return;
     }
+    PathNode node = getOrCreateNode(path);
     // ignoring or removing the ignore of an item
     if (st == PathState.IGNORED) {
-      applySameStateAllChildren(path, PathState.NORMAL, st);
+      applySameStateAllChildren(node, PathState.NORMAL, st);
     }
     if (st == PathState.MAPPED) {
-      applySameStateAllChildren(path, PathState.NORMAL, st);
+      applySameStateAllChildren(node, PathState.NORMAL, st);
     }
-    if (st == PathState.NORMAL && states.get(path) == PathState.IGNORED) {
-      applySameStateAllChildren(path, PathState.IGNORED, st);
-      verifyStateAncestors(path);
+    if (st == PathState.NORMAL && node.state == PathState.IGNORED) {
+      applySameStateAllChildren(node, PathState.IGNORED, st);
+      verifyStateAncestors(node);
     }
 
-    if (states.get(path) != PathState.NORMAL) {
-      states.put(path, st);
-      verifyStateAncestors(path);
+    if (node.state != PathState.NORMAL) {
+      node.setState(st);
+      verifyStateAncestors(node);
     } else {
-      verifyState(path);
+      verifyState(node);
     }
-    states.put(path, st);
+    node.setState(st);
 
     // if there's an item with this path
-    if (items.containsKey(path)) {
-      SourceTreeItem item = items.get(path);
-      item.setState(states.get(path));
-      verifyStateAncestors(path);
+    if (node.item != null) {
+      SourceTreeItem item = node.item;
+      item.setState(node.state);
+      verifyStateAncestors(node);
       if (item instanceof SourceTreeDirectory) {
         ((SourceTreeDirectory) item).moveChildrenWrongState();
       }
     }
 
-    Path parent = path.getParent();
+    PathNode parent = node.parent;
     // move the modified children in the parent
-    if (parent != null && items.containsKey(parent) && items.get(parent) instanceof SourceTreeDirectory) {
-      ((SourceTreeDirectory) items.get(parent)).moveChildrenWrongState();
+    if (parent != null && parent.item instanceof SourceTreeDirectory) {
+      ((SourceTreeDirectory) parent.item).moveChildrenWrongState();
     }
   }
 
-  private static void applySameStateAllChildren(Path path, PathState previousState, PathState state) {
-    if ("".equals(path)) {
-      return;
-    }
-    states.put(path, state);
-
-    if (Files.isDirectory(path)) {
-      Map<Path, PathState> children = getAllChildren(path);
-      for (Path child : children.keySet()) {
-        if (states.get(child) == previousState) {
-          states.put(child, state);
-          // update the item
-          if (items.containsKey(child)) {
-            items.get(child).setState(state);
-          }
+  private static void applySameStateAllChildren(PathNode node, PathState previousState, PathState state) {
+    node.setState(state);
+
+    for (PathNode child : getAllChildren(node)) {
+      if (child.state == previousState) {
+        child.setState(state);
+        // update the item
+        if (child.item != null) {
+          child.item.setState(state);
         }
       }
     }
@@ -137,7 +160,7 @@ public class PathCollection {
    *          The set of paths to be added to the collection.
    * @param st
    *          The state of the items.
-   * @see #addPath(String, PathState)
+   * @see #addPath(Path, PathState)
    */
   public static void addPaths(Set<String> paths, PathState st) {
     for (String path : paths)
@@ -148,21 +171,20 @@ public class PathCollection {
    * Adds a SourceTreeItem reference to the collection.
    * <p/>
    * <p>
-   * If the item's path isn't in the collection, it's also added.
+   * The item's path is also added to the collection with the item's state.
    * </p>
    *
    * @param item
    *          The item to be added to the collection.
    */
-  public static void addItem(SourceTreeItem item) {
+  public static synchronized void addItem(SourceTreeItem item) {
     String path = item.getPath();
     if ("".equals(path)) {
       return;
     }
-    if (!states.containsKey(path)) {
-      states.put(Paths.get(path), item.getState());
-    }
-    items.put(Paths.get(path), item);
+    PathNode node = getOrCreateNode(Paths.get(path));
+    node.setState(item.getState());
+    node.item = item;
   }
 
   /**
@@ -173,10 +195,11 @@ public class PathCollection {
    * @return The path's associated state if the path is in the collection,
    *         otherwise NORMAL.
    */
-  public static PathState getState(Path path) {
+  public static synchronized PathState getState(Path path) {
     PathState result = PathState.NORMAL;
-    if (states.containsKey(path)) {
-      result = states.get(path);
+    PathNode node = findNode(path);
+    if (node != null && node.state != null) {
+      result = node.state;
     } else {
       Path parent = path.getParent();
       if (parent != null) {
@@ -191,8 +214,9 @@ public class PathCollection {
 
   private static PathState getStateWithoutAddingParents(Path path) {
     PathState result = PathState.NORMAL;
-    if (states.containsKey(path)) {
-      result = states.get(path);
+    PathNode node = findNode(path);
+    if (node != null && node.state != null) {
+      result = node.state;
     } else {
       Path parent = path.getParent();
       if (parent != null) {
@@ -212,27 +236,42 @@ public class PathCollection {
    * @return The associated item if the path is in the collection, null
    *         otherwise.
    */
-  public static SourceTreeItem getItem(Path path) {
-    return items.get(path);
+  public static synchronized SourceTreeItem getItem(Path path) {
+    PathNode node = findNode(path);
+    return node != null ? node.item : null;
   }
 
-  public static void removePathAndItem(Path path) {
-    states.remove(path);
-    items.remove(path);
-
-    Map<Path, PathState> children = getAllChildren(path);
-    children.keySet().forEach(PathCollection::removePathAndItem);
+  /**
+   * Removes a path, its item and all of its children from the collection.
+   * <p/>
+   * <p>
+   * Since the removed path no longer counts for the state of its parent
+   * directory, the state of every directory until the root is verified again.
+   * </p>
+   *
+   * @param path
+   *          The path to be removed.
+   */
+  public static synchronized void removePathAndItem(Path path) {
+    PathNode node = findNode(path);
+    if (node != null && node.parent != null) {
+      node.parent.removeChild(node.name);
+      PathNode parent = node.parent;
+      if (parent != root && parent.state != null && verifyState(parent)) {
+        verifyStateAncestors(parent);
+      }
+    }
   }
 
-  private static void verifyStateAncestors(Path path) {
-    while (path.getParent() != null) {
-      path = path.getParent();
+  private static void verifyStateAncestors(PathNode node) {
+    while (node.parent != null && node.parent != root) {
+      node = node.parent;
       boolean updated = true;
-      if (states.containsKey(path)) {
-        updated = verifyState(path);
+      if (node.state != null) {
+        updated = verifyState(node);
 
-        if (items.containsKey(path)) {
-          SourceTreeDirectory dir = (SourceTreeDirectory) items.get(path);
+        if (node.item != null) {
+          SourceTreeDirectory dir = (SourceTreeDirectory) node.item;
           dir.moveChildrenWrongState();
         }
       }
@@ -245,57 +284,34 @@ public class PathCollection {
   /*
    * Returns true if the state was updated, false if the state was the same.
    */
-  private static boolean verifyState(Path path) {
-    if ("".equals(path)) {
-      return false;
-    }
-
-    PathState currentState = null;
+  private static boolean verifyState(PathNode node) {
+    PathState currentState = node.state;
     PathState newState = null;
-    if (states.containsKey(path)) {
-      currentState = states.get(path);
-    }
-    int normalItems = 0, ignoredItems = 0, mappedItems = 0;
-    Map<Path, PathState> children = getDirectChildren(path);
-    for (Path child : children.keySet()) {
-      switch (states.get(child)) {
-        case MAPPED:
-          mappedItems++;
-          break;
-        case IGNORED:
-          ignoredItems++;
-          break;
-        default:
-          normalItems++;
-          break;
-      }
-    }
+    int normalItems = node.normalChildren, ignoredItems = node.ignoredChildren, mappedItems = node.mappedChildren;
 
     if (normalItems == 0) {
       // only MAPPED items, the directory is MAPPED
       if (mappedItems != 0 && ignoredItems == 0) {
         newState = PathState.MAPPED;
-        states.put(path, PathState.MAPPED);
       }
       // only IGNORED items, the directory is IGNORED
       if (mappedItems == 0 && ignoredItems != 0) {
         newState = PathState.IGNORED;
-        states.put(path, PathState.IGNORED);
       }
       // IGNORED and MAPPED items, the directory is MAPPED
       if (mappedItems != 0 && ignoredItems != 0) {
         newState = PathState.MAPPED;
-        states.put(path, PathState.MAPPED);
       }
     } else { // there's at least one NORMAL item, so the directory must be
       // NORMAL
       newState = PathState.NORMAL;
-      states.put(path, PathState.NORMAL);
+    }
+    if (newState != null) {
+      node.setState(newState);
     }
 
-    if (items.containsKey(path)) {
-      SourceTreeItem item = items.get(path);
-      item.setState(states.get(path));
+    if (node.item != null) {
+      node.item.setState(node.state);
     }
 
     if (currentState != null && newState != null) {
@@ -304,21 +320,182 @@ public class PathCollection {
     return true;
   }
 
-  private static Map<Path, PathState> getDirectChildren(Path path) {
-    int countSeparators = StringUtils.countMatches(path.toString(), File.separator) + 1;
-    return states.entrySet().stream().parallel()
-      .filter(p -> p.getKey().startsWith(path)
-        && StringUtils.countMatches(p.getKey().toString(), File.separator) == countSeparators)
-      .collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue()));
+  /*
+   * All the descendants of the node that are in the collection.
+   */
+  private static List<PathNode> getAllChildren(PathNode node) {
+    List<PathNode> result = new ArrayList<>();
+    Deque<PathNode> toVisit = new ArrayDeque<>(node.getChildren());
+    while (!toVisit.isEmpty()) {
+      PathNode current = toVisit.pop();
+      if (current.state != null) {
+        result.add(current);
+      }
+      toVisit.addAll(current.getChildren());
+    }
+    return result;
+  }
+
+  private static PathNode findNode(Path path) {
+    PathNode node = root;
+    for (String segment : segments(path)) {
+      node = node.getChild(segment);
+      if (node == null) {
+        break;
+      }
+    }
+    return node;
+  }
+
+  private static PathNode getOrCreateNode(Path path) {
+    PathNode node = root;
+    for (String segment : segments(path)) {
+      node = node.getOrCreateChild(segment);
+    }
+    return node;
+  }
+
+  private static List<String> segments(Path path) {
+    List<String> result = new ArrayList<>(path.getNameCount() + 1);
+    if (path.getRoot() != null) {
+      result.add(path.getRoot().toString());
+    }
+    for (Path name : path) {
+      result.add(name.toString());
+    }
+    return result;
+  }
+
+  private static boolean isEmpty(Path path) {
+    return path == null || "".equals(path.toString());
+  }
+
+  public static synchronized void reset() {
+    root = new PathNode(null, "");
   }
 
-  private static Map<Path, PathState> getAllChildren(Path path) {
-    return states.entrySet().stream().parallel().filter(p -> p.getKey().startsWith(path))
-      .collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue()));
+  /**
+   * Writes the state of every path in the collection, e.g. to save a project.
+   * The items aren't written.
+   *
+   * @param out
+   *          The output where the states are written
+   * @throws IOException
+   *           If the states can't be written
+   * @see #readStates(DataInput)
+   */
+  public static synchronized void writeStates(DataOutput out) throws IOException {
+    writeNode(root, out);
+  }
+
+  private static void writeNode(PathNode node, DataOutput out) throws IOException {
+    out.writeByte(node.state == null ? -1 : node.state.ordinal());
+    Collection<PathNode> children = node.getChildren();
+    out.writeInt(children.size());
+    for (PathNode child : children) {
+      out.writeUTF(child.name);
+      writeNode(child, out);
+    }
   }
 
-  public static void reset() {
-    states = new HashMap<>();
-    items = new HashMap<>();
+  /**
+   * Reads the states written by {@link #writeStates(DataOutput)}, replacing the
+   * state of the paths already in the collection and updating their items.
+   *
+   * @param in
+   *          The input where the states are read from
+   * @throws IOException
+   *           If the states can't be read
+   */
+  public static synchronized void readStates(DataInput in) throws IOException {
+    readNode(root, in);
+  }
+
+  private static void readNode(PathNode node, DataInput in) throws IOException {
+    byte state = in.readByte();
+    if (state >= 0 && node != root) {
+      node.setState(PathState.values()[state]);
+      if (node.item != null) {
+        node.item.setState(node.state);
+      }
+    }
+    int children = in.readInt();
+    for (int i = 0; i < children; i++) {
+      readNode(node.getOrCreateChild(in.readUTF()), in);
+    }
+  }
+
+  /**
+   * A node of the path tree. The state is null when the path itself isn't in
+   * the collection, but one of its descendants is.
+   * <p>
+   * Each node keeps how many of its direct children are in each state, updated
+   * whenever a child's state changes, so the state of a directory can be
+   * derived without visiting its children.
+   * </p>
+   */
+  private static final class PathNode {
+    private final PathNode parent;
+    private final String name;
+    private Map<String, PathNode> children;
+    private PathState state;
+    private SourceTreeItem item;
+    private int normalChildren = 0;
+    private int ignoredChildren = 0;
+    private int mappedChildren = 0;
+
+    PathNode(PathNode parent, String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+
+    void setState(PathState newState) {
+      if (parent != null && state != newState) {
+        parent.updateChildCount(state, -1);
+        parent.updateChildCount(newState, 1);
+      }
+      state = newState;
+    }
+
+    private void updateChildCount(PathState childState, int delta) {
+      if (childState == null) {
+        return;
+      }
+      switch (childState) {
+        case MAPPED:
+          mappedChildren += delta;
+          break;
+        case IGNORED:
+          ignoredChildren += delta;
+          break;
+        default:
+          normalChildren += delta;
+          break;
+      }
+    }
+
+    PathNode getChild(String segment) {
+      return children == null ? null : children.get(segment);
+    }
+
+    PathNode getOrCreateChild(String segment) {
+      if (children == null) {
+        children = new HashMap<>();
+      }
+      return children.computeIfAbsent(segment, s -> new PathNode(this, s));
+    }
+
+    void removeChild(String segment) {
+      if (children != null) {
+        PathNode child = children.remove(segment);
+        if (child != null) {
+          updateChildCount(child.state, -1);
+        }
+      }
+    }
+
+    Collection<PathNode> getChildren() {
+      return children == null ? Collections.emptyList() : children.values();
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+package org.roda.rodain.core.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.roda.rodain.core.Constants.SipNameStrategy;
+import org.roda.rodain.core.Constants.SipType;
+
+/**
+ * The declarative description of a batch exportation, read from a JSON file.
+ * <p/>
+ * <p>
+ * Example:
+ * </p>
+ *
+ * <pre>
+ * {
+ *   "classificationScheme": "/data/scheme.json",
+ *   "output": "/data/sips",
+ *   "sipType": "EARK2",
+ *   "createReport": true,
+ *   "rules": [
+ *     {
+ *       "parent": "uuid-of-a-description-object",
+ *       "paths": ["/data/transfer/folder1", "/data/transfer/folder2"],
+ *       "association": "SIP_PER_FILE",
+ *       "metadata": "TEMPLATE",
+ *       "template": "dc"
+ *     }
+ *   ]
+ * }
+ * </pre>
+ */
+public class BatchConfiguration {
+  private String classificationScheme;
+  private String output;
+  private SipType sipType = SipType.EARK2;
+  private SipNameStrategy sipNameStrategy = SipNameStrategy.ID;
+  private String sipNamePrefix = "";
+  private String transferring = "";
+  private String serial = "1";
+  private boolean exportItems = false;
+  private boolean createReport = false;
+  private String agentName;
+  private String agentId;
+  private List<BatchRule> rules = new ArrayList<>();
+
+  /**
+   * @return The classification scheme JSON file, or null to place all the
+   *         SIPs at the root
+   */
+  public String getClassificationScheme() {
+    return classificationScheme;
+  }
+
+  public void setClassificationScheme(String classificationScheme) {
+    this.classificationScheme = classificationScheme;
+  }
+
+  /**
+   * @return The folder where the SIPs are created
+   */
+  public String getOutput() {
+    return output;
+  }
+
+  public void setOutput(String output) {
+    this.output = output;
+  }
+
+  public SipType getSipType() {
+    return sipType;
+  }
+
+  public void setSipType(SipType sipType) {
+    this.sipType = sipType;
+  }
+
+  public SipNameStrategy getSipNameStrategy() {
+    return sipNameStrategy;
+  }
+
+  public void setSipNameStrategy(SipNameStrategy sipNameStrategy) {
+    this.sipNameStrategy = sipNameStrategy;
+  }
+
+  public String getSipNamePrefix() {
+    return sipNamePrefix;
+  }
+
+  public void setSipNamePrefix(String sipNamePrefix) {
+    this.sipNamePrefix = sipNamePrefix;
+  }
+
+  /**
+   * @return The transferring institution, used in the names of the HUNGARIAN
+   *         SIPs
+   */
+  public String getTransferring() {
+    return transferring;
+  }
+
+  public void setTransferring(String transferring) {
+    this.transferring = transferring;
+  }
+
+  /**
+   * @return The first serial number, used in the names of the HUNGARIAN SIPs
+   */
+  public String getSerial() {
+    return serial;
+  }
+
+  public void setSerial(String serial) {
+    this.serial = serial;
+  }
+
+  /**
+   * @return True to also export the description objects of the
+   *         classification scheme
+   */
+  public boolean isExportItems() {
+    return exportItems;
+  }
+
+  public void setExportItems(boolean exportItems) {
+    this.exportItems = exportItems;
+  }
+
+  public boolean isCreateReport() {
+    return createReport;
+  }
+
+  public void setCreateReport(boolean createReport) {
+    this.createReport = createReport;
+  }
+
+  public String getAgentName() {
+    return agentName;
+  }
+
+  public void setAgentName(String agentName) {
+    this.agentName = agentName;
+  }
+
+  public String getAgentId() {
+    return agentId;
+  }
+
+  public void setAgentId(String agentId) {
+    this.agentId = agentId;
+  }
+
+  public List<BatchRule> getRules() {
+    return rules;
+  }
+
+  public void setRules(List<BatchRule> rules) {
+    this.rules = rules;
+  }
+}
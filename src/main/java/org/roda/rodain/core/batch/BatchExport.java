@@ -0,0 +1,402 @@
+package org.roda.rodain.core.batch;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.Constants.MetadataOption;
+import org.roda.rodain.core.Constants.SipType;
+import org.roda.rodain.core.Controller;
+import org.roda.rodain.core.creation.CreateSips;
+import org.roda.rodain.core.rules.filters.ContentFilter;
+import org.roda.rodain.core.schema.ClassificationSchema;
+import org.roda.rodain.core.schema.DescriptiveMetadata;
+import org.roda.rodain.core.schema.Sip;
+import org.roda.rodain.core.sip.PseudoDescriptionObject;
+import org.roda.rodain.core.sip.PseudoItem;
+import org.roda.rodain.core.sip.PseudoSIP;
+import org.roda.rodain.core.sip.SipPreview;
+import org.roda.rodain.core.sip.creators.SipPerFile;
+import org.roda.rodain.core.sip.creators.SipPerSelection;
+import org.roda.rodain.core.sip.creators.SipPreviewCreator;
+import org.roda.rodain.core.sip.creators.SipSingle;
+import org.roda.rodain.core.sip.creators.SipsWithStructure;
+import org.roda.rodain.core.sip.naming.SIPNameBuilder;
+import org.roda.rodain.core.sip.naming.SIPNameBuilderBagit;
+import org.roda.rodain.core.sip.naming.SIPNameBuilderEARK;
+import org.roda.rodain.core.sip.naming.SIPNameBuilderEARK2;
+import org.roda.rodain.core.sip.naming.SIPNameBuilderHungarian;
+import org.roda.rodain.core.sip.naming.SIPNameBuilderSIPS;
+import org.roda.rodain.core.utils.WalkFileTree;
+import org.roda_project.commons_ip.model.IPHeader;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.LoggerContext;
+
+/**
+ * Creates SIPs without the graphical interface, from a batch configuration
+ * file.
+ * <p/>
+ * <p>
+ * The classification scheme is loaded, the association rules are applied to
+ * their files and folders with the same SipPreviewCreators used by the
+ * association window, and the resulting SIPs are exported with
+ * {@link CreateSips}. The JavaFX toolkit is never started, so it runs on a
+ * machine without a display.
+ * </p>
+ * <p>
+ * The progress is written to the standard output as JSON, one event per line
+ * (rule, export, progress, finished or error), so it can be read by other
+ * programs. The log goes only to the log file.
+ * </p>
+ *
+ * @see BatchConfiguration
+ */
+public class BatchExport {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchExport.class.getName());
+
+  /**
+   * The command line argument that starts the batch mode.
+   */
+  public static final String ARG_BATCH = "--batch";
+
+  public static final int EXIT_SUCCESS = 0;
+  public static final int EXIT_SIP_ERRORS = 1;
+  public static final int EXIT_INVALID = 2;
+
+  private static final long PROGRESS_INTERVAL = 1000; // in milliseconds
+
+  private final BatchConfiguration configuration;
+  private final PrintStream out;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  // description object id -> description object
+  private final Map<String, Sip> descriptionObjects = new HashMap<>();
+  // the description objects and SIPs to export, with their ancestors
+  private final Map<Sip, List<String>> sips = new HashMap<>();
+
+  /**
+   * Creates a new BatchExport object.
+   *
+   * @param configuration
+   *          The batch configuration
+   * @param out
+   *          Where the progress events are written
+   */
+  public BatchExport(BatchConfiguration configuration, PrintStream out) {
+    this.configuration = configuration;
+    this.out = out;
+  }
+
+  /**
+   * Runs the batch mode from the command line arguments.
+   *
+   * @param args
+   *          The command line arguments, {@link #ARG_BATCH} followed by the
+   *          batch configuration file
+   * @return The exit status
+   */
+  public static int run(String[] args) {
+    if (args.length != 2 || !ARG_BATCH.equals(args[0])) {
+      System.err.println("Usage: " + ARG_BATCH + " <batch configuration JSON file>");
+      return EXIT_INVALID;
+    }
+
+    ConfigurationManager.initialize();
+    // the standard output is only for the progress events
+    ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+    if (loggerFactory instanceof LoggerContext) {
+      ((LoggerContext) loggerFactory).getLogger(Logger.ROOT_LOGGER_NAME).detachAppender("STDOUT");
+    }
+
+    BatchConfiguration configuration;
+    try {
+      configuration = new ObjectMapper().readValue(Paths.get(args[1]).toFile(), BatchConfiguration.class);
+    } catch (IOException e) {
+      LOGGER.error("Error reading the batch configuration", e);
+      new BatchExport(null, System.out).error("Error reading the batch configuration: " + e.getMessage());
+      return EXIT_INVALID;
+    }
+    return new BatchExport(configuration, System.out).run();
+  }
+
+  /**
+   * Applies the rules and exports the SIPs, waiting for the exportation to end.
+   *
+   * @return The exit status
+   */
+  public int run() {
+    if (configuration.getOutput() == null || !Files.isDirectory(Paths.get(configuration.getOutput()))) {
+      return error("The output folder doesn't exist: " + configuration.getOutput());
+    }
+
+    if (configuration.getClassificationScheme() != null) {
+      try {
+        loadClassificationScheme(configuration.getClassificationScheme());
+      } catch (IOException e) {
+        LOGGER.error("Error reading classification scheme specification", e);
+        return error("Error reading the classification scheme: " + e.getMessage());
+      }
+    }
+
+    int ruleCount = 0;
+    for (BatchRule rule : configuration.getRules()) {
+      ruleCount++;
+      String problem = applyRule(ruleCount, rule);
+      if (problem != null) {
+        return error("Rule " + ruleCount + ": " + problem);
+      }
+    }
+
+    return export();
+  }
+
+  private void loadClassificationScheme(String file) throws IOException {
+    ClassificationSchema scheme = Controller.loadClassificationSchemaFile(file);
+    for (Sip descObj : scheme.getDos()) {
+      if (descObj.getMetadata() != null) {
+        for (DescriptiveMetadata dm : descObj.getMetadata()) {
+          Controller.updateTemplate(dm);
+        }
+      }
+      descObj.setUpdateSIP(true);
+      descriptionObjects.put(descObj.getId(), descObj);
+    }
+    for (Sip descObj : scheme.getDos()) {
+      sips.put(descObj, getAncestors(descObj.getParentId()));
+    }
+  }
+
+  /*
+   * The IDs of a description object and its ancestors, nearest first, as the
+   * SchemaNodes compute them.
+   */
+  private List<String> getAncestors(String id) {
+    List<String> ancestors = new ArrayList<>();
+    Set<String> visited = new HashSet<>();
+    String current = id;
+    while (current != null && descriptionObjects.containsKey(current) && visited.add(current)) {
+      ancestors.add(current);
+      current = descriptionObjects.get(current).getParentId();
+    }
+    return ancestors;
+  }
+
+  /*
+   * Returns a description of the problem when the rule can't be applied.
+   */
+  private String applyRule(int ruleId, BatchRule rule) {
+    String parentId = rule.getParent();
+    if (parentId != null && !descriptionObjects.containsKey(parentId)) {
+      return "the parent \"" + parentId + "\" isn't in the classification scheme";
+    }
+    if (rule.getPaths() == null || rule.getPaths().isEmpty()) {
+      return "there are no paths";
+    }
+    Set<String> paths = new HashSet<>();
+    for (String path : rule.getPaths()) {
+      Path absolute = Paths.get(path).toAbsolutePath().normalize();
+      if (!Files.exists(absolute)) {
+        return "the path \"" + path + "\" doesn't exist";
+      }
+      paths.add(absolute.toString());
+    }
+
+    // the same template and metadata type resolution of the association window
+    MetadataOption metadataOption = rule.getMetadata();
+    String templateType = rule.getTemplate();
+    String metadataType = rule.getMetadataType();
+    String metadataVersion = rule.getMetadataVersion();
+    Path metadataPath = rule.getMetadataPath() == null ? null : Paths.get(rule.getMetadataPath());
+    if (templateType == null) {
+      return "the template isn't set";
+    }
+    if ((metadataOption == MetadataOption.SINGLE_FILE || metadataOption == MetadataOption.DIFF_DIRECTORY)
+      && (metadataPath == null || !Files.exists(metadataPath))) {
+      return "the metadata path doesn't exist: " + rule.getMetadataPath();
+    }
+    if (metadataOption == MetadataOption.SAME_DIRECTORY) {
+      if (metadataType == null) {
+        return "the metadata type isn't set";
+      }
+      if (metadataVersion == null) {
+        metadataVersion = ConfigurationManager.getMetadataConfig(metadataType + Constants.CONF_K_SUFFIX_VERSION);
+        metadataType = ConfigurationManager.getMetadataConfig(metadataType + Constants.CONF_K_SUFFIX_TYPE);
+      }
+    } else {
+      if (metadataType == null) {
+        metadataType = ConfigurationManager.getMetadataConfig(templateType + Constants.CONF_K_SUFFIX_TYPE);
+      }
+      if (metadataVersion == null) {
+        metadataVersion = ConfigurationManager.getMetadataConfig(templateType + Constants.CONF_K_SUFFIX_VERSION);
+      }
+    }
+
+    Set<ContentFilter> filters = Collections.singleton(new ContentFilter());
+    String id = String.valueOf(ruleId);
+    SipPreviewCreator visitor;
+    switch (rule.getAssociation()) {
+      case SIP_PER_SELECTION:
+        visitor = new SipPerSelection(id, paths, filters, metadataOption, metadataType, metadataPath, templateType,
+          metadataVersion);
+        break;
+      case SIP_PER_FILE:
+        visitor = new SipPerFile(id, filters, metadataOption, metadataType, metadataPath, templateType,
+          metadataVersion);
+        break;
+      case SIP_WITH_STRUCTURE:
+        visitor = new SipsWithStructure(id, filters, metadataOption, metadataType, metadataPath, templateType,
+          metadataVersion);
+        break;
+      default:
+      case SINGLE_SIP:
+        visitor = new SipSingle(id, filters, metadataOption, metadataType, metadataPath, templateType,
+          metadataVersion);
+        break;
+    }
+
+    // walk the files in this thread, the visitor is only needed when it ends
+    new WalkFileTree(paths, visitor).run();
+
+    List<String> ancestors = getAncestors(parentId);
+    int before = sips.size();
+    if (visitor instanceof SipsWithStructure) {
+      SipsWithStructure structure = (SipsWithStructure) visitor;
+      for (PseudoItem item : structure.getTree()) {
+        addStructure(structure, item, parentId, ancestors);
+      }
+    } else {
+      for (SipPreview sipPreview : visitor.getSips().values()) {
+        sipPreview.setParentId(parentId);
+        sips.put(sipPreview, ancestors);
+      }
+    }
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("event", "rule");
+    event.put("rule", ruleId);
+    event.put("sips", sips.size() - before);
+    print(event);
+    return null;
+  }
+
+  private void addStructure(SipsWithStructure visitor, PseudoItem item, String parentId, List<String> ancestors) {
+    if (item instanceof PseudoSIP) {
+      SipPreview sipPreview = visitor.getSipPreviewMap().get(((PseudoSIP) item).getNode().getPath());
+      if (sipPreview != null) {
+        sipPreview.setParentId(parentId);
+        sips.put(sipPreview, ancestors);
+      }
+    } else if (item instanceof PseudoDescriptionObject) {
+      PseudoDescriptionObject pdo = (PseudoDescriptionObject) item;
+      Sip descObj = visitor.getDescriptionObjects().get(pdo.getPath());
+      if (descObj == null) {
+        return;
+      }
+      descObj.setParentId(parentId);
+      sips.put(descObj, ancestors);
+
+      List<String> childAncestors = new ArrayList<>();
+      childAncestors.add(descObj.getId());
+      childAncestors.addAll(ancestors);
+      for (PseudoItem child : pdo.getChildren()) {
+        addStructure(visitor, child, descObj.getId(), childAncestors);
+      }
+    }
+  }
+
+  private int export() {
+    SIPNameBuilder sipNameBuilder = createSipNameBuilder();
+    CreateSips creator = new CreateSips(Paths.get(configuration.getOutput()), configuration.getSipType(),
+      configuration.isExportItems(), sipNameBuilder, configuration.isCreateReport(), new IPHeader(),
+      Optional.ofNullable(configuration.getAgentName()), Optional.ofNullable(configuration.getAgentId()));
+    creator.start(sips);
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("event", "export");
+    event.put("sipType", configuration.getSipType().name());
+    event.put("total", creator.getSipsCount());
+    print(event);
+
+    try {
+      while (!creator.isFinished()) {
+        creator.waitFor(PROGRESS_INTERVAL);
+        event = new LinkedHashMap<>();
+        event.put("event", "progress");
+        event.put("created", creator.getCreatedSipsCount());
+        event.put("errors", creator.getErrorCount());
+        event.put("total", creator.getSipsCount());
+        event.put("progress", Math.min(1.0, creator.getSipsCount() == 0 ? 1.0 : creator.getProgress()));
+        event.put("sip", creator.getSipName());
+        print(event);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      creator.cancel();
+    }
+
+    event = new LinkedHashMap<>();
+    event.put("event", "finished");
+    event.put("created", creator.getCreatedSipsCount());
+    event.put("errors", creator.getErrorCount());
+    event.put("total", creator.getSipsCount());
+    event.put("elapsed", System.currentTimeMillis() - creator.getStartedTime());
+    event.put("output", creator.getOutputPath().toAbsolutePath().toString());
+    print(event);
+    return creator.getErrorCount() == 0 ? EXIT_SUCCESS : EXIT_SIP_ERRORS;
+  }
+
+  private SIPNameBuilder createSipNameBuilder() {
+    SipType sipType = configuration.getSipType();
+    String prefix = configuration.getSipNamePrefix();
+    switch (sipType) {
+      case HUNGARIAN:
+        return new SIPNameBuilderHungarian(configuration.getTransferring(), configuration.getSerial(),
+          Constants.SipNameStrategy.DATE_TRANSFERRING_SERIALNUMBER);
+      case EARK:
+        return new SIPNameBuilderEARK(prefix, configuration.getSipNameStrategy());
+      case BAGIT:
+        return new SIPNameBuilderBagit(prefix, configuration.getSipNameStrategy());
+      case EARK2S:
+        return new SIPNameBuilderSIPS(prefix, configuration.getSipNameStrategy());
+      case EARK2:
+      default:
+        return new SIPNameBuilderEARK2(prefix, configuration.getSipNameStrategy());
+    }
+  }
+
+  private int error(String message) {
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("event", "error");
+    event.put("message", message);
+    print(event);
+    return EXIT_INVALID;
+  }
+
+  private void print(Map<String, Object> event) {
+    try {
+      out.println(objectMapper.writeValueAsString(event));
+      out.flush();
+    } catch (JsonProcessingException e) {
+      LOGGER.error("Error writing the progress event", e);
+    }
+  }
+}
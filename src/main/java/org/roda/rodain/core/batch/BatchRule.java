@@ -0,0 +1,115 @@
+package org.roda.rodain.core.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.roda.rodain.core.Constants.MetadataOption;
+import org.roda.rodain.core.Constants.RuleType;
+
+/**
+ * An association rule of a batch exportation: the files and folders that are
+ * turned into SIPs, how, and where they are placed in the classification
+ * scheme.
+ * <p/>
+ * <p>
+ * The options are the ones of the association window. The template is the
+ * name of a metadata template (e.g. "dc") for the TEMPLATE, SINGLE_FILE and
+ * DIFF_DIRECTORY options, and the file name pattern of the metadata files
+ * (e.g. "*.xml") for the SAME_DIRECTORY option. When the metadata type and
+ * version aren't set, the ones configured for the template are used.
+ * </p>
+ */
+public class BatchRule {
+  private String parent;
+  private List<String> paths = new ArrayList<>();
+  private RuleType association = RuleType.SINGLE_SIP;
+  private MetadataOption metadata = MetadataOption.TEMPLATE;
+  private String template;
+  private String metadataPath;
+  private String metadataType;
+  private String metadataVersion;
+
+  /**
+   * @return The ID of the description object where the SIPs are placed, or
+   *         null to place them at the root of the classification scheme
+   */
+  public String getParent() {
+    return parent;
+  }
+
+  public void setParent(String parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * @return The files and folders turned into SIPs
+   */
+  public List<String> getPaths() {
+    return paths;
+  }
+
+  public void setPaths(List<String> paths) {
+    this.paths = paths;
+  }
+
+  /**
+   * @return The association type
+   */
+  public RuleType getAssociation() {
+    return association;
+  }
+
+  public void setAssociation(RuleType association) {
+    this.association = association;
+  }
+
+  /**
+   * @return The way the metadata is added to the SIPs
+   */
+  public MetadataOption getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(MetadataOption metadata) {
+    this.metadata = metadata;
+  }
+
+  /**
+   * @return The metadata template, or the metadata file name pattern for the
+   *         SAME_DIRECTORY option
+   */
+  public String getTemplate() {
+    return template;
+  }
+
+  public void setTemplate(String template) {
+    this.template = template;
+  }
+
+  /**
+   * @return The metadata file (SINGLE_FILE) or folder (DIFF_DIRECTORY)
+   */
+  public String getMetadataPath() {
+    return metadataPath;
+  }
+
+  public void setMetadataPath(String metadataPath) {
+    this.metadataPath = metadataPath;
+  }
+
+  public String getMetadataType() {
+    return metadataType;
+  }
+
+  public void setMetadataType(String metadataType) {
+    this.metadataType = metadataType;
+  }
+
+  public String getMetadataVersion() {
+    return metadataVersion;
+  }
+
+  public void setMetadataVersion(String metadataVersion) {
+    this.metadataVersion = metadataVersion;
+  }
+}
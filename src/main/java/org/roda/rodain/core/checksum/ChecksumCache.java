@@ -0,0 +1,425 @@
+package org.roda.rodain.core.checksum;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.utils.OffsetIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the checksums of the source files, persisted between runs.
+ * <p/>
+ * <p>
+ * A checksum is identified by the path of the file, its size, its
+ * modification time and the algorithm. When any of them changes the file is
+ * read again, so the cached value is only used for content that wasn't
+ * modified since it was computed.
+ * </p>
+ * <p>
+ * The checksums are appended to a file in the RODA-in folder as they are
+ * computed. Only the position of the last checksum of each path and algorithm
+ * is kept in memory, so every checksum in the file can be found however many
+ * files are exported, at the cost of one read of the file. When it's loaded,
+ * the file is rewritten if most of its records are outdated.
+ * </p>
+ */
+public final class ChecksumCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumCache.class.getName());
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_LENGTH = 4;
+  private static final int COMPACT_THRESHOLD = 1000;
+
+  // the offset and length of the last record of each path and algorithm
+  private static OffsetIndex index;
+  // the file of the cache, null for the one in the RODA-in folder
+  private static Path cacheFile;
+  private static FileChannel channel;
+  // the length of the file up to the end of its last complete record
+  private static long validLength = 0;
+  // set when the file can't be written, new records would be lost
+  private static boolean appendDisabled = false;
+  private static final AtomicLong hits = new AtomicLong(0);
+  private static final AtomicLong misses = new AtomicLong(0);
+
+  private ChecksumCache() {
+  }
+
+  /**
+   * @return True if the cache is enabled.
+   */
+  public static boolean isEnabled() {
+    return ConfigurationManager.getRodainPath() != null
+      && ConfigurationManager.getConfigAsBoolean(Constants.CONF_K_CHECKSUM_CACHE_ENABLED, true);
+  }
+
+  /**
+   * Gets the checksum of a file, reading it only if there isn't a checksum for
+   * its current size and modification time.
+   *
+   * @param path
+   *          The path of the file
+   * @param algorithm
+   *          The checksum algorithm
+   * @return The checksum of the file
+   * @throws IOException
+   *           If the file can't be read
+   * @throws NoSuchAlgorithmException
+   *           If the algorithm isn't supported
+   */
+  public static String getChecksum(Path path, String algorithm) throws IOException, NoSuchAlgorithmException {
+    return getChecksums(path, Collections.singleton(algorithm)).get(algorithm);
+  }
+
+  /**
+   * Gets the checksums of a file with several algorithms. The ones that aren't
+   * cached for its current size and modification time are computed reading the
+   * file only once.
+   *
+   * @param path
+   *          The path of the file
+   * @param algorithms
+   *          The checksum algorithms
+   * @return The checksums of the file, by algorithm
+   * @throws IOException
+   *           If the file can't be read
+   * @throws NoSuchAlgorithmException
+   *           If one of the algorithms isn't supported
+   */
+  public static Map<String, String> getChecksums(Path path, Collection<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    long size = attrs.size();
+    long modified = attrs.lastModifiedTime().toMillis();
+
+    Map<String, String> result = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String algorithm : algorithms) {
+      Optional<String> cached = get(path, size, modified, algorithm);
+      if (cached.isPresent()) {
+        result.put(algorithm, cached.get());
+      } else {
+        missing.add(algorithm);
+      }
+    }
+    hits.addAndGet(result.size());
+    if (missing.isEmpty()) {
+      return result;
+    }
+
+    misses.addAndGet(missing.size());
+    DigestEngine.Result digests = DigestEngine.digest(path, missing);
+    for (String algorithm : missing) {
+      String checksum = digests.getDigest(algorithm);
+      result.put(algorithm, checksum);
+      put(path, size, modified, algorithm, checksum);
+    }
+    return result;
+  }
+
+  /**
+   * Gets the cached checksum of a file.
+   *
+   * @param path
+   *          The path of the file
+   * @param size
+   *          The current size of the file
+   * @param modified
+   *          The current modification time of the file, in milliseconds
+   * @param algorithm
+   *          The checksum algorithm
+   * @return The checksum, or empty if it isn't in the cache or the file changed
+   */
+  public static Optional<String> get(Path path, long size, long modified, String algorithm) {
+    if (!isEnabled()) {
+      return Optional.empty();
+    }
+    CachedChecksum cached = read(path.toAbsolutePath().normalize().toString(), algorithm);
+    if (cached != null && cached.size == size && cached.modified == modified) {
+      return Optional.of(cached.checksum);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Adds the checksum of a file to the cache.
+   *
+   * @param path
+   *          The path of the file
+   * @param size
+   *          The size of the file when the checksum was computed
+   * @param modified
+   *          The modification time of the file when the checksum was computed,
+   *          in milliseconds
+   * @param algorithm
+   *          The checksum algorithm
+   * @param checksum
+   *          The checksum
+   */
+  public static void put(Path path, long size, long modified, String algorithm, String checksum) {
+    if (!isEnabled() || checksum == null) {
+      return;
+    }
+    append(path.toAbsolutePath().normalize().toString(), algorithm, new CachedChecksum(size, modified, checksum));
+  }
+
+  /**
+   * @return The number of checksums found in the cache since the application
+   *         started.
+   */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of checksums computed because they weren't in the cache
+   *         since the application started.
+   */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  private static long hash(String path, String algorithm) {
+    return OffsetIndex.hash(algorithm + '\u0000' + path);
+  }
+
+  private static synchronized OffsetIndex getIndex() {
+    if (index == null) {
+      index = new OffsetIndex();
+      int records = load();
+      // rewrite the file when most of its records are outdated
+      if (!appendDisabled && records - index.size() > Math.max(COMPACT_THRESHOLD, index.size())) {
+        compact();
+      }
+    }
+    return index;
+  }
+
+  private static Path getCacheFile() {
+    if (cacheFile != null) {
+      return cacheFile;
+    }
+    return ConfigurationManager.getRodainPath().resolve(Constants.CHECKSUM_CACHE_FILE);
+  }
+
+  /*
+   * Closes the file and forgets the index, so it's loaded again from the file
+   * on the next call. Used by the tests to simulate a restart of the
+   * application.
+   */
+  static synchronized void reset(Path file) {
+    closeFile();
+    index = null;
+    cacheFile = file;
+    validLength = 0;
+    appendDisabled = false;
+  }
+
+  private static void closeFile() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.debug("Unable to close the checksum cache", e);
+      }
+    }
+    channel = null;
+  }
+
+  /*
+   * Indexes the records of the file, cutting it after the last complete one
+   * (a record may have been cut short when the application was closed), and
+   * returns how many were read.
+   */
+  private static int load() {
+    int records = 0;
+    try {
+      channel = FileChannel.open(getCacheFile(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+      long size = channel.size();
+      channel.position(0);
+      CountingInputStream counting = new CountingInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel)));
+      DataInputStream data = new DataInputStream(counting);
+      if (size < HEADER_LENGTH || data.readInt() != FORMAT_VERSION) {
+        channel.truncate(0);
+        writeFully(ByteBuffer.allocate(HEADER_LENGTH).putInt(0, FORMAT_VERSION), 0);
+        validLength = HEADER_LENGTH;
+        return 0;
+      }
+      validLength = HEADER_LENGTH;
+      try {
+        while (validLength < size) {
+          String path = data.readUTF();
+          String algorithm = data.readUTF();
+          data.readLong();
+          data.readLong();
+          data.readUTF();
+          long end = counting.getByteCount();
+          index.put(hash(path, algorithm), validLength, (int) (end - validLength));
+          validLength = end;
+          records++;
+        }
+      } catch (EOFException e) {
+        LOGGER.debug("Dropping the last record of the checksum cache, it was cut short");
+      }
+      if (validLength < size) {
+        channel.truncate(validLength);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read the checksum cache, the new checksums won't be kept", e);
+      appendDisabled = true;
+    }
+    return records;
+  }
+
+  private static CachedChecksum read(String path, String algorithm) {
+    long offset;
+    int length;
+    FileChannel file;
+    synchronized (ChecksumCache.class) {
+      OffsetIndex current = getIndex();
+      long hash = hash(path, algorithm);
+      offset = current.getOffset(hash);
+      length = current.getLength(hash);
+      file = channel;
+    }
+    if (offset < 0 || file == null) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      while (buffer.hasRemaining()) {
+        if (file.read(buffer, offset + buffer.position()) < 0) {
+          throw new EOFException();
+        }
+      }
+      DataInputStream data = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+      // a different path or algorithm with the same hash
+      if (!path.equals(data.readUTF()) || !algorithm.equals(data.readUTF())) {
+        return null;
+      }
+      long size = data.readLong();
+      long modified = data.readLong();
+      return new CachedChecksum(size, modified, data.readUTF());
+    } catch (IOException e) {
+      LOGGER.debug("Unable to read the checksum cache", e);
+      return null;
+    }
+  }
+
+  private static synchronized void append(String path, String algorithm, CachedChecksum value) {
+    OffsetIndex current = getIndex();
+    if (appendDisabled) {
+      return;
+    }
+    try {
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      try (DataOutputStream data = new DataOutputStream(record)) {
+        writeRecord(data, path, algorithm, value);
+      }
+      writeFully(ByteBuffer.wrap(record.toByteArray()), validLength);
+      current.put(hash(path, algorithm), validLength, record.size());
+      validLength += record.size();
+    } catch (IOException e) {
+      // the next record overwrites the part of this one that was written
+      LOGGER.debug("Unable to write to the checksum cache", e);
+    }
+  }
+
+  private static void writeFully(ByteBuffer buffer, long position) throws IOException {
+    long current = position;
+    while (buffer.hasRemaining()) {
+      current += channel.write(buffer, current);
+    }
+  }
+
+  /*
+   * Rewrites the file with the records in the index, i.e. the last checksum of
+   * each path and algorithm.
+   */
+  private static void compact() {
+    Path file = getCacheFile();
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    long[] records = index.getRecords();
+    try (FileChannel temp = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(0, FORMAT_VERSION);
+      while (header.hasRemaining()) {
+        temp.write(header);
+      }
+      for (int i = 0; i < records.length; i += 2) {
+        long position = records[i];
+        long count = records[i + 1];
+        while (count > 0) {
+          long copied = channel.transferTo(position, count, temp);
+          position += copied;
+          count -= copied;
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Unable to compact the checksum cache", e);
+      try {
+        Files.deleteIfExists(tempFile);
+      } catch (IOException e1) {
+        // nothing else to do
+      }
+      return;
+    }
+
+    closeFile();
+    try {
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.debug("Unable to compact the checksum cache", e);
+    }
+    index = new OffsetIndex();
+    load();
+  }
+
+  private static void writeRecord(DataOutputStream data, String path, String algorithm, CachedChecksum value)
+    throws IOException {
+    data.writeUTF(path);
+    data.writeUTF(algorithm);
+    data.writeLong(value.size);
+    data.writeLong(value.modified);
+    data.writeUTF(value.checksum);
+  }
+
+  private static final class CachedChecksum {
+    private final long size;
+    private final long modified;
+    private final String checksum;
+
+    CachedChecksum(long size, long modified, String checksum) {
+      this.size = size;
+      this.modified = modified;
+      this.checksum = checksum;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package org.roda.rodain.core.checksum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Computes the digests of a file with several algorithms reading it only once.
+ * <p/>
+ * <p>
+ * The file is read through a FileChannel into a large direct buffer, which is
+ * fed to every requested MessageDigest before the next read, while the bytes
+ * are counted. The digests are encoded as lower case hexadecimal strings, like
+ * the ones computed by commons-ip. The totals of all the reads are kept, so
+ * the read throughput can be reported.
+ * </p>
+ */
+public final class DigestEngine {
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  // one buffer per thread, since the SIPs are built by several threads
+  private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal
+    .withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+  private static final AtomicLong filesRead = new AtomicLong(0);
+  private static final AtomicLong bytesRead = new AtomicLong(0);
+  private static final AtomicLong readTime = new AtomicLong(0); // in nanoseconds
+
+  private DigestEngine() {
+  }
+
+  /**
+   * Computes the digest of a file.
+   *
+   * @param path
+   *          The path of the file
+   * @param algorithm
+   *          The digest algorithm
+   * @return The result with the digest and the size of the file
+   * @throws IOException
+   *           If the file can't be read
+   * @throws NoSuchAlgorithmException
+   *           If the algorithm isn't supported
+   */
+  public static Result digest(Path path, String algorithm) throws IOException, NoSuchAlgorithmException {
+    return digest(path, Collections.singleton(algorithm));
+  }
+
+  /**
+   * Computes the digests of a file with all the algorithms in a single read.
+   *
+   * @param path
+   *          The path of the file
+   * @param algorithms
+   *          The digest algorithms
+   * @return The result with the digests and the size of the file
+   * @throws IOException
+   *           If the file can't be read
+   * @throws NoSuchAlgorithmException
+   *           If one of the algorithms isn't supported
+   */
+  public static Result digest(Path path, Collection<String> algorithms) throws IOException, NoSuchAlgorithmException {
+    Map<String, MessageDigest> digests = new LinkedHashMap<>();
+    for (String algorithm : algorithms) {
+      digests.put(algorithm, MessageDigest.getInstance(algorithm));
+    }
+
+    long start = System.nanoTime();
+    long size = 0;
+    ByteBuffer buffer = BUFFERS.get();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer.clear();
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        size += buffer.remaining();
+        for (MessageDigest digest : digests.values()) {
+          buffer.rewind();
+          digest.update(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    long time = System.nanoTime() - start;
+
+    filesRead.incrementAndGet();
+    bytesRead.addAndGet(size);
+    readTime.addAndGet(time);
+
+    Map<String, String> result = new HashMap<>();
+    digests.forEach((algorithm, digest) -> result.put(algorithm, Hex.encodeHexString(digest.digest())));
+    return new Result(result, size, time);
+  }
+
+  /**
+   * @return The number of files read since the application started.
+   */
+  public static long getFilesRead() {
+    return filesRead.get();
+  }
+
+  /**
+   * @return The number of bytes read since the application started.
+   */
+  public static long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * @return The average read throughput, in bytes per second, since the
+   *         application started. When several threads read at the same time,
+   *         this is the throughput of each one.
+   */
+  public static double getThroughput() {
+    return throughput(bytesRead.get(), readTime.get());
+  }
+
+  private static double throughput(long bytes, long nanos) {
+    return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+  }
+
+  /**
+   * The digests of a file, its size and the time it took to read it.
+   */
+  public static final class Result {
+    private final Map<String, String> digests;
+    private final long size;
+    private final long time;
+
+    Result(Map<String, String> digests, long size, long time) {
+      this.digests = digests;
+      this.size = size;
+      this.time = time;
+    }
+
+    /**
+     * @param algorithm
+     *          The digest algorithm
+     * @return The digest of the file with the algorithm
+     */
+    public String getDigest(String algorithm) {
+      return digests.get(algorithm);
+    }
+
+    /**
+     * @return The digests of the file, by algorithm
+     */
+    public Map<String, String> getDigests() {
+      return Collections.unmodifiableMap(digests);
+    }
+
+    /**
+     * @return The number of bytes read
+     */
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return The time it took to read the file, in nanoseconds
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * @return The read throughput, in bytes per second
+     */
+    public double getThroughput() {
+      return throughput(size, time);
+    }
+  }
+}
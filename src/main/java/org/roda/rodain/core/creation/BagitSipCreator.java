@@ -1,6 +1,5 @@
 package org.roda.rodain.core.creation;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -41,10 +40,6 @@ import org.slf4j.LoggerFactory;
  */
 public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, ISipCreator {
   private static final Logger LOGGER = LoggerFactory.getLogger(BagitSipCreator.class.getName());
-  private int countFilesOfZip;
-  private int currentSIPsize = 0;
-  private int currentSIPadded = 0;
-  private int repProcessingSize;
 
   private SIPNameBuilder sipNameBuilder;
 
@@ -68,25 +63,12 @@ public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, IS
    */
   @Override
   public void run() {
-    Map<Path, Object> sips = new HashMap<>();
-    for (Sip preview : previews.keySet()) {
-      if (canceled) {
-        break;
-      }
-      Pair pathBag = createBagit(preview);
-      if (pathBag != null) {
-        sips.put((Path) pathBag.getKey(), (SIP) pathBag.getValue());
-      }
-    }
-
-    if (createReport) {
-      createReport(sips);
-    }
+    createSips(sipNameBuilder, this::createBagit);
 
     currentAction = I18n.t(Constants.I18N_DONE);
   }
 
-  private Pair createBagit(Sip descriptionObject) {
+  private Pair createBagit(Sip descriptionObject, String sipName) {
     Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
     // we add a timestamp to the beginning of the SIP name to avoid same name
     // conflicts
@@ -112,12 +94,13 @@ public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, IS
           rep.setContentType(new org.roda_project.commons_ip.model.RepresentationContentType(sr.getType().getValue()));
 
           Set<TreeNode> files = sr.getFiles();
-          currentSIPadded = 0;
-          currentSIPsize = 0;
+          SipCounters counters = getSipCounters();
+          counters.filesAdded = 0;
+          counters.filesCount = 0;
 
           // count files
           for (TreeNode tn : files) {
-            currentSIPsize += tn.getFullTreePaths().size();
+            counters.filesCount += tn.getFullTreeSize();
           }
 
           for (TreeNode tn : files) {
@@ -142,8 +125,8 @@ public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, IS
       Path metadataPath = tempDir.resolve(Utils.generateRandomAndPrefixedUUID());
       bagit.addDescriptiveMetadata(BagitUtils.createBagitMetadata(metadataMap, bagit.getAncestors(), metadataPath));
 
-      Path name = bagit.build(outputPath, createSipName(descriptionObject, sipNameBuilder));
-      createdSipsCount++;
+      Path name = bagit.build(outputPath, sipName);
+      createdSipsCount.incrementAndGet();
       return new Pair(name, bagit);
     } catch (Exception e) {
       LOGGER.error("Error creating SIP", e);
@@ -154,19 +137,20 @@ public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, IS
   }
 
   private void addFileToRepresentation(TreeNode tn, List<String> relativePath, IPRepresentation rep) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addFileToRepresentation(node, newRelativePath, rep);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addFileToRepresentation(tn.getChild(i), newRelativePath, rep);
       }
     } else {
       // if it's a file, add it to the representation
       rep.addFile(tn.getPath(), relativePath);
-      currentSIPadded++;
-      currentAction = String.format("%s (%d/%d)", actionCopyingData, currentSIPadded, currentSIPsize);
+      SipCounters counters = getSipCounters();
+      counters.filesAdded++;
+      currentAction = String.format("%s (%d/%d)", actionCopyingData, counters.filesAdded, counters.filesCount);
     }
   }
 
@@ -177,13 +161,13 @@ public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, IS
 
   @Override
   public void sipBuildRepresentationProcessingStarted(int size) {
-    repProcessingSize = size;
+    getSipCounters().representationSize = size;
   }
 
   @Override
   public void sipBuildRepresentationProcessingCurrentStatus(int i) {
     String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_REPRESENTATION) + " (%d/%d)";
-    currentAction = String.format(format, i, repProcessingSize);
+    currentAction = String.format(format, i, getSipCounters().representationSize);
   }
 
   @Override
@@ -198,22 +182,22 @@ public class BagitSipCreator extends SimpleSipCreator implements SIPObserver, IS
 
   @Override
   public void sipBuildPackagingStarted(int current) {
-    countFilesOfZip = current;
+    getSipCounters().filesOfZip = current;
+    sipPackagingStarted(current);
   }
 
   @Override
   public void sipBuildPackagingCurrentStatus(int current) {
     String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_EARK_PROGRESS);
-    String progress = String.format(format, current, countFilesOfZip);
+    String progress = String.format(format, current, getSipCounters().filesOfZip);
     currentAction = progress;
-    currentSipProgress = ((float) current) / countFilesOfZip;
-    currentSipProgress /= sipPreviewCount;
+    sipPackagingProgress(current);
   }
 
   @Override
   public void sipBuildPackagingEnded() {
     currentAction = actionFinalizingSip;
-    currentSipProgress = 0;
+    clearSipProgress();
   }
 
   public static String getText() {
@@ -115,7 +115,7 @@ public class CreateSips {
    *         created by the total number of SIPs.
    */
   public double getProgress() {
-    return (creator.getCreatedSipsCount() / (sipsCount * 1.0)) + creator.currentSipProgress;
+    return (creator.getCreatedSipsCount() / (sipsCount * 1.0)) + creator.getCurrentSipProgress();
   }
 
   /**
@@ -139,6 +139,25 @@ public class CreateSips {
     return creator.getCurrentAction();
   }
 
+  /**
+   * @return True if the exportation has ended.
+   */
+  public boolean isFinished() {
+    return creator != null && !creator.isAlive();
+  }
+
+  /**
+   * Waits for the exportation to end, at most the given time.
+   *
+   * @param millis
+   *          The time to wait, in milliseconds
+   * @throws InterruptedException
+   *           If the current thread is interrupted while waiting
+   */
+  public void waitFor(long millis) throws InterruptedException {
+    creator.join(millis);
+  }
+
   /**
    * Halts the execution of the SIP creator.
    */
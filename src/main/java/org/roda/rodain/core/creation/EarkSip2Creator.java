@@ -1,6 +1,5 @@
 package org.roda.rodain.core.creation;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -77,13 +76,13 @@ public class EarkSip2Creator extends SipCreator {
   @Override
   protected void addFileToRepresentation(final TreeNode tn, final List<String> relativePath,
     final IPRepresentation rep) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       final List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addFileToRepresentation(node, newRelativePath, rep);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addFileToRepresentation(tn.getChild(i), newRelativePath, rep);
       }
     } else {
       // if it's a file, add it to the representation
@@ -1,11 +1,9 @@
 package org.roda.rodain.core.creation;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,10 +44,6 @@ import org.slf4j.LoggerFactory;
  */
 public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISipCreator {
   private static final Logger LOGGER = LoggerFactory.getLogger(EarkSipCreator.class.getName());
-  private int countFilesOfZip;
-  private int currentSIPadded = 0;
-  private int currentSIPsize = 0;
-  private int repProcessingSize;
 
   private SIPNameBuilder sipNameBuilder;
   private IPHeader ipHeader;
@@ -76,23 +70,11 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
    */
   @Override
   public void run() {
-    Map<Path, Object> sips = new HashMap<>();
-    for (Sip preview : previews.keySet()) {
-      if (canceled) {
-        break;
-      }
-      Pair pathSIP = createEarkSip(preview);
-      if (pathSIP != null) {
-        sips.put((Path) pathSIP.getKey(), (SIP) pathSIP.getValue());
-      }
-    }
-    if (createReport) {
-      createReport(sips);
-    }
+    createSips(sipNameBuilder, this::createEarkSip);
     currentAction = I18n.t(Constants.I18N_DONE);
   }
 
-  private Pair createEarkSip(Sip descriptionObject) {
+  private Pair createEarkSip(Sip descriptionObject, String sipName) {
     Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
     try {
       org.roda.rodain.core.schema.IPContentType userDefinedContentType = descriptionObject instanceof SipPreview
@@ -112,7 +94,7 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
         earkSip.setStatus(IPStatus.NEW);
       }
 
-      currentSipProgress = 0;
+      clearSipProgress();
       currentSipName = descriptionObject.getTitle();
       currentAction = actionCopyingMetadata;
 
@@ -173,12 +155,13 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
           rep.setContentType(contentType);
 
           Set<TreeNode> files = sr.getFiles();
-          currentSIPadded = 0;
-          currentSIPsize = 0;
+          SipCounters counters = getSipCounters();
+          counters.filesAdded = 0;
+          counters.filesCount = 0;
 
           // count files
           for (TreeNode tn : files) {
-            currentSIPsize += tn.getFullTreePaths().size();
+            counters.filesCount += tn.getFullTreeSize();
           }
 
           // add files to representation
@@ -200,9 +183,9 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
       earkSip.addCreatorSoftwareAgent(agentName);
 
       currentAction = I18n.t(Constants.I18N_SIMPLE_SIP_CREATOR_INIT_ZIP);
-      Path sipPath = earkSip.build(outputPath, createSipName(descriptionObject, sipNameBuilder));
+      Path sipPath = earkSip.build(outputPath, sipName);
 
-      createdSipsCount++;
+      createdSipsCount.incrementAndGet();
       return new Pair(sipPath, earkSip);
     } catch (InterruptedException e) {
       canceled = true;
@@ -220,30 +203,31 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
   }
 
   private void addFileToRepresentation(TreeNode tn, List<String> relativePath, IPRepresentation rep) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addFileToRepresentation(node, newRelativePath, rep);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addFileToRepresentation(tn.getChild(i), newRelativePath, rep);
       }
     } else {
       // if it's a file, add it to the representation
       rep.addFile(tn.getPath(), relativePath);
-      currentSIPadded++;
-      currentAction = String.format("%s (%d/%d)", actionCopyingData, currentSIPadded, currentSIPsize);
+      SipCounters counters = getSipCounters();
+      counters.filesAdded++;
+      currentAction = String.format("%s (%d/%d)", actionCopyingData, counters.filesAdded, counters.filesCount);
     }
   }
 
   private void addDocToSip(TreeNode tn, List<String> relativePath, SIP earkSip) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addDocToSip(node, newRelativePath, earkSip);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addDocToSip(tn.getChild(i), newRelativePath, earkSip);
       }
     } else {
       // if it's a file, add it to the SIP
@@ -259,13 +243,13 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
 
   @Override
   public void sipBuildRepresentationProcessingStarted(int size) {
-    repProcessingSize = size;
+    getSipCounters().representationSize = size;
   }
 
   @Override
   public void sipBuildRepresentationProcessingCurrentStatus(int i) {
     String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_REPRESENTATION) + " (%d/%d)";
-    currentAction = String.format(format, i, repProcessingSize);
+    currentAction = String.format(format, i, getSipCounters().representationSize);
   }
 
   @Override
@@ -280,22 +264,22 @@ public class EarkSipCreator extends SimpleSipCreator implements SIPObserver, ISi
 
   @Override
   public void sipBuildPackagingStarted(int current) {
-    countFilesOfZip = current;
+    getSipCounters().filesOfZip = current;
+    sipPackagingStarted(current);
   }
 
   @Override
   public void sipBuildPackagingCurrentStatus(int current) {
     String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_EARK_PROGRESS);
-    String progress = String.format(format, current, countFilesOfZip);
+    String progress = String.format(format, current, getSipCounters().filesOfZip);
     currentAction = progress;
-    currentSipProgress = ((float) current) / countFilesOfZip;
-    currentSipProgress /= sipPreviewCount;
+    sipPackagingProgress(current);
   }
 
   @Override
   public void sipBuildPackagingEnded() {
     currentAction = actionFinalizingSip;
-    currentSipProgress = 0;
+    clearSipProgress();
   }
 
   public static String getText() {
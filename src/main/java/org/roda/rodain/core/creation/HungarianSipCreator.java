@@ -3,11 +3,9 @@ package org.roda.rodain.core.creation;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,7 +35,6 @@ import org.roda_project.commons_ip.model.IPHeader;
 import org.roda_project.commons_ip.model.IPRepresentation;
 import org.roda_project.commons_ip.model.MetadataType;
 import org.roda_project.commons_ip.model.RepresentationContentType.RepresentationContentTypeEnum;
-import org.roda_project.commons_ip.model.SIP;
 import org.roda_project.commons_ip.model.SIPObserver;
 import org.roda_project.commons_ip.model.impl.hungarian.HungarianSIP;
 import org.roda_project.commons_ip.utils.IPEnums.IPStatus;
@@ -46,10 +43,6 @@ import org.slf4j.LoggerFactory;
 
 public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver, ISipCreator {
   private static final Logger LOGGER = LoggerFactory.getLogger(HungarianSipCreator.class.getName());
-  private int countFilesOfZip;
-  private int currentSIPadded = 0;
-  private int currentSIPsize = 0;
-  private int repProcessingSize;
 
   private SIPNameBuilder sipNameBuilder;
   private IPHeader ipHeader;
@@ -68,6 +61,23 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
     super(outputPath, previews, createReport);
     this.sipNameBuilder = sipNameBuilder;
     this.ipHeader = ipHeader;
+    // the header is shared by all the SIPs, which may be built at the same
+    // time, so it's completed only once
+    addDeliveryAltRecordIDs();
+  }
+
+  private void addDeliveryAltRecordIDs() {
+    // 2017-05-10 bferreira: these are constant. see issue #286
+    IPAltRecordID deliveryType = new IPAltRecordID();
+    deliveryType.setType("DELIVERYTYPE");
+    deliveryType.setValue("STRUKTÚRÁLATLAN");
+    ipHeader.addAltRecordID(deliveryType);
+
+    IPAltRecordID deliverySpecification = new IPAltRecordID();
+    deliverySpecification.setType("DELIVERYSPECIFICATION");
+    deliverySpecification.setValue(
+      "34/2016. (XI. 30.) EMMI rendelet az elektronikus formában tárolt iratok közlevéltári átvételének eljárásrendjéről és műszaki követelményeiről");
+    ipHeader.addAltRecordID(deliverySpecification);
   }
 
   /**
@@ -75,26 +85,12 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
    */
   @Override
   public void run() {
-    Map<Path, Object> sips = new HashMap<>();
-    for (Sip preview : previews.keySet()) {
-      if (canceled) {
-        break;
-      }
-
-      Pair pathSIP = createHungarianSip(preview);
-      if (pathSIP != null) {
-        sips.put((Path) pathSIP.getKey(), (SIP) pathSIP.getValue());
-      }
-    }
-
-    if (createReport) {
-      createReport(sips);
-    }
+    createSips(sipNameBuilder, this::createHungarianSip);
 
     currentAction = I18n.t(Constants.I18N_DONE);
   }
 
-  private Pair createHungarianSip(Sip descriptionObject) {
+  private Pair createHungarianSip(Sip descriptionObject, String sipName) {
     Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
     try {
       org.roda.rodain.core.schema.IPContentType userDefinedContentType = descriptionObject instanceof SipPreview
@@ -111,7 +107,7 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
         hungarianSip.setStatus(IPStatus.NEW);
       }
 
-      currentSipProgress = 0;
+      clearSipProgress();
       currentSipName = descriptionObject.getTitle();
       currentAction = actionCopyingMetadata;
 
@@ -167,11 +163,12 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
           rep.setContentType(new org.roda_project.commons_ip.model.RepresentationContentType(sr.getType().getValue()));
 
           Set<TreeNode> files = sr.getFiles();
-          currentSIPadded = 0;
-          currentSIPsize = 0;
+          SipCounters counters = getSipCounters();
+          counters.filesAdded = 0;
+          counters.filesCount = 0;
           // count files
           for (TreeNode tn : files) {
-            currentSIPsize += tn.getFullTreePaths().size();
+            counters.filesCount += tn.getFullTreeSize();
           }
           // add files to representation
           for (TreeNode tn : files) {
@@ -190,18 +187,6 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
 
       currentAction = I18n.t(Constants.I18N_SIMPLE_SIP_CREATOR_INIT_ZIP);
 
-      // 2017-05-10 bferreira: these are constant. see issue #286
-      IPAltRecordID deliveryType = new IPAltRecordID();
-      deliveryType.setType("DELIVERYTYPE");
-      deliveryType.setValue("STRUKTÚRÁLATLAN");
-      ipHeader.addAltRecordID(deliveryType);
-
-      IPAltRecordID deliverySpecification = new IPAltRecordID();
-      deliverySpecification.setType("DELIVERYSPECIFICATION");
-      deliverySpecification.setValue(
-        "34/2016. (XI. 30.) EMMI rendelet az elektronikus formában tárolt iratok közlevéltári átvételének eljárásrendjéről és műszaki követelményeiről");
-      ipHeader.addAltRecordID(deliverySpecification);
-
       hungarianSip.setHeader(ipHeader);
       hungarianSip.addCreatorSoftwareAgent(Constants.SIP_DEFAULT_AGENT_NAME).setNote(Controller.getCurrentVersion());
 
@@ -210,9 +195,9 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
         String template = IOUtils.toString(stream, Charset.defaultCharset());
         hungarianSip.setFolderTemplate(template);
       }
-      Path sipPath = hungarianSip.build(outputPath, createSipName(descriptionObject, sipNameBuilder));
+      Path sipPath = hungarianSip.build(outputPath, sipName);
 
-      createdSipsCount++;
+      createdSipsCount.incrementAndGet();
       return new Pair(sipPath, hungarianSip);
     } catch (InterruptedException e) {
       canceled = true;
@@ -230,31 +215,32 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
   }
 
   private void addFileToRepresentation(TreeNode tn, List<String> relativePath, IPRepresentation rep) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
 
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addFileToRepresentation(node, newRelativePath, rep);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addFileToRepresentation(tn.getChild(i), newRelativePath, rep);
       }
     } else {
       // if it's a file, add it to the representation
       rep.addFile(tn.getPath(), relativePath);
-      currentSIPadded++;
-      currentAction = String.format("%s (%d/%d)", actionCopyingData, currentSIPadded, currentSIPsize);
+      SipCounters counters = getSipCounters();
+      counters.filesAdded++;
+      currentAction = String.format("%s (%d/%d)", actionCopyingData, counters.filesAdded, counters.filesCount);
     }
   }
 
   private void addDocToZip(TreeNode tn, List<String> relativePath, SIP hungarianSip) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addDocToZip(node, newRelativePath, hungarianSip);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addDocToZip(tn.getChild(i), newRelativePath, hungarianSip);
       }
     } else {
       // if it's a file, add it to the SIP
@@ -270,13 +256,13 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
 
   @Override
   public void sipBuildRepresentationProcessingStarted(int size) {
-    repProcessingSize = size;
+    getSipCounters().representationSize = size;
   }
 
   @Override
   public void sipBuildRepresentationProcessingCurrentStatus(int i) {
     String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_REPRESENTATION) + " (%d/%d)";
-    currentAction = String.format(format, i, repProcessingSize);
+    currentAction = String.format(format, i, getSipCounters().representationSize);
   }
 
   @Override
@@ -291,22 +277,22 @@ public class HungarianSipCreator extends SimpleSipCreator implements SIPObserver
 
   @Override
   public void sipBuildPackagingStarted(int current) {
-    countFilesOfZip = current;
+    getSipCounters().filesOfZip = current;
+    sipPackagingStarted(current);
   }
 
   @Override
   public void sipBuildPackagingCurrentStatus(int current) {
     String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_EARK_PROGRESS);
-    String progress = String.format(format, current, countFilesOfZip);
+    String progress = String.format(format, current, getSipCounters().filesOfZip);
     currentAction = progress;
-    currentSipProgress = ((float) current) / countFilesOfZip;
-    currentSipProgress /= sipPreviewCount;
+    sipPackagingProgress(current);
   }
 
   @Override
   public void sipBuildPackagingEnded() {
     currentAction = actionFinalizingSip;
-    currentSipProgress = 0;
+    clearSipProgress();
   }
 
   public static String getText() {
@@ -1,18 +1,15 @@
 package org.roda.rodain.core.creation;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
+import org.roda.rodain.core.checksum.ChecksumCache;
 import org.roda.rodain.core.rules.TreeNode;
 import org.roda.rodain.core.schema.RepresentationContentType;
 import org.roda.rodain.core.schema.Sip;
@@ -31,7 +28,6 @@ import org.roda_project.commons_ip2.model.IPFileInterface;
 import org.roda_project.commons_ip2.model.IPFileShallow;
 import org.roda_project.commons_ip2.model.IPRepresentation;
 import org.roda_project.commons_ip2.utils.METSUtils;
-import org.roda_project.commons_ip2.utils.ZIPUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -99,18 +95,18 @@ public class ShallowSipCreator extends SipCreator {
   @Override
   protected void addFileToRepresentation(final TreeNode tn, final List<String> relativePath,
     final IPRepresentation rep) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       final List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
 
-      if (tn.getChildren().values().isEmpty()) {
+      if (tn.getChildCount() == 0) {
         rep.addFile(new IPFileShallow(newRelativePath));
       }
 
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addFileToRepresentation(node, newRelativePath, rep);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addFileToRepresentation(tn.getChild(i), newRelativePath, rep);
       }
     } else {
       // if it's a file, add it to the representation
@@ -140,12 +136,8 @@ public class ShallowSipCreator extends SipCreator {
     }
 
     final String checksumType = IPConstants.CHECKSUM_ALGORITHM;
-    final Set<String> checksumAlgorithms = new HashSet<>();
-    checksumAlgorithms.add(checksumType);
-    try (InputStream inputStream = Files.newInputStream(path)) {
-      final Map<String, String> checksums = ZIPUtils.calculateChecksums(Optional.empty(), inputStream,
-        checksumAlgorithms);
-      final String checksum = checksums.get(checksumType);
+    try {
+      final String checksum = ChecksumCache.getChecksum(path, checksumType);
       filetype.setCHECKSUM(checksum);
       filetype.setCHECKSUMTYPE(checksumType);
     } catch (NoSuchAlgorithmException | IOException e) {
@@ -1,42 +1,57 @@
 package org.roda.rodain.core.creation;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.io.FileUtils;
+import org.roda.rodain.core.ConfigurationManager;
 import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.Controller;
 import org.roda.rodain.core.I18n;
+import org.roda.rodain.core.Pair;
+import org.roda.rodain.core.checksum.ChecksumCache;
+import org.roda.rodain.core.checksum.DigestEngine;
 import org.roda.rodain.core.report.InventoryReportCreator;
+import org.roda.rodain.core.rules.TreeNode;
 import org.roda.rodain.core.schema.Sip;
+import org.roda.rodain.core.sip.SipPreview;
+import org.roda.rodain.core.sip.SipRepresentation;
 import org.roda.rodain.core.sip.naming.SIPNameBuilder;
+import org.roda.rodain.core.template.TemplateCache;
+import org.roda.rodain.ui.creation.CreationModalProcessing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * @author Andre Pereira apereira@keep.pt
@@ -44,6 +59,12 @@ import org.xml.sax.InputSource;
  */
 public abstract class SimpleSipCreator extends Thread {
   private static final Logger LOGGER = LoggerFactory.getLogger(SimpleSipCreator.class.getName());
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final int DEFAULT_MAX_IN_PROGRESS_SIZE = 4096; // in MB
+
+  // plain.xslt is compiled once, and each thread reuses its own transformer
+  private static Templates plainTemplates;
+  private static final ThreadLocal<Transformer> plainTransformers = new ThreadLocal<>();
 
   protected static final String actionCreatingFolders = I18n.t(Constants.I18N_SIMPLE_SIP_CREATOR_CREATING_STRUCTURE);
   protected static final String actionCopyingData = I18n.t(Constants.I18N_SIMPLE_SIP_CREATOR_COPYING_DATA);
@@ -56,9 +77,9 @@ public abstract class SimpleSipCreator extends Thread {
   protected final Map<Sip, List<String>> previews;
   protected final int sipPreviewCount;
 
-  protected int createdSipsCount = 0;
-  protected String currentSipName;
-  protected String currentAction;
+  protected final AtomicInteger createdSipsCount = new AtomicInteger(0);
+  protected volatile String currentSipName;
+  protected volatile String currentAction;
 
   // ETA
   protected long sipSize;
@@ -70,11 +91,22 @@ public abstract class SimpleSipCreator extends Thread {
   protected Instant lastInstant;
   protected Instant sipStartInstant;
 
-  protected boolean canceled = false;
-  protected float currentSipProgress;
+  protected volatile boolean canceled = false;
 
   protected Set<Sip> unsuccessful;
 
+  // progress of the SIPs being built, by the id of the thread building them
+  private final Map<Long, Float> sipsProgress = new ConcurrentHashMap<>();
+  private final Map<Long, Integer> sipsPackagingSize = new ConcurrentHashMap<>();
+  // the counters of the SIP built by each worker
+  private final ThreadLocal<SipCounters> sipCounters = ThreadLocal.withInitial(SipCounters::new);
+
+  // SIPs being built and the size of their files
+  private volatile ExecutorService workers;
+  private final Object inProgressLock = new Object();
+  private int inProgressCount = 0;
+  private long inProgressSize = 0;
+
   /**
    * Creates a simple SIP exporter.
    * <p/>
@@ -94,7 +126,7 @@ public abstract class SimpleSipCreator extends Thread {
     this.previews = previews;
     sipPreviewCount = previews.size();
 
-    unsuccessful = new HashSet<>();
+    unsuccessful = ConcurrentHashMap.newKeySet();
 
     try {
       agentName = String.format(Constants.SIP_AGENT_NAME_FORMAT, Controller.getCurrentVersion());
@@ -107,7 +139,7 @@ public abstract class SimpleSipCreator extends Thread {
    * @return The number of SIPs that have already been created.
    */
   public int getCreatedSipsCount() {
-    return createdSipsCount;
+    return createdSipsCount.get();
   }
 
   /**
@@ -117,6 +149,18 @@ public abstract class SimpleSipCreator extends Thread {
     return unsuccessful.size();
   }
 
+  /**
+   * @return The progress of the SIPs being built, as a fraction of the whole
+   *         exportation.
+   */
+  public float getCurrentSipProgress() {
+    float result = 0;
+    for (float progress : sipsProgress.values()) {
+      result += progress;
+    }
+    return result;
+  }
+
   /**
    * @return The action currently being done on the SIP.
    */
@@ -143,24 +187,10 @@ public abstract class SimpleSipCreator extends Thread {
     Map<String, String> result = new HashMap<>();
 
     try {
-      // apply the XSLT to the metadata content
-      String transformed = transformXML(input);
-
-      // parse the resulting document
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(new InputSource(new StringReader(transformed)));
-
-      // add all the field nodes to the result map. Example: <field
+      // apply the XSLT to the metadata content, adding all the field nodes of
+      // the output to the result map. Example: <field
       // name=".RDF.Description.date_txt">27-05-2016</field>
-      NodeList fields = doc.getElementsByTagName("field");
-      for (int i = 0; i < fields.getLength(); i++) {
-        Node field = fields.item(i);
-        NamedNodeMap attributes = field.getAttributes();
-        String fieldName = attributes.getNamedItem("name").getNodeValue();
-        String fieldValue = field.getTextContent().replaceAll("\\r\\n|\\r|\\n", " ");
-        result.put(fieldName, fieldValue);
-      }
+      result.putAll(transformXML(input));
     } catch (Exception e) {
       LOGGER.info("Error parsing the XML file, falling back to simple metadata mode", e);
       // if there's been an error when transforming the XML, remove all
@@ -173,17 +203,330 @@ public abstract class SimpleSipCreator extends Thread {
     return result;
   }
 
-  private String transformXML(String input) throws TransformerException, IOException {
-    Source xmlSource = new StreamSource(new ByteArrayInputStream(input.getBytes()));
-    StreamSource xsltSource = new StreamSource(ClassLoader.getSystemResource("plain.xslt").openStream());
+  private Map<String, String> transformXML(String input) throws TransformerException, IOException {
+    Source xmlSource = new StreamSource(new StringReader(input));
+    FieldsHandler fieldsHandler = new FieldsHandler();
+
+    Transformer trans = getPlainTransformer();
+    try {
+      // the output events feed the map directly, without serializing the
+      // output
+      trans.transform(xmlSource, new SAXResult(fieldsHandler));
+    } finally {
+      trans.reset();
+    }
+    return fieldsHandler.fields;
+  }
+
+  private static Transformer getPlainTransformer() throws TransformerException, IOException {
+    Transformer transformer = plainTransformers.get();
+    if (transformer == null) {
+      transformer = getPlainTemplates().newTransformer();
+      plainTransformers.set(transformer);
+    }
+    return transformer;
+  }
+
+  private static synchronized Templates getPlainTemplates() throws TransformerException, IOException {
+    if (plainTemplates == null) {
+      try (InputStream xsltStream = ClassLoader.getSystemResource("plain.xslt").openStream()) {
+        TransformerFactory transFact = TransformerFactory.newInstance();
+        plainTemplates = transFact.newTemplates(new StreamSource(xsltStream));
+      }
+    }
+    return plainTemplates;
+  }
+
+  /**
+   * Collects the field elements of the output of plain.xslt, by name.
+   */
+  private static final class FieldsHandler extends DefaultHandler {
+    private final Map<String, String> fields = new HashMap<>();
+    private String fieldName;
+    private StringBuilder fieldValue;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      if ("field".equals(localName) || "field".equals(qName)) {
+        fieldName = attributes.getValue("name");
+        fieldValue = new StringBuilder();
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      if (fieldValue != null) {
+        fieldValue.append(ch, start, length);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if (fieldValue != null && ("field".equals(localName) || "field".equals(qName))) {
+        fields.put(fieldName, fieldValue.toString().replaceAll("\\r\\n|\\r|\\n", " "));
+        fieldName = null;
+        fieldValue = null;
+      }
+    }
+  }
+
+  /**
+   * Creates the SIPs of all the previews and returns the path and object of
+   * each one that was created.
+   * <p/>
+   * <p>
+   * Several SIPs are built at the same time, up to the configured parallelism
+   * level. A SIP is only started when the total size of the files of the SIPs
+   * being built stays under the configured limit (or when no other SIP is being
+   * built), which bounds the disk space used by the unfinished SIPs.
+   * </p>
+   *
+   * <p>
+   * When the inventory report is requested, each SIP is added to it as soon as
+   * it's built, so the SIP objects aren't kept until the end.
+   * </p>
+   *
+   * <p>
+   * The names of the SIPs are built here, in the order of the previews, before
+   * the SIPs are handed to the workers, since the name builders (e.g. the
+   * serial number of the Hungarian SIPs) aren't thread safe.
+   * </p>
+   *
+   * @param sipNameBuilder
+   *          Builds the names of the SIPs
+   * @param createSip
+   *          Creates a single SIP with the given name, returning the pair with
+   *          its path and object, or null if it wasn't created
+   */
+  protected void createSips(SIPNameBuilder sipNameBuilder, BiFunction<Sip, String, Pair> createSip) {
+    InventoryReportCreator reportCreator = null;
+    if (createReport) {
+      reportCreator = new InventoryReportCreator(outputPath, getExportId());
+      try {
+        reportCreator.open();
+      } catch (IOException e) {
+        LOGGER.error("Error creating inventory report", e);
+        reportCreator = null;
+      }
+    }
+    final InventoryReportCreator report = reportCreator;
+    // the reads avoided by each thread are added once its work is done, so
+    // only the ones of this exportation are counted
+    TreeNode.takeSavedReads();
+    final AtomicLong savedReads = new AtomicLong(0);
+    int parallelism = Math.max(1,
+      ConfigurationManager.getConfigAsInteger(Constants.CONF_K_SIP_EXPORT_PARALLELISM, DEFAULT_PARALLELISM));
+    long maxInProgressSize = ConfigurationManager.getConfigAsInteger(Constants.CONF_K_SIP_EXPORT_MAX_IN_PROGRESS_SIZE,
+      DEFAULT_MAX_IN_PROGRESS_SIZE) * 1024L * 1024L;
+
+    workers = Executors.newFixedThreadPool(parallelism);
+    try {
+      for (Sip preview : previews.keySet()) {
+        if (canceled) {
+          break;
+        }
+        long size;
+        try {
+          size = getSize(preview);
+        } catch (UncheckedIOException e) {
+          // the content of the SIP can't be loaded, it's not exported
+          LOGGER.error("Error loading the content of the SIP", e);
+          unsuccessful.add(preview);
+          CreationModalProcessing.showError(preview, e);
+          continue;
+        }
+        String sipName = createSipName(preview, sipNameBuilder);
+        acquireSlot(parallelism, maxInProgressSize, size);
+        try {
+          workers.execute(() -> {
+            try {
+              if (!canceled) {
+                Pair pathSip = createSip.apply(preview, sipName);
+                if (pathSip != null && report != null) {
+                  report.add((Path) pathSip.getKey(), pathSip.getValue(), getFileSizes(preview));
+                }
+              }
+            } finally {
+              clearSipProgress();
+              sipCounters.remove();
+              savedReads.addAndGet(TreeNode.takeSavedReads());
+              releaseSlot(size);
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // the exportation was canceled
+          releaseSlot(size);
+          break;
+        }
+      }
+      workers.shutdown();
+      workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      canceled = true;
+      workers.shutdownNow();
+      try {
+        // wait for the SIPs being built to stop before going on
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e1) {
+        LOGGER.debug("Interrupted while waiting for the SIPs being built to stop", e1);
+      }
+    }
+    LOGGER.debug("Checksums: {} cached, {} computed ({} files, {} bytes read at {} MB/s)", ChecksumCache.getHits(),
+      ChecksumCache.getMisses(), DigestEngine.getFilesRead(), DigestEngine.getBytesRead(),
+      String.format("%.1f", DigestEngine.getThroughput() / (1024 * 1024)));
+    LOGGER.debug("Metadata templates: {} cached, {} compiled", TemplateCache.getHits(), TemplateCache.getMisses());
+    savedReads.addAndGet(TreeNode.takeSavedReads());
+    LOGGER.info("Exported {} of {} SIPs ({} with errors), {} file system reads avoided", createdSipsCount.get(),
+      sipPreviewCount, unsuccessful.size(), savedReads.get());
+    if (report != null) {
+      report.close();
+    }
+  }
+
+  private void acquireSlot(int parallelism, long maxInProgressSize, long size) throws InterruptedException {
+    synchronized (inProgressLock) {
+      while (inProgressCount > 0
+        && (inProgressCount >= parallelism || inProgressSize + size > maxInProgressSize)) {
+        inProgressLock.wait();
+      }
+      inProgressCount++;
+      inProgressSize += size;
+    }
+  }
+
+  private void releaseSlot(long size) {
+    synchronized (inProgressLock) {
+      inProgressCount--;
+      inProgressSize -= size;
+      inProgressLock.notifyAll();
+    }
+  }
+
+  /*
+   * The size of the data and documentation files of the SIP.
+   */
+  private static long getSize(Sip sip) {
+    long result = 0;
+    if (sip instanceof SipPreview) {
+      SipPreview preview = (SipPreview) sip;
+      for (SipRepresentation sr : preview.getRepresentations()) {
+        result += getSize(sr.getFiles());
+      }
+      result += getSize(preview.getDocumentation());
+    }
+    return result;
+  }
+
+  private static long getSize(Collection<TreeNode> nodes) {
+    long result = 0;
+    for (TreeNode tn : nodes) {
+      result += getSize(tn);
+    }
+    return result;
+  }
+
+  private static long getSize(TreeNode tn) {
+    long result = tn.getSize();
+    for (int i = 0; i < tn.getChildCount(); i++) {
+      result += getSize(tn.getChild(i));
+    }
+    return result;
+  }
+
+  /*
+   * The sizes of the files of the SIP, already known by its TreeNodes.
+   */
+  private static Map<Path, Long> getFileSizes(Sip sip) {
+    Map<Path, Long> result = new HashMap<>();
+    if (sip instanceof SipPreview) {
+      SipPreview preview = (SipPreview) sip;
+      for (SipRepresentation sr : preview.getRepresentations()) {
+        addFileSizes(sr.getFiles(), result);
+      }
+      addFileSizes(preview.getDocumentation(), result);
+    }
+    return result;
+  }
 
-    TransformerFactory transFact = TransformerFactory.newInstance();
-    Transformer trans = transFact.newTransformer(xsltSource);
+  private static void addFileSizes(Collection<TreeNode> nodes, Map<Path, Long> result) {
+    for (TreeNode tn : nodes) {
+      addFileSizes(tn, result);
+    }
+  }
 
-    Writer writer = new StringWriter();
-    StreamResult streamResult = new StreamResult(writer);
-    trans.transform(xmlSource, streamResult);
-    return writer.toString();
+  private static void addFileSizes(TreeNode tn, Map<Path, Long> result) {
+    if (tn.isDirectory()) {
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addFileSizes(tn.getChild(i), result);
+      }
+    } else {
+      result.put(tn.getPath(), tn.getSize());
+    }
+  }
+
+  /*
+   * Identifies the exportation by its format, output folder and SIPs, so an
+   * interrupted inventory report is only resumed by the same exportation.
+   *
+   * The SIPs are identified by their IDs on purpose: the lines of the report
+   * are matched to the SIPs by the name of their file, which is built from the
+   * ID (or the date), so a report can only be resumed by SIPs with the same
+   * IDs. The IDs are generated when the rules are applied, so after a restart
+   * that only happens when the project was saved and opened again; otherwise
+   * the partial report is discarded instead of mixing the lines of two sets of
+   * SIP files.
+   */
+  private String getExportId() {
+    List<String> ids = new ArrayList<>();
+    for (Sip sip : previews.keySet()) {
+      ids.add(sip.getId());
+    }
+    // the order of the previews changes between runs
+    Collections.sort(ids);
+    StringBuilder export = new StringBuilder(getClass().getName());
+    export.append('\n').append(outputPath.toAbsolutePath().normalize());
+    for (String id : ids) {
+      export.append('\n').append(id);
+    }
+    return DigestUtils.sha1Hex(export.toString());
+  }
+
+  /**
+   * Sets the number of files the SIP built by the current thread will package.
+   *
+   * @param filesCount
+   *          The number of files
+   */
+  protected void sipPackagingStarted(int filesCount) {
+    sipsPackagingSize.put(Thread.currentThread().getId(), filesCount);
+  }
+
+  /**
+   * Updates the progress of the SIP built by the current thread.
+   *
+   * @param packagedFiles
+   *          The number of files already packaged
+   */
+  protected void sipPackagingProgress(int packagedFiles) {
+    Integer filesCount = sipsPackagingSize.get(Thread.currentThread().getId());
+    if (filesCount != null && filesCount > 0) {
+      sipsProgress.put(Thread.currentThread().getId(), ((float) packagedFiles) / filesCount / sipPreviewCount);
+    }
+  }
+
+  /**
+   * @return The counters of the SIP built by the current thread.
+   */
+  protected SipCounters getSipCounters() {
+    return sipCounters.get();
+  }
+
+  /**
+   * Clears the progress of the SIP built by the current thread.
+   */
+  protected void clearSipProgress() {
+    sipsProgress.remove(Thread.currentThread().getId());
+    sipsPackagingSize.remove(Thread.currentThread().getId());
   }
 
   /**
@@ -192,6 +535,10 @@ public abstract class SimpleSipCreator extends Thread {
   public void cancel() {
     canceled = true;
     interrupt();
+    ExecutorService running = workers;
+    if (running != null) {
+      running.shutdownNow();
+    }
   }
 
   /**
@@ -209,14 +556,20 @@ public abstract class SimpleSipCreator extends Thread {
     return -1;
   }
 
-  public void createReport(Map<Path, Object> sips) {
-    InventoryReportCreator reportCreator = new InventoryReportCreator(outputPath);
-    reportCreator.start(sips);
-  }
-
-  public String createSipName(Sip sip, SIPNameBuilder sipNameBuilder) {
+  public synchronized String createSipName(Sip sip, SIPNameBuilder sipNameBuilder) {
     String name = sipNameBuilder.build(sip);
     return Controller.encodeId(name);
   }
 
+  /**
+   * The number of files of the SIP built by a worker, shown in the current
+   * action. Each worker has its own, since several SIPs are built at the same
+   * time.
+   */
+  protected static final class SipCounters {
+    protected int filesAdded = 0;
+    protected int filesCount = 0;
+    protected int filesOfZip = 0;
+    protected int representationSize = 0;
+  }
 }
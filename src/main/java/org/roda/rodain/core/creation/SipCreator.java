@@ -1,11 +1,9 @@
 package org.roda.rodain.core.creation;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -51,26 +49,6 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(SipCreator.class.getName());
 
-  /**
-   * Number of files in ZIP.
-   */
-  private int countFilesOfZip;
-
-  /**
-   * Number of SIP's added.
-   */
-  private int currentSIPadded = 0;
-
-  /**
-   * Size of current SIP.
-   */
-  private int currentSIPsize = 0;
-
-  /**
-   * Size of representations processing.
-   */
-  private int repProcessingSize;
-
   /**
    * {@link SIPNameBuilder}.
    */
@@ -133,23 +111,11 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
    */
   @Override
   public void run() {
-    final Map<Path, Object> sips = new HashMap<>();
-    for (Sip preview : previews.keySet()) {
-      if (canceled) {
-        break;
-      }
-      final Pair pathSIP = createEarkSip(preview);
-      if (pathSIP != null) {
-        sips.put((Path) pathSIP.getKey(), (SIP) pathSIP.getValue());
-      }
-    }
-    if (createReport) {
-      createReport(sips);
-    }
+    createSips(sipNameBuilder, this::createEarkSip);
     currentAction = I18n.t(Constants.I18N_DONE);
   }
 
-  protected Pair createEarkSip(final Sip descriptionObject) {
+  protected Pair createEarkSip(final Sip descriptionObject, final String sipName) {
     final Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
     try {
       final org.roda.rodain.core.schema.IPContentType userDefinedContentType = descriptionObject instanceof SipPreview
@@ -171,7 +137,7 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
         earkSip.setStatus(IPEnums.IPStatus.NEW);
       }
 
-      currentSipProgress = 0;
+      clearSipProgress();
       currentSipName = descriptionObject.getTitle();
       currentAction = actionCopyingMetadata;
 
@@ -226,12 +192,13 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
           setContentTypeAndContentInformationType(earkSip, rep, sr);
 
           final Set<TreeNode> files = sr.getFiles();
-          currentSIPadded = 0;
-          currentSIPsize = 0;
+          final SipCounters counters = getSipCounters();
+          counters.filesAdded = 0;
+          counters.filesCount = 0;
 
           // count files
           for (TreeNode tn : files) {
-            currentSIPsize += tn.getFullTreePaths().size();
+            counters.filesCount += tn.getFullTreeSize();
           }
 
           // add files to representation
@@ -256,10 +223,10 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
         IPAgentNoteTypeEnum.IDENTIFICATIONCODE));
 
       currentAction = I18n.t(Constants.I18N_SIMPLE_SIP_CREATOR_INIT_ZIP);
-      final Path sipPath = earkSip.build(outputPath, createSipName(descriptionObject, sipNameBuilder),
+      final Path sipPath = earkSip.build(outputPath, sipName,
         sipNameBuilder instanceof SIPNameBuilderSIPS ? IPEnums.SipType.EARK2S : IPEnums.SipType.EARK2);
 
-      createdSipsCount++;
+      createdSipsCount.incrementAndGet();
       return new Pair(sipPath, earkSip);
     } catch (final InterruptedException e) {
       canceled = true;
@@ -293,13 +260,13 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
   protected abstract void addFileToRepresentation(TreeNode tn, List<String> relativePath, IPRepresentation rep);
 
   protected void addDocToSip(final TreeNode tn, final List<String> relativePath, final SIP earkSip) {
-    if (Files.isDirectory(tn.getPath())) {
+    if (tn.isDirectory()) {
       // add this directory to the path list
       final List<String> newRelativePath = new ArrayList<>(relativePath);
       newRelativePath.add(tn.getPath().getFileName().toString());
       // recursive call to all the node's children
-      for (TreeNode node : tn.getChildren().values()) {
-        addDocToSip(node, newRelativePath, earkSip);
+      for (int i = 0; i < tn.getChildCount(); i++) {
+        addDocToSip(tn.getChild(i), newRelativePath, earkSip);
       }
     } else {
       // if it's a file, add it to the SIP
@@ -315,13 +282,13 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
 
   @Override
   public void sipBuildRepresentationProcessingStarted(final int size) {
-    repProcessingSize = size;
+    getSipCounters().representationSize = size;
   }
 
   @Override
   public void sipBuildRepresentationProcessingCurrentStatus(final int i) {
     final String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_REPRESENTATION) + " (%d/%d)";
-    currentAction = String.format(format, i, repProcessingSize);
+    currentAction = String.format(format, i, getSipCounters().representationSize);
   }
 
   @Override
@@ -336,53 +303,53 @@ public abstract class SipCreator extends SimpleSipCreator implements SIPObserver
 
   @Override
   public void sipBuildPackagingStarted(final int current) {
-    countFilesOfZip = current;
+    getSipCounters().filesOfZip = current;
+    sipPackagingStarted(current);
   }
 
   @Override
   public void sipBuildPackagingCurrentStatus(final int current) {
     final String format = I18n.t(Constants.I18N_CREATIONMODALPROCESSING_EARK_PROGRESS);
-    currentAction = String.format(format, current, countFilesOfZip);
-    currentSipProgress = ((float) current) / countFilesOfZip;
-    currentSipProgress /= sipPreviewCount;
+    currentAction = String.format(format, current, getSipCounters().filesOfZip);
+    sipPackagingProgress(current);
   }
 
   @Override
   public void sipBuildPackagingEnded() {
     currentAction = actionFinalizingSip;
-    currentSipProgress = 0;
+    clearSipProgress();
   }
 
   public int getCountFilesOfZip() {
-    return countFilesOfZip;
+    return getSipCounters().filesOfZip;
   }
 
   public void setCountFilesOfZip(final int countFilesOfZip) {
-    this.countFilesOfZip = countFilesOfZip;
+    getSipCounters().filesOfZip = countFilesOfZip;
   }
 
   public int getCurrentSIPadded() {
-    return currentSIPadded;
+    return getSipCounters().filesAdded;
   }
 
   public void setCurrentSIPadded(final int currentSIPadded) {
-    this.currentSIPadded = currentSIPadded;
+    getSipCounters().filesAdded = currentSIPadded;
   }
 
   public int getCurrentSIPsize() {
-    return currentSIPsize;
+    return getSipCounters().filesCount;
   }
 
   public void setCurrentSIPsize(final int currentSIPsize) {
-    this.currentSIPsize = currentSIPsize;
+    getSipCounters().filesCount = currentSIPsize;
   }
 
   public int getRepProcessingSize() {
-    return repProcessingSize;
+    return getSipCounters().representationSize;
   }
 
   public void setRepProcessingSize(final int repProcessingSize) {
-    this.repProcessingSize = repProcessingSize;
+    getSipCounters().representationSize = repProcessingSize;
   }
 
   public SIPNameBuilder getSipNameBuilder() {
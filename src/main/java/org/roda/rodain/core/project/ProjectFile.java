@@ -0,0 +1,610 @@
+package org.roda.rodain.core.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.roda.rodain.core.Constants.MetadataOption;
+import org.roda.rodain.core.Constants.RuleType;
+import org.roda.rodain.core.Pair;
+import org.roda.rodain.core.PathCollection;
+import org.roda.rodain.core.rules.TreeNode;
+import org.roda.rodain.core.schema.DescriptiveMetadata;
+import org.roda.rodain.core.schema.IPContentType;
+import org.roda.rodain.core.schema.RepresentationContentType;
+import org.roda.rodain.core.schema.Sip;
+import org.roda.rodain.core.sip.SipPreview;
+import org.roda.rodain.core.sip.SipRepresentation;
+import org.roda.rodain.core.template.TemplateFieldValue;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Saves and loads projects: the classification scheme tree, the rules, the
+ * SIPs and the state of the paths.
+ * <p/>
+ * <p>
+ * The file is binary and versioned. After the header, it has the states of
+ * the paths and then the tree of nodes, each one followed by its rules and
+ * its children. The files of each SIP (its representations and documentation)
+ * are kept in a separate deflated chunk, prefixed by its length, so loading a
+ * project skips them and only remembers where they are. They're read with a
+ * positional read the first time the SIP's content is needed, e.g. when it's
+ * inspected or exported.
+ * </p>
+ * <p>
+ * When a project is saved again, the chunks of the SIPs whose content wasn't
+ * loaded are copied as they are from the previous file (unless it has an older
+ * version, in which case they're read and written again).
+ * </p>
+ * <p>
+ * The type and size of each file of a SIP are saved with it, when they were
+ * already read, so the file system isn't read again for them. Like during the
+ * session where the SIP was created, the size of a file changed afterwards is
+ * the one it had when it was read.
+ * </p>
+ */
+public final class ProjectFile {
+  public static final String EXTENSION = ".rodain";
+  public static final int VERSION = 2;
+
+  private static final byte[] MAGIC = "RODAINPJ".getBytes(StandardCharsets.US_ASCII);
+  private static final byte NODE_DESCRIPTION_OBJECT = 0;
+  private static final byte NODE_SIP = 1;
+  private static final byte VALUE_STRING = 0;
+  private static final byte VALUE_PAIR = 1;
+  private static final byte FILE_UNKNOWN = 0;
+  private static final byte FILE_REGULAR = 1;
+  private static final byte FILE_DIRECTORY = 2;
+  // the first version with the type and size of the files of the SIPs
+  private static final int VERSION_FILE_ATTRIBUTES = 2;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  // only one project is saved at a time
+  private static final Object SAVE_LOCK = new Object();
+  // guards the location of the chunks, so a chunk isn't read while its file is
+  // replaced
+  private static final Object CHUNK_LOCK = new Object();
+
+  private ProjectFile() {
+  }
+
+  /**
+   * Saves a project, replacing the file if it exists.
+   *
+   * @param root
+   *          The hidden root node of the classification scheme tree
+   * @param file
+   *          The project file
+   * @throws IOException
+   *           If the project can't be written
+   */
+  public static void save(ProjectNode root, Path file) throws IOException {
+    Path absolute = file.toAbsolutePath();
+    synchronized (SAVE_LOCK) {
+      Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+      Map<ChunkLoader, Long> copied = new HashMap<>();
+      try {
+        try (CountingOutputStream counting = new CountingOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp)));
+          DataOutputStream out = new DataOutputStream(counting)) {
+          out.write(MAGIC);
+          out.writeInt(VERSION);
+
+          ByteArrayOutputStream paths = new ByteArrayOutputStream();
+          try (DataOutputStream pathsOut = new DataOutputStream(
+            new DeflaterOutputStream(paths, new Deflater(Deflater.BEST_SPEED)))) {
+            PathCollection.writeStates(pathsOut);
+          }
+          writeChunk(out, paths.toByteArray());
+
+          writeNode(out, counting, root, copied);
+        }
+        synchronized (CHUNK_LOCK) {
+          try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+          } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+          }
+          // the copied chunks are now read from the new file
+          copied.forEach((loader, offset) -> loader.moveTo(absolute, offset));
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+
+  /**
+   * Loads a project. The states of the paths are merged into the
+   * {@link PathCollection}, and the content of the SIPs is only read when it's
+   * needed.
+   *
+   * @param file
+   *          The project file
+   * @return The hidden root node of the classification scheme tree
+   * @throws IOException
+   *           If the file isn't a project or can't be read
+   */
+  public static ProjectNode load(Path file) throws IOException {
+    Path absolute = file.toAbsolutePath();
+    try (CountingInputStream counting = new CountingInputStream(
+      new BufferedInputStream(Files.newInputStream(absolute)));
+      DataInputStream in = new DataInputStream(counting)) {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a project file: " + absolute);
+      }
+      int version = in.readInt();
+      if (version > VERSION) {
+        throw new IOException("Unsupported project file version " + version + ": " + absolute);
+      }
+
+      byte[] paths = readChunk(in);
+      try (DataInputStream pathsIn = new DataInputStream(
+        new InflaterInputStream(new ByteArrayInputStream(paths)))) {
+        PathCollection.readStates(pathsIn);
+      }
+
+      return readNode(in, counting, absolute, version);
+    } catch (EOFException e) {
+      throw new IOException("Truncated project file: " + absolute, e);
+    }
+  }
+
+  private static void writeNode(DataOutputStream out, CountingOutputStream counting, ProjectNode node,
+    Map<ChunkLoader, Long> copied) throws IOException {
+    out.writeByte(node.isSip() ? NODE_SIP : NODE_DESCRIPTION_OBJECT);
+    writeString(out, node.getRuleKey());
+    writeSip(out, node.getDob());
+
+    if (node.isSip()) {
+      SipPreview sip = (SipPreview) node.getDob();
+      out.writeBoolean(sip.isContentModified());
+      SipPreview.ContentLoader contentLoader = sip.getContentLoader();
+      if (contentLoader instanceof ChunkLoader && ((ChunkLoader) contentLoader).version == VERSION) {
+        // not loaded, copy the chunk as it is
+        ChunkLoader chunkLoader = (ChunkLoader) contentLoader;
+        byte[] chunk = chunkLoader.read();
+        out.writeInt(chunk.length);
+        copied.put(chunkLoader, counting.getByteCount());
+        out.write(chunk);
+      } else {
+        writeChunk(out, encodeContent(sip));
+      }
+    }
+
+    out.writeInt(node.getRules().size());
+    for (ProjectRule rule : node.getRules()) {
+      writeRule(out, rule);
+    }
+    out.writeInt(node.getChildren().size());
+    for (ProjectNode child : node.getChildren()) {
+      writeNode(out, counting, child, copied);
+    }
+  }
+
+  private static ProjectNode readNode(DataInputStream in, CountingInputStream counting, Path file, int version)
+    throws IOException {
+    byte type = in.readByte();
+    String ruleKey = readString(in);
+    Sip dob;
+    if (type == NODE_SIP) {
+      // the content is read later, from the chunk after the SIP's fields
+      ChunkLoader loader = new ChunkLoader(file, version);
+      SipPreview sip = new SipPreview(loader);
+      readSip(in, sip);
+      sip.setContentModified(in.readBoolean());
+      int length = in.readInt();
+      loader.moveTo(file, counting.getByteCount());
+      loader.length = length;
+      IOUtils.skipFully(in, length);
+      dob = sip;
+    } else {
+      dob = new Sip();
+      readSip(in, dob);
+    }
+    ProjectNode node = new ProjectNode(dob, ruleKey);
+
+    int rules = in.readInt();
+    for (int i = 0; i < rules; i++) {
+      node.getRules().add(readRule(in));
+    }
+    int children = in.readInt();
+    for (int i = 0; i < children; i++) {
+      node.getChildren().add(readNode(in, counting, file, version));
+    }
+    return node;
+  }
+
+  private static void writeSip(DataOutput out, Sip sip) throws IOException {
+    writeString(out, sip.getId());
+    writeString(out, sip.getTitle());
+    writeString(out, sip.getParentId());
+    writeString(out, sip.getDescriptionlevel());
+    out.writeBoolean(sip.isUpdateSIP());
+    IPContentType contentType = sip.getContentType();
+    out.writeBoolean(contentType != null);
+    if (contentType != null) {
+      writeString(out, contentType.getPackageType());
+      writeString(out, contentType.getValue());
+      writeString(out, contentType.getOtherValue());
+    }
+    writeProperties(out, sip.getAdditionalProperties());
+
+    List<DescriptiveMetadata> metadata = sip.getMetadata();
+    out.writeInt(metadata.size());
+    for (DescriptiveMetadata dm : metadata) {
+      writeMetadata(out, dm);
+    }
+  }
+
+  private static void readSip(DataInput in, Sip sip) throws IOException {
+    sip.setId(readString(in));
+    sip.setTitle(readString(in));
+    sip.setParentId(readString(in));
+    sip.setDescriptionlevel(readString(in));
+    sip.setUpdateSIP(in.readBoolean());
+    if (in.readBoolean()) {
+      IPContentType contentType = new IPContentType(readString(in), readString(in));
+      contentType.setOtherValue(readString(in));
+      sip.setContentType(contentType);
+    }
+    readProperties(in).forEach(sip::setAdditionalProperty);
+
+    int count = in.readInt();
+    List<DescriptiveMetadata> metadata = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      metadata.add(readMetadata(in));
+    }
+    sip.setMetadata(metadata);
+  }
+
+  /*
+   * The content is only written when it was loaded, otherwise it's read again
+   * from the template or the file. Of the values of the form, only the ones
+   * filled in are written, the rest of the fields are created from the
+   * template when the metadata is read.
+   */
+  private static void writeMetadata(DataOutput out, DescriptiveMetadata dm) throws IOException {
+    writeString(out, dm.getId());
+    out.writeBoolean(dm.isLoaded());
+    writeString(out, dm.getContent());
+    writeString(out, dm.getContentEncoding());
+    writeString(out, dm.getMetadataType());
+    writeString(out, dm.getMetadataVersion());
+    writeString(out, dm.getTemplateType());
+    writeString(out, dm.getCreatorOption() != null ? dm.getCreatorOption().name() : null);
+    writeString(out, dm.getPath() != null ? dm.getPath().toString() : null);
+    List<String> relatedTags = dm.getRelatedTags();
+    out.writeInt(relatedTags != null ? relatedTags.size() : -1);
+    if (relatedTags != null) {
+      for (String tag : relatedTags) {
+        writeString(out, tag);
+      }
+    }
+    writeProperties(out, dm.getAdditionalProperties());
+
+    List<TemplateFieldValue> values = new ArrayList<>();
+    if (dm.hasValues()) {
+      for (TemplateFieldValue value : dm.getValues()) {
+        Object v = value.get("value");
+        if (v instanceof String || v instanceof Pair) {
+          values.add(value);
+        }
+      }
+    }
+    out.writeInt(dm.hasValues() ? values.size() : -1);
+    for (TemplateFieldValue value : values) {
+      writeString(out, value.getId());
+      Object v = value.get("value");
+      if (v instanceof Pair) {
+        Pair pair = (Pair) v;
+        out.writeByte(VALUE_PAIR);
+        writeString(out, pair.getKey() != null ? pair.getKey().toString() : null);
+        writeString(out, pair.getValue() != null ? pair.getValue().toString() : null);
+      } else {
+        out.writeByte(VALUE_STRING);
+        writeString(out, (String) v);
+      }
+    }
+  }
+
+  private static DescriptiveMetadata readMetadata(DataInput in) throws IOException {
+    DescriptiveMetadata dm = new DescriptiveMetadata();
+    dm.setId(readString(in));
+    boolean loaded = in.readBoolean();
+    dm.setContent(readString(in));
+    dm.setContentEncoding(readString(in));
+    dm.setMetadataType(readString(in));
+    dm.setMetadataVersion(readString(in));
+    dm.setTemplateType(readString(in));
+    String creatorOption = readString(in);
+    dm.setCreatorOption(creatorOption != null ? MetadataOption.valueOf(creatorOption) : null);
+    String path = readString(in);
+    dm.setPath(path != null ? Paths.get(path) : null);
+    int tags = in.readInt();
+    if (tags >= 0) {
+      List<String> relatedTags = new ArrayList<>(tags);
+      for (int i = 0; i < tags; i++) {
+        relatedTags.add(readString(in));
+      }
+      dm.setRelatedTags(relatedTags);
+    }
+    readProperties(in).forEach(dm::setAdditionalProperty);
+    dm.setLoaded(loaded);
+
+    int count = in.readInt();
+    if (count >= 0) {
+      Map<String, Object> filled = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        String id = readString(in);
+        if (in.readByte() == VALUE_PAIR) {
+          filled.put(id, new Pair<>(readString(in), readString(in)));
+        } else {
+          filled.put(id, readString(in));
+        }
+      }
+      // creates the fields from the template
+      for (TemplateFieldValue value : dm.getValues()) {
+        if (filled.containsKey(value.getId())) {
+          value.set("value", filled.get(value.getId()));
+        }
+      }
+    }
+    return dm;
+  }
+
+  private static void writeRule(DataOutput out, ProjectRule rule) throws IOException {
+    writeString(out, rule.getKey());
+    writeString(out, rule.getAssocType() != null ? rule.getAssocType().name() : null);
+    writeString(out, rule.getMetadataOption() != null ? rule.getMetadataOption().name() : null);
+    writeString(out, rule.getMetadataPath());
+    writeString(out, rule.getTemplateType());
+    writeString(out, rule.getMetadataType());
+    writeString(out, rule.getMetadataVersion());
+    writeString(out, rule.getParentId());
+    out.writeInt(rule.getSourcePaths().size());
+    for (Map.Entry<String, Boolean> entry : rule.getSourcePaths().entrySet()) {
+      writeString(out, entry.getKey());
+      out.writeBoolean(entry.getValue());
+    }
+  }
+
+  private static ProjectRule readRule(DataInput in) throws IOException {
+    ProjectRule rule = new ProjectRule();
+    rule.setKey(readString(in));
+    String assocType = readString(in);
+    rule.setAssocType(assocType != null ? RuleType.valueOf(assocType) : null);
+    String metadataOption = readString(in);
+    rule.setMetadataOption(metadataOption != null ? MetadataOption.valueOf(metadataOption) : null);
+    rule.setMetadataPath(readString(in));
+    rule.setTemplateType(readString(in));
+    rule.setMetadataType(readString(in));
+    rule.setMetadataVersion(readString(in));
+    rule.setParentId(readString(in));
+    int sources = in.readInt();
+    Map<String, Boolean> sourcePaths = new LinkedHashMap<>();
+    for (int i = 0; i < sources; i++) {
+      sourcePaths.put(readString(in), in.readBoolean());
+    }
+    rule.setSourcePaths(sourcePaths);
+    return rule;
+  }
+
+  private static byte[] encodeContent(SipPreview sip) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(
+      new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)))) {
+      Set<SipRepresentation> representations = sip.getRepresentations();
+      out.writeInt(representations.size());
+      for (SipRepresentation sr : representations) {
+        writeString(out, sr.getName());
+        RepresentationContentType type = sr.getType();
+        out.writeBoolean(type != null);
+        if (type != null) {
+          writeString(out, type.getPackageType());
+          writeString(out, type.getValue());
+          writeString(out, type.getOtherValue());
+        }
+        writeTreeNodes(out, sr.getFiles(), null);
+      }
+      writeTreeNodes(out, sip.getDocumentation(), null);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void decodeContent(SipPreview sip, byte[] chunk, int version) throws IOException {
+    try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(chunk)))) {
+      int representations = in.readInt();
+      for (int i = 0; i < representations; i++) {
+        SipRepresentation sr = new SipRepresentation(readString(in));
+        if (in.readBoolean()) {
+          RepresentationContentType type = new RepresentationContentType(readString(in), readString(in));
+          type.setOtherValue(readString(in));
+          sr.setType(type);
+        }
+        Set<TreeNode> files = readTreeNodes(in, null, version);
+        for (TreeNode tn : files) {
+          tn.addObserver(sip);
+        }
+        sr.setFiles(files);
+        sip.addRepresentation(sr);
+      }
+      sip.getDocumentation().addAll(readTreeNodes(in, null, version));
+    }
+  }
+
+  /*
+   * The top level nodes have the full path, their descendants the path
+   * relative to their parent. Each one is followed by the type and size of the
+   * file, when they're known, so they aren't read again when the project is
+   * loaded.
+   */
+  private static void writeTreeNodes(DataOutput out, Collection<TreeNode> nodes, Path parent) throws IOException {
+    out.writeInt(nodes.size());
+    for (TreeNode tn : nodes) {
+      Path path = tn.getPath();
+      if (parent != null && path.startsWith(parent)) {
+        writeString(out, parent.relativize(path).toString());
+      } else {
+        writeString(out, path.toString());
+      }
+      if (!tn.isTypeKnown()) {
+        out.writeByte(FILE_UNKNOWN);
+      } else {
+        out.writeByte(tn.isDirectory() ? FILE_DIRECTORY : FILE_REGULAR);
+      }
+      out.writeLong(tn.getKnownSize());
+      writeTreeNodes(out, tn.getChildren(), path);
+    }
+  }
+
+  private static Set<TreeNode> readTreeNodes(DataInput in, Path parent, int version) throws IOException {
+    int count = in.readInt();
+    Set<TreeNode> result = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      String name = readString(in);
+      Path path = parent != null ? parent.resolve(name) : Paths.get(name);
+      TreeNode tn;
+      byte type = version >= VERSION_FILE_ATTRIBUTES ? in.readByte() : FILE_UNKNOWN;
+      long size = version >= VERSION_FILE_ATTRIBUTES ? in.readLong() : -1;
+      if (type == FILE_UNKNOWN) {
+        tn = new TreeNode(path);
+      } else {
+        tn = new TreeNode(path, type == FILE_DIRECTORY, size);
+      }
+      for (TreeNode child : readTreeNodes(in, path, version)) {
+        tn.add(child);
+      }
+      result.add(tn);
+    }
+    return result;
+  }
+
+  private static void writeProperties(DataOutput out, Map<String, Object> properties) throws IOException {
+    if (properties == null || properties.isEmpty()) {
+      writeString(out, null);
+    } else {
+      writeString(out, MAPPER.writeValueAsString(properties));
+    }
+  }
+
+  private static Map<String, Object> readProperties(DataInput in) throws IOException {
+    String json = readString(in);
+    if (json == null) {
+      return new HashMap<>();
+    }
+    return MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {
+    });
+  }
+
+  private static void writeChunk(DataOutput out, byte[] chunk) throws IOException {
+    out.writeInt(chunk.length);
+    out.write(chunk);
+  }
+
+  private static byte[] readChunk(DataInput in) throws IOException {
+    byte[] chunk = new byte[in.readInt()];
+    in.readFully(chunk);
+    return chunk;
+  }
+
+  /*
+   * Unlike writeUTF, not limited to 64KB, which the content of the metadata
+   * can exceed.
+   */
+  private static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the content of a SIP from its chunk in a project file.
+   */
+  private static final class ChunkLoader implements SipPreview.ContentLoader {
+    // the version of the file the chunk was read from
+    private final int version;
+    private Path file;
+    private long offset;
+    private int length;
+
+    ChunkLoader(Path file, int version) {
+      this.file = file;
+      this.version = version;
+    }
+
+    void moveTo(Path file, long offset) {
+      synchronized (CHUNK_LOCK) {
+        this.file = file;
+        this.offset = offset;
+      }
+    }
+
+    byte[] read() throws IOException {
+      synchronized (CHUNK_LOCK) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+              throw new EOFException("Truncated project file: " + file);
+            }
+          }
+        }
+        return buffer.array();
+      }
+    }
+
+    @Override
+    public void load(SipPreview sipPreview) throws IOException {
+      decodeContent(sipPreview, read(), version);
+    }
+  }
+}
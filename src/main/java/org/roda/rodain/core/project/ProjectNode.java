@@ -0,0 +1,62 @@
+package org.roda.rodain.core.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.roda.rodain.core.schema.Sip;
+import org.roda.rodain.core.sip.SipPreview;
+
+/**
+ * A node of the classification scheme tree of a saved project: a description
+ * object or a SIP, the rules applied to it and its children.
+ */
+public class ProjectNode {
+  private final Sip dob;
+  private final String ruleKey;
+  private final List<ProjectRule> rules = new ArrayList<>();
+  private final List<ProjectNode> children = new ArrayList<>();
+
+  /**
+   * Creates a new ProjectNode object.
+   *
+   * @param dob
+   *          The description object, or the SipPreview of a SIP
+   * @param ruleKey
+   *          The key of the rule that created the node in its parent, or null
+   *          if it's a node of the classification scheme
+   */
+  public ProjectNode(Sip dob, String ruleKey) {
+    this.dob = dob;
+    this.ruleKey = ruleKey;
+  }
+
+  public Sip getDob() {
+    return dob;
+  }
+
+  /**
+   * @return True if the node is a SIP
+   */
+  public boolean isSip() {
+    return dob instanceof SipPreview;
+  }
+
+  /**
+   * @return The key of the rule that created the node in its parent, or null
+   *         if it's a node of the classification scheme
+   */
+  public String getRuleKey() {
+    return ruleKey;
+  }
+
+  /**
+   * @return The rules applied to the node
+   */
+  public List<ProjectRule> getRules() {
+    return rules;
+  }
+
+  public List<ProjectNode> getChildren() {
+    return children;
+  }
+}
@@ -0,0 +1,102 @@
+package org.roda.rodain.core.project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.roda.rodain.core.Constants.MetadataOption;
+import org.roda.rodain.core.Constants.RuleType;
+
+/**
+ * An association rule of a saved project. Its SIPs and nodes are the children
+ * of the {@link ProjectNode} where it was applied with the same rule key.
+ */
+public class ProjectRule {
+  private String key;
+  private RuleType assocType;
+  private MetadataOption metadataOption;
+  private String metadataPath;
+  private String templateType;
+  private String metadataType;
+  private String metadataVersion;
+  private String parentId;
+  // map of source path -> true if it's a directory
+  private Map<String, Boolean> sourcePaths = new LinkedHashMap<>();
+
+  /**
+   * @return The key of the rule in the node where it was applied
+   */
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(String key) {
+    this.key = key;
+  }
+
+  public RuleType getAssocType() {
+    return assocType;
+  }
+
+  public void setAssocType(RuleType assocType) {
+    this.assocType = assocType;
+  }
+
+  public MetadataOption getMetadataOption() {
+    return metadataOption;
+  }
+
+  public void setMetadataOption(MetadataOption metadataOption) {
+    this.metadataOption = metadataOption;
+  }
+
+  public String getMetadataPath() {
+    return metadataPath;
+  }
+
+  public void setMetadataPath(String metadataPath) {
+    this.metadataPath = metadataPath;
+  }
+
+  public String getTemplateType() {
+    return templateType;
+  }
+
+  public void setTemplateType(String templateType) {
+    this.templateType = templateType;
+  }
+
+  public String getMetadataType() {
+    return metadataType;
+  }
+
+  public void setMetadataType(String metadataType) {
+    this.metadataType = metadataType;
+  }
+
+  public String getMetadataVersion() {
+    return metadataVersion;
+  }
+
+  public void setMetadataVersion(String metadataVersion) {
+    this.metadataVersion = metadataVersion;
+  }
+
+  public String getParentId() {
+    return parentId;
+  }
+
+  public void setParentId(String parentId) {
+    this.parentId = parentId;
+  }
+
+  /**
+   * @return The paths used as source, mapped to true if they're directories
+   */
+  public Map<String, Boolean> getSourcePaths() {
+    return sourcePaths;
+  }
+
+  public void setSourcePaths(Map<String, Boolean> sourcePaths) {
+    this.sourcePaths = sourcePaths;
+  }
+}
@@ -1,19 +1,37 @@
 package org.roda.rodain.core.report;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.IOUtils;
+import org.roda.rodain.core.ConfigurationManager;
 import org.roda.rodain.core.Constants;
 import org.roda_project.commons_ip.model.SIP;
 import org.roda_project.commons_ip.utils.METSZipEntryInfo;
@@ -21,14 +39,35 @@ import org.roda_project.commons_ip.utils.ZipEntryInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import gov.loc.repository.bagit.domain.Bag;
-import gov.loc.repository.bagit.domain.Manifest;
-import gov.loc.repository.bagit.exceptions.InvalidBagitFileFormatException;
-import gov.loc.repository.bagit.exceptions.MaliciousPathException;
-import gov.loc.repository.bagit.exceptions.UnparsableVersionException;
-import gov.loc.repository.bagit.exceptions.UnsupportedAlgorithmException;
-import gov.loc.repository.bagit.reader.BagReader;
-
+/**
+ * Creates the inventory report of the exported SIPs, a CSV file with the
+ * files of each SIP, their checksums and sizes.
+ * <p/>
+ * <p>
+ * The report is written incrementally: the lines of each SIP are added as
+ * soon as it's built, so the SIP objects don't have to be kept until the end
+ * of the exportation, and they are flushed to disk periodically. Until it's
+ * closed, the report is written to a partial file in the output folder,
+ * next to a file with the identity of the exportation. If the exportation is
+ * interrupted, the next exportation of the same SIPs to the same folder (after
+ * a restart, only if the project was saved and opened again, since the names
+ * of the SIP files depend on their IDs) resumes that report, keeping the lines of the SIPs listed in it, except the
+ * last one, which may be incomplete, and not adding those SIPs again. The
+ * partial report of any other exportation is discarded.
+ * </p>
+ * <p>
+ * The checksums and sizes are the ones known by the build: the checksums of
+ * the zip entries and the sizes of the files of the SIP, so the files aren't
+ * read again.
+ * </p>
+ * <p>
+ * The report can also be written compressed. The lines of each SIP are then
+ * a separate gzip member, so the file is still a regular gzip file, and an
+ * index file next to it has the SIP ID, offset, compressed length and number
+ * of lines of each member. The lines of a single SIP can be read by seeking to
+ * its offset and decompressing only its member.
+ * </p>
+ */
 public class InventoryReportCreator {
   private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportCreator.class.getName());
 
@@ -39,71 +78,370 @@ public class InventoryReportCreator {
   private static final String CSV_FIELD_FILE_RELATIVE_ZIP_PATH = "zip relative path";
   private static final String CSV_FIELD_SIP_ID = "SIP ID";
 
+  private static final String INDEX_FIELD_OFFSET = "offset";
+  private static final String INDEX_FIELD_LENGTH = "length";
+  private static final String INDEX_FIELD_LINES = "lines";
+
+  private static final String REPORT_NAME = "inventory_report";
+  private static final String CSV_EXTENSION = ".csv";
+  private static final String GZIP_EXTENSION = ".gz";
+  private static final String INDEX_EXTENSION = ".idx";
+  private static final String PARTIAL_EXTENSION = ".partial";
+  private static final String EXPORT_EXTENSION = ".export";
+  private static final long FLUSH_INTERVAL = 5000; // in milliseconds
+  private static final int FLUSH_SIZE = 256 * 1024; // in bytes
+
+  private final CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator(System.lineSeparator());
   private Path outputPath;
+  private final String exportId;
+  private final boolean compress;
+  private String extension;
+  private Path partialReport;
+  private Path partialIndex;
+  private Path partialExport;
+  private OutputStream reportStream;
+  private Writer indexWriter;
+  // content not yet written to the files
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final StringBuilder pendingIndex = new StringBuilder();
+  private long reportSize;
+  private long lastFlush;
+  // the SIPs of the resumed report not built again yet; the SIPs of this
+  // exportation are unique, so they aren't kept
+  private final Set<String> resumedSips = new HashSet<>();
+
+  public InventoryReportCreator(Path outputPath, String exportId) {
+    this(outputPath, exportId,
+      ConfigurationManager.getConfigAsBoolean(Constants.CONF_K_INVENTORY_REPORT_COMPRESS, false));
+  }
 
-  public InventoryReportCreator(Path outputPath) {
+  /**
+   * @param outputPath
+   *          The folder where the report is created
+   * @param exportId
+   *          The identity of the exportation, only a partial report with the
+   *          same identity is resumed
+   * @param compress
+   *          True to write the compressed report with its index
+   */
+  public InventoryReportCreator(Path outputPath, String exportId, boolean compress) {
     this.outputPath = outputPath;
+    this.exportId = exportId;
+    this.compress = compress;
+  }
+
+  /**
+   * Opens the report, resuming the partial report left in the output folder
+   * by an interrupted run of the same exportation, if there's one.
+   *
+   * @throws IOException
+   *           If the report can't be created
+   */
+  public synchronized void open() throws IOException {
+    extension = compress ? CSV_EXTENSION + GZIP_EXTENSION : CSV_EXTENSION;
+    partialReport = outputPath.resolve(REPORT_NAME + extension + PARTIAL_EXTENSION);
+    partialIndex = outputPath.resolve(REPORT_NAME + extension + INDEX_EXTENSION + PARTIAL_EXTENSION);
+    partialExport = outputPath.resolve(REPORT_NAME + extension + EXPORT_EXTENSION + PARTIAL_EXTENSION);
+
+    boolean resume = Files.exists(partialReport) && isSameExport()
+      && (compress ? resumeCompressed() : resume());
+    if (!resume) {
+      Files.deleteIfExists(partialReport);
+      Files.deleteIfExists(partialIndex);
+      resumedSips.clear();
+      reportSize = 0;
+      Files.write(partialExport, exportId.getBytes(StandardCharsets.UTF_8));
+    }
+    reportStream = Files.newOutputStream(partialReport, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    if (compress) {
+      indexWriter = new OutputStreamWriter(
+        Files.newOutputStream(partialIndex, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+        StandardCharsets.UTF_8);
+    }
+    if (!resume) {
+      // the header is the first member of the compressed report, outside the
+      // index
+      pending.write(encode(Collections.singletonList(Arrays.asList(CSV_FIELD_SIP_ID,
+        CSV_FIELD_FILE_RELATIVE_ZIP_PATH, CSV_FIELD_FILE_ABSOLUTE_PATH, CSV_FIELD_FILE_CHECKSUM_TYPE,
+        CSV_FIELD_FILE_CHECKSUM, CSV_FIELD_FILE_SIZE))));
+      if (compress) {
+        try (CSVPrinter indexPrinter = new CSVPrinter(pendingIndex, csvFileFormat)) {
+          indexPrinter.printRecord(CSV_FIELD_SIP_ID, INDEX_FIELD_OFFSET, INDEX_FIELD_LENGTH, INDEX_FIELD_LINES);
+        }
+      }
+      flush();
+    }
+    lastFlush = System.currentTimeMillis();
   }
 
-  public void start(Map<Path, Object> sips) {
-    CSVPrinter csvFilePrinter = null;
-    CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator(System.lineSeparator());
-    BufferedWriter fileWriter = null;
+  /*
+   * Whether the partial report was left by the same exportation.
+   */
+  private boolean isSameExport() {
+    try {
+      if (Files.exists(partialExport)
+        && exportId.equals(new String(Files.readAllBytes(partialExport), StandardCharsets.UTF_8))) {
+        return true;
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read the exportation of the partial inventory report", e);
+    }
+    LOGGER.info("The partial inventory report is from another exportation, or from SIPs created again since then"
+      + " instead of loaded from a saved project, starting it again");
+    return false;
+  }
 
+  /*
+   * Reads the SIPs already in the partial report and drops the lines of the
+   * last one, which may have been cut between two of its lines (it's added
+   * again when it's built). Returns false if the report must be started again.
+   */
+  private boolean resume() {
+    String lastSip = null;
+    long lastSipStart = -1;
     try {
-      StringBuffer name = new StringBuffer();
-      name.append("inventory_report");
-      name.append(" - ");
-      name.append(new SimpleDateFormat(Constants.DATE_FORMAT_1).format(new Date()));
-      name.append(".csv");
-      Path csvTempFile = outputPath.resolve(name.toString());
-
-      fileWriter = Files.newBufferedWriter(csvTempFile);
-      csvFilePrinter = new CSVPrinter(fileWriter, csvFileFormat);
-      List<String> headers = new ArrayList<String>();
-      headers.add(CSV_FIELD_SIP_ID);
-      headers.add(CSV_FIELD_FILE_RELATIVE_ZIP_PATH);
-      headers.add(CSV_FIELD_FILE_ABSOLUTE_PATH);
-      headers.add(CSV_FIELD_FILE_CHECKSUM_TYPE);
-      headers.add(CSV_FIELD_FILE_CHECKSUM);
-      headers.add(CSV_FIELD_FILE_SIZE);
-      csvFilePrinter.printRecord(headers);
-      for (Map.Entry<Path, Object> entry : sips.entrySet()) {
-        Object sipToProcess = entry.getValue();
-        List<List<String>> lines = null;
-        if (sipToProcess instanceof Bag) {
-          lines = bagToCSVLines(entry.getKey());
-        } else if (sipToProcess instanceof SIP) {
-          SIP sip = (SIP) sipToProcess;
-          lines = generateCsvLines(entry.getKey(), sip.getZipEntries().values());
-        } else if (sipToProcess instanceof org.roda_project.commons_ip2.model.SIP) {
-          org.roda_project.commons_ip2.model.SIP sip = (org.roda_project.commons_ip2.model.SIP) sipToProcess;
-          lines = generateCsvLines(entry.getKey(), sip.getZipEntries().values());
+      if (truncateToLastLine(partialReport) == 0) {
+        return false;
+      }
+      try (Reader reader = Files.newBufferedReader(partialReport, StandardCharsets.UTF_8);
+        CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)) {
+        // the lines of each SIP are written together
+        for (CSVRecord record : parser) {
+          String sipId = record.get(0);
+          if (!sipId.equals(lastSip)) {
+            if (lastSip != null) {
+              resumedSips.add(lastSip);
+            }
+            lastSip = sipId;
+            lastSipStart = record.getCharacterPosition();
+          }
+        }
+      }
+      if (lastSip == null) {
+        return false;
+      }
+      try (FileChannel channel = FileChannel.open(partialReport, StandardOpenOption.WRITE)) {
+        reportSize = toByteOffset(partialReport, lastSipStart);
+        channel.truncate(reportSize);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to resume the inventory report, starting it again", e);
+      return false;
+    }
+    LOGGER.info("Resuming the inventory report with {} SIPs, the lines of {} are written again",
+      resumedSips.size(), lastSip);
+    return true;
+  }
+
+  /*
+   * The offset in bytes of a position in characters of an UTF-8 file.
+   */
+  private static long toByteOffset(Path file, long characters) throws IOException {
+    long offset = 0;
+    long count = 0;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      int b;
+      while (count < characters && (b = in.read()) >= 0) {
+        if ((b & 0xC0) != 0x80) {
+          // the first byte of a character, two chars for the ones outside the
+          // basic plane
+          count += (b & 0xF8) == 0xF0 ? 2 : 1;
+        }
+        offset++;
+      }
+      // the remaining bytes of the last character
+      while (count >= characters && (b = in.read()) >= 0 && (b & 0xC0) == 0x80) {
+        offset++;
+      }
+    }
+    return offset;
+  }
+
+  /*
+   * Drops the members of the partial compressed report after the last one in
+   * the index, since the index is always written after the report.
+   */
+  private boolean resumeCompressed() {
+    long end = -1;
+    try {
+      if (!Files.exists(partialIndex) || truncateToLastLine(partialIndex) == 0) {
+        return false;
+      }
+      try (Reader reader = Files.newBufferedReader(partialIndex, StandardCharsets.UTF_8);
+        CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)) {
+        for (CSVRecord record : parser) {
+          resumedSips.add(record.get(0));
+          end = Math.max(end, Long.parseLong(record.get(1)) + Long.parseLong(record.get(2)));
+        }
+      }
+      try (FileChannel channel = FileChannel.open(partialReport, StandardOpenOption.WRITE)) {
+        if (end < 0) {
+          // only the header was indexed, which ends where the first member
+          // would start; start again
+          return false;
+        }
+        if (channel.size() < end) {
+          LOGGER.warn("The partial inventory report is shorter than its index, starting it again");
+          return false;
+        }
+        channel.truncate(end);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to resume the inventory report, starting it again", e);
+      return false;
+    }
+    reportSize = end;
+    LOGGER.info("Resuming the inventory report with {} SIPs", resumedSips.size());
+    return true;
+  }
+
+  /*
+   * Truncates the file after its last line break, returning its new size.
+   */
+  private static long truncateToLastLine(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long end = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate(1);
+      while (end > 0) {
+        buffer.clear();
+        channel.read(buffer, end - 1);
+        if (buffer.get(0) == '\n') {
+          break;
         }
+        end--;
+      }
+      channel.truncate(end);
+      return end;
+    }
+  }
+
+  /**
+   * Adds the files of a SIP to the report. It can be called by several threads
+   * at the same time.
+   *
+   * @param sipPath
+   *          The path of the SIP
+   * @param sipToProcess
+   *          The object of the SIP
+   * @param fileSizes
+   *          The sizes of the files of the SIP
+   */
+  public void add(Path sipPath, Object sipToProcess, Map<Path, Long> fileSizes) {
+    List<List<String>> lines = null;
+    if (sipToProcess instanceof SIP) {
+      SIP sip = (SIP) sipToProcess;
+      lines = generateCsvLines(sipPath, sip.getZipEntries().values(), fileSizes);
+    } else if (sipToProcess instanceof org.roda_project.commons_ip2.model.SIP) {
+      org.roda_project.commons_ip2.model.SIP sip = (org.roda_project.commons_ip2.model.SIP) sipToProcess;
+      lines = generateCsvLines(sipPath, sip.getZipEntries().values(), fileSizes);
+    }
+    if (lines == null) {
+      return;
+    }
 
-        if (lines != null) {
-          csvFilePrinter.printRecords(lines);
+    String sipId = sipPath.getFileName().toString();
+    try {
+      // the lines of a SIP are always written together
+      byte[] content = encode(lines);
+      synchronized (this) {
+        if (reportStream == null || resumedSips.remove(sipId)) {
+          return;
+        }
+        if (compress) {
+          try (CSVPrinter indexPrinter = new CSVPrinter(pendingIndex, csvFileFormat)) {
+            indexPrinter.printRecord(sipId, reportSize + pending.size(), content.length, lines.size());
+          }
+        }
+        pending.write(content);
+        if (pending.size() >= FLUSH_SIZE || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL) {
+          flush();
         }
       }
-    } catch (IOException | MaliciousPathException | UnparsableVersionException | UnsupportedAlgorithmException
-      | InvalidBagitFileFormatException e) {
+    } catch (IOException e) {
+      LOGGER.error("Error writing inventory report", e);
+    }
+  }
+
+  /*
+   * The CSV of the lines, compressed in a gzip member when the report is
+   * compressed.
+   */
+  private byte[] encode(List<List<String>> lines) throws IOException {
+    StringBuilder csv = new StringBuilder();
+    try (CSVPrinter csvFilePrinter = new CSVPrinter(csv, csvFileFormat)) {
+      csvFilePrinter.printRecords(lines);
+    }
+    byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+    if (!compress) {
+      return bytes;
+    }
+    ByteArrayOutputStream member = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+      gzip.write(bytes);
+    }
+    return member.toByteArray();
+  }
+
+  private void flush() throws IOException {
+    // the index is only written after the content it points to
+    pending.writeTo(reportStream);
+    reportStream.flush();
+    reportSize += pending.size();
+    pending.reset();
+    if (indexWriter != null) {
+      indexWriter.write(pendingIndex.toString());
+      indexWriter.flush();
+      pendingIndex.setLength(0);
+    }
+    lastFlush = System.currentTimeMillis();
+  }
+
+  /**
+   * Writes the remaining lines and gives the report its final name.
+   */
+  public synchronized void close() {
+    if (reportStream == null) {
+      return;
+    }
+    try {
+      flush();
+      reportStream.close();
+      if (indexWriter != null) {
+        indexWriter.close();
+      }
+
+      StringBuffer name = new StringBuffer();
+      name.append(REPORT_NAME);
+      name.append(" - ");
+      name.append(new SimpleDateFormat(Constants.DATE_FORMAT_1).format(new Date()));
+      name.append(extension);
+      Files.move(partialReport, outputPath.resolve(name.toString()));
+      if (indexWriter != null) {
+        Files.move(partialIndex, outputPath.resolve(name + INDEX_EXTENSION));
+      }
+      Files.deleteIfExists(partialExport);
+    } catch (IOException e) {
       LOGGER.error("Error creating inventory report", e);
     } finally {
-      IOUtils.closeQuietly(fileWriter);
-      IOUtils.closeQuietly(csvFilePrinter);
+      IOUtils.closeQuietly(reportStream);
+      IOUtils.closeQuietly(indexWriter);
+      reportStream = null;
+      indexWriter = null;
     }
   }
 
-  private List<List<String>> generateCsvLines(Path path, Collection<ZipEntryInfo> values) {
+  private List<List<String>> generateCsvLines(Path path, Collection<ZipEntryInfo> values,
+    Map<Path, Long> fileSizes) {
     List<List<String>> lines = new ArrayList<List<String>>();
     for (ZipEntryInfo entry : values) {
       if (!(entry instanceof METSZipEntryInfo)) {
         try {
           List<String> line = new ArrayList<String>();
-          // FIXME 20170310 hsilva: the following will fail for temp. files that
-          // were most certainly deleted before getting to this point of sip
-          // generation
-          Long size = Files.size(entry.getFilePath());
+          Long size = fileSizes.get(entry.getFilePath());
+          if (size == null) {
+            // not a file of the SIP, e.g. a metadata file
+            size = Files.size(entry.getFilePath());
+          }
           line.add(path.getFileName().toString());
           line.add(entry.getName());
           line.add(entry.getFilePath().toString());
@@ -118,40 +456,4 @@ public class InventoryReportCreator {
     }
     return lines;
   }
-
-  private List<List<String>> bagToCSVLines(Path path) throws MaliciousPathException, UnparsableVersionException,
-    UnsupportedAlgorithmException, InvalidBagitFileFormatException, IOException {
-
-    BagReader bagReader = new BagReader();
-    Bag bag = bagReader.read(path);
-
-    List<List<String>> lines = new ArrayList<List<String>>();
-    for (Manifest manifest : bag.getTagManifests()) {
-      for (Map.Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()) {
-        List<String> line = new ArrayList<>();
-        long size = Files.size(entry.getKey());
-        line.add(path.getFileName().toString());
-        line.add(entry.getKey().toString());
-        line.add("");
-        line.add(manifest.getAlgorithm().getBagitName());
-        line.add(entry.getValue());
-        line.add(Long.toString(size));
-        lines.add(line);
-      }
-    }
-    for (Manifest manifest : bag.getPayLoadManifests()) {
-      for (Map.Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()) {
-        List<String> line = new ArrayList<>();
-        long size = Files.size(entry.getKey());
-        line.add(path.getFileName().toString());
-        line.add(entry.getKey().toString());
-        line.add("");
-        line.add(manifest.getAlgorithm().getBagitName());
-        line.add(entry.getValue());
-        line.add(Long.toString(size));
-        lines.add(line);
-      }
-    }
-    return lines;
-  }
 }
@@ -1,15 +1,20 @@
 package org.roda.rodain.core.rules;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Observable;
+import java.util.List;
 import java.util.Observer;
 import java.util.Set;
 
+import org.roda.rodain.core.source.FileSystemSnapshot;
+
 /**
  * @author Andre Pereira apereira@keep.pt
  * @since 05-10-2015.
@@ -18,10 +23,45 @@ import java.util.Set;
  *        Used in the Handlers to make a representation of the documents tree in
  *        a SIP
  *        </p>
+ *        <p>
+ *        There's one TreeNode for each file of a SIP, so the nodes are kept
+ *        small: a node below its parent only keeps the interned path relative
+ *        to the parent (folders also keep their full path once it's asked,
+ *        since the paths of their children are resolved against it), the
+ *        children are kept in an array and the observer is only kept in the
+ *        node where it was added.
+ *        </p>
+ *        <p>
+ *        The type and size of the file are kept in the node, so the file system
+ *        is read at most once for each node. When the node is created by a walk
+ *        of the file tree, they're taken from the attributes read by the walk
+ *        (except a size that the walk didn't read, see FileSystemSnapshot).
+ *        </p>
  */
-public class TreeNode extends Observable {
+public class TreeNode {
+  private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+  private static final byte TYPE_UNKNOWN = 0;
+  private static final byte TYPE_FILE = 1;
+  private static final byte TYPE_DIRECTORY = 2;
+  // the nodes whose type or size was asked by each thread while already known,
+  // i.e. the file system reads avoided, taken by whoever is counting them, e.g.
+  // an exportation
+  private static final ThreadLocal<long[]> savedReads = ThreadLocal.withInitial(() -> new long[1]);
+
+  private TreeNode parent;
+  // the full path, kept when the node has no parent or isn't below it, and
+  // by the folders once it's resolved
   private Path path;
-  private Map<String, TreeNode> files;
+  // the path relative to the parent
+  private String name;
+  private TreeNode[] children = NO_CHILDREN;
+  private int childCount = 0;
+  private byte type = TYPE_UNKNOWN;
+  private long size = -1;
+  // true once the node was counted in the file system reads avoided, or read
+  // the file system itself, so each node is counted at most once
+  private boolean readCounted = false;
+  private Observer observer;
 
   /**
    * Creates a new TreeNode object.
@@ -31,69 +71,167 @@ public class TreeNode extends Observable {
    */
   public TreeNode(Path path) {
     this.path = path;
-    files = new HashMap<>();
+  }
+
+  /**
+   * Creates a new TreeNode object, with the type and size of the file read by a
+   * walk of the file tree.
+   *
+   * @param path
+   *          The path to be associated to the TreeNode.
+   * @param attrs
+   *          The attributes of the file, or null if they weren't read, in which
+   *          case they're read when first needed.
+   */
+  public TreeNode(Path path, BasicFileAttributes attrs) {
+    this.path = path;
+    if (attrs != null) {
+      setAttributes(attrs);
+    }
+  }
+
+  /**
+   * Creates a new TreeNode object, with the type and size of the file known
+   * beforehand, e.g. saved in a project.
+   *
+   * @param path
+   *          The path to be associated to the TreeNode.
+   * @param directory
+   *          True if the file is a directory
+   * @param size
+   *          The size of the file, or -1 if it isn't known, in which case it's
+   *          read when first needed.
+   */
+  public TreeNode(Path path, boolean directory, long size) {
+    this.path = path;
+    type = directory ? TYPE_DIRECTORY : TYPE_FILE;
+    this.size = directory ? 0 : size;
   }
 
   /**
    * Flattens the TreeNode, i.e., moves all it's child nodes to one level.
    */
   public void flatten() {
-    Map<String, TreeNode> newFiles = new HashMap<>();
-    for (String file : files.keySet()) {
-      if (Files.isDirectory(Paths.get(file))) {
-        files.get(file).flatten(); // flatten the children
-        newFiles.putAll(files.get(file).getOnlyFiles()); // add its files to the
-        // new Map
-      } else
-        newFiles.put(file, files.get(file));
+    Path nodePath = getPath();
+    List<TreeNode> files = new ArrayList<>();
+    collectFiles(nodePath, files);
+    Arrays.fill(children, 0, childCount, null);
+    childCount = 0;
+    for (TreeNode file : files) {
+      attach(file, nodePath);
     }
-    files = newFiles;
-
     changed();
   }
 
+  /*
+   * Detaches the files of the tree, keeping their full path, so they can be
+   * added to another node.
+   */
+  private void collectFiles(Path nodePath, List<TreeNode> files) {
+    for (int i = 0; i < childCount; i++) {
+      TreeNode child = children[i];
+      Path childPath = child.getPath(nodePath);
+      if (child.isDirectory(childPath)) {
+        child.collectFiles(childPath, files);
+      } else {
+        child.detach(childPath);
+        files.add(child);
+      }
+    }
+  }
+
   /**
    * @return A set with all the paths from the tree that starts in the TreeNode
    *         where this method is called.
    */
   public Set<String> getFullTreePaths() {
     Set<String> result = new HashSet<>();
-    result.add(path.toString());
-    for (TreeNode tn : files.values())
-      result.addAll(tn.getFullTreePaths());
+    collectPaths(getPath(), result);
     return result;
   }
 
+  private void collectPaths(Path nodePath, Set<String> result) {
+    result.add(nodePath.toString());
+    for (int i = 0; i < childCount; i++) {
+      TreeNode child = children[i];
+      child.collectPaths(child.getPath(nodePath), result);
+    }
+  }
+
   /**
    * @return A set with all the paths from the tree that starts in the TreeNode
    *         where this method is called.
    */
   public Set<Path> getFullTreePathsAsPaths() {
     Set<Path> result = new HashSet<>();
-    result.add(path);
-    for (TreeNode tn : files.values())
-      result.addAll(tn.getFullTreePathsAsPaths());
+    collectPathsAsPaths(getPath(), result);
     return result;
   }
 
+  private void collectPathsAsPaths(Path nodePath, Set<Path> result) {
+    result.add(nodePath);
+    for (int i = 0; i < childCount; i++) {
+      TreeNode child = children[i];
+      child.collectPathsAsPaths(child.getPath(nodePath), result);
+    }
+  }
+
+  /**
+   * @return The number of nodes of the tree that starts in the TreeNode where
+   *         this method is called, i.e. the size of
+   *         {@link #getFullTreePaths()}, without creating the set.
+   */
+  public int getFullTreeSize() {
+    int result = 1;
+    for (int i = 0; i < childCount; i++) {
+      result += children[i].getFullTreeSize();
+    }
+    return result;
+  }
+
+  /**
+   * @return A read-only copy of the direct children of the TreeNode, not
+   *         affected by later changes to the node. To go through the children
+   *         without copying them, use {@link #getChildCount()} and
+   *         {@link #getChild(int)}.
+   */
+  public List<TreeNode> getChildren() {
+    return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(children, childCount)));
+  }
+
   /**
-   * @return The direct children of the TreeNode.
+   * @return The number of direct children of the TreeNode.
    */
-  public Map<String, TreeNode> getChildren() {
-    return files;
+  public int getChildCount() {
+    return childCount;
   }
 
   /**
-   * @return The direct children of the TreeNode that are files (not
-   *         directories)
+   * @param index
+   *          The index of the child
+   * @return The child of the TreeNode in the index
    */
-  public Map<String, TreeNode> getOnlyFiles() {
-    Map<String, TreeNode> result = new HashMap<>();
-    for (String file : files.keySet()) {
-      if (!Files.isDirectory(Paths.get(file))) // add to result if it's a file
-        result.put(file, files.get(file));
+  public TreeNode getChild(int index) {
+    if (index >= childCount) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + childCount);
     }
-    return result;
+    return children[index];
+  }
+
+  /**
+   * @param childPath
+   *          The path of a file
+   * @return True if the TreeNode has a direct child with the path, false
+   *         otherwise.
+   */
+  public boolean hasChild(Path childPath) {
+    Path nodePath = getPath();
+    for (int i = 0; i < childCount; i++) {
+      if (children[i].getPath(nodePath).equals(childPath)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -107,43 +245,58 @@ public class TreeNode extends Observable {
    */
   public Set<String> ignoreContent(Set<Path> paths) {
     Set<String> result = new HashSet<>();
-    if (paths.contains(path)) {
+    ignoreContent(paths, getPath(), result);
+    return result;
+  }
+
+  private void ignoreContent(Set<Path> paths, Path nodePath, Set<String> result) {
+    if (paths.contains(nodePath)) {
       // this item and all its children
-      result.addAll(getFullTreePaths());
-    } else {
-      Set<Path> toRemove = new HashSet<>();
-      for (TreeNode tn : files.values()) {
-        result.addAll(tn.ignoreContent(paths));
-        if (paths.contains(tn.path))
-          toRemove.add(tn.path);
-      }
-      if (!toRemove.isEmpty()) {
-        for (Path p : toRemove)
-          remove(p);
+      collectPaths(nodePath, result);
+      return;
+    }
+    int kept = 0;
+    for (int i = 0; i < childCount; i++) {
+      TreeNode child = children[i];
+      Path childPath = child.getPath(nodePath);
+      child.ignoreContent(paths, childPath, result);
+      if (paths.contains(childPath)) {
+        child.detach(childPath);
+      } else {
+        children[kept++] = child;
       }
     }
-    return result;
+    if (kept < childCount) {
+      Arrays.fill(children, kept, childCount, null);
+      childCount = kept;
+      changed();
+    }
   }
 
   /**
    * Adds new TreeNodes to the node's children.
    *
-   * @param map
-   *          The map with the new TreeNodes
+   * @param nodes
+   *          The new TreeNodes
    */
-  public void addAll(Map<String, TreeNode> map) {
-    files.putAll(map);
+  public void addAll(Collection<TreeNode> nodes) {
+    Path nodePath = getPath();
+    for (TreeNode node : new ArrayList<>(nodes)) {
+      attach(node, nodePath);
+    }
     changed();
   }
 
   /**
-   * Adds a new TreeNode to the node's children
+   * Adds a new TreeNode to the node's children. The node isn't compared with
+   * the existing children, so the same path must not be added twice; see
+   * {@link #hasChild(Path)}.
    *
    * @param node
    *          The new TreeNode to be added
    */
   public void add(TreeNode node) {
-    files.put(node.getPath().toString(), node);
+    attach(node, getPath());
     changed();
   }
 
@@ -155,8 +308,45 @@ public class TreeNode extends Observable {
    *          added, the method creates a new TreeNode with this path.
    */
   public void add(Path node) {
-    files.put(node.toString(), new TreeNode(node));
-    changed();
+    add(new TreeNode(node));
+  }
+
+  /**
+   * Adds a new TreeNode to the node's children
+   *
+   * @param node
+   *          The path of the file to be added to the children.
+   * @param attrs
+   *          The attributes of the file, read by a walk of the file tree.
+   */
+  public void add(Path node, BasicFileAttributes attrs) {
+    add(new TreeNode(node, attrs));
+  }
+
+  private void attach(TreeNode node, Path nodePath) {
+    Path nodeChildPath = node.getPath();
+    node.parent = this;
+    Path pathParent = nodeChildPath.getParent();
+    if (pathParent != null && pathParent.equals(nodePath)) {
+      node.name = nodeChildPath.getFileName().toString().intern();
+      node.path = null;
+    } else if (nodeChildPath.startsWith(nodePath) && !nodeChildPath.equals(nodePath)) {
+      node.name = nodePath.relativize(nodeChildPath).toString().intern();
+      node.path = null;
+    } else {
+      node.name = null;
+      node.path = nodeChildPath;
+    }
+    if (childCount == children.length) {
+      children = Arrays.copyOf(children, Math.max(4, childCount + (childCount >> 1)));
+    }
+    children[childCount++] = node;
+  }
+
+  private void detach(Path nodePath) {
+    parent = null;
+    name = null;
+    path = nodePath;
   }
 
   /**
@@ -167,8 +357,19 @@ public class TreeNode extends Observable {
    * @return The removed TreeNode
    */
   public TreeNode remove(Path path) {
-    TreeNode result = files.get(path.toString());
-    files.remove(path.toString());
+    Path nodePath = getPath();
+    TreeNode result = null;
+    for (int i = 0; i < childCount; i++) {
+      TreeNode child = children[i];
+      Path childPath = child.getPath(nodePath);
+      if (childPath.equals(path)) {
+        child.detach(childPath);
+        System.arraycopy(children, i + 1, children, i, childCount - i - 1);
+        children[--childCount] = null;
+        result = child;
+        break;
+      }
+    }
     changed();
     return result;
   }
@@ -177,41 +378,134 @@ public class TreeNode extends Observable {
    * @return The node's path
    */
   public Path getPath() {
-    return path;
+    if (path != null) {
+      return path;
+    }
+    Path result = parent.getPath().resolve(name);
+    if (childCount > 0) {
+      // the path of a node never changes, and the paths of the children of a
+      // folder are resolved against it, so the folders keep it
+      path = result;
+    }
+    return result;
+  }
+
+  /*
+   * Avoids computing the path of the parent again, when it's known.
+   */
+  private Path getPath(Path parentPath) {
+    if (path != null) {
+      return path;
+    }
+    return parentPath.resolve(name);
   }
 
   /**
-   * @return A set of the node's children's paths.
+   * @return True if the node's path is a directory, false otherwise. The type
+   *         is only read from the file system once.
    */
-  public Set<String> getKeys() {
-    return files.keySet();
+  public boolean isDirectory() {
+    return isDirectory(null);
+  }
+
+  private boolean isDirectory(Path nodePath) {
+    if (type == TYPE_UNKNOWN) {
+      readAttributes(nodePath != null ? nodePath : getPath());
+    } else {
+      countSavedRead();
+    }
+    return type == TYPE_DIRECTORY;
+  }
+
+  /**
+   * @return The size of the node's file, or 0 if it isn't a regular file. The
+   *         size is only read from the file system once.
+   */
+  public long getSize() {
+    if (type == TYPE_UNKNOWN || size < 0) {
+      readAttributes(getPath());
+    } else {
+      countSavedRead();
+    }
+    return size;
   }
 
   /**
-   * @param key
-   *          The path of the TreeNode we want to get.
-   * @return The TreeNode with the path received as parameter
+   * @return True if the type of the file is already known, i.e. asking for it
+   *         doesn't read the file system.
    */
-  public TreeNode get(String key) {
-    return files.get(key);
+  public boolean isTypeKnown() {
+    return type != TYPE_UNKNOWN;
+  }
+
+  /**
+   * @return The size of the file if it's already known, -1 otherwise.
+   */
+  public long getKnownSize() {
+    return type != TYPE_UNKNOWN ? size : -1;
+  }
+
+  private void countSavedRead() {
+    if (!readCounted) {
+      readCounted = true;
+      savedReads.get()[0]++;
+    }
+  }
+
+  private void readAttributes(Path nodePath) {
+    readCounted = true;
+    try {
+      setAttributes(Files.readAttributes(nodePath, BasicFileAttributes.class));
+    } catch (IOException e) {
+      // like Files.isDirectory, a path that can't be read isn't a directory
+      type = TYPE_FILE;
+      size = 0;
+    }
+  }
+
+  private void setAttributes(BasicFileAttributes attrs) {
+    type = attrs.isDirectory() ? TYPE_DIRECTORY : TYPE_FILE;
+    // the size of a file listed from a snapshot is only read if it's needed
+    if (!attrs.isRegularFile()) {
+      size = 0;
+    } else if (FileSystemSnapshot.isSizeKnown(attrs)) {
+      size = attrs.size();
+    }
+  }
+
+  /**
+   * Takes the number of TreeNodes the current thread asked the type or size of
+   * a file while they already knew it, i.e. the file system reads avoided,
+   * since the last time they were taken by the thread. Each node is counted
+   * once, the first time it's asked, and a node that had to read the file
+   * system isn't counted.
+   *
+   * @return The number of file system reads avoided by the current thread
+   */
+  public static long takeSavedReads() {
+    long[] count = savedReads.get();
+    long result = count[0];
+    count[0] = 0;
+    return result;
   }
 
   private void changed() {
-    setChanged();
-    notifyObservers();
+    for (TreeNode node = this; node != null; node = node.parent) {
+      if (node.observer != null) {
+        node.observer.update(null, this);
+      }
+    }
   }
 
   /**
-   * Adds a new observer to the TreeNode and all its children
+   * Adds an observer to the TreeNode, notified when the TreeNode or any of its
+   * descendants changes. The observer receives the changed TreeNode as the
+   * argument. A TreeNode only has one observer.
    *
    * @param o
    *          The Observer to be added
    */
-  @Override
   public void addObserver(Observer o) {
-    super.addObserver(o);
-    for (TreeNode tn : files.values()) {
-      tn.addObserver(o);
-    }
+    observer = o;
   }
 }
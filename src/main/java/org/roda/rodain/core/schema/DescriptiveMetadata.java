@@ -112,6 +112,18 @@ public class DescriptiveMetadata {
     return loaded;
   }
 
+  /**
+   * Sets whether the content was already loaded, so a restored metadata isn't
+   * read again from its template or file.
+   *
+   * @param loaded
+   *          True if the content is loaded
+   */
+  @JsonIgnore
+  public void setLoaded(boolean loaded) {
+    this.loaded = loaded;
+  }
+
   public MetadataOption getCreatorOption() {
     return creatorOption;
   }
@@ -136,6 +148,15 @@ public class DescriptiveMetadata {
     return values;
   }
 
+  /**
+   * @return True if the values were already created, without creating them.
+   * @see #getValues()
+   */
+  @JsonIgnore
+  public boolean hasValues() {
+    return values != null;
+  }
+
   public void setValues(TreeSet<TemplateFieldValue> val) {
     this.values = val;
   }
@@ -198,8 +219,7 @@ public class DescriptiveMetadata {
     try {
       if (creatorOption == MetadataOption.TEMPLATE) {
         if (getTemplateType() != null && getContent() == null) {
-          String tempContent = ConfigurationManager.getTemplateContent(getTemplateType());
-          setContentDecoded(TemplateUtils.getXMLFromTemplate(tempContent));
+          setContentDecoded(TemplateUtils.getXMLFromTemplateByType(getTemplateType()));
           loaded = true;
         } else {
           loaded = true;
@@ -261,15 +281,39 @@ public class DescriptiveMetadata {
   public InputStream getSchema() {
     // FIXME 20170307 hsilva: possible NPE
     InputStream result = null;
-    if (templateType != null) {
-      result = ConfigurationManager.getSchemaFile(templateType);
-    } else {
-      if (path != null)
-        result = ConfigurationManager.getSchemaFile(FilenameUtils.removeExtension(path.getFileName().toString()));
+    String schemaType = getSchemaType();
+    if (schemaType != null) {
+      result = ConfigurationManager.getSchemaFile(schemaType);
     }
     return result;
   }
 
+  /**
+   * Gets the name used to look up the schema of the metadata: the template
+   * type or, when there's none, the name of the metadata file.
+   *
+   * @return The schema type or null if there's neither a template type nor a
+   *         path
+   */
+  @JsonIgnore
+  public String getSchemaType() {
+    if (templateType != null) {
+      return templateType;
+    } else if (path != null) {
+      return FilenameUtils.removeExtension(path.getFileName().toString());
+    }
+    return null;
+  }
+
+  /**
+   * @return True if there's a schema to validate the metadata
+   */
+  @JsonIgnore
+  public boolean hasSchema() {
+    String schemaType = getSchemaType();
+    return schemaType != null && ConfigurationManager.getSchemaLastModified(schemaType) >= 0;
+  }
+
   /**
    * Gets the additional properties map.
    *
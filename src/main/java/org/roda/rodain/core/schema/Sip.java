@@ -3,7 +3,6 @@ package org.roda.rodain.core.schema;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -14,18 +13,17 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
-import org.roda.rodain.core.ConfigurationManager;
 import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.Constants.MetadataOption;
 import org.roda.rodain.core.Controller;
 import org.roda.rodain.core.I18n;
 import org.roda.rodain.core.Pair;
+import org.roda.rodain.core.template.TemplateCache;
 import org.roda.rodain.core.template.TemplateFieldValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Template;
 
 /**
@@ -150,40 +148,10 @@ public class Sip extends Observable {
   @JsonIgnore
   public String getMetadataWithReplaces(DescriptiveMetadata dom) {
     String content = dom.getContentDecoded();
-    String templateContent = ConfigurationManager.getTemplateContent(dom.getTemplateType());
     if (content != null && dom.getCreatorOption() == MetadataOption.TEMPLATE) {
       try {
-        Handlebars handlebars = new Handlebars();
         Map<String, String> data = new HashMap<>();
-        handlebars.registerHelper("field", (o, options) -> options.fn());
-        handlebars.registerHelper("ifCond", (context, options) -> {
-          // the first parameter of ifCond is placed in the context field by the
-          // parser
-          String condition = (context == null) ? Constants.MISC_OR_OP : context.toString();
-          List<Object> values = Arrays.asList(options.params);
-          boolean display;
-          if (condition.equals(Constants.MISC_OR_OP)) {
-            display = false;
-            for (Object value : values) {
-              if (value != null) {
-                display = true;
-                break;
-              }
-            }
-          } else if (condition.equals(Constants.MISC_AND_OP)) {
-            display = true;
-            for (Object value : values) {
-              if (value == null) {
-                display = false;
-                break;
-              }
-            }
-          } else {
-            display = false;
-          }
-          return display ? options.fn() : options.inverse();
-        });
-        Template tmpl = handlebars.compileInline(templateContent);
+        Template tmpl = TemplateCache.getRenderTemplate(dom.getTemplateType());
 
         Set<TemplateFieldValue> values = getMetadataValueMap(dom);
         if (values != null) {
@@ -223,7 +191,7 @@ public class Sip extends Observable {
 
   @JsonIgnore
   public Set<TemplateFieldValue> getMetadataValueMap(DescriptiveMetadata dom) {
-    String content = ConfigurationManager.getTemplateContent(dom.getTemplateType());
+    String content = TemplateCache.getContent(dom.getTemplateType());
     if (dom.getValues() == null) {
       dom.initializeValues();
     }
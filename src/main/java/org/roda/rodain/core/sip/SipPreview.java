@@ -1,7 +1,8 @@
 package org.roda.rodain.core.sip;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -30,6 +31,9 @@ public class SipPreview extends Sip implements Observer {
   private Set<TreeNode> documentation;
   private boolean contentModified = false;
   private boolean removed = false;
+  // reads the representations and documentation the first time they're needed
+  private ContentLoader contentLoader;
+  private boolean loadingContent = false;
 
   /**
    * Creates a new SipPreview object.
@@ -68,14 +72,65 @@ public class SipPreview extends Sip implements Observer {
     }
   }
 
+  /**
+   * Creates a SipPreview whose representations and documentation are only
+   * loaded when they're first needed, e.g. a SIP restored from a saved project.
+   * The paths of its content aren't marked as mapped, since their state is
+   * restored with the rest of the project.
+   *
+   * @param contentLoader
+   *          Adds the representations and documentation to the SIP
+   */
+  public SipPreview(ContentLoader contentLoader) {
+    super();
+    this.representations = new HashSet<>();
+    this.documentation = new HashSet<>();
+    this.contentLoader = contentLoader;
+  }
+
+  /*
+   * Loads the content, if it's not loaded yet. When it can't be loaded, the
+   * loader is kept, so the content isn't mistaken for an empty one, e.g. when
+   * the project is saved, and the error is thrown to the caller.
+   */
+  private synchronized void loadContent() {
+    // the loader adds the content with the methods of this SIP
+    if (contentLoader == null || loadingContent) {
+      return;
+    }
+    loadingContent = true;
+    try {
+      contentLoader.load(this);
+      contentLoader = null;
+    } catch (IOException e) {
+      representations.clear();
+      documentation.clear();
+      throw new UncheckedIOException("Error loading the content of the SIP " + getId(), e);
+    } finally {
+      loadingContent = false;
+    }
+  }
+
+  /**
+   * @return The loader of the content of the SIP, or null if the content is
+   *         already loaded.
+   */
+  public synchronized ContentLoader getContentLoader() {
+    return contentLoader;
+  }
+
   /**
    * @return All the representations of the SIP.
+   * @throws UncheckedIOException
+   *           If the content of the SIP can't be loaded
    */
   public Set<SipRepresentation> getRepresentations() {
+    loadContent();
     return representations;
   }
 
   public Set<TreeNode> getDocumentation() {
+    loadContent();
     return documentation;
   }
 
@@ -86,6 +141,7 @@ public class SipPreview extends Sip implements Observer {
    *          The set of paths to be removed
    */
   public void ignoreContent(Set<Path> paths) {
+    loadContent();
     Set<String> ignored = new HashSet<>();
     Set<TreeNode> toRemove = new HashSet<>();
     for (SipRepresentation sr : representations) {
@@ -101,6 +157,7 @@ public class SipPreview extends Sip implements Observer {
   }
 
   public void addRepresentation(SipRepresentation sipRep) {
+    loadContent();
     representations.add(sipRep);
   }
 
@@ -112,6 +169,16 @@ public class SipPreview extends Sip implements Observer {
     return contentModified;
   }
 
+  /**
+   * Sets the content modified state, e.g. when the SIP is restored.
+   *
+   * @param contentModified
+   *          The new state
+   */
+  public void setContentModified(boolean contentModified) {
+    this.contentModified = contentModified;
+  }
+
   /**
    * @return True if the SIP has been removed by the user, false otherwise.
    */
@@ -130,19 +197,20 @@ public class SipPreview extends Sip implements Observer {
    * Removes the SIP, setting its content as NORMAL.
    */
   public void removeSIP() {
+    loadContent();
     float paths = 0, removedPaths = 0;
     // prepare
     for (SipRepresentation sr : representations) {
       for (TreeNode tn : sr.getFiles()) {
-        paths += tn.getFullTreePaths().size();
+        paths += tn.getFullTreeSize();
       }
     }
     // remove
     int update = 0;
     for (SipRepresentation sr : representations) {
       for (TreeNode tn : sr.getFiles()) {
-        for (String path : tn.getFullTreePaths()) {
-          PathCollection.addPath(Paths.get(path), PathState.NORMAL);
+        for (Path path : tn.getFullTreePathsAsPaths()) {
+          PathCollection.addPath(path, PathState.NORMAL);
           removedPaths++;
           update++;
           if (update >= 10) {
@@ -170,11 +238,12 @@ public class SipPreview extends Sip implements Observer {
    * @param o
    *          The observable object that is modified.
    * @param arg
-   *          The arguments sent by the observable object.
+   *          The arguments sent by the observable object, the modified TreeNode
+   *          when the notification is from a TreeNode.
    */
   @Override
   public void update(Observable o, Object arg) {
-    if (o instanceof TreeNode) {
+    if (arg instanceof TreeNode) {
       contentModified = true;
       setChanged();
       notifyObservers();
@@ -182,6 +251,7 @@ public class SipPreview extends Sip implements Observer {
   }
 
   public void removeRepresentation(SipRepresentation representation) {
+    loadContent();
     Set<Path> paths = new HashSet<>();
     for (TreeNode tn : representation.getFiles()) {
       paths.addAll(tn.getFullTreePathsAsPaths());
@@ -191,6 +261,7 @@ public class SipPreview extends Sip implements Observer {
   }
 
   public void addDocumentation(Set<TreeNode> docs) {
+    loadContent();
     if (docs != null) {
       Iterator<TreeNode> it = docs.iterator();
       while (it.hasNext()) {
@@ -217,6 +288,7 @@ public class SipPreview extends Sip implements Observer {
   }
 
   public void removeDocumentation(Set<Path> paths) {
+    loadContent();
     Set<String> ignored = new HashSet<>();
     Set<TreeNode> toRemove = new HashSet<>();
     for (TreeNode tn : documentation) {
@@ -226,4 +298,19 @@ public class SipPreview extends Sip implements Observer {
     }
     documentation.removeAll(toRemove);
   }
+
+  /**
+   * Loads the content of a SipPreview created without it.
+   */
+  public interface ContentLoader {
+    /**
+     * Adds the representations and documentation to the SIP.
+     *
+     * @param sipPreview
+     *          The SIP
+     * @throws IOException
+     *           If the content can't be read
+     */
+    void load(SipPreview sipPreview) throws IOException;
+  }
 }
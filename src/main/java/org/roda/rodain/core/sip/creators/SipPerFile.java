@@ -1,15 +1,12 @@
 package org.roda.rodain.core.sip.creators;
 
-import java.io.IOException;
-import java.nio.file.AccessDeniedException;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import org.roda.rodain.core.Constants;
@@ -50,37 +47,38 @@ public class SipPerFile extends SipPreviewCreator {
     super(id, filters, metadataOption, metadataType, metadataPath, templateType, metadataVersion);
   }
 
+  /**
+   * Adds the start path to the PathCollection, unless it's filtered.
+   *
+   * @param path
+   *          The starting path of the TreeVisitor.
+   */
   @Override
   public void setStartPath(String path) {
-    try {
-      Files.walkFileTree(Paths.get(path), new SimpleFileVisitor<Path>() {
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-          if (!filter(file))
-            PathCollection.simpleAddPath(file);
-          return isTerminated();
-        }
-
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-          if (!filter(dir))
-            PathCollection.simpleAddPath(dir);
-          return isTerminated();
-        }
-      });
-    } catch (AccessDeniedException e) {
-      LOGGER.info("Access denied to file", e);
-    } catch (IOException e) {
-      LOGGER.error("Error walking the file tree", e);
-    }
+    Path start = Paths.get(path);
+    if (!filter(start))
+      PathCollection.simpleAddPath(start);
   }
 
-  private FileVisitResult isTerminated() {
-    // terminate if the thread has been interrupted
-    if (Thread.interrupted() || cancelled) {
-      return FileVisitResult.TERMINATE;
+  /**
+   * Adds the entries of the directory that aren't filtered to the
+   * PathCollection in a single batch, before any of them is mapped.
+   *
+   * @param path
+   *          The path of the directory.
+   * @param entries
+   *          The paths of the entries of the directory.
+   */
+  @Override
+  public void directoryListed(Path path, List<Path> entries) {
+    if (cancelled)
+      return;
+    List<Path> toAdd = new ArrayList<>(entries.size());
+    for (Path entry : entries) {
+      if (!filter(entry))
+        toAdd.add(entry);
     }
-    return FileVisitResult.CONTINUE;
+    PathCollection.simpleAddPaths(toAdd);
   }
 
   /**
@@ -127,7 +125,7 @@ public class SipPerFile extends SipPreviewCreator {
       return;
     }
 
-    TreeNode node = new TreeNode(path);
+    TreeNode node = new TreeNode(path, attrs);
     createSip(path, node);
 
     long now = System.currentTimeMillis();
@@ -73,7 +73,7 @@ public class SipPerSelection extends SipPreviewCreator {
   public void preVisitDirectory(Path path, BasicFileAttributes attrs) {
     if (filter(path) || cancelled)
       return;
-    TreeNode newNode = new TreeNode(path);
+    TreeNode newNode = new TreeNode(path, attrs);
     nodes.add(newNode);
   }
 
@@ -121,12 +121,12 @@ public class SipPerSelection extends SipPreviewCreator {
     if (filter(path) || cancelled)
       return;
     if (selectedPaths.contains(path.toString())) {
-      createSip(path, new TreeNode(path));
+      createSip(path, new TreeNode(path, attrs));
     } else {
       if (nodes.isEmpty()) {
         nodes.add(new TreeNode(path.getParent()));
       }
-      nodes.peekLast().add(path);
+      nodes.peekLast().add(path, attrs);
     }
   }
 }
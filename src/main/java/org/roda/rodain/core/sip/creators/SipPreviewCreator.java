@@ -233,7 +233,7 @@ public class SipPreviewCreator extends Observable implements TreeVisitor {
   }
 
   protected SipPreview createSip(Path path, TreeNode node) {
-    Set<Path> metaPath = getMetadataPath(path);
+    Set<Path> metaPath = getMetadataPath(path, node.isDirectory());
 
     boolean jumpBaseFolder = ConfigurationManager.getConfigAsBoolean(Constants.CONF_K_SIP_CREATION_ALWAYS_JUMP_FOLDER,
       false);
@@ -245,11 +245,11 @@ public class SipPreviewCreator extends Observable implements TreeVisitor {
     // in that case we will jump the folder and add the files to the root of the
     // representation
 
-    if (Files.isDirectory(node.getPath())) {
+    if (node.isDirectory()) {
       onlyFiles = true;
       if (!jumpBaseFolder) {
-        for (String pt : node.getKeys()) {
-          if (Files.isDirectory(Paths.get(pt))) {
+        for (TreeNode child : node.getChildren()) {
+          if (child.isDirectory()) {
             onlyFiles = false;
             break;
           }
@@ -258,7 +258,7 @@ public class SipPreviewCreator extends Observable implements TreeVisitor {
     }
 
     if (onlyFiles) {
-      filesSet.addAll(node.getChildren().values());
+      filesSet.addAll(node.getChildren());
     } else {
       filesSet.add(node);
     }
@@ -296,17 +296,28 @@ public class SipPreviewCreator extends Observable implements TreeVisitor {
     return sipPreview;
   }
 
-  protected Set<Path> getMetadataPath(Path sipPath) {
+  /**
+   * Finds the metadata files of a SIP, according to the metadata option of the
+   * rule.
+   *
+   * @param sipPath
+   *          The path of the SIP's content
+   * @param directory
+   *          True if the path is a directory, as already known by the walk, so
+   *          the file system isn't read again for it
+   * @return The metadata files, or null if the metadata comes from a template
+   */
+  protected Set<Path> getMetadataPath(Path sipPath, boolean directory) {
     Set<Path> result = new HashSet<>();
     switch (metadataOption) {
       case SINGLE_FILE:
         result.add(metadataPath);
         break;
       case DIFF_DIRECTORY:
-        result = getFileFromDir(sipPath);
+        result = getFileFromDir(sipPath, directory);
         break;
       case SAME_DIRECTORY:
-        result.addAll(searchMetadata(sipPath));
+        result.addAll(searchMetadata(sipPath, directory));
         break;
       default:
         return null;
@@ -314,11 +325,8 @@ public class SipPreviewCreator extends Observable implements TreeVisitor {
     return result;
   }
 
-  private Set<Path> searchMetadata(Path sipPath) {
-    File dir = sipPath.toFile();
-    if (!dir.isDirectory()) {
-      dir = sipPath.getParent().toFile();
-    }
+  private Set<Path> searchMetadata(Path sipPath, boolean directory) {
+    File dir = directory ? sipPath.toFile() : sipPath.getParent().toFile();
 
     PathMatcher matcher = FileSystems.getDefault().getPathMatcher(Constants.MISC_GLOB + templateType);
     File[] foundFiles = dir.listFiles((dir1, name) -> matcher.matches(Paths.get(name)));
@@ -332,10 +340,10 @@ public class SipPreviewCreator extends Observable implements TreeVisitor {
     return result;
   }
 
-  private Set<Path> getFileFromDir(Path path) {
+  private Set<Path> getFileFromDir(Path path, boolean directory) {
     String fileNameWithExtension = path.getFileName().toString();
     String fileName;
-    if (Files.isDirectory(path)) {
+    if (directory) {
       fileName = fileNameWithExtension;
     } else {
       fileName = FilenameUtils.removeExtension(fileNameWithExtension);
@@ -1,5 +1,6 @@
 package org.roda.rodain.core.sip.creators;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -53,7 +54,7 @@ public class SipSingle extends SipPreviewCreator {
   public void preVisitDirectory(Path path, BasicFileAttributes attrs) {
     if (filter(path) || cancelled)
       return;
-    TreeNode newNode = new TreeNode(path);
+    TreeNode newNode = new TreeNode(path, attrs);
     nodes.add(newNode);
   }
 
@@ -91,9 +92,9 @@ public class SipSingle extends SipPreviewCreator {
       return;
     }
     if (nodes.isEmpty())
-      files.add(new TreeNode(path));
+      files.add(new TreeNode(path, attrs));
     else
-      nodes.peekLast().add(path);
+      nodes.peekLast().add(path, attrs);
   }
 
   /**
@@ -109,7 +110,7 @@ public class SipSingle extends SipPreviewCreator {
     }
     // create a new Sip
     Path path = Paths.get(getStartPath());
-    Set<Path> metaPath = getMetadataPath(path);
+    Set<Path> metaPath = getMetadataPath(path, isDirectory(path));
 
     SipRepresentation rep = new SipRepresentation(Constants.SIP_REP_FIRST);
     rep.setFiles(files);
@@ -139,4 +140,17 @@ public class SipSingle extends SipPreviewCreator {
     setChanged();
     notifyObservers(Constants.EVENT_FINISHED);
   }
+
+  /*
+   * The type of the start path, from its node when the walk added it (it isn't
+   * there when it was filtered).
+   */
+  private boolean isDirectory(Path path) {
+    for (TreeNode node : files) {
+      if (node.getPath().equals(path)) {
+        return node.isDirectory();
+      }
+    }
+    return Files.isDirectory(path);
+  }
 }
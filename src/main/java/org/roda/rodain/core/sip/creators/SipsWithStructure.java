@@ -1,17 +1,13 @@
 package org.roda.rodain.core.sip.creators;
 
-import java.io.IOException;
-import java.nio.file.AccessDeniedException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -83,31 +79,34 @@ public class SipsWithStructure extends SipPreviewCreator {
     if (filter(path) || cancelled) {
       return;
     }
-    final Folder newFolder = new Folder(path);
+    final Folder newFolder = new Folder(path, attrs);
     folders.add(newFolder);
   }
 
+  /**
+   * Adds the start path to the PathCollection.
+   *
+   * @param path
+   *          The starting path of the TreeVisitor.
+   */
   @Override
   public void setStartPath(String path) {
-    try {
-      Files.walkFileTree(Paths.get(path), new SimpleFileVisitor<Path>() {
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-          PathCollection.simpleAddPath(file);
-          return isTerminated();
-        }
+    PathCollection.simpleAddPath(Paths.get(path));
+  }
 
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-          PathCollection.simpleAddPath(dir);
-          return isTerminated();
-        }
-      });
-    } catch (final AccessDeniedException e) {
-      LOGGER.info("Access denied to file", e);
-    } catch (final IOException e) {
-      LOGGER.error("Error walking the file tree", e);
-    }
+  /**
+   * Adds the entries of the directory to the PathCollection in a single batch,
+   * before any of them is mapped.
+   *
+   * @param path
+   *          The path of the directory.
+   * @param entries
+   *          The paths of the entries of the directory.
+   */
+  @Override
+  public void directoryListed(Path path, List<Path> entries) {
+    if (!cancelled)
+      PathCollection.simpleAddPaths(entries);
   }
 
   /**
@@ -124,32 +123,34 @@ public class SipsWithStructure extends SipPreviewCreator {
     // pop the node of this directory and add it to its parent (if it exists)
     final Folder folder = folders.removeLast();
     if (!folders.isEmpty())
-      folders.peekLast().addItem(folder.getPath());
+      folders.peekLast().addFolder(folder.getPath());
 
-    Set<Path> subFiles, subFolders;
+    Map<Path, BasicFileAttributes> subFiles;
+    Set<Path> subFolders;
     subFiles = folder.getFiles();
     subFolders = folder.getFolders();
 
     // some files and no sub-folders -> single SIP with all the files
     if (!subFiles.isEmpty() && subFolders.isEmpty()) {
-      TreeNode node = new TreeNode(path);
-      for (Path p : subFiles) {
-        TreeNode fileNode = new TreeNode(p);
+      TreeNode node = new TreeNode(path, folder.getAttributes());
+      for (Map.Entry<Path, BasicFileAttributes> file : subFiles.entrySet()) {
+        TreeNode fileNode = new TreeNode(file.getKey(), file.getValue());
         node.add(fileNode);
       }
-      PseudoSIP pseudoSIP = new PseudoSIP(node, getMetadataPath(path));
+      PseudoSIP pseudoSIP = new PseudoSIP(node, getMetadataPath(path, true));
       record.put(path, pseudoSIP);
       if (folders.isEmpty()) {
         tree.add(pseudoSIP);
       }
     } else {
       // each file will be a SIP
-      for (Path p : subFiles) {
-        record.put(p, new PseudoSIP(new TreeNode(p), getMetadataPath(p)));
+      for (Map.Entry<Path, BasicFileAttributes> file : subFiles.entrySet()) {
+        Path p = file.getKey();
+        record.put(p, new PseudoSIP(new TreeNode(p, file.getValue()), getMetadataPath(p, false)));
       }
 
       // make this node a description object
-      final Set<Path> rootMetadata = getMetadataPath(path);
+      final Set<Path> rootMetadata = getMetadataPath(path, true);
       final Sip descriptionObject;
       if (rootMetadata == null || rootMetadata.isEmpty()) {
         descriptionObject = new Sip(
@@ -187,7 +188,7 @@ public class SipsWithStructure extends SipPreviewCreator {
       }
 
       // construct the tree
-      Set<Path> children = new HashSet<>(subFiles);
+      Set<Path> children = new HashSet<>(subFiles.keySet());
       children.addAll(subFolders);
 
       final PseudoDescriptionObject pdo = new PseudoDescriptionObject(path);
@@ -227,11 +228,11 @@ public class SipsWithStructure extends SipPreviewCreator {
       return;
     }
     if (folders.isEmpty()) {
-      PseudoSIP pseudoSIP = new PseudoSIP(new TreeNode(path), getMetadataPath(path));
+      PseudoSIP pseudoSIP = new PseudoSIP(new TreeNode(path, attrs), getMetadataPath(path, attrs.isDirectory()));
       record.put(path, pseudoSIP);
       tree.add(pseudoSIP);
     } else {
-      folders.peekLast().addItem(path);
+      folders.peekLast().addFile(path, attrs);
     }
   }
 
@@ -287,21 +288,20 @@ public class SipsWithStructure extends SipPreviewCreator {
     return sipPreviewMap;
   }
 
-  private FileVisitResult isTerminated() {
-    // terminate if the thread has been interrupted
-    if (Thread.interrupted() || cancelled) {
-      return FileVisitResult.TERMINATE;
-    }
-    return FileVisitResult.CONTINUE;
-  }
-
+  /*
+   * The files and sub folders of a directory being visited. The attributes of
+   * the files are kept from the walk, so their nodes don't read them again.
+   */
   class Folder {
     private Path path;
-    private Set<Path> files, folders;
+    private BasicFileAttributes attributes;
+    private Map<Path, BasicFileAttributes> files;
+    private Set<Path> folders;
 
-    public Folder(Path path) {
+    public Folder(Path path, BasicFileAttributes attributes) {
       this.path = path;
-      files = new HashSet<>();
+      this.attributes = attributes;
+      files = new HashMap<>();
       folders = new HashSet<>();
     }
 
@@ -309,7 +309,11 @@ public class SipsWithStructure extends SipPreviewCreator {
       return path;
     }
 
-    public Set<Path> getFiles() {
+    public BasicFileAttributes getAttributes() {
+      return attributes;
+    }
+
+    public Map<Path, BasicFileAttributes> getFiles() {
       return files;
     }
 
@@ -317,11 +321,12 @@ public class SipsWithStructure extends SipPreviewCreator {
       return folders;
     }
 
-    public void addItem(Path path) {
-      if (Files.isDirectory(path)) {
-        folders.add(path);
-      } else
-        files.add(path);
+    public void addFile(Path path, BasicFileAttributes attrs) {
+      files.put(path, attrs);
+    }
+
+    public void addFolder(Path path) {
+      folders.add(path);
     }
   }
 }
@@ -0,0 +1,708 @@
+package org.roda.rodain.core.source;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.ControllerUtils;
+import org.roda.rodain.core.utils.OffsetIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent snapshot of the listing of the source directories.
+ * <p/>
+ * <p>
+ * For each listed directory it keeps the name and type of every entry,
+ * together with the modification time of the directory itself. When a
+ * directory is listed again and its modification time didn't change, the
+ * listing is read from the snapshot instead of the (possibly remote) file
+ * system, which costs a single stat of the directory.
+ * </p>
+ * <p>
+ * The listings are appended to a single file in the snapshots folder of
+ * RODA-in. Only the position of the last listing of each directory is kept in
+ * memory, so a listing costs one read of the file. The file is compacted when
+ * the application starts, dropping the outdated listings, the ones not written
+ * for fileSystemSnapshot.maxAge days and, when it grew over
+ * fileSystemSnapshot.maxSize MB, the oldest ones.
+ * </p>
+ * <p>
+ * Adding, removing or renaming an entry changes the modification time of its
+ * directory, so the listing and the types are always up to date. Changing the
+ * content of a file doesn't, so by default its size and times are read from
+ * the file system the first time they're asked for. With
+ * fileSystemSnapshot.keepAttributes they're kept in the snapshot too, at the
+ * cost of showing the size of a file rewritten in place as it was when its
+ * directory was last listed.
+ * </p>
+ */
+public final class FileSystemSnapshot {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemSnapshot.class.getName());
+  private static final int FORMAT_VERSION = 3;
+  private static final String STORE_FILE = "listings.bin";
+  private static final String TEMP_EXTENSION = ".tmp";
+  // in days
+  private static final int DEFAULT_MAX_AGE = 30;
+  // in megabytes
+  private static final int DEFAULT_MAX_SIZE = 256;
+
+  private static Store store;
+  // the file of the store, null for the one in the snapshots folder
+  private static Path storeFile;
+  // set when the store couldn't be opened, the directories are listed from disk
+  private static boolean storeFailed = false;
+
+  private FileSystemSnapshot() {
+  }
+
+  /**
+   * @return True if the snapshots are enabled and the snapshots folder exists.
+   */
+  public static boolean isEnabled() {
+    return (storeFile != null || ConfigurationManager.getSnapshotsPath() != null)
+      && ConfigurationManager.getConfigAsBoolean(Constants.CONF_K_FILE_SYSTEM_SNAPSHOT_ENABLED, true);
+  }
+
+  /**
+   * Lists a directory, using the snapshot if the directory wasn't modified since
+   * it was taken. Symbolic links aren't followed.
+   *
+   * @param dir
+   *          The directory to list
+   * @return The entries of the directory
+   * @throws IOException
+   *           If the directory can't be read
+   */
+  public static List<Entry> list(Path dir) throws IOException {
+    Store current = isEnabled() ? getStore() : null;
+    if (current == null) {
+      return listFromDisk(dir);
+    }
+
+    boolean keepAttributes = ConfigurationManager
+      .getConfigAsBoolean(Constants.CONF_K_FILE_SYSTEM_SNAPSHOT_KEEP_ATTRIBUTES, false);
+    long dirModified = Files.getLastModifiedTime(dir).toMillis();
+    String key = dir.toAbsolutePath().normalize().toString();
+    List<Entry> entries = current.read(dir, key, dirModified, keepAttributes);
+    if (entries == null) {
+      entries = listFromDisk(dir);
+      current.write(key, dirModified, entries, keepAttributes);
+    }
+    return entries;
+  }
+
+  /**
+   * Lists a directory without consulting the snapshot.
+   *
+   * @param dir
+   *          The directory to list
+   * @return The entries of the directory
+   * @throws IOException
+   *           If the directory can't be read
+   */
+  public static List<Entry> listFromDisk(Path dir) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path child : stream) {
+        try {
+          entries.add(new Entry(child,
+            Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)));
+        } catch (IOException e) {
+          entries.add(new Entry(child, e));
+        }
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+    return entries;
+  }
+
+  /**
+   * Removes the snapshot of a directory, forcing it to be listed from disk the
+   * next time.
+   *
+   * @param dir
+   *          The directory
+   */
+  public static void invalidate(Path dir) {
+    Store current = isEnabled() ? getStore() : null;
+    if (current != null) {
+      current.remove(dir.toAbsolutePath().normalize().toString());
+    }
+  }
+
+  /**
+   * @param attrs
+   *          The attributes of an entry listed by this class
+   * @return True if the size in the attributes is already known, false if
+   *         asking for it reads the file system.
+   */
+  public static boolean isSizeKnown(BasicFileAttributes attrs) {
+    return !(attrs instanceof SnapshotFileAttributes) || ((SnapshotFileAttributes) attrs).isSizeKnown();
+  }
+
+  private static synchronized Store getStore() {
+    if (store == null && !storeFailed) {
+      Path file = storeFile;
+      if (file == null) {
+        file = ConfigurationManager.getSnapshotsPath().resolve(STORE_FILE);
+        removeOldSnapshots(file.getParent());
+      }
+      long maxAge = TimeUnit.DAYS.toMillis(
+        ConfigurationManager.getConfigAsInteger(Constants.CONF_K_FILE_SYSTEM_SNAPSHOT_MAX_AGE, DEFAULT_MAX_AGE));
+      long maxSize = ConfigurationManager.getConfigAsInteger(Constants.CONF_K_FILE_SYSTEM_SNAPSHOT_MAX_SIZE,
+        DEFAULT_MAX_SIZE) * 1024L * 1024L;
+      try {
+        store = Store.open(file, maxAge, maxSize);
+      } catch (IOException e) {
+        LOGGER.warn("Unable to open the file system snapshots, the folders will be listed from disk", e);
+        storeFailed = true;
+      }
+    }
+    return store;
+  }
+
+  /*
+   * Closes the store, so it's opened again on the next listing. Used by the
+   * tests to simulate a restart of the application.
+   */
+  static synchronized void reset(Path file) {
+    if (store != null) {
+      store.close();
+    }
+    store = null;
+    storeFile = file;
+    storeFailed = false;
+  }
+
+  /*
+   * Removes, in the background, the snapshot files of the previous versions,
+   * one per directory in sub folders of the snapshots folder.
+   */
+  private static void removeOldSnapshots(Path folder) {
+    Thread remover = new Thread(() -> {
+      try (Stream<Path> files = Files.list(folder)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            ControllerUtils.deleteQuietly(file);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.debug("Unable to remove the old file system snapshots", e);
+      }
+    }, "FileSystemSnapshot-cleanup");
+    remover.setDaemon(true);
+    remover.start();
+  }
+
+  /**
+   * The file with the listings. After a header with the format version, each
+   * record is its length followed by the path of the directory, its
+   * modification time, when the record was written, whether the size and
+   * modification time of the entries follow their name and type, and the
+   * number of entries (-1 for a removed snapshot).
+   */
+  private static final class Store {
+    private static final int HEADER_LENGTH = 4;
+    // don't compact small files that are mostly outdated
+    private static final long MIN_COMPACT_SIZE = 1024L * 1024L;
+
+    private final Path file;
+    private final long maxSize;
+    private FileChannel channel;
+    private OffsetIndex index;
+    // where the next record is written
+    private long end;
+    // the bytes of the records in the index
+    private long liveBytes;
+    private boolean full = false;
+
+    private Store(Path file, long maxSize) {
+      this.file = file;
+      this.maxSize = maxSize;
+    }
+
+    static Store open(Path file, long maxAge, long maxSize) throws IOException {
+      Store result = new Store(file, maxSize);
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      result.load(maxAge);
+      if (result.end > maxSize || (result.end > MIN_COMPACT_SIZE && result.end - result.liveBytes > result.liveBytes)) {
+        result.compact(maxAge);
+      }
+      return result;
+    }
+
+    /*
+     * Indexes the records of the file, cutting it after the last complete one.
+     */
+    private void load(long maxAge) throws IOException {
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+      index = new OffsetIndex();
+      liveBytes = 0;
+      long size = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      if (size < HEADER_LENGTH || channel.read(header, 0) < HEADER_LENGTH || header.getInt(0) != FORMAT_VERSION) {
+        channel.truncate(0);
+        header.clear();
+        header.putInt(0, FORMAT_VERSION);
+        writeFully(header, 0);
+        end = HEADER_LENGTH;
+        return;
+      }
+
+      long now = System.currentTimeMillis();
+      long offset = HEADER_LENGTH;
+      channel.position(offset);
+      DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      try {
+        while (offset + 4 <= size) {
+          int length = data.readInt();
+          if (length <= 0 || offset + 4 + length > size) {
+            break;
+          }
+          byte[] record = new byte[length];
+          data.readFully(record);
+          DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+          long key = OffsetIndex.hash(fields.readUTF());
+          fields.readLong();
+          long written = fields.readLong();
+          fields.readBoolean();
+          int count = fields.readInt();
+          if (count < 0 || now - written > maxAge) {
+            unindex(key);
+          } else {
+            index(key, offset, length);
+          }
+          offset += 4 + length;
+        }
+      } catch (EOFException e) {
+        // the last record was cut short when the application was closed
+      }
+      end = offset;
+      if (end < size) {
+        LOGGER.debug("Dropping {} bytes after the last complete file system snapshot", size - end);
+        channel.truncate(end);
+      }
+    }
+
+    /*
+     * Rewrites the file with the records in the index, dropping the oldest ones
+     * until it's below three quarters of the maximum size.
+     */
+    private void compact(long maxAge) throws IOException {
+      long[] records = index.getRecords();
+      long budget = maxSize / 4 * 3;
+      long kept = liveBytes;
+      int first = 0;
+      while (first < records.length / 2 && kept > budget) {
+        kept -= 4 + records[2 * first + 1];
+        first++;
+      }
+
+      Path tempFile = file.resolveSibling(file.getFileName() + TEMP_EXTENSION);
+      try (FileChannel temp = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(0, FORMAT_VERSION);
+        while (header.hasRemaining()) {
+          temp.write(header);
+        }
+        for (int i = first; i < records.length / 2; i++) {
+          long position = records[2 * i];
+          long count = 4 + records[2 * i + 1];
+          while (count > 0) {
+            long copied = channel.transferTo(position, count, temp);
+            position += copied;
+            count -= copied;
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.debug("Unable to compact the file system snapshots", e);
+        Files.deleteIfExists(tempFile);
+        return;
+      }
+      channel.close();
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      LOGGER.debug("Compacted the file system snapshots from {} to {} bytes", end, HEADER_LENGTH + kept);
+      load(maxAge);
+    }
+
+    List<Entry> read(Path dir, String key, long dirModified, boolean keepAttributes) {
+      long offset;
+      int length;
+      synchronized (this) {
+        long hash = OffsetIndex.hash(key);
+        offset = index.getOffset(hash);
+        if (offset < 0) {
+          return null;
+        }
+        length = index.getLength(hash);
+      }
+      try {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, offset + 4 + buffer.position()) < 0) {
+            throw new EOFException();
+          }
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+        // a different directory with the same hash
+        if (!key.equals(data.readUTF()) || data.readLong() != dirModified) {
+          return null;
+        }
+        data.readLong();
+        boolean withAttributes = data.readBoolean();
+        int count = data.readInt();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          Path path = dir.resolve(data.readUTF());
+          byte type = data.readByte();
+          SnapshotFileAttributes attributes = new SnapshotFileAttributes(path, type);
+          if (withAttributes) {
+            long size = data.readLong();
+            long modified = data.readLong();
+            if (keepAttributes) {
+              attributes = new SnapshotFileAttributes(path, type, size, modified);
+            }
+          }
+          entries.add(new Entry(path, attributes));
+        }
+        return entries;
+      } catch (IOException e) {
+        LOGGER.debug("Unable to read the snapshot of {}", dir, e);
+        return null;
+      }
+    }
+
+    void write(String key, long dirModified, List<Entry> entries, boolean keepAttributes) {
+      // entries that couldn't be read can't be stored, so the directory will be
+      // listed again next time
+      for (Entry entry : entries) {
+        if (entry.getError() != null) {
+          return;
+        }
+      }
+
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      try (DataOutputStream data = new DataOutputStream(record)) {
+        data.writeInt(0);
+        data.writeUTF(key);
+        data.writeLong(dirModified);
+        data.writeLong(System.currentTimeMillis());
+        data.writeBoolean(keepAttributes);
+        data.writeInt(entries.size());
+        for (Entry entry : entries) {
+          BasicFileAttributes attrs = entry.getAttributes();
+          data.writeUTF(entry.getPath().getFileName().toString());
+          data.writeByte(SnapshotFileAttributes.typeOf(attrs));
+          if (keepAttributes) {
+            data.writeLong(attrs.size());
+            data.writeLong(attrs.lastModifiedTime().toMillis());
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.debug("Unable to write the snapshot of {}", key, e);
+        return;
+      }
+      append(OffsetIndex.hash(key), record.toByteArray(), false);
+    }
+
+    void remove(String key) {
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      try (DataOutputStream data = new DataOutputStream(record)) {
+        data.writeInt(0);
+        data.writeUTF(key);
+        data.writeLong(0);
+        data.writeLong(System.currentTimeMillis());
+        data.writeBoolean(false);
+        data.writeInt(-1);
+      } catch (IOException e) {
+        LOGGER.debug("Unable to remove the snapshot of {}", key, e);
+        return;
+      }
+      append(OffsetIndex.hash(key), record.toByteArray(), true);
+    }
+
+    private synchronized void append(long key, byte[] record, boolean removed) {
+      if (removed) {
+        unindex(key);
+      }
+      // the file is only compacted when the application starts
+      if (!removed && (full || end + record.length > maxSize)) {
+        if (!full) {
+          LOGGER.info("The file system snapshots reached {} bytes, new listings won't be kept until a restart", end);
+          full = true;
+        }
+        return;
+      }
+      int length = record.length - 4;
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      buffer.putInt(0, length);
+      try {
+        writeFully(buffer, end);
+        if (!removed) {
+          index(key, end, length);
+        }
+        end += record.length;
+      } catch (IOException e) {
+        // the next record overwrites the part of this one that was written
+        LOGGER.debug("Unable to write to the file system snapshots", e);
+      }
+    }
+
+    private void index(long key, long offset, int length) {
+      int previous = index.put(key, offset, length);
+      liveBytes += 4 + length - (previous >= 0 ? 4 + previous : 0);
+    }
+
+    private void unindex(long key) {
+      int removed = index.remove(key);
+      if (removed >= 0) {
+        liveBytes -= 4 + removed;
+      }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+      long current = position;
+      while (buffer.hasRemaining()) {
+        current += channel.write(buffer, current);
+      }
+    }
+
+    synchronized void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.debug("Unable to close the file system snapshots", e);
+      }
+    }
+  }
+
+  /**
+   * An entry of a directory listing: its path and either its attributes or the
+   * error that happened while reading them.
+   */
+  public static final class Entry {
+    private final Path path;
+    private final BasicFileAttributes attributes;
+    private final IOException error;
+
+    Entry(Path path, BasicFileAttributes attributes) {
+      this.path = path;
+      this.attributes = attributes;
+      this.error = null;
+    }
+
+    Entry(Path path, IOException error) {
+      this.path = path;
+      this.attributes = null;
+      this.error = error;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    /**
+     * @return The attributes of the entry, or null if they couldn't be read
+     */
+    public BasicFileAttributes getAttributes() {
+      return attributes;
+    }
+
+    /**
+     * @return The error that happened while reading the attributes, or null
+     */
+    public IOException getError() {
+      return error;
+    }
+
+    public boolean isDirectory() {
+      return attributes != null && attributes.isDirectory();
+    }
+  }
+
+  /**
+   * The attributes of an entry read from a snapshot. The type, and with
+   * fileSystemSnapshot.keepAttributes the size and modification time, come
+   * from the snapshot, the other attributes are read from the file system the
+   * first time one of them is asked for.
+   */
+  private static final class SnapshotFileAttributes implements BasicFileAttributes {
+    private static final byte TYPE_FILE = 0;
+    private static final byte TYPE_DIRECTORY = 1;
+    private static final byte TYPE_SYMBOLIC_LINK = 2;
+    private static final byte TYPE_OTHER = 3;
+
+    private final Path path;
+    private final byte type;
+    // -1 when not kept in the snapshot
+    private final long size;
+    private final long modified;
+    private volatile BasicFileAttributes current;
+
+    SnapshotFileAttributes(Path path, byte type) {
+      this(path, type, -1, -1);
+    }
+
+    SnapshotFileAttributes(Path path, byte type, long size, long modified) {
+      this.path = path;
+      this.type = type;
+      this.size = size;
+      this.modified = modified;
+    }
+
+    boolean isSizeKnown() {
+      return size >= 0 || current != null;
+    }
+
+    static byte typeOf(BasicFileAttributes attrs) {
+      if (attrs.isDirectory()) {
+        return TYPE_DIRECTORY;
+      }
+      if (attrs.isSymbolicLink()) {
+        return TYPE_SYMBOLIC_LINK;
+      }
+      if (attrs.isOther()) {
+        return TYPE_OTHER;
+      }
+      return TYPE_FILE;
+    }
+
+    private BasicFileAttributes current() {
+      BasicFileAttributes result = current;
+      if (result == null) {
+        try {
+          result = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+          LOGGER.debug("Unable to read the attributes of {}", path, e);
+          result = new UnreadableFileAttributes();
+        }
+        current = result;
+      }
+      return result;
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+      return modified >= 0 ? FileTime.fromMillis(modified) : current().lastModifiedTime();
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+      return current().lastAccessTime();
+    }
+
+    @Override
+    public FileTime creationTime() {
+      return current().creationTime();
+    }
+
+    @Override
+    public boolean isRegularFile() {
+      return type == TYPE_FILE;
+    }
+
+    @Override
+    public boolean isDirectory() {
+      return type == TYPE_DIRECTORY;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+      return type == TYPE_SYMBOLIC_LINK;
+    }
+
+    @Override
+    public boolean isOther() {
+      return type == TYPE_OTHER;
+    }
+
+    @Override
+    public long size() {
+      return size >= 0 ? size : current().size();
+    }
+
+    @Override
+    public Object fileKey() {
+      return current().fileKey();
+    }
+  }
+
+  /**
+   * The attributes of an entry that can't be read anymore, e.g. a file removed
+   * after the snapshot was taken: no size and no times.
+   */
+  private static final class UnreadableFileAttributes implements BasicFileAttributes {
+    private static final FileTime EPOCH = FileTime.fromMillis(0);
+
+    @Override
+    public FileTime lastModifiedTime() {
+      return EPOCH;
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+      return EPOCH;
+    }
+
+    @Override
+    public FileTime creationTime() {
+      return EPOCH;
+    }
+
+    @Override
+    public boolean isRegularFile() {
+      return false;
+    }
+
+    @Override
+    public boolean isDirectory() {
+      return false;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+      return false;
+    }
+
+    @Override
+    public boolean isOther() {
+      return true;
+    }
+
+    @Override
+    public long size() {
+      return 0;
+    }
+
+    @Override
+    public Object fileKey() {
+      return null;
+    }
+  }
+}
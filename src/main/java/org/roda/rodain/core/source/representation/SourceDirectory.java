@@ -2,13 +2,15 @@ package org.roda.rodain.core.source.representation;
 
 import java.io.IOException;
 import java.nio.file.AccessDeniedException;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+import org.roda.rodain.core.source.FileSystemSnapshot;
+import org.roda.rodain.core.source.FileSystemSnapshot.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,8 +24,8 @@ public class SourceDirectory implements SourceItem {
   private Path path;
   private int itemsToLoad = 0;
   private TreeMap<String, SourceItem> children;
-  private DirectoryStream<Path> directoryStream;
-  private Iterator<Path> iterator;
+  private Iterator<Entry> iterator;
+  private boolean restartStream = false;
   private boolean showFiles;
 
   /**
@@ -78,8 +80,9 @@ public class SourceDirectory implements SourceItem {
    *         directory.
    */
   public SourceDirectory getChildDirectory(Path p) {
-    if (Files.isDirectory(p))
-      return (SourceDirectory) children.get(p.toString());
+    SourceItem child = children.get(p.toString());
+    if (child instanceof SourceDirectory)
+      return (SourceDirectory) child;
     return null;
   }
 
@@ -87,7 +90,7 @@ public class SourceDirectory implements SourceItem {
    * @return True if the iterator isn't closed, false otherwise.
    */
   public boolean isStreamOpen() {
-    return iterator.hasNext();
+    return restartStream || iterator.hasNext();
   }
 
   /**
@@ -103,24 +106,32 @@ public class SourceDirectory implements SourceItem {
   }
 
   /**
-   * Closes the directory stream if it hasn't been closed yet.
+   * Removes a child from the map.
+   *
+   * @param p
+   *          The path of the child
+   * @return The removed object or null if there wasn't a child with the path
+   */
+  public SourceItem removeChild(Path p) {
+    return children.remove(p.toString());
+  }
+
+  /**
+   * Releases the listing of the directory if it hasn't been released yet.
    */
   public void closeDirectoryStream() {
-    try {
-      if (directoryStream != null)
-        directoryStream.close();
-    } catch (IOException e) {
-      LOGGER.error("Error closing directory stream", e);
-    }
+    restartStream = false;
+    if (iterator != null && iterator.hasNext())
+      iterator = Collections.emptyIterator();
   }
 
   private void startDirectoryStream() {
-    if (directoryStream != null)
+    if (iterator != null && !restartStream)
       return;
 
+    restartStream = false;
     try {
-      directoryStream = Files.newDirectoryStream(path);
-      iterator = directoryStream.iterator();
+      iterator = FileSystemSnapshot.list(path).iterator();
     } catch (AccessDeniedException e) {
       LOGGER.info("No access to file", e);
     } catch (IOException e) {
@@ -148,24 +159,45 @@ public class SourceDirectory implements SourceItem {
     if (iterator != null) {
       itemsToLoad += LOADING_SIZE;
       while (iterator.hasNext() && (childrenSize + loaded < itemsToLoad)) {
-        Path file = iterator.next();
-        if (!showFiles && !Files.isDirectory(file))
+        Entry entry = iterator.next();
+        Path file = entry.getPath();
+        if (children.containsKey(file.toString()))
           continue;
-        SourceItem added = loadChild(file);
+        boolean directory = isDirectory(entry);
+        if (!showFiles && !directory)
+          continue;
+        SourceItem added = loadChild(file, directory);
         result.put(file.toString(), added);
         loaded++;
       }
-      // we can close the directory stream if there's no more files to load in
-      // the iterator
-      if (!iterator.hasNext())
-        closeDirectoryStream();
     }
     return result;
   }
 
+  private static boolean isDirectory(Entry entry) {
+    // the listing doesn't follow links, but the explorer shows linked
+    // directories as directories
+    if (entry.getAttributes() != null && entry.getAttributes().isSymbolicLink())
+      return Files.isDirectory(entry.getPath());
+    return entry.isDirectory();
+  }
+
+  /**
+   * Discards the remaining listing, so the next call to {@link #loadMore()}
+   * lists the directory again, skipping the children already loaded.
+   */
+  public void restartDirectoryStream() {
+    if (iterator != null)
+      restartStream = true;
+  }
+
   public SourceItem loadChild(Path file) {
+    return loadChild(file, Files.isDirectory(file));
+  }
+
+  private SourceItem loadChild(Path file, boolean directory) {
     SourceItem item;
-    if (Files.isDirectory(file)) {
+    if (directory) {
       item = new SourceDirectory(file, showFiles);
       addChild(file, item);
 
@@ -0,0 +1,238 @@
+package org.roda.rodain.core.template;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Template;
+
+/**
+ * A process wide cache of the compiled metadata templates.
+ * <p/>
+ * <p>
+ * Each template is read and compiled once, and compiled again only when the
+ * modification time of its file in the RODA-in folder changes. The compiled
+ * templates are thread safe, so they are shared by all the threads rendering
+ * metadata.
+ * </p>
+ * <p>
+ * There are two flavours of each template: the one used to render the
+ * metadata of the SIPs, and the one used to inspect the template, whose
+ * "field" helper collects the fields of the form in a {@link FieldCollector}
+ * passed in the context data.
+ * </p>
+ */
+public final class TemplateCache {
+  /**
+   * The name of the context data with the {@link FieldCollector} of the
+   * inspection templates.
+   */
+  public static final String FIELD_COLLECTOR = "fieldCollector";
+  private static final int MAX_INLINE_TEMPLATES = 64;
+
+  private static final Helper<Object> IF_COND_HELPER = (context, options) -> {
+    // the first parameter of ifCond is placed in the context field by the
+    // parser
+    String condition = (context == null) ? Constants.MISC_OR_OP : context.toString();
+    List<Object> values = Arrays.asList(options.params);
+    boolean display;
+    if (condition.equals(Constants.MISC_OR_OP)) {
+      display = false;
+      for (Object value : values) {
+        if (value != null) {
+          display = true;
+          break;
+        }
+      }
+    } else if (condition.equals(Constants.MISC_AND_OP)) {
+      display = true;
+      for (Object value : values) {
+        if (value == null) {
+          display = false;
+          break;
+        }
+      }
+    } else {
+      display = false;
+    }
+    return display ? options.fn() : options.inverse();
+  };
+
+  private static final Handlebars renderHandlebars = createRenderHandlebars();
+  private static final Handlebars inspectHandlebars = createInspectHandlebars();
+
+  private static final Map<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+  // templates given by content instead of type
+  private static final Map<String, Template> inlineTemplates = new ConcurrentHashMap<>();
+
+  private static final AtomicLong hits = new AtomicLong(0);
+  private static final AtomicLong misses = new AtomicLong(0);
+
+  private TemplateCache() {
+  }
+
+  private static Handlebars createRenderHandlebars() {
+    Handlebars handlebars = new Handlebars();
+    handlebars.registerHelper("field", (o, options) -> options.fn());
+    handlebars.registerHelper("ifCond", IF_COND_HELPER);
+    return handlebars;
+  }
+
+  private static Handlebars createInspectHandlebars() {
+    Handlebars handlebars = new Handlebars();
+    handlebars.registerHelper("field", (context, options) -> {
+      FieldCollector collector = options.data(FIELD_COLLECTOR);
+      if (collector != null && context != null && options.hash.containsKey("name")) {
+        collector.add((String) options.hash.get("name"), options.hash);
+      }
+      return options.fn();
+    });
+    handlebars.registerHelper("ifCond", IF_COND_HELPER);
+    // Prevent errors from unknown helpers
+    handlebars.registerHelperMissing((o, options) -> options.fn());
+    return handlebars;
+  }
+
+  /**
+   * @param templateType
+   *          The name of the template
+   * @return The content of the template file
+   */
+  public static String getContent(String templateType) {
+    return get(templateType).content;
+  }
+
+  /**
+   * @param templateType
+   *          The name of the template
+   * @return The compiled template used to render the metadata of the SIPs
+   * @throws IOException
+   *           If the template can't be compiled
+   */
+  public static Template getRenderTemplate(String templateType) throws IOException {
+    CachedTemplate cached = get(templateType);
+    synchronized (cached) {
+      if (cached.render == null) {
+        misses.incrementAndGet();
+        cached.render = renderHandlebars.compileInline(cached.content);
+      } else {
+        hits.incrementAndGet();
+      }
+      return cached.render;
+    }
+  }
+
+  /**
+   * @param templateType
+   *          The name of the template
+   * @return The compiled template used to inspect the template's fields
+   * @throws IOException
+   *           If the template can't be compiled
+   */
+  public static Template getInspectTemplate(String templateType) throws IOException {
+    CachedTemplate cached = get(templateType);
+    synchronized (cached) {
+      if (cached.inspect == null) {
+        misses.incrementAndGet();
+        cached.inspect = inspectHandlebars.compileInline(cached.content);
+      } else {
+        hits.incrementAndGet();
+      }
+      return cached.inspect;
+    }
+  }
+
+  /**
+   * @param templateContent
+   *          The content of a template
+   * @return The compiled template used to inspect the template's fields
+   * @throws IOException
+   *           If the template can't be compiled
+   */
+  public static Template getInspectTemplateForContent(String templateContent) throws IOException {
+    Template template = inlineTemplates.get(templateContent);
+    if (template != null) {
+      hits.incrementAndGet();
+      return template;
+    }
+    misses.incrementAndGet();
+    template = inspectHandlebars.compileInline(templateContent);
+    if (inlineTemplates.size() >= MAX_INLINE_TEMPLATES) {
+      inlineTemplates.clear();
+    }
+    inlineTemplates.put(templateContent, template);
+    return template;
+  }
+
+  /**
+   * @return The number of times a compiled template was found in the cache.
+   */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of times a template had to be compiled.
+   */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  private static CachedTemplate get(String templateType) {
+    long lastModified = ConfigurationManager.getTemplateLastModified(templateType);
+    CachedTemplate cached = templates.get(String.valueOf(templateType));
+    if (cached == null || cached.lastModified != lastModified) {
+      cached = new CachedTemplate(lastModified, ConfigurationManager.getTemplateContent(templateType));
+      templates.put(String.valueOf(templateType), cached);
+    }
+    return cached;
+  }
+
+  private static final class CachedTemplate {
+    private final long lastModified;
+    private final String content;
+    private Template render;
+    private Template inspect;
+
+    CachedTemplate(long lastModified, String content) {
+      this.lastModified = lastModified;
+      this.content = content;
+    }
+  }
+
+  /**
+   * Collects the fields of a template while it's applied, keeping only the
+   * first occurrence of each field.
+   */
+  public static final class FieldCollector {
+    private final Map<String, TemplateFieldValue> fields = new LinkedHashMap<>();
+
+    void add(String name, Map<String, Object> hash) {
+      if (!fields.containsKey(name)) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (Map.Entry<String, Object> entry : hash.entrySet()) {
+          attributes.put(entry.getKey(), entry.getValue().toString());
+        }
+        fields.put(name, new TemplateFieldValue(name, attributes));
+      }
+    }
+
+    /**
+     * @return The fields collected
+     */
+    public Collection<TemplateFieldValue> getFields() {
+      return fields.values();
+    }
+  }
+}
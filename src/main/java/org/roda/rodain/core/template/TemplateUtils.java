@@ -3,27 +3,27 @@ package org.roda.rodain.core.template;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.stream.StreamSource;
 
-import org.roda.rodain.core.ConfigurationManager;
-import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.schema.DescriptiveMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.Template;
 
 import net.sf.saxon.s9api.DocumentBuilder;
 import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathExecutable;
 import net.sf.saxon.s9api.XPathSelector;
 import net.sf.saxon.s9api.XdmItem;
 import net.sf.saxon.s9api.XdmNode;
@@ -35,23 +35,38 @@ import net.sf.saxon.s9api.XdmValue;
  */
 public class TemplateUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(TemplateUtils.class.getName());
+  private static final int MAX_XPATHS = 1000;
+
+  // the processor is thread safe and shared by all the documents and XPaths
+  private static final Processor PROCESSOR = new Processor(false);
+  // compiled XPath expressions, by expression
+  private static final Map<String, XPathExecutable> compiledXpaths = new ConcurrentHashMap<>();
 
   public static TreeSet<TemplateFieldValue> getTemplateFields(DescriptiveMetadata dom) {
     TreeSet<TemplateFieldValue> fields = new TreeSet<>();
     String content = dom.getContentDecoded();
-    String templateContent = dom.getTemplateType() != null
-      ? ConfigurationManager.getTemplateContent(dom.getTemplateType()) : null;
-    if (templateContent != null) {
-      fields = processTemplate(templateContent);
+    if (dom.getTemplateType() != null) {
+      fields = processTemplateByType(dom.getTemplateType());
       if (fields != null) {
+        // the metadata is parsed once for all the fields
+        XdmNode doc = null;
+        boolean parsed = false;
         for (TemplateFieldValue field : fields) {
           String xpathRaw = (String) field.get("xpath");
           if (xpathRaw != null && xpathRaw.length() > 0) {
             String[] xpaths = xpathRaw.split("##%##");
             String value;
             List<String> allValues = new ArrayList<>();
+            if (!parsed) {
+              parsed = true;
+              try {
+                doc = parseXml(content);
+              } catch (Exception e) {
+                LOGGER.error("Error parsing the metadata to apply the XPaths", e);
+              }
+            }
             for (String xpath : xpaths) {
-              allValues.addAll(applyXpath(content, xpath));
+              allValues.addAll(applyXpath(doc, xpath));
             }
             // if any of the values is different, concatenate all values in a
             // string, otherwise return the value
@@ -74,138 +89,100 @@ public class TemplateUtils {
       return null;
 
     TreeSet<TemplateFieldValue> values = new TreeSet<>();
-    Set<String> addedTags = new HashSet<>();
-    Handlebars handlebars = new Handlebars();
-
-    Template tmpl;
     try {
-      handlebars.registerHelper("field", (context, options) -> {
-        if (options.hash.containsKey("name")) {
-          String tagID = (String) options.hash.get("name");
-          if (context != null && !addedTags.contains(tagID)) {
-            HashMap<String, String> newHash = new HashMap<>();
-            for (String hashKey : options.hash.keySet()) {
-              String hashValue = options.hash.get(hashKey).toString();
-              newHash.put(hashKey, hashValue);
-            }
-            values.add(new TemplateFieldValue(tagID, new HashMap<>(newHash)));
-            addedTags.add(tagID);
-          }
-        }
-        return options.fn();
-      });
-      handlebars.registerHelper("ifCond", (context, options) -> {
-        // the first parameter of ifCond is placed in the context field by the
-        // parser
-        String condition = (context == null) ? Constants.MISC_OR_OP : context.toString();
-        List<Object> vals = Arrays.asList(options.params);
-        boolean display;
-        if (condition.equals(Constants.MISC_OR_OP)) {
-          display = false;
-          for (Object value : vals) {
-            if (value != null) {
-              display = true;
-              break;
-            }
-          }
-        } else if (condition.equals(Constants.MISC_AND_OP)) {
-          display = true;
-          for (Object value : vals) {
-            if (value == null) {
-              display = false;
-              break;
-            }
-          }
-        } else {
-          display = false;
-        }
-        return display ? options.fn() : options.inverse();
-      });
-      // Prevent errors from unknown helpers
-      handlebars.registerHelperMissing((o, options) -> options.fn());
-
-      tmpl = handlebars.compileInline(templateContent);
-      tmpl.apply(new HashMap<>());
+      applyInspectTemplate(TemplateCache.getInspectTemplateForContent(templateContent), values);
     } catch (IOException e) {
       LOGGER.error("Error getting the MetadataValue list from the template", e);
     }
     return values;
   }
 
-  public static String getXMLFromTemplate(String templateContent) {
+  /**
+   * Same as {@link #processTemplate(String)}, but using the compiled template
+   * of the template type, which is only read and compiled once.
+   *
+   * @param templateType
+   *          The name of the template
+   * @return The fields of the template
+   */
+  public static TreeSet<TemplateFieldValue> processTemplateByType(String templateType) {
     TreeSet<TemplateFieldValue> values = new TreeSet<>();
-    Set<String> addedTags = new HashSet<>();
-    Handlebars handlebars = new Handlebars();
+    try {
+      applyInspectTemplate(TemplateCache.getInspectTemplate(templateType), values);
+    } catch (IOException e) {
+      LOGGER.error("Error getting the MetadataValue list from the template", e);
+    }
+    return values;
+  }
 
-    Template tmpl;
+  public static String getXMLFromTemplate(String templateContent) {
     String xml = null;
     try {
-      handlebars.registerHelper("field", (context, options) -> {
-        if (options.hash.containsKey("name")) {
-          String tagID = (String) options.hash.get("name");
-          if (context != null && !addedTags.contains(tagID)) {
-            HashMap<String, String> newHash = new HashMap<>();
-            for (String hashKey : options.hash.keySet()) {
-              String hashValue = options.hash.get(hashKey).toString();
-              newHash.put(hashKey, hashValue);
-            }
-            values.add(new TemplateFieldValue(tagID, new HashMap<>(newHash)));
-            addedTags.add(tagID);
-          }
-        }
-        return options.fn();
-      });
-      handlebars.registerHelper("ifCond", (context, options) -> {
-        // the first parameter of ifCond is placed in the context field by the
-        // parser
-        String condition = (context == null) ? Constants.MISC_OR_OP : context.toString();
-        List<Object> vals = Arrays.asList(options.params);
-        boolean display;
-        if (condition.equals(Constants.MISC_OR_OP)) {
-          display = false;
-          for (Object value : vals) {
-            if (value != null) {
-              display = true;
-              break;
-            }
-          }
-        } else if (condition.equals(Constants.MISC_AND_OP)) {
-          display = true;
-          for (Object value : vals) {
-            if (value == null) {
-              display = false;
-              break;
-            }
-          }
-        } else {
-          display = false;
-        }
-        return display ? options.fn() : options.inverse();
-      });
-      // Prevent errors from unknown helpers
-      handlebars.registerHelperMissing((o, options) -> options.fn());
+      xml = applyInspectTemplate(TemplateCache.getInspectTemplateForContent(templateContent), new TreeSet<>());
+    } catch (IOException e) {
+      LOGGER.error("Error getting the MetadataValue list from the template", e);
+    }
+    return xml;
+  }
 
-      tmpl = handlebars.compileInline(templateContent);
-      xml = tmpl.apply(new HashMap<>());
+  /**
+   * Same as {@link #getXMLFromTemplate(String)}, but using the compiled
+   * template of the template type, which is only read and compiled once.
+   *
+   * @param templateType
+   *          The name of the template
+   * @return The XML of the empty template
+   */
+  public static String getXMLFromTemplateByType(String templateType) {
+    String xml = null;
+    try {
+      xml = applyInspectTemplate(TemplateCache.getInspectTemplate(templateType), new TreeSet<>());
     } catch (IOException e) {
       LOGGER.error("Error getting the MetadataValue list from the template", e);
     }
     return xml;
   }
 
-  public static List<String> applyXpath(String xml, String xpathString) {
-    List<String> result = new ArrayList<>();
+  /*
+   * Applies the template, adding its fields to the set, even the ones found
+   * before an error.
+   */
+  private static String applyInspectTemplate(Template tmpl, Set<TemplateFieldValue> values) throws IOException {
+    TemplateCache.FieldCollector collector = new TemplateCache.FieldCollector();
+    Context context = Context.newContext(new HashMap<>()).data(TemplateCache.FIELD_COLLECTOR, collector);
     try {
-      Processor proc = new Processor(false);
-      XPathCompiler xpath = proc.newXPathCompiler();
-      DocumentBuilder builder = proc.newDocumentBuilder();
+      return tmpl.apply(context);
+    } finally {
+      values.addAll(collector.getFields());
+      context.destroy();
+    }
+  }
 
-      // Load the XML document.
-      StringReader reader = new StringReader(xml);
-      XdmNode doc = builder.build(new StreamSource(reader));
+  public static List<String> applyXpath(String xml, String xpathString) {
+    try {
+      return applyXpath(parseXml(xml), xpathString);
+    } catch (Exception e) {
+      LOGGER.error("Error applying XPath", e);
+      return new ArrayList<>();
+    }
+  }
 
-      // Compile the xpath
-      XPathSelector selector = xpath.compile(xpathString).load();
+  /**
+   * Evaluates a XPath expression against an already parsed document, so
+   * several expressions can be evaluated parsing the document only once.
+   *
+   * @param doc
+   *          The document, parsed with {@link #parseXml(String)}
+   * @param xpathString
+   *          The XPath expression
+   * @return The string value of each item selected
+   */
+  public static List<String> applyXpath(XdmNode doc, String xpathString) {
+    List<String> result = new ArrayList<>();
+    if (doc == null)
+      return result;
+    try {
+      XPathSelector selector = getXpath(xpathString).load();
       selector.setContextItem(doc);
 
       // Evaluate the expression.
@@ -221,4 +198,32 @@ public class TemplateUtils {
     return result;
   }
 
+  /**
+   * Parses a XML document to be used by {@link #applyXpath(XdmNode, String)}.
+   *
+   * @param xml
+   *          The XML document
+   * @return The parsed document
+   * @throws SaxonApiException
+   *           If the document isn't well formed
+   */
+  public static XdmNode parseXml(String xml) throws SaxonApiException {
+    DocumentBuilder builder = PROCESSOR.newDocumentBuilder();
+    return builder.build(new StreamSource(new StringReader(xml)));
+  }
+
+  private static XPathExecutable getXpath(String xpathString) throws SaxonApiException {
+    XPathExecutable executable = compiledXpaths.get(xpathString);
+    if (executable == null) {
+      // the compiler isn't thread safe, the compiled expressions are
+      XPathCompiler compiler = PROCESSOR.newXPathCompiler();
+      executable = compiler.compile(xpathString);
+      if (compiledXpaths.size() >= MAX_XPATHS) {
+        compiledXpaths.clear();
+      }
+      compiledXpaths.put(xpathString, executable);
+    }
+    return executable;
+  }
+
 }
@@ -0,0 +1,175 @@
+package org.roda.rodain.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * The position and length of the records of a file, by a 64 bit hash of their
+ * key.
+ * <p/>
+ * <p>
+ * The entries are kept in open addressing arrays, a few tens of bytes each, so
+ * the index of millions of records fits in memory while the records stay in
+ * the file. Two keys may have the same hash, so whoever reads a record must
+ * check its key and treat a different one as a miss.
+ * </p>
+ */
+public class OffsetIndex {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private long[] offsets = new long[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * @param key
+   *          The key of a record
+   * @return The 64 bit FNV-1a hash of the key, never 0
+   */
+  public static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash != 0 ? hash : 1;
+  }
+
+  /**
+   * @return The number of records in the index
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param hash
+   *          The hash of the key
+   * @return The offset of the record, or -1 if there's none
+   */
+  public long getOffset(long hash) {
+    int slot = find(hash);
+    return keys[slot] == hash ? offsets[slot] : -1;
+  }
+
+  /**
+   * @param hash
+   *          The hash of the key
+   * @return The length of the record, or -1 if there's none
+   */
+  public int getLength(long hash) {
+    int slot = find(hash);
+    return keys[slot] == hash ? lengths[slot] : -1;
+  }
+
+  /**
+   * Adds a record, replacing the one with the same hash.
+   *
+   * @param hash
+   *          The hash of the key
+   * @param offset
+   *          The offset of the record
+   * @param length
+   *          The length of the record
+   * @return The length of the record replaced, or -1 if there wasn't one
+   */
+  public int put(long hash, long offset, int length) {
+    int slot = find(hash);
+    int previous = -1;
+    if (keys[slot] == hash) {
+      previous = lengths[slot];
+    } else {
+      if (3 * (size + 1) > 2 * keys.length) {
+        grow();
+        slot = find(hash);
+      }
+      keys[slot] = hash;
+      size++;
+    }
+    offsets[slot] = offset;
+    lengths[slot] = length;
+    return previous;
+  }
+
+  /**
+   * Removes a record.
+   *
+   * @param hash
+   *          The hash of the key
+   * @return The length of the record removed, or -1 if there wasn't one
+   */
+  public int remove(long hash) {
+    int slot = find(hash);
+    if (keys[slot] != hash) {
+      return -1;
+    }
+    int removed = lengths[slot];
+    int mask = keys.length - 1;
+    int hole = slot;
+    // move back the keys after it that would no longer be found
+    for (int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+      int home = home(keys[i]);
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        keys[hole] = keys[i];
+        offsets[hole] = offsets[i];
+        lengths[hole] = lengths[i];
+        hole = i;
+      }
+    }
+    keys[hole] = 0;
+    size--;
+    return removed;
+  }
+
+  /**
+   * @return The offsets and lengths of the records, alternately, ordered by
+   *         offset (for a file that is only appended to, from the oldest to the
+   *         newest record)
+   */
+  public long[] getRecords() {
+    long[][] entries = new long[size][];
+    int next = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        entries[next++] = new long[] {offsets[i], lengths[i]};
+      }
+    }
+    Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+    long[] result = new long[2 * size];
+    for (int i = 0; i < size; i++) {
+      result[2 * i] = entries[i][0];
+      result[2 * i + 1] = entries[i][1];
+    }
+    return result;
+  }
+
+  private int home(long hash) {
+    return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+  }
+
+  private int find(long hash) {
+    int mask = keys.length - 1;
+    int slot = home(hash);
+    while (keys[slot] != 0 && keys[slot] != hash) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    long[] oldOffsets = offsets;
+    int[] oldLengths = lengths;
+    keys = new long[oldKeys.length * 2];
+    offsets = new long[keys.length];
+    lengths = new int[keys.length];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int slot = find(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        offsets[slot] = oldOffsets[i];
+        lengths[slot] = oldLengths[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package org.roda.rodain.core.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.roda.rodain.core.ConfigurationManager;
+import org.xml.sax.SAXException;
+
+/**
+ * A process wide cache of the compiled XML schemas of the metadata types.
+ * <p/>
+ * <p>
+ * A schema is compiled, with its imports, the first time it's needed and
+ * compiled again only when the modification time of its file changes. The
+ * compiled schemas are thread safe, but their validators aren't, so each
+ * thread keeps its own validator of each schema.
+ * </p>
+ */
+public final class SchemaCache {
+  private static final Map<String, CachedSchema> schemas = new ConcurrentHashMap<>();
+  // weak keys, so the validators of outdated schemas are discarded
+  private static final ThreadLocal<Map<Schema, Validator>> validators = ThreadLocal.withInitial(WeakHashMap::new);
+
+  private static final AtomicLong hits = new AtomicLong(0);
+  private static final AtomicLong misses = new AtomicLong(0);
+
+  private SchemaCache() {
+  }
+
+  /**
+   * @param schemaType
+   *          The name of the template or metadata type of the schema
+   * @return The compiled schema, or null if there isn't a schema for the type
+   * @throws SAXException
+   *           If the schema can't be compiled
+   * @throws IOException
+   *           If the schema file can't be read
+   */
+  public static Schema getSchema(String schemaType) throws SAXException, IOException {
+    long lastModified = ConfigurationManager.getSchemaLastModified(schemaType);
+    if (lastModified < 0) {
+      schemas.remove(String.valueOf(schemaType));
+      return null;
+    }
+
+    CachedSchema cached = schemas.get(String.valueOf(schemaType));
+    if (cached != null && cached.lastModified == lastModified) {
+      hits.incrementAndGet();
+      return cached.schema;
+    }
+    return compile(schemaType, lastModified);
+  }
+
+  /**
+   * Gets a validator of the schema of a type, reusing the one of the current
+   * thread when there is one.
+   *
+   * @param schemaType
+   *          The name of the template or metadata type of the schema
+   * @return The validator, or null if there isn't a schema for the type
+   * @throws SAXException
+   *           If the schema can't be compiled
+   * @throws IOException
+   *           If the schema file can't be read
+   */
+  public static Validator getValidator(String schemaType) throws SAXException, IOException {
+    Schema schema = getSchema(schemaType);
+    if (schema == null) {
+      return null;
+    }
+    Validator validator = validators.get().computeIfAbsent(schema, Schema::newValidator);
+    validator.reset();
+    return validator;
+  }
+
+  /**
+   * @return The number of times a compiled schema was found in the cache.
+   */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of times a schema had to be compiled.
+   */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  private static synchronized Schema compile(String schemaType, long lastModified) throws SAXException, IOException {
+    // another thread may have compiled it while this one was waiting
+    CachedSchema cached = schemas.get(String.valueOf(schemaType));
+    if (cached != null && cached.lastModified == lastModified) {
+      hits.incrementAndGet();
+      return cached.schema;
+    }
+
+    misses.incrementAndGet();
+    try (InputStream schemaStream = ConfigurationManager.getSchemaFile(schemaType)) {
+      if (schemaStream == null) {
+        return null;
+      }
+      // the factory isn't thread safe, but it's only used here
+      SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+      factory.setResourceResolver(new ResourceResolver());
+      Schema schema = factory.newSchema(new StreamSource(schemaStream));
+      schemas.put(String.valueOf(schemaType), new CachedSchema(lastModified, schema));
+      return schema;
+    }
+  }
+
+  private static final class CachedSchema {
+    private final long lastModified;
+    private final Schema schema;
+
+    CachedSchema(long lastModified, Schema schema) {
+      this.lastModified = lastModified;
+      this.schema = schema;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package org.roda.rodain.core.utils;
 
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
 
 /**
  * @author Andre Pereira apereira@keep.pt
@@ -15,6 +16,16 @@ public interface TreeVisitor {
    */
   void preVisitDirectory(Path path, BasicFileAttributes attrs);
 
+  /**
+   * Method called with all the entries of a directory, before the directory
+   * and its entries are visited. Useful to process the whole listing at once.
+   * @param path The path of the directory
+   * @param entries The paths of the entries of the directory
+   */
+  default void directoryListed(Path path, List<Path> entries) {
+    // do nothing
+  }
+
   /**
    * Method called after visiting a directory
    * @param path The path of the directory
@@ -6,28 +6,59 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.source.FileSystemSnapshot;
+import org.roda.rodain.core.source.FileSystemSnapshot.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Walks the file tree of a set of paths and reports what it finds to a
+ * TreeVisitor.
+ * <p/>
+ * <p>
+ * Each directory is listed before it's visited, so the TreeVisitor receives
+ * the whole listing before the directory's entries. When the parallelism level
+ * is bigger than 1, the directories are listed by a pool of threads ahead of
+ * the visit, so that the latency of listing sibling directories (e.g. on
+ * network storage) overlaps. The TreeVisitor is always called from a single
+ * thread, in the same depth-first order as Files.walkFileTree(). The listings
+ * go through the FileSystemSnapshot, so unchanged directories aren't listed
+ * from the file system again.
+ * </p>
+ *
  * @author Andre Pereira apereira@keep.pt
  * @since 01-10-2015.
  */
 public class WalkFileTree extends Thread {
   private static final Logger LOGGER = LoggerFactory.getLogger(WalkFileTree.class.getName());
+  private static final int DEFAULT_PARALLELISM = 8;
+  // how many sibling directories are listed ahead of the one being visited,
+  // per parallel thread
+  private static final int LOOKAHEAD_PER_THREAD = 4;
   private Set<String> paths;
   private TreeVisitor handler;
   private boolean cancelled = false;
+  private int parallelism;
+  private ExecutorService listingPool;
 
   private int processedFiles = 0, processedDirs = 0;
 
   /**
-   * Creates a new WalkFileTree object.
-   * 
+   * Creates a new WalkFileTree object, using the configured parallelism level.
+   *
    * @param startPath
    *          The Set of paths used to start the file tree walking.
    * @param handler
@@ -35,63 +66,163 @@ public class WalkFileTree extends Thread {
    *          WalkFileTree object
    */
   public WalkFileTree(Set<String> startPath, TreeVisitor handler) {
+    this(startPath, handler,
+      ConfigurationManager.getConfigAsInteger(Constants.CONF_K_WALK_FILE_TREE_PARALLELISM, DEFAULT_PARALLELISM));
+  }
+
+  /**
+   * Creates a new WalkFileTree object.
+   *
+   * @param startPath
+   *          The Set of paths used to start the file tree walking.
+   * @param handler
+   *          The TreeVisitor that will use the information captured by the
+   *          WalkFileTree object
+   * @param parallelism
+   *          The number of directories that can be listed at the same time. 1
+   *          or less lists them in the walking thread.
+   */
+  public WalkFileTree(Set<String> startPath, TreeVisitor handler, int parallelism) {
     this.paths = startPath;
     this.handler = handler;
+    this.parallelism = Math.max(1, parallelism);
   }
 
   /**
-   * Iterates the paths received in the constructor and uses each one in
-   * Files.walkFileTree().
+   * Iterates the paths received in the constructor and walks the file tree of
+   * each one.
    */
   @Override
   public void run() {
-    for (String startPath : paths) {
-      handler.setStartPath(startPath);
-      final Path path = Paths.get(startPath);
-      // walkFileTree doesn't work if the start path is a file, so we call the
-      // method directly
-      try {
-        if (!Files.isDirectory(path)) {
-          handler.visitFile(path, Files.readAttributes(path, BasicFileAttributes.class));
-        } else {
-          Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-              processedFiles++;
-              handler.visitFile(file, attrs);
-              return isTerminated();
-            }
-
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-              handler.preVisitDirectory(dir, attrs);
-              return isTerminated();
-            }
-
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
-              processedDirs++;
-              handler.postVisitDirectory(dir);
-              return isTerminated();
-            }
-
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-              handler.visitFileFailed(file);
-              return isTerminated();
-            }
-          });
+    if (parallelism > 1) {
+      listingPool = Executors.newFixedThreadPool(parallelism, runnable -> {
+        Thread thread = new Thread(runnable, getName() + "-listing");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    try {
+      for (String startPath : paths) {
+        handler.setStartPath(startPath);
+        final Path path = Paths.get(startPath);
+        // walkFileTree doesn't work if the start path is a file, so we call the
+        // method directly
+        try {
+          if (!Files.isDirectory(path)) {
+            handler.visitFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+          } else {
+            walkDirectory(path, Files.readAttributes(path, BasicFileAttributes.class), submitListing(path));
+          }
+        } catch (AccessDeniedException e) {
+          LOGGER.info("Access denied to file", e);
+        } catch (IOException e) {
+          LOGGER.error("Error walking the file tree", e);
         }
-      } catch (AccessDeniedException e) {
-        LOGGER.info("Access denied to file", e);
-      } catch (IOException e) {
-        LOGGER.error("Error walking the file tree", e);
+      }
+    } finally {
+      if (listingPool != null) {
+        listingPool.shutdownNow();
       }
     }
 
     handler.end();
   }
 
+  /*
+   * Visits a directory whose listing is (being) computed by the listing pool.
+   * The listings of its sub directories are requested before visiting them,
+   * at most LOOKAHEAD_PER_THREAD * parallelism ahead, so the memory used by the
+   * pending listings stays bounded. Returns false when the walk was terminated.
+   */
+  private boolean walkDirectory(Path dir, BasicFileAttributes attrs, Future<DirectoryListing> pendingListing) {
+    DirectoryListing listing;
+    try {
+      listing = pendingListing.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      listing = new DirectoryListing(new IOException(e.getCause()));
+    }
+
+    if (listing.openError != null) {
+      if (listing.openError instanceof AccessDeniedException) {
+        LOGGER.info("Access denied to file", listing.openError);
+      }
+      handler.visitFileFailed(dir);
+      return isTerminated() == FileVisitResult.CONTINUE;
+    }
+
+    List<Entry> entries = listing.entries;
+    handler.directoryListed(dir,
+      entries.stream().filter(entry -> entry.getError() == null).map(Entry::getPath).collect(Collectors.toList()));
+    handler.preVisitDirectory(dir, attrs);
+    if (isTerminated() != FileVisitResult.CONTINUE) {
+      return false;
+    }
+
+    List<Future<DirectoryListing>> subListings = new ArrayList<>(entries.size());
+    int lookahead = LOOKAHEAD_PER_THREAD * parallelism;
+    int submitted = 0;
+    int pending = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      // keep the next directories being listed while this one is visited
+      while (submitted < entries.size() && pending < lookahead) {
+        Entry next = entries.get(submitted);
+        if (next.isDirectory()) {
+          subListings.add(submitListing(next.getPath()));
+          pending++;
+        } else {
+          subListings.add(null);
+        }
+        submitted++;
+      }
+
+      Entry entry = entries.get(i);
+      boolean keepGoing;
+      if (entry.getError() != null) {
+        handler.visitFileFailed(entry.getPath());
+        keepGoing = isTerminated() == FileVisitResult.CONTINUE;
+      } else if (entry.isDirectory()) {
+        pending--;
+        keepGoing = walkDirectory(entry.getPath(), entry.getAttributes(), subListings.get(i));
+      } else {
+        processedFiles++;
+        handler.visitFile(entry.getPath(), entry.getAttributes());
+        keepGoing = isTerminated() == FileVisitResult.CONTINUE;
+      }
+      subListings.set(i, null);
+
+      if (!keepGoing) {
+        subListings.stream().filter(f -> f != null).forEach(f -> f.cancel(true));
+        return false;
+      }
+    }
+
+    processedDirs++;
+    handler.postVisitDirectory(dir);
+    return isTerminated() == FileVisitResult.CONTINUE;
+  }
+
+  private Future<DirectoryListing> submitListing(Path dir) {
+    if (listingPool != null) {
+      return listingPool.submit(() -> listDirectory(dir));
+    }
+    return CompletableFuture.completedFuture(listDirectory(dir));
+  }
+
+  /*
+   * Lists a directory and reads the attributes of its entries. Runs in the
+   * listing pool. Like Files.walkFileTree(), symbolic links aren't followed.
+   */
+  private static DirectoryListing listDirectory(Path dir) {
+    try {
+      return new DirectoryListing(FileSystemSnapshot.list(dir));
+    } catch (IOException e) {
+      return new DirectoryListing(e);
+    }
+  }
+
   /**
    * Cancels the execution of the WalkFileTree object.
    */
@@ -113,6 +244,13 @@ public class WalkFileTree extends Thread {
     return processedFiles;
   }
 
+  /**
+   * @return The number of directories that can be listed at the same time
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
   private FileVisitResult isTerminated() {
     // terminate if the thread has been interrupted
     if (Thread.interrupted() || cancelled) {
@@ -120,4 +258,19 @@ public class WalkFileTree extends Thread {
     }
     return FileVisitResult.CONTINUE;
   }
+
+  private static final class DirectoryListing {
+    private final List<Entry> entries;
+    private final IOException openError;
+
+    DirectoryListing(List<Entry> entries) {
+      this.entries = entries;
+      this.openError = null;
+    }
+
+    DirectoryListing(IOException openError) {
+      this.entries = new ArrayList<>();
+      this.openError = openError;
+    }
+  }
 }
@@ -0,0 +1,292 @@
+package org.roda.rodain.core.utils;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded in-memory cache of the content of the files of some folders,
+ * invalidated when the files of those folders change.
+ * <p/>
+ * <p>
+ * Only the files directly inside a watched folder are cached; any other file
+ * is read every time. A daemon thread watches the folders and, when something
+ * changes in one of them, discards its cached files. The absence of a file is
+ * cached too, since its creation is also noticed. If the folders can't be
+ * watched, nothing is cached.
+ * </p>
+ * <p>
+ * On some platforms (e.g. macOS) the JDK WatchService polls the folders, only
+ * every few seconds, instead of being notified by the operating system. There
+ * the modification time of a cached file is also checked every time it's used,
+ * so a changed file is never served stale; the cache then only saves reading
+ * and decoding the file.
+ * </p>
+ */
+public class WatchedFileCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WatchedFileCache.class.getName());
+
+  private final int maxEntries;
+  private final long maxSize;
+  private final Set<Path> watched = new HashSet<>();
+  // access ordered, so the eldest entry is the least recently used
+  private final LinkedHashMap<Path, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0;
+  // incremented on every change, so content read before a change isn't cached
+  private long generation = 0;
+  private WatchService watchService;
+  // set when the watch service polls, so its events may come seconds late
+  private volatile boolean checkModified = false;
+
+  /**
+   * Creates a new WatchedFileCache object.
+   *
+   * @param maxEntries
+   *          The maximum number of files cached
+   * @param maxSize
+   *          The maximum total size, in bytes, of the files cached
+   */
+  public WatchedFileCache(int maxEntries, long maxSize) {
+    this.maxEntries = maxEntries;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Starts caching the files of a folder.
+   *
+   * @param folder
+   *          The folder
+   */
+  public synchronized void watch(Path folder) {
+    if (folder == null || watched.contains(folder)) {
+      return;
+    }
+    try {
+      if (watchService == null) {
+        watchService = FileSystems.getDefault().newWatchService();
+        checkModified = isPolling(watchService);
+        Thread watcher = new Thread(this::run, "WatchedFileCache");
+        watcher.setDaemon(true);
+        watcher.start();
+      }
+      folder.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      watched.add(folder);
+    } catch (IOException | ClosedWatchServiceException e) {
+      LOGGER.warn("Unable to watch the folder '{}', its files won't be cached", folder, e);
+    }
+  }
+
+  /**
+   * @param path
+   *          The path of the file
+   * @return True if the file exists
+   */
+  public boolean exists(Path path) {
+    return get(path).lastModified >= 0;
+  }
+
+  /**
+   * @param path
+   *          The path of the file
+   * @return The modification time of the file, in milliseconds, or -1 if it
+   *         doesn't exist
+   */
+  public long getLastModified(Path path) {
+    return get(path).lastModified;
+  }
+
+  /**
+   * @param path
+   *          The path of the file
+   * @return The content of the file, or null if it doesn't exist
+   * @throws IOException
+   *           If the file can't be read
+   */
+  public byte[] getBytes(Path path) throws IOException {
+    CachedFile cached = get(path);
+    if (cached.lastModified < 0) {
+      return null;
+    }
+    if (cached.bytes == null) {
+      long startGeneration = currentGeneration();
+      byte[] bytes = Files.readAllBytes(path);
+      synchronized (this) {
+        if (startGeneration == generation && files.get(path) == cached && cached.bytes == null) {
+          cached.bytes = bytes;
+          size += bytes.length;
+          evict();
+        }
+      }
+      return bytes;
+    }
+    return cached.bytes;
+  }
+
+  /**
+   * @param path
+   *          The path of the file
+   * @param decoder
+   *          Converts the content of the file to text
+   * @return The decoded content of the file, or null if it doesn't exist
+   * @throws IOException
+   *           If the file can't be read
+   */
+  public String getText(Path path, Function<byte[], String> decoder) throws IOException {
+    CachedFile cached = get(path);
+    if (cached.text != null) {
+      return cached.text;
+    }
+    byte[] bytes = getBytes(path);
+    if (bytes == null) {
+      return null;
+    }
+    String text = decoder.apply(bytes);
+    synchronized (this) {
+      if (files.get(path) == cached && cached.bytes == bytes) {
+        cached.text = text;
+      }
+    }
+    return text;
+  }
+
+  private CachedFile get(Path path) {
+    CachedFile cached;
+    synchronized (this) {
+      cached = files.get(path);
+    }
+    if (cached != null) {
+      if (!checkModified) {
+        return cached;
+      }
+      long startGeneration = currentGeneration();
+      long lastModified = readLastModified(path);
+      if (lastModified == cached.lastModified) {
+        return cached;
+      }
+      // changed, but the watch service didn't tell yet
+      synchronized (this) {
+        if (files.get(path) == cached) {
+          remove(path, cached);
+        }
+      }
+      return put(path, new CachedFile(lastModified), startGeneration);
+    }
+
+    long startGeneration = currentGeneration();
+    return put(path, new CachedFile(readLastModified(path)), startGeneration);
+  }
+
+  private CachedFile put(Path path, CachedFile cached, long startGeneration) {
+    synchronized (this) {
+      if (startGeneration == generation && watched.contains(path.getParent())) {
+        files.put(path, cached);
+        evict();
+      }
+    }
+    return cached;
+  }
+
+  private static long readLastModified(Path path) {
+    try {
+      return Files.getLastModifiedTime(path).toMillis();
+    } catch (NoSuchFileException e) {
+      return -1;
+    } catch (IOException e) {
+      LOGGER.debug("Unable to get the modification time of '{}'", path, e);
+      return -1;
+    }
+  }
+
+  private void remove(Path path, CachedFile cached) {
+    if (cached.bytes != null) {
+      size -= cached.bytes.length;
+    }
+    files.remove(path);
+  }
+
+  /*
+   * The JDK falls back to sun.nio.fs.PollingWatchService where the operating
+   * system can't notify the changes.
+   */
+  private static boolean isPolling(WatchService watchService) {
+    return watchService.getClass().getName().contains("Polling");
+  }
+
+  private synchronized long currentGeneration() {
+    return generation;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Path, CachedFile>> iterator = files.entrySet().iterator();
+    while ((files.size() > maxEntries || size > maxSize) && iterator.hasNext()) {
+      CachedFile eldest = iterator.next().getValue();
+      if (eldest.bytes != null) {
+        size -= eldest.bytes.length;
+      }
+      iterator.remove();
+    }
+  }
+
+  private synchronized void invalidate(Path folder) {
+    generation++;
+    Iterator<Map.Entry<Path, CachedFile>> iterator = files.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Path, CachedFile> entry = iterator.next();
+      if (folder.equals(entry.getKey().getParent())) {
+        if (entry.getValue().bytes != null) {
+          size -= entry.getValue().bytes.length;
+        }
+        iterator.remove();
+      }
+    }
+  }
+
+  private void run() {
+    for (;;) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      // any event, including OVERFLOW, discards the files of the folder
+      key.pollEvents();
+      Path folder = (Path) key.watchable();
+      invalidate(folder);
+      if (!key.reset()) {
+        synchronized (this) {
+          watched.remove(folder);
+        }
+        invalidate(folder);
+      }
+    }
+  }
+
+  private static final class CachedFile {
+    private final long lastModified;
+    private volatile byte[] bytes;
+    private volatile String text;
+
+    CachedFile(long lastModified) {
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,334 @@
+package org.roda.rodain.core.validation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.schema.DescriptiveMetadata;
+import org.roda.rodain.core.schema.Sip;
+import org.roda.rodain.core.utils.SchemaCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Validates the descriptive metadata of many description objects against
+ * their schemas, before the exportation, and writes a report of the ones that
+ * aren't valid.
+ * <p/>
+ * <p>
+ * The description objects are validated in parallel using the cached schemas.
+ * The metadata validated is the one that would be exported, with the values
+ * of the form applied to the template. The metadata without a schema is
+ * skipped, since it isn't validated when exported either. The report is
+ * written, as CSV and JSON, even when the validation is canceled.
+ * </p>
+ */
+public class BatchMetadataValidator extends Thread {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchMetadataValidator.class.getName());
+  private static final String REPORT_NAME = "validation_report";
+
+  private static final String CSV_FIELD_SIP_ID = "ID";
+  private static final String CSV_FIELD_SIP_TITLE = "title";
+  private static final String CSV_FIELD_METADATA_ID = "metadata";
+  private static final String CSV_FIELD_SCHEMA = "schema";
+  private static final String CSV_FIELD_LINE = "line";
+  private static final String CSV_FIELD_COLUMN = "column";
+  private static final String CSV_FIELD_MESSAGE = "message";
+
+  private final Collection<Sip> descriptionObjects;
+  private final Path outputPath;
+  private final int parallelism;
+
+  private final ConcurrentLinkedQueue<ValidationFailure> failures = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger validatedCount = new AtomicInteger(0);
+  private final AtomicInteger skippedCount = new AtomicInteger(0);
+  private final int metadataCount;
+  private volatile boolean canceled = false;
+  private volatile boolean finished = false;
+  private volatile ExecutorService workers;
+  private volatile long startedTime;
+  private Path csvReport;
+  private Path jsonReport;
+
+  /**
+   * Creates a new BatchMetadataValidator object.
+   *
+   * @param descriptionObjects
+   *          The description objects to validate
+   * @param outputPath
+   *          The folder where the report is written
+   */
+  public BatchMetadataValidator(Collection<Sip> descriptionObjects, Path outputPath) {
+    super("BatchMetadataValidator");
+    setDaemon(true);
+    this.descriptionObjects = new ArrayList<>(descriptionObjects);
+    this.outputPath = outputPath;
+    this.parallelism = Math.max(1, ConfigurationManager.getConfigAsInteger(
+      Constants.CONF_K_METADATA_VALIDATION_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+    int count = 0;
+    for (Sip sip : this.descriptionObjects) {
+      count += sip.getMetadata().size();
+    }
+    metadataCount = count;
+  }
+
+  @Override
+  public void run() {
+    startedTime = System.currentTimeMillis();
+    workers = Executors.newFixedThreadPool(parallelism);
+    try {
+      for (Sip sip : descriptionObjects) {
+        if (canceled) {
+          break;
+        }
+        try {
+          workers.execute(() -> validate(sip));
+        } catch (RejectedExecutionException e) {
+          // the pool was shut down by cancel() after the check above
+          break;
+        }
+      }
+      workers.shutdown();
+      while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+        LOGGER.debug("Validated {} of {} descriptive metadata, {} invalid", validatedCount.get(), metadataCount,
+          failures.size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      workers.shutdownNow();
+    }
+
+    writeReport();
+    LOGGER.info("Validated {} descriptive metadata in {} ms: {} invalid, {} without schema{}", validatedCount.get(),
+      System.currentTimeMillis() - startedTime, failures.size(), skippedCount.get(), canceled ? " (canceled)" : "");
+    LOGGER.debug("Schemas: {} cached, {} compiled", SchemaCache.getHits(), SchemaCache.getMisses());
+    finished = true;
+  }
+
+  private void validate(Sip sip) {
+    for (DescriptiveMetadata dom : sip.getMetadata()) {
+      if (canceled) {
+        return;
+      }
+      String schemaType = dom.getSchemaType();
+      try {
+        Validator validator = SchemaCache.getValidator(schemaType);
+        if (validator == null) {
+          skippedCount.incrementAndGet();
+        } else {
+          String content = sip.getMetadataWithReplaces(dom);
+          validator.validate(new StreamSource(new StringReader(content == null ? "" : content)));
+        }
+      } catch (SAXParseException e) {
+        failures.add(new ValidationFailure(sip, dom, schemaType, e.getLineNumber(), e.getColumnNumber(),
+          e.getMessage()));
+      } catch (SAXException | IOException | RuntimeException e) {
+        failures.add(new ValidationFailure(sip, dom, schemaType, -1, -1, String.valueOf(e.getMessage())));
+      }
+      validatedCount.incrementAndGet();
+    }
+  }
+
+  private void writeReport() {
+    List<ValidationFailure> sorted = new ArrayList<>(failures);
+    sorted.sort(Comparator.comparing(ValidationFailure::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+    StringBuilder name = new StringBuilder();
+    name.append(REPORT_NAME);
+    name.append(" - ");
+    name.append(new SimpleDateFormat(Constants.DATE_FORMAT_1).format(new Date()));
+
+    Path csvFile = outputPath.resolve(name + ".csv");
+    CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator(System.lineSeparator());
+    try (BufferedWriter fileWriter = Files.newBufferedWriter(csvFile);
+      CSVPrinter csvFilePrinter = new CSVPrinter(fileWriter, csvFileFormat)) {
+      csvFilePrinter.printRecord(CSV_FIELD_SIP_ID, CSV_FIELD_SIP_TITLE, CSV_FIELD_METADATA_ID, CSV_FIELD_SCHEMA,
+        CSV_FIELD_LINE, CSV_FIELD_COLUMN, CSV_FIELD_MESSAGE);
+      for (ValidationFailure failure : sorted) {
+        csvFilePrinter.printRecord(failure.getId(), failure.getTitle(), failure.getMetadataId(),
+          failure.getSchema(), failure.getLine(), failure.getColumn(), failure.getMessage());
+      }
+      csvReport = csvFile;
+    } catch (IOException e) {
+      LOGGER.error("Error creating validation report", e);
+    }
+
+    Path jsonFile = outputPath.resolve(name + ".json");
+    try (BufferedWriter fileWriter = Files.newBufferedWriter(jsonFile)) {
+      ObjectMapper objectMapper = new ObjectMapper();
+      objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+      objectMapper.writeValue(fileWriter, sorted);
+      jsonReport = jsonFile;
+    } catch (IOException e) {
+      LOGGER.error("Error creating validation report", e);
+    }
+  }
+
+  /**
+   * Stops the validation. The report of the metadata validated so far is
+   * still written.
+   */
+  public void cancel() {
+    canceled = true;
+    ExecutorService pool = workers;
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * @return True if the validation was canceled
+   */
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * @return True when the validation ended and the report was written
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * @return The number of descriptive metadata to validate
+   */
+  public int getMetadataCount() {
+    return metadataCount;
+  }
+
+  /**
+   * @return The number of descriptive metadata already validated, including
+   *         the invalid ones and the ones without schema
+   */
+  public int getValidatedCount() {
+    return validatedCount.get();
+  }
+
+  /**
+   * @return The number of invalid descriptive metadata found so far
+   */
+  public int getErrorCount() {
+    return failures.size();
+  }
+
+  /**
+   * @return The number of descriptive metadata without a schema
+   */
+  public int getSkippedCount() {
+    return skippedCount.get();
+  }
+
+  /**
+   * @return The progress of the validation, between 0 and 1
+   */
+  public double getProgress() {
+    return metadataCount == 0 ? 1 : validatedCount.get() / (double) metadataCount;
+  }
+
+  /**
+   * @return The time when the validation started
+   */
+  public long getStartedTime() {
+    return startedTime;
+  }
+
+  /**
+   * @return The folder where the report is written
+   */
+  public Path getOutputPath() {
+    return outputPath;
+  }
+
+  /**
+   * @return The path of the CSV report, or null if it wasn't written
+   */
+  public Path getCsvReport() {
+    return csvReport;
+  }
+
+  /**
+   * @return The path of the JSON report, or null if it wasn't written
+   */
+  public Path getJsonReport() {
+    return jsonReport;
+  }
+
+  /**
+   * A descriptive metadata that isn't valid against its schema.
+   */
+  public static final class ValidationFailure {
+    private final String id;
+    private final String title;
+    private final String metadataId;
+    private final String schema;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    ValidationFailure(Sip sip, DescriptiveMetadata dom, String schema, int line, int column, String message) {
+      this.id = sip.getId();
+      this.title = sip.getTitle();
+      this.metadataId = dom.getId();
+      this.schema = schema;
+      this.line = line;
+      this.column = column;
+      this.message = message;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public String getMetadataId() {
+      return metadataId;
+    }
+
+    public String getSchema() {
+      return schema;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    public int getColumn() {
+      return column;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+}
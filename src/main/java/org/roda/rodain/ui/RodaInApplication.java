@@ -27,6 +27,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -41,9 +42,11 @@ import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.Controller;
 import org.roda.rodain.core.I18n;
 import org.roda.rodain.core.PathCollection;
+import org.roda.rodain.core.project.ProjectFile;
 import org.roda.rodain.core.schema.Sip;
 import org.roda.rodain.core.sip.SipRepresentation;
 import org.roda.rodain.core.utils.OpenPathInExplorer;
+import org.roda.rodain.core.validation.BatchMetadataValidator;
 import org.roda.rodain.ui.creation.CreationModalPreparation;
 import org.roda.rodain.ui.creation.CreationModalStage;
 import org.roda.rodain.ui.creation.RenameModal;
@@ -62,6 +65,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -172,8 +176,7 @@ public class RodaInApplication extends Application {
   private static void closeApp() {
     Controller.exportClassificationScheme(schemePane.getSchemaNodes(),
             ConfigurationManager.getRodainPath().resolve(".plan.temp").toString());
-    // 20170308 hsilva: disabled watchservice
-    // fileExplorer.closeWatcher();
+    FileExplorerPane.closeWatcher();
     VisitorStack.end();
     Footer.getInstance().cancelMemoryAutoUpdater();
     Platform.exit();
@@ -262,6 +265,28 @@ public class RodaInApplication extends Application {
     creationStage.setRoot(pane);
   }
 
+  /**
+   * Validates the descriptive metadata of all the description objects against
+   * their schemas, writing a report of the invalid ones to a folder chosen by
+   * the user.
+   */
+  public static void validateMetadata() {
+    // force the edits to the metadata text area to be saved
+    inspectionPane.saveMetadata();
+
+    DirectoryChooser chooser = new DirectoryChooser();
+    chooser.setTitle(I18n.t(Constants.I18N_DIRECTORY_CHOOSER_TITLE));
+    File selectedDirectory = chooser.showDialog(stage);
+    if (selectedDirectory == null)
+      return;
+
+    BatchMetadataValidator validator = new BatchMetadataValidator(getAllDescriptionObjects().keySet(),
+      selectedDirectory.toPath());
+    ModalStage modalStage = new ModalStage(stage);
+    modalStage.setRoot(new ValidationModal(validator, modalStage), false);
+    validator.start();
+  }
+
   /**
    * Shows a pane to rename a representation.
    */
@@ -427,6 +452,34 @@ public class RodaInApplication extends Application {
     language.getItems().addAll(items);
   }
 
+  private static boolean confirmReset(String title, String header) {
+    Alert dlg = new Alert(Alert.AlertType.CONFIRMATION);
+    dlg.initStyle(StageStyle.UNDECORATED);
+    dlg.setHeaderText(header);
+    dlg.setTitle(title);
+    dlg.setContentText(I18n.t(Constants.I18N_MAIN_CONFIRM_RESET_CONTENT));
+    dlg.initModality(Modality.APPLICATION_MODAL);
+    dlg.initOwner(stage);
+    dlg.showAndWait();
+    return dlg.getResult().getButtonData() == ButtonBar.ButtonData.OK_DONE;
+  }
+
+  private void resetProject() {
+    PathCollection.reset();
+    inspectionPane = new InspectionPane(stage);
+    fileExplorer = new FileExplorerPane(stage);
+    schemePane = new SchemaPane(stage);
+    Footer.reset(fileExplorer);
+    mainPane.setCenter(createSplitPane());
+  }
+
+  private static FileChooser createProjectChooser() {
+    FileChooser chooser = new FileChooser();
+    chooser.setTitle(I18n.t(Constants.I18N_FILE_CHOOSER_TITLE));
+    chooser.getExtensionFilters().add(
+      new FileChooser.ExtensionFilter(I18n.t(Constants.I18N_MAIN_PROJECT_FILES), "*" + ProjectFile.EXTENSION));
+    return chooser;
+  }
   private void createMenu() {
     MenuBar menu = new MenuBar();
     Menu menuFile = new Menu(I18n.t(Constants.I18N_MAIN_FILE));
@@ -481,33 +534,49 @@ public class RodaInApplication extends Application {
     createSIPs.setAccelerator(KeyCombination.keyCombination("Ctrl+X"));
     createSIPs.setOnAction(event -> exportSIPs());
 
+    final MenuItem validateMetadata = new MenuItem(I18n.t(Constants.I18N_MAIN_VALIDATE_METADATA));
+    validateMetadata.setOnAction(event -> validateMetadata());
+
     final MenuItem quit = new MenuItem(I18n.t(Constants.I18N_MAIN_QUIT));
     quit.setAccelerator(KeyCombination.keyCombination("Ctrl+Q"));
     quit.setOnAction(event -> closeApp());
     final MenuItem reset = new MenuItem(I18n.t(Constants.I18N_MAIN_RESET));
     reset.setAccelerator(KeyCombination.keyCombination("Ctrl+N"));
     reset.setOnAction(event -> {
-      Alert dlg = new Alert(Alert.AlertType.CONFIRMATION);
-      dlg.initStyle(StageStyle.UNDECORATED);
-      dlg.setHeaderText(I18n.t(Constants.I18N_MAIN_CONFIRM_RESET_HEADER));
-      dlg.setTitle(I18n.t(Constants.I18N_MAIN_RESET));
-      dlg.setContentText(I18n.t(Constants.I18N_MAIN_CONFIRM_RESET_CONTENT));
-      dlg.initModality(Modality.APPLICATION_MODAL);
-      dlg.initOwner(stage);
-      dlg.showAndWait();
-
-      if (dlg.getResult().getButtonData() == ButtonBar.ButtonData.OK_DONE) {
-        PathCollection.reset();
-        inspectionPane = new InspectionPane(stage);
-        fileExplorer = new FileExplorerPane(stage);
-        schemePane = new SchemaPane(stage);
-        Footer.reset(fileExplorer);
-        mainPane.setCenter(createSplitPane());
+      if (confirmReset(I18n.t(Constants.I18N_MAIN_RESET), I18n.t(Constants.I18N_MAIN_CONFIRM_RESET_HEADER))) {
+        resetProject();
         schemePane.showHelp();
       }
     });
 
-    menuFile.getItems().addAll(reset, openFolder, createSIPs, openConfigurationFolder, quit);
+    final MenuItem openProject = new MenuItem(I18n.t(Constants.I18N_MAIN_OPEN_PROJECT));
+    openProject.setOnAction(event -> {
+      FileChooser chooser = createProjectChooser();
+      File selectedFile = chooser.showOpenDialog(stage);
+      if (selectedFile == null)
+        return;
+      if (confirmReset(I18n.t(Constants.I18N_MAIN_OPEN_PROJECT),
+        I18n.t(Constants.I18N_MAIN_CONFIRM_OPEN_PROJECT_HEADER))) {
+        resetProject();
+        schemePane.loadProject(selectedFile.toPath());
+      }
+    });
+
+    final MenuItem saveProject = new MenuItem(I18n.t(Constants.I18N_MAIN_SAVE_PROJECT));
+    saveProject.setAccelerator(KeyCombination.keyCombination("Ctrl+S"));
+    saveProject.setOnAction(event -> {
+      FileChooser chooser = createProjectChooser();
+      File selectedFile = chooser.showSaveDialog(stage);
+      if (selectedFile == null)
+        return;
+      Path file = selectedFile.toPath();
+      if (!file.getFileName().toString().endsWith(ProjectFile.EXTENSION)) {
+        file = file.resolveSibling(file.getFileName() + ProjectFile.EXTENSION);
+      }
+      schemePane.saveProject(file);
+    });
+
+    menuFile.getItems().addAll(reset, openProject, saveProject, openFolder, createSIPs, validateMetadata, openConfigurationFolder, quit);
 
     // Classification scheme
     final MenuItem createCS = new MenuItem(I18n.t(Constants.I18N_MAIN_CREATE_CS));
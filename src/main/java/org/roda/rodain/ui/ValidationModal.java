@@ -0,0 +1,175 @@
+package org.roda.rodain.ui;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.I18n;
+import org.roda.rodain.core.utils.OpenPathInExplorer;
+import org.roda.rodain.core.validation.BatchMetadataValidator;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+
+/**
+ * Shows the progress of the validation of all the descriptive metadata, and
+ * lets the user cancel it or open the folder of the report when it ends.
+ */
+public class ValidationModal extends BorderPane {
+  private final BatchMetadataValidator validator;
+  private final Stage stage;
+  private final Timer timer = new Timer(true);
+
+  private Label subtitleSuccess, subtitleError, skipped, elapsedTime;
+  private ProgressBar progress;
+  private HBox finishedBox;
+
+  /**
+   * Creates a pane to show the progress of the validation.
+   *
+   * @param validator
+   *          The validator, already started
+   * @param stage
+   *          The stage of the pane
+   */
+  public ValidationModal(BatchMetadataValidator validator, Stage stage) {
+    this.validator = validator;
+    this.stage = stage;
+    getStyleClass().add(Constants.CSS_SIPCREATOR);
+
+    createTop();
+    createCenter();
+    createBottom();
+
+    createUpdateTask();
+    // the validation and the updates stop when the window is closed
+    stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> {
+      timer.cancel();
+      if (!validator.isFinished()) {
+        validator.cancel();
+      }
+    });
+  }
+
+  private void createTop() {
+    VBox top = new VBox(5);
+    top.setPadding(new Insets(10, 10, 10, 0));
+    top.getStyleClass().add(Constants.CSS_HBOX);
+    top.setAlignment(Pos.CENTER);
+
+    Label title = new Label(I18n.t(Constants.I18N_VALIDATIONMODAL_TITLE));
+    title.setId("title");
+
+    top.getChildren().add(title);
+    setTop(top);
+  }
+
+  private void createCenter() {
+    VBox center = new VBox();
+    center.setAlignment(Pos.CENTER_LEFT);
+    center.setPadding(new Insets(0, 10, 10, 10));
+
+    HBox subtitles = new HBox(5);
+    HBox space = new HBox();
+    HBox.setHgrow(space, Priority.ALWAYS);
+
+    subtitleSuccess = new Label("");
+    subtitleSuccess.setId("subtitle");
+
+    subtitleError = new Label("");
+    subtitleError.setId("subtitle");
+
+    subtitles.getChildren().addAll(subtitleSuccess, space, subtitleError);
+
+    progress = new ProgressBar();
+    progress.setPadding(new Insets(5, 0, 10, 0));
+    progress.setPrefSize(380, 25);
+    progress.prefWidthProperty().bind(center.widthProperty().subtract(20));
+
+    HBox elapsed = new HBox(10);
+    Label lElapsed = new Label(I18n.t(Constants.I18N_CREATIONMODALPROCESSING_ELAPSED));
+    lElapsed.getStyleClass().add(Constants.CSS_BOLDTEXT);
+    lElapsed.setMinWidth(70);
+    elapsedTime = new Label("");
+    elapsed.getChildren().addAll(lElapsed, elapsedTime);
+
+    skipped = new Label("");
+
+    center.getChildren().addAll(subtitles, progress, elapsed, skipped);
+    setCenter(center);
+  }
+
+  private void createBottom() {
+    HBox bottom = new HBox();
+    bottom.setPadding(new Insets(0, 10, 10, 10));
+    bottom.setAlignment(Pos.CENTER_LEFT);
+    Button cancel = new Button(I18n.t(Constants.I18N_CANCEL));
+    // the report of what was validated so far is still written
+    cancel.setOnAction(event -> validator.cancel());
+
+    bottom.getChildren().add(cancel);
+    setBottom(bottom);
+
+    finishedBox = new HBox(10);
+    finishedBox.setPadding(new Insets(0, 10, 10, 10));
+    finishedBox.setAlignment(Pos.CENTER_RIGHT);
+    Button close = new Button(I18n.t(Constants.I18N_CLOSE));
+    Button open = new Button(I18n.t(Constants.I18N_CREATIONMODALPROCESSING_OPEN_FOLDER));
+
+    close.setOnAction(event -> stage.close());
+    open.setOnAction(event -> OpenPathInExplorer.open(validator.getOutputPath()));
+
+    finishedBox.getChildren().addAll(open, close);
+  }
+
+  private void createUpdateTask() {
+    TimerTask updater = new TimerTask() {
+      @Override
+      public void run() {
+        Platform.runLater(() -> update());
+      }
+    };
+    timer.schedule(updater, 0, 200);
+  }
+
+  private void update() {
+    int validated = validator.getValidatedCount();
+    int size = validator.getMetadataCount();
+    int errors = validator.getErrorCount();
+    double prog = validator.getProgress();
+
+    if (errors > 0) {
+      subtitleError.setText(errors + I18n.t(Constants.I18N_VALIDATIONMODAL_ERRORS));
+    }
+    subtitleSuccess
+      .setText(String.format(I18n.t(Constants.I18N_VALIDATIONMODAL_SUBTITLE), validated, size, (int) (prog * 100)));
+    progress.setProgress(prog);
+    if (validator.getSkippedCount() > 0) {
+      skipped.setText(String.format(I18n.t(Constants.I18N_VALIDATIONMODAL_SKIPPED), validator.getSkippedCount()));
+    }
+
+    long startedTime = validator.getStartedTime();
+    if (startedTime > 0) {
+      long millis = System.currentTimeMillis() - startedTime;
+      long second = (millis / 1000) % 60;
+      long minute = (millis / (1000 * 60)) % 60;
+      long hour = (millis / (1000 * 60 * 60)) % 24;
+      elapsedTime.setText(String.format("%02d:%02d:%02d", hour, minute, second));
+    }
+
+    if (validator.isFinished()) {
+      timer.cancel();
+      setBottom(finishedBox);
+    }
+  }
+}
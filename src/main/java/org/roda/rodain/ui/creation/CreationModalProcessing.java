@@ -278,6 +278,10 @@ public class CreationModalProcessing extends BorderPane {
    *          The thrown exception
    */
   public static void showError(Sip descriptionObject, Exception ex) {
+    if (stage == null) {
+      // exporting without the graphical interface, the error is only logged
+      return;
+    }
     Platform.runLater(() -> {
       if (displayErrorMessage) {
         addErrorMessage();
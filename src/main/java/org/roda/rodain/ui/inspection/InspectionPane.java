@@ -2,8 +2,6 @@ package org.roda.rodain.ui.inspection;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
@@ -532,7 +530,7 @@ public class InspectionPane extends BorderPane {
             Pair selectedInCombo = metadataCombo.getSelectionModel().getSelectedItem();
             if (selectedInCombo != null) {
               DescriptiveMetadata dom = (DescriptiveMetadata) selectedInCombo.getKey();
-              if (Controller.validateSchema(metaText.getText(), dom.getSchema())) {
+              if (Controller.validateSchema(metaText.getText(), dom.getSchemaType())) {
                 result = true;
               }
             }
@@ -565,7 +563,7 @@ public class InspectionPane extends BorderPane {
       DescriptiveMetadata dom = (DescriptiveMetadata) selectedInCombo.getKey();
       try {
         if ((dom.getCreatorOption() != MetadataOption.TEMPLATE)
-          && !Controller.validateSchema(metaText.getText(), dom.getSchema())) {
+          && !Controller.validateSchema(metaText.getText(), dom.getSchemaType())) {
           noForm();
           return;
         }
@@ -1476,13 +1474,13 @@ public class InspectionPane extends BorderPane {
   private TreeItem<Object> recCreateSipContent(TreeNode node, TreeItem parent) {
     SipContentDirectory result;
     Path path = node.getPath();
-    if (Files.isDirectory(path))
+    if (node.isDirectory())
       result = new SipContentDirectory(node, parent);
     else
       return new SipContentFile(path, parent);
 
-    for (String key : node.getKeys()) {
-      TreeItem<Object> temp = recCreateSipContent(node.get(key), result);
+    for (TreeNode child : node.getChildren()) {
+      TreeItem<Object> temp = recCreateSipContent(child, result);
       result.getChildren().add(temp);
     }
     result.sortChildren();
@@ -1598,8 +1596,7 @@ public class InspectionPane extends BorderPane {
         showMetadataPane(show);
       }
 
-      InputStream schema = dom.getSchema();
-      if (schema == null) {
+      if (!dom.hasSchema()) {
         topButtons.remove(validationButton);
       } else {
         topButtons.add(validationButton);
@@ -2194,6 +2191,10 @@ public class InspectionPane extends BorderPane {
 
       SipContentDirectory parent = (SipContentDirectory) target;
       for (TreeNode treeNode : result) {
+        if (dir.getTreeNode().hasChild(treeNode.getPath())) {
+          // already in the folder
+          continue;
+        }
         dir.getTreeNode().add(treeNode);
         TreeItem<Object> startingItem = recCreateSipContent(treeNode, parent);
         parent.getChildren().add(startingItem);
@@ -2252,7 +2253,9 @@ public class InspectionPane extends BorderPane {
     if (target instanceof SipContentDirectory) {
       SipContentDirectory dir = (SipContentDirectory) target;
       for (TreeNode tn : result) {
-        dir.getTreeNode().add(tn);
+        if (!dir.getTreeNode().hasChild(tn.getPath())) {
+          dir.getTreeNode().add(tn);
+        }
       }
     } else {
       currentSIPNode.getSip().addDocumentation(result);
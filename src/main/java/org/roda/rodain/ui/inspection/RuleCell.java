@@ -1,5 +1,7 @@
 package org.roda.rodain.ui.inspection;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
@@ -14,7 +16,6 @@ import org.roda.rodain.ui.rules.ui.RuleModalController;
 import org.roda.rodain.ui.schema.ui.SchemaNode;
 import org.roda.rodain.ui.source.items.SourceTreeDirectory;
 import org.roda.rodain.ui.source.items.SourceTreeFile;
-import org.roda.rodain.ui.source.items.SourceTreeItem;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
@@ -147,15 +148,16 @@ public class RuleCell extends HBox implements Observer {
     lType.setWrapText(true);
 
     // source items
-    Set<SourceTreeItem> source = rule.getSource();
     Set<String> dirs = new TreeSet<>();
     Set<String> fil = new TreeSet<>();
-    for (SourceTreeItem it : source) {
-      if (it instanceof SourceTreeDirectory)
-        dirs.add(it.getValue());
+    rule.getSourcePaths().forEach((path, isDirectory) -> {
+      Path fileName = Paths.get(path).getFileName();
+      String name = fileName != null ? fileName.toString() : path;
+      if (isDirectory)
+        dirs.add(name);
       else
-        fil.add(it.getValue());
-    }
+        fil.add(name);
+    });
 
     HBox contentSummary = buildContentSummary(dirs, fil);
 
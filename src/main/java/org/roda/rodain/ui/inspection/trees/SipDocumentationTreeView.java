@@ -134,6 +134,13 @@ public class SipDocumentationTreeView extends AutoscrollTreeView {
                 return;
               }
 
+              // The target folder already has the path, e.g. the item was dropped
+              // on its own folder
+              if (targetRaw instanceof SipContentDirectory
+                && ((SipContentDirectory) targetRaw).getTreeNode().hasChild(source.getPath())) {
+                continue;
+              }
+
               // Remove the path from the parent
               if (sourceParent instanceof SipContentDirectory) {
                 SipContentDirectory castedSourceParent = (SipContentDirectory) sourceParent;
@@ -1,11 +1,13 @@
 package org.roda.rodain.ui.rules;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
@@ -33,7 +35,6 @@ import org.roda.rodain.core.sip.creators.SipSingle;
 import org.roda.rodain.core.sip.creators.SipsWithStructure;
 import org.roda.rodain.core.utils.TreeVisitor;
 import org.roda.rodain.ui.schema.ui.SchemaNode;
-import org.roda.rodain.ui.schema.ui.SipPreviewNode;
 import org.roda.rodain.ui.source.items.SourceTreeDirectory;
 import org.roda.rodain.ui.source.items.SourceTreeItem;
 import org.roda.rodain.ui.utils.FontAwesomeImageCreator;
@@ -52,6 +53,8 @@ public class Rule extends Observable implements Observer, Comparable {
   private static int ruleCount = 0;
 
   private Set<SourceTreeItem> source;
+  // map of source path -> true if it's a directory
+  private Map<String, Boolean> sourcePaths;
   private String templateType, metadataVersion, parentID;
   private Path metadataPath;
   private RuleType assocType;
@@ -61,10 +64,11 @@ public class Rule extends Observable implements Observer, Comparable {
 
   // map of SipPreview id -> SipPreview
   private Map<String, SipPreview> sips;
-  // map of SipPreview id -> SipPreviewNode
-  private Map<String, SipPreviewNode> sipNodes;
+  // map of SipPreview id -> SipPreview, of the SIPs added to the node of the
+  // rule (the others are inside the nodes created by the rule)
+  private Map<String, SipPreview> topLevelSips;
   private Set<SchemaNode> schemaNodes;
-  private Image itemIconBlack, itemIconWhite, dObjIconBlack, dObjIconWhite, fileIconBlack, fileIconWhite;
+  private Image dObjIconBlack, dObjIconWhite;
   private Integer id;
 
   /**
@@ -92,24 +96,51 @@ public class Rule extends Observable implements Observer, Comparable {
     this.parentID = parentID;
     filters = new HashSet<>();
     id = ruleCount;
+    sourcePaths = new LinkedHashMap<>();
+    for (SourceTreeItem sti : source) {
+      sourcePaths.put(sti.getPath(), sti instanceof SourceTreeDirectory);
+    }
 
     sips = new ConcurrentHashMap<>();
-    sipNodes = new ConcurrentHashMap<>();
+    topLevelSips = new ConcurrentHashMap<>();
     schemaNodes = Collections.synchronizedSet(new HashSet<>());
 
     createIcon();
     createFilters();
   }
 
-  private void createIcon() {
-    itemIconBlack = FontAwesomeImageCreator.generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_ITEM));
-    itemIconWhite = FontAwesomeImageCreator.generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_ITEM),
-      Color.WHITE);
+  /**
+   * Creates a rule restored from a saved project. The rule can't be applied
+   * again, its SIPs and nodes are added with
+   * {@link #restoreSip(SipPreview, boolean)} and
+   * {@link #restoreSchemaNode(SchemaNode)}.
+   *
+   * @param sourcePaths
+   *          The paths used as source, mapped to true if they're directories
+   * @see #Rule(Set, RuleType, Path, String, MetadataOption, String, String,
+   *      String)
+   */
+  public Rule(Map<String, Boolean> sourcePaths, RuleType assocType, Path metadataPath, String template,
+    MetadataOption metadataOption, String metadataType, String metadataVersion, String parentID) {
+    ruleCount++;
+    this.source = Collections.emptySet();
+    this.sourcePaths = sourcePaths;
+    this.assocType = assocType;
+    this.templateType = template;
+    this.metadataVersion = metadataVersion;
+    this.metadataPath = metadataPath;
+    this.metadataOption = metadataOption;
+    this.metadataType = metadataType;
+    this.parentID = parentID;
+    filters = new HashSet<>();
+    id = ruleCount;
 
-    fileIconBlack = FontAwesomeImageCreator.generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_FILE));
-    fileIconWhite = FontAwesomeImageCreator.generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_FILE),
-      Color.WHITE);
+    sips = new ConcurrentHashMap<>();
+    topLevelSips = new ConcurrentHashMap<>();
+    schemaNodes = Collections.synchronizedSet(new HashSet<>());
+  }
 
+  private void createIcon() {
     dObjIconBlack = FontAwesomeImageCreator
       .generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_AGGREGATION));
     dObjIconWhite = FontAwesomeImageCreator
@@ -144,6 +175,37 @@ public class Rule extends Observable implements Observer, Comparable {
     return source;
   }
 
+  /**
+   * @return The paths used as source, mapped to true if they're directories.
+   */
+  public Map<String, Boolean> getSourcePaths() {
+    return sourcePaths;
+  }
+
+  public Path getMetadataPath() {
+    return metadataPath;
+  }
+
+  public String getTemplateType() {
+    return templateType;
+  }
+
+  public MetadataOption getMetadataOption() {
+    return metadataOption;
+  }
+
+  public String getMetadataType() {
+    return metadataType;
+  }
+
+  public String getMetadataVersion() {
+    return metadataVersion;
+  }
+
+  public String getParentID() {
+    return parentID;
+  }
+
   /**
    * @return The id of the rule.
    */
@@ -166,10 +228,11 @@ public class Rule extends Observable implements Observer, Comparable {
   }
 
   /**
-   * @return The set of SipPreviewNodes
+   * @return The SIPs added to the node of the rule, the others are inside the
+   *         nodes created by the rule.
    */
-  public Collection<SipPreviewNode> getSipNodes() {
-    return sipNodes.values();
+  public Collection<SipPreview> getTopLevelSips() {
+    return topLevelSips.values();
   }
 
   public Set<SchemaNode> getSchemaNodes() {
@@ -244,9 +307,9 @@ public class Rule extends Observable implements Observer, Comparable {
   /**
    * Updates the rule when notified by a SipPreviewCreator or a SipPreview.
    * <p>
-   * When the notification is from a SipPreviewCreator, the method creates new
-   * SipPreviewNodes until a maximum of 100 items. Finally, notifies the rule's
-   * observers of changes.
+   * When the notification is from a SipPreviewCreator, the method adds the new
+   * SIPs to the rule. Their nodes are only created by the SchemaNode when
+   * they're shown. Finally, notifies the rule's observers of changes.
    * </p>
    * <p/>
    * <p>
@@ -270,16 +333,8 @@ public class Rule extends Observable implements Observer, Comparable {
         while (visit.hasNext()) {
           SipPreview sipPreview = visit.getNext();
           sipPreview.setParentId(parentID);
-          SipPreviewNode sipNode;
-          if ("internal.itemLevel".equals(sipPreview.getDescriptionlevel())) {
-            sipNode = new SipPreviewNode(sipPreview, itemIconBlack, itemIconWhite);
-          } else {
-            sipNode = new SipPreviewNode(sipPreview, fileIconBlack, fileIconWhite);
-          }
-
-          sipPreview.addObserver(sipNode);
           sipPreview.addObserver(this);
-          sipNodes.put(sipPreview.getId(), sipNode);
+          topLevelSips.put(sipPreview.getId(), sipPreview);
         }
       }
       setChanged();
@@ -287,7 +342,7 @@ public class Rule extends Observable implements Observer, Comparable {
     } else if (o instanceof SipPreview) {
       SipPreview sip = (SipPreview) o;
       if (sip.isRemoved()) {
-        sipNodes.remove(sip.getId());
+        topLevelSips.remove(sip.getId());
         sips.remove(sip.getId());
         setChanged();
 
@@ -308,7 +363,7 @@ public class Rule extends Observable implements Observer, Comparable {
         if (arg instanceof String && Constants.EVENT_REMOVE_FROM_RULE.equals(arg)) {
           String sipId = sip.getId();
           sips.remove(sipId);
-          sipNodes.remove(sipId);
+          topLevelSips.remove(sipId);
         }
       }
     }
@@ -320,51 +375,76 @@ public class Rule extends Observable implements Observer, Comparable {
     Map<Path, SipPreview> sipPreviewMap = visitor.getSipPreviewMap();
 
     for (PseudoItem item : tree) {
-      TreeItem<String> treeItem = recCreateNode(item, sipPreviewMap, descriptionObjectMap);
-      if (treeItem instanceof SipPreviewNode) {
-        SipPreviewNode sipPreviewNode = (SipPreviewNode) treeItem;
-        sipNodes.put(sipPreviewNode.getSip().getId(), sipPreviewNode);
-      }
-      if (treeItem instanceof SchemaNode) {
-        SchemaNode schemaNode = (SchemaNode) treeItem;
-        schemaNodes.add(schemaNode);
+      if (item instanceof PseudoSIP) {
+        SipPreview sipPreview = createSip((PseudoSIP) item, sipPreviewMap);
+        topLevelSips.put(sipPreview.getId(), sipPreview);
+      } else {
+        schemaNodes.add(recCreateNode((PseudoDescriptionObject) item, sipPreviewMap, descriptionObjectMap));
       }
     }
   }
 
-  private TreeItem<String> recCreateNode(PseudoItem pseudoItem, Map<Path, SipPreview> sipPreviewMap,
+  private SipPreview createSip(PseudoSIP pseudoSIP, Map<Path, SipPreview> sipPreviewMap) {
+    SipPreview sipPreview = sipPreviewMap.get(pseudoSIP.getNode().getPath());
+    sipPreview.setParentId(parentID);
+    sips.put(sipPreview.getId(), sipPreview);
+    sipPreview.addObserver(this);
+    return sipPreview;
+  }
+
+  /*
+   * Only the nodes of the description objects are created, the SIPs are added
+   * to them and only get a node when they're shown.
+   */
+  private SchemaNode recCreateNode(PseudoDescriptionObject pdo, Map<Path, SipPreview> sipPreviewMap,
     Map<Path, Sip> descriptionObjectMap) {
-    if (pseudoItem instanceof PseudoSIP) {
-      PseudoSIP pseudoSIP = (PseudoSIP) pseudoItem;
-      SipPreview sipPreview = sipPreviewMap.get(pseudoSIP.getNode().getPath());
-      sipPreview.setParentId(parentID);
-      sips.put(sipPreview.getId(), sipPreview);
-      SipPreviewNode sipNode;
-      if ("internal.itemLevel".equals(sipPreview.getDescriptionlevel())) {
-        sipNode = new SipPreviewNode(sipPreview, itemIconBlack, itemIconWhite);
+    Sip dobj = descriptionObjectMap.get(pdo.getPath());
+    SchemaNode schemaNode = new SchemaNode(dobj, dObjIconBlack, dObjIconWhite);
+    List<TreeItem<String>> children = new ArrayList<>();
+    for (PseudoItem pi : pdo.getChildren()) {
+      if (pi instanceof PseudoSIP) {
+        schemaNode.addSip(id.toString(), createSip((PseudoSIP) pi, sipPreviewMap));
       } else {
-        sipNode = new SipPreviewNode(sipPreview, fileIconBlack, fileIconWhite);
-      }
-      sipPreview.addObserver(sipNode);
-      sipPreview.addObserver(this);
-      return sipNode;
-    } else {
-      PseudoDescriptionObject pdo = (PseudoDescriptionObject) pseudoItem;
-      Sip dobj = descriptionObjectMap.get(pdo.getPath());
-      SchemaNode schemaNode = new SchemaNode(dobj, dObjIconBlack, dObjIconWhite);
-      for (PseudoItem pi : pdo.getChildren()) {
-        TreeItem<String> child = recCreateNode(pi, sipPreviewMap, descriptionObjectMap);
+        SchemaNode child = recCreateNode((PseudoDescriptionObject) pi, sipPreviewMap, descriptionObjectMap);
         schemaNode.addChild(id.toString(), child);
-        schemaNode.getChildren().add(child);
+        children.add(child);
       }
-      schemaNode.sortChildren();
-      return schemaNode;
     }
+    schemaNode.getChildren().addAll(children);
+    schemaNode.sortChildren();
+    return schemaNode;
+  }
+
+  /**
+   * Adds a SIP restored from a saved project to the rule.
+   *
+   * @param sipPreview
+   *          The SIP
+   * @param topLevel
+   *          True if the SIP is a child of the node of the rule, false if it's
+   *          inside a node created by the rule
+   */
+  public void restoreSip(SipPreview sipPreview, boolean topLevel) {
+    sipPreview.addObserver(this);
+    sips.put(sipPreview.getId(), sipPreview);
+    if (topLevel) {
+      topLevelSips.put(sipPreview.getId(), sipPreview);
+    }
+  }
+
+  /**
+   * Adds a node created by the rule, restored from a saved project.
+   *
+   * @param schemaNode
+   *          A child of the node of the rule
+   */
+  public void restoreSchemaNode(SchemaNode schemaNode) {
+    schemaNodes.add(schemaNode);
   }
 
   /**
-   * Sets all the SIPs from the rule as removed and removes all the
-   * SipPreviewNodes.
+   * Sets all the SIPs from the rule as removed and removes them from the
+   * rule.
    */
   public void remove() {
     Task<Void> task = new Task<Void>() {
@@ -375,17 +455,17 @@ public class Rule extends Observable implements Observer, Comparable {
           sip.setRemoved();
           for (SipRepresentation sr : sip.getRepresentations()) {
             for (TreeNode tn : sr.getFiles()) {
-              paths += tn.getFullTreePaths().size();
+              paths += tn.getFullTreeSize();
             }
           }
         }
 
-        sipNodes.clear();
+        topLevelSips.clear();
         for (SipPreview sip : sips.values()) {
           for (SipRepresentation sr : sip.getRepresentations()) {
             for (TreeNode tn : sr.getFiles()) {
-              for (String path : tn.getFullTreePaths()) {
-                PathCollection.addPath(Paths.get(path), PathState.NORMAL);
+              for (Path path : tn.getFullTreePathsAsPaths()) {
+                PathCollection.addPath(path, PathState.NORMAL);
                 removedPaths++;
                 float result = (float) removedPaths / paths;
                 setChanged();
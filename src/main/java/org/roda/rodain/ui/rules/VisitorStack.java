@@ -1,12 +1,21 @@
 package org.roda.rodain.ui.rules;
 
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.Constants.VisitorState;
 import org.roda.rodain.core.utils.TreeVisitor;
 import org.roda.rodain.core.utils.WalkFileTree;
@@ -16,21 +25,45 @@ import org.slf4j.LoggerFactory;
 import javafx.concurrent.Task;
 
 /**
+ * Schedules the TreeVisitors created by the rules.
+ * <p/>
+ * <p>
+ * Visitors whose source paths don't overlap run at the same time (up to the
+ * configured parallelism level). A visitor whose source paths overlap the ones
+ * of a visitor added before it only starts after that visitor finishes.
+ * </p>
+ * <p>
+ * Only the visitors that didn't finish yet are compared with a new one. The
+ * finished visitors are dropped, except the last few, so their state can still
+ * be asked for.
+ * </p>
+ *
  * @author Andre Pereira apereira@keep.pt
  * @since 06-10-2015.
  */
 public class VisitorStack extends Observable {
   private static final Logger LOGGER = LoggerFactory.getLogger(VisitorStack.class.getName());
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final int MAX_FINISHED = 100;
   private static ExecutorService visitors;
-  private HashMap<String, Future> futures;
-  private String runningTask;
+  // the visitors that didn't finish yet
+  private final Map<String, ScheduledVisitor> scheduled;
+  // the last visitors that finished, by the order they finished
+  private final Map<String, ScheduledVisitor> recentlyFinished;
 
   /**
    * Creates a new VisitorStack object.
    */
   public VisitorStack() {
-    visitors = Executors.newSingleThreadExecutor();
-    futures = new HashMap<>();
+    visitors = Executors.newFixedThreadPool(Math.max(1,
+      ConfigurationManager.getConfigAsInteger(Constants.CONF_K_VISITOR_STACK_PARALLELISM, DEFAULT_PARALLELISM)));
+    scheduled = new ConcurrentHashMap<>();
+    recentlyFinished = Collections.synchronizedMap(new LinkedHashMap<String, ScheduledVisitor>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ScheduledVisitor> eldest) {
+        return size() > MAX_FINISHED;
+      }
+    });
   }
 
   /**
@@ -38,7 +71,9 @@ public class VisitorStack extends Observable {
    * <p/>
    * <p>
    * Creates a new WalkFileTree with the set of paths and TreeVisitor received
-   * as parameter. Wraps it in a Task and adds the Task to an ExecutorService.
+   * as parameter. Wraps it in a Task and adds the Task to an ExecutorService
+   * as soon as all the previously added visitors with overlapping paths have
+   * finished.
    * </p>
    *
    * @param paths
@@ -48,44 +83,64 @@ public class VisitorStack extends Observable {
    * @see TreeVisitor
    * @see ExecutorService
    */
-  public WalkFileTree add(Set<String> paths, TreeVisitor vis) {
+  public synchronized WalkFileTree add(Set<String> paths, TreeVisitor vis) {
     final WalkFileTree walker = new WalkFileTree(paths, vis);
-    final String id = vis.getId();
-    Task toRun = new Task<Void>() {
+    final ScheduledVisitor entry = new ScheduledVisitor(paths);
+    Task<Void> toRun = new Task<Void>() {
       @Override
       public Void call() {
+        entry.startTime = System.currentTimeMillis();
         update();
-        walker.start();
         try {
+          walker.start();
           walker.join();
         } catch (InterruptedException e) {
           LOGGER.debug(e.getMessage());
           walker.interrupt();
+        } finally {
+          entry.finish();
         }
         return null;
       }
     };
-    toRun.setOnRunning(event -> {
-      runningTask = id;
-      update();
-    });
+    entry.task = toRun;
     // notify the observers when the task finishes
-    toRun.setOnSucceeded(event -> {
-      runningTask = null;
-      update();
-    });
+    toRun.setOnSucceeded(event -> update());
 
     toRun.setOnCancelled(event -> {
       walker.interrupt();
       update();
     });
 
-    Future fut = visitors.submit(toRun);
-    futures.put(vis.getId(), fut);
+    CompletableFuture<?>[] overlapping = scheduled.values().stream()
+      .filter(other -> !other.finished.isDone() && other.overlaps(entry)).map(other -> other.finished)
+      .toArray(CompletableFuture[]::new);
+    final String id = vis.getId();
+    scheduled.put(id, entry);
+    entry.finished.whenComplete((result, error) -> retire(id, entry));
+    CompletableFuture.allOf(overlapping).whenComplete((result, error) -> {
+      if (!toRun.isDone()) {
+        visitors.submit(toRun);
+      }
+    });
     update();
     return walker;
   }
 
+  private synchronized void retire(String id, ScheduledVisitor entry) {
+    if (scheduled.get(id) == entry) {
+      LOGGER.info("Visitor {} finished, waited {} ms and ran {} ms", id, getQueueTime(id), getRunTime(id));
+    }
+    if (scheduled.remove(id, entry)) {
+      recentlyFinished.put(id, entry);
+    }
+  }
+
+  private ScheduledVisitor getEntry(String visitorId) {
+    ScheduledVisitor entry = scheduled.get(visitorId);
+    return entry != null ? entry : recentlyFinished.get(visitorId);
+  }
+
   private void update() {
     setChanged();
     notifyObservers();
@@ -94,23 +149,52 @@ public class VisitorStack extends Observable {
   /**
    * @param visitorId
    *          The id of the TreeVisitor we want to know the state of.
-   * @return The state of the TreeVisitor.
+   * @return The state of the TreeVisitor. A visitor that finished before the
+   *         last 100 visitors that finished is reported as not submitted.
    * @see TreeVisitor
    */
   public VisitorState getState(String visitorId) {
-    Future fut = futures.get(visitorId);
-    if (fut == null)
+    ScheduledVisitor entry = getEntry(visitorId);
+    if (entry == null)
       return VisitorState.VISITOR_NOTSUBMITTED;
-    if (runningTask != null && visitorId.equals(runningTask))
-      return VisitorState.VISITOR_RUNNING;
-    if (fut.isDone())
-      return VisitorState.VISITOR_DONE;
-    if (fut.isCancelled())
+    if (entry.task.isCancelled())
       return VisitorState.VISITOR_CANCELLED;
+    if (entry.task.isDone())
+      return VisitorState.VISITOR_DONE;
+    if (entry.startTime != 0)
+      return VisitorState.VISITOR_RUNNING;
     else
       return VisitorState.VISITOR_QUEUED;
   }
 
+  /**
+   * @param visitorId
+   *          The id of the TreeVisitor.
+   * @return The time, in milliseconds, the TreeVisitor waited to start (until
+   *         now if it's still queued), or -1 if it wasn't submitted.
+   */
+  public long getQueueTime(String visitorId) {
+    ScheduledVisitor entry = getEntry(visitorId);
+    if (entry == null)
+      return -1;
+    long start = entry.startTime != 0 ? entry.startTime : System.currentTimeMillis();
+    return start - entry.submitTime;
+  }
+
+  /**
+   * @param visitorId
+   *          The id of the TreeVisitor.
+   * @return The time, in milliseconds, the TreeVisitor has been running (until
+   *         now if it's still running), or 0 if it hasn't started.
+   */
+  public long getRunTime(String visitorId) {
+    ScheduledVisitor entry = getEntry(visitorId);
+    if (entry == null || entry.startTime == 0)
+      return 0;
+    long end = entry.endTime != 0 ? entry.endTime : System.currentTimeMillis();
+    return end - entry.startTime;
+  }
+
   /**
    * Cancels the execution of the TreeVisitor received as parameter.
    *
@@ -121,8 +205,14 @@ public class VisitorStack extends Observable {
    */
   public boolean cancel(TreeVisitor vis) {
     boolean result = false;
-    if (vis != null && futures.containsKey(vis.getId())) {
-      result = futures.get(vis.getId()).cancel(true);
+    ScheduledVisitor entry = vis != null ? getEntry(vis.getId()) : null;
+    if (entry != null) {
+      result = entry.task.cancel(true);
+      // a visitor cancelled before starting never runs, so release the ones
+      // waiting for it here
+      if (entry.startTime == 0) {
+        entry.finish();
+      }
     }
     return result;
   }
@@ -136,4 +226,35 @@ public class VisitorStack extends Observable {
     if (visitors != null)
       visitors.shutdownNow();
   }
+
+  private static final class ScheduledVisitor {
+    private final List<Path> paths;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private final long submitTime = System.currentTimeMillis();
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+    private Task<Void> task;
+
+    ScheduledVisitor(Set<String> paths) {
+      this.paths = paths.stream().map(Paths::get).collect(Collectors.toList());
+    }
+
+    boolean overlaps(ScheduledVisitor other) {
+      for (Path path : paths) {
+        for (Path otherPath : other.paths) {
+          if (path.startsWith(otherPath) || otherPath.startsWith(path)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    void finish() {
+      if (endTime == 0) {
+        endTime = System.currentTimeMillis();
+      }
+      finished.complete(null);
+    }
+  }
 }
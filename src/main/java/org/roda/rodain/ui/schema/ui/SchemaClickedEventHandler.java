@@ -1,6 +1,7 @@
 package org.roda.rodain.ui.schema.ui;
 
 import javafx.event.EventHandler;
+import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.input.MouseEvent;
 
@@ -23,13 +24,22 @@ public class SchemaClickedEventHandler implements EventHandler<MouseEvent> {
 
   /**
    * Updates the InspectionPane with the items that has received the clicked
-   * event.
+   * event. When the item is the "load more" item, loads more SIPs of its
+   * parent.
    *
    * @param mouseEvent
    *          The mouse event triggered.
    */
   @Override
   public void handle(MouseEvent mouseEvent) {
+    if (mouseEvent.getClickCount() == 1) {
+      TreeItem<String> item = treeView.getSelectionModel().getSelectedItem();
+      if (item instanceof SchemaLoadMoreNode) {
+        SchemaNode parent = (SchemaNode) item.getParent();
+        treeView.getSelectionModel().clearSelection();
+        parent.loadMoreSips();
+      }
+    }
     /*
      * if (mouseEvent.getClickCount() == 2) {
      * treeView.getSelectionModel().clearSelection(); }
@@ -14,7 +14,7 @@ public class SchemaComparator implements Comparator<TreeItem<String>> {
    * <p/>
    * <p>
    * If the items are of the same class, compares its titles/names. Otherwise,
-   * puts the SchemaNodes in the top.
+   * puts the SchemaNodes in the top and the "load more" item in the bottom.
    * </p>
    *
    * @param o1
@@ -26,6 +26,10 @@ public class SchemaComparator implements Comparator<TreeItem<String>> {
    */
   @Override
   public int compare(TreeItem o1, TreeItem o2) {
+    // the "load more" item must appear last
+    if (o1 instanceof SchemaLoadMoreNode || o2 instanceof SchemaLoadMoreNode) {
+      return Boolean.compare(o1 instanceof SchemaLoadMoreNode, o2 instanceof SchemaLoadMoreNode);
+    }
     if (o1.getClass() == o2.getClass()) { // sort items of the same class by
       // value
       String s1 = null, s2 = null;
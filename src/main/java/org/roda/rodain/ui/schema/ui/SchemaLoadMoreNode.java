@@ -0,0 +1,24 @@
+package org.roda.rodain.ui.schema.ui;
+
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.I18n;
+
+import javafx.scene.control.TreeItem;
+import javafx.scene.image.Image;
+
+/**
+ * The last child of a SchemaNode when only part of its SIPs have nodes in the
+ * tree. Clicking it creates the nodes of the next SIPs.
+ *
+ * @see SchemaNode#loadMoreSips()
+ */
+public class SchemaLoadMoreNode extends TreeItem<String> {
+  public static final Image icon = new Image(ClassLoader.getSystemResourceAsStream(Constants.RSC_ICON_LIST_ADD));
+
+  /**
+   * Creates a new SchemaLoadMoreNode object.
+   */
+  public SchemaLoadMoreNode() {
+    super(I18n.t(Constants.I18N_SOURCE_TREE_LOAD_MORE_TITLE));
+  }
+}
@@ -2,8 +2,10 @@ package org.roda.rodain.ui.schema.ui;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
@@ -23,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.scene.control.TreeItem;
 import javafx.scene.image.Image;
@@ -35,17 +38,32 @@ import javafx.scene.paint.Color;
  */
 public class SchemaNode extends TreeItem<String> implements Observer {
   private static final Logger LOGGER = LoggerFactory.getLogger(SchemaNode.class.getName());
+  // the number of SIP nodes created each time the node is expanded or more
+  // SIPs are requested
+  private static final int LOADING_SIZE = 100;
+  private static final Comparator<SipPreview> SIP_COMPARATOR = Comparator.comparing(SipPreview::getTitle,
+    Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
 
   private Sip dob;
   private Map<String, Integer> rules;
   private Map<String, Rule> ruleObjects;
-  private Map<String, Set<SipPreviewNode>> sips;
+  // map of rule id -> SIPs, the nodes of the SIPs only exist while they're
+  // shown
+  private Map<String, Set<SipPreview>> sips;
+  // map of rule id -> SIPs sorted by title, sorted when they're first shown
+  // and dropped when the SIPs of the rule change
+  private Map<String, List<SipPreview>> sortedSips = new HashMap<>();
+  private Map<SipPreview, SipPreviewNode> sipNodes;
+  private int loadedSips = 0;
   private Map<String, Set<SchemaNode>> ruleNodes;
   private Image iconBlack, iconWhite;
   private boolean blackIconSelected = true;
   private boolean removed = false;
 
   private Set<SchemaNode> schemaNodes;
+  // the description objects of the classification scheme indexed by parent
+  // id, while the children of this node haven't been created
+  private Map<String, List<Sip>> pendingSchemeChildren;
 
   /**
    * Creates a new SchemaNode
@@ -58,9 +76,11 @@ public class SchemaNode extends TreeItem<String> implements Observer {
     dob = dobject;
     rules = new HashMap<>();
     sips = new HashMap<>();
+    sipNodes = new LinkedHashMap<>();
     ruleObjects = new HashMap<>();
     schemaNodes = new HashSet<>();
     ruleNodes = new HashMap<>();
+    expandedProperty().addListener((observable, oldValue, newValue) -> updateSipNodes());
     if (dob.getDescriptionlevel() != null)
       updateDescriptionLevel(dob.getDescriptionlevel());
   }
@@ -70,14 +90,152 @@ public class SchemaNode extends TreeItem<String> implements Observer {
     dob = dobject;
     rules = new HashMap<>();
     sips = new HashMap<>();
+    sipNodes = new LinkedHashMap<>();
     ruleObjects = new HashMap<>();
     schemaNodes = new HashSet<>();
     ruleNodes = new HashMap<>();
+    expandedProperty().addListener((observable, oldValue, newValue) -> updateSipNodes());
 
     this.iconBlack = iconBlack;
     this.iconWhite = iconWhite;
   }
 
+  /**
+   * Defers the creation of the classification scheme children of the node
+   * until they're needed, e.g. when the node is expanded. The children get the
+   * same index, so the tree is created one level at a time.
+   *
+   * @param childrenIndex
+   *          The description objects of the classification scheme indexed by
+   *          parent id
+   */
+  public void setSchemeChildren(Map<String, List<Sip>> childrenIndex) {
+    if (childrenIndex.containsKey(dob.getId())) {
+      pendingSchemeChildren = childrenIndex;
+    }
+  }
+
+  private void loadSchemeChildren() {
+    Map<String, List<Sip>> childrenIndex = pendingSchemeChildren;
+    pendingSchemeChildren = null;
+    List<TreeItem<String>> children = new ArrayList<>();
+    for (Sip child : childrenIndex.get(dob.getId())) {
+      SchemaNode node = new SchemaNode(child);
+      node.setUpdateSIP(true);
+      node.setSchemeChildren(childrenIndex);
+      addChildrenNode(node);
+      children.add(node);
+    }
+    super.getChildren().addAll(children);
+    sortChildren();
+  }
+
+  @Override
+  public ObservableList<TreeItem<String>> getChildren() {
+    if (pendingSchemeChildren != null) {
+      loadSchemeChildren();
+    }
+    return super.getChildren();
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return pendingSchemeChildren == null && !hasSips() && super.isLeaf();
+  }
+
+  private boolean hasSips() {
+    for (Set<SipPreview> set : sips.values()) {
+      if (!set.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates the nodes of the SIPs when the SchemaNode is expanded, up to the
+   * number of SIPs already loaded, and recycles them when it's collapsed. The
+   * nodes of the SIPs that are still shown are reused, and the SIPs of each
+   * rule are only sorted again after they change.
+   */
+  public void updateSipNodes() {
+    List<TreeItem<String>> children = new ArrayList<>(super.getChildren());
+    children.removeIf(child -> child instanceof SipPreviewNode || child instanceof SchemaLoadMoreNode);
+
+    Map<SipPreview, SipPreviewNode> shown = new LinkedHashMap<>();
+    if (isExpanded() && hasSips()) {
+      int total = 0;
+      for (Set<SipPreview> set : sips.values()) {
+        total += set.size();
+      }
+      int count = Math.min(Math.max(loadedSips, LOADING_SIZE), total);
+      for (SipPreview sip : getFirstSips(count)) {
+        SipPreviewNode node = sipNodes.remove(sip);
+        if (node == null) {
+          node = new SipPreviewNode(sip);
+          sip.addObserver(node);
+        }
+        shown.put(sip, node);
+      }
+      children.addAll(shown.values());
+      if (count < total) {
+        children.add(new SchemaLoadMoreNode());
+      }
+      loadedSips = count;
+    } else {
+      loadedSips = 0;
+    }
+
+    // the remaining nodes aren't shown anymore
+    for (SipPreviewNode node : sipNodes.values()) {
+      node.getSip().deleteObserver(node);
+    }
+    sipNodes = shown;
+    Collections.sort(children, new SchemaComparator());
+    super.getChildren().setAll(children);
+  }
+
+  /*
+   * The first SIPs of the node by title, merging the sorted SIPs of its rules.
+   */
+  private List<SipPreview> getFirstSips(int count) {
+    List<List<SipPreview>> lists = new ArrayList<>();
+    for (Map.Entry<String, Set<SipPreview>> entry : sips.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        lists.add(sortedSips.computeIfAbsent(entry.getKey(), id -> {
+          List<SipPreview> sorted = new ArrayList<>(entry.getValue());
+          sorted.sort(SIP_COMPARATOR);
+          return sorted;
+        }));
+      }
+    }
+    if (lists.size() == 1) {
+      return lists.get(0).subList(0, count);
+    }
+
+    List<SipPreview> result = new ArrayList<>(count);
+    int[] positions = new int[lists.size()];
+    while (result.size() < count) {
+      int next = -1;
+      for (int i = 0; i < lists.size(); i++) {
+        if (positions[i] < lists.get(i).size() && (next < 0
+          || SIP_COMPARATOR.compare(lists.get(i).get(positions[i]), lists.get(next).get(positions[next])) < 0)) {
+          next = i;
+        }
+      }
+      result.add(lists.get(next).get(positions[next]++));
+    }
+    return result;
+  }
+
+  /**
+   * Creates the nodes of the next SIPs, replacing the "load more" item.
+   */
+  public void loadMoreSips() {
+    loadedSips += LOADING_SIZE;
+    updateSipNodes();
+  }
+
   /**
    * Updates the node when a Rule has been modified.
    *
@@ -99,18 +257,18 @@ public class SchemaNode extends TreeItem<String> implements Observer {
 
       Platform.runLater(() -> {
         // replace the SIPs
-        if (sips.get(id) != null) {
-          getChildren().removeAll(sips.get(id));
-        }
+        sips.remove(id);
+        sortedSips.remove(id);
         if (ruleNodes.get(id) != null) {
           getChildren().removeAll(ruleNodes.get(id));
         }
 
         // we don't need to add the nodes and SIPs if the rule has been removed
         if (Constants.EVENT_REMOVED_RULE.equals(arg)) {
+          updateSipNodes();
           return;
         }
-        Set<SipPreviewNode> nodes = new HashSet<>(rule.getSipNodes());
+        Set<SipPreview> ruleSips = new HashSet<>(rule.getTopLevelSips());
         Set<SchemaNode> schemas = new HashSet<>(rule.getSchemaNodes());
 
         // We need to set the parents of the top nodes here, except when this
@@ -122,12 +280,11 @@ public class SchemaNode extends TreeItem<String> implements Observer {
             }
           }
         }
-        sips.put(id, nodes);
+        sips.put(id, ruleSips);
         ruleNodes.put(id, schemas);
-        getChildren().addAll(nodes);
         getChildren().addAll(schemas);
 
-        sortChildren();
+        updateSipNodes();
 
         RodaInApplication.getSchemePane().forceUpdateSelectionIcons();
       });
@@ -158,13 +315,12 @@ public class SchemaNode extends TreeItem<String> implements Observer {
   public void removeRule(Rule r) {
     Integer idInt = r.getId();
     String id = idInt.toString();
-    if (sips.get(id) != null) {
-      getChildren().removeAll(sips.get(id));
-    }
     // remove the rules from the maps
     rules.remove(id);
     ruleObjects.remove(id);
     sips.remove(id);
+    sortedSips.remove(id);
+    updateSipNodes();
     r.remove();
   }
 
@@ -178,15 +334,30 @@ public class SchemaNode extends TreeItem<String> implements Observer {
     schemaNodes.add(node);
   }
 
-  public void addChild(String ruleID, TreeItem<String> item) {
-    if (item instanceof SipPreviewNode) {
-      Set<SipPreviewNode> set = sips.get(ruleID);
-      if (set == null) {
-        set = new HashSet<>();
-      }
-      set.add((SipPreviewNode) item);
-      sips.put(ruleID, set);
+  /**
+   * Adds a SIP to the SchemaNode. Its node is only created when the SchemaNode
+   * is expanded, so {@link #updateSipNodes()} must be called after adding SIPs
+   * to a SchemaNode that is already expanded.
+   *
+   * @param ruleID
+   *          The id of the rule that added the SIP
+   * @param sip
+   *          The SIP
+   */
+  public void addSip(String ruleID, SipPreview sip) {
+    if (sips.computeIfAbsent(ruleID, k -> new HashSet<>()).add(sip)) {
+      sortedSips.remove(ruleID);
     }
+  }
+
+  /**
+   * @return The map of rule id -> SIPs of the SchemaNode
+   */
+  public Map<String, Set<SipPreview>> getSips() {
+    return sips;
+  }
+
+  public void addChild(String ruleID, TreeItem<String> item) {
     if (item instanceof SchemaNode) {
       Set<SchemaNode> set = ruleNodes.get(ruleID);
       if (set == null) {
@@ -199,11 +370,19 @@ public class SchemaNode extends TreeItem<String> implements Observer {
 
   public void removeChild(TreeItem<String> item) {
     getChildren().remove(item);
-    for (Set<SipPreviewNode> set : sips.values()) {
-      if (set.contains(item)) {
-        set.remove(item);
-        return;
+    if (item instanceof SipPreviewNode) {
+      SipPreview sip = ((SipPreviewNode) item).getSip();
+      if (sipNodes.remove(sip) != null) {
+        sip.deleteObserver((SipPreviewNode) item);
+        loadedSips--;
       }
+      for (Map.Entry<String, Set<SipPreview>> entry : sips.entrySet()) {
+        if (entry.getValue().remove(sip)) {
+          sortedSips.remove(entry.getKey());
+          return;
+        }
+      }
+      return;
     }
     if (schemaNodes.contains(item)) {
       schemaNodes.remove(item);
@@ -217,6 +396,41 @@ public class SchemaNode extends TreeItem<String> implements Observer {
     }
   }
 
+  /**
+   * @param item
+   *          A child of the SchemaNode
+   * @return The id of the rule that added the child, or null if the child is
+   *         a node of the classification scheme
+   * @see #addSip(String, SipPreview)
+   * @see #addChild(String, TreeItem)
+   */
+  public String getRuleId(TreeItem<String> item) {
+    if (item instanceof SipPreviewNode) {
+      SipPreview sip = ((SipPreviewNode) item).getSip();
+      for (Map.Entry<String, Set<SipPreview>> entry : sips.entrySet()) {
+        if (entry.getValue().contains(sip)) {
+          return entry.getKey();
+        }
+      }
+    }
+    for (Map.Entry<String, Set<SchemaNode>> entry : ruleNodes.entrySet()) {
+      if (entry.getValue().contains(item)) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param ruleId
+   *          The id of the rule
+   * @return The rule with the id if it was added to this SchemaNode, null
+   *         otherwise
+   */
+  public Rule getRule(String ruleId) {
+    return ruleObjects.get(ruleId);
+  }
+
   public boolean isRemoved() {
     return removed;
   }
@@ -306,6 +520,8 @@ public class SchemaNode extends TreeItem<String> implements Observer {
      */
 
     sips.clear();
+    sortedSips.clear();
+    updateSipNodes();
     schemaNodes.clear();
     ruleNodes.clear();
     ruleObjects.clear();
@@ -350,22 +566,7 @@ public class SchemaNode extends TreeItem<String> implements Observer {
    */
   public Map<SipPreview, List<String>> getSipPreviews() {
     Map<SipPreview, List<String>> result = new HashMap<>();
-    List<String> ancestors = computeAncestorsOfSips();
-
-    // this node's sips
-    for (Rule r : ruleObjects.values())
-      for (SipPreview sp : r.getSips()) {
-        result.put(sp, ancestors);
-      }
-
-    sips.forEach((id, sipPreviewNodes) -> sipPreviewNodes
-      .forEach(sipPreviewNode -> result.put(sipPreviewNode.getSip(), ancestors)));
-
-    ruleNodes.forEach((s, schNodes) -> schNodes.forEach(schemaNode -> result.putAll(schemaNode.getSipPreviews())));
-
-    // children sips
-    for (SchemaNode sn : schemaNodes)
-      result.putAll(sn.getSipPreviews());
+    collect(computeAncestors(), null, result);
     return result;
   }
 
@@ -376,18 +577,84 @@ public class SchemaNode extends TreeItem<String> implements Observer {
    */
   public Map<Sip, List<String>> getDescriptionObjects() {
     Map<Sip, List<String>> result = new HashMap<>();
+    collect(computeAncestors(), result, new HashMap<>());
+    return result;
+  }
 
-    result.put(getDob(), computeAncestors());
+  /**
+   * Collects the description objects and the SIPs of the SchemaNode and of all
+   * its descendants, with the ids of their ancestors, in a single pass.
+   *
+   * @param descriptionObjects
+   *          The map where the description objects (non-SIPs, including this
+   *          node) are added
+   * @param sipPreviews
+   *          The map where the SIPs are added
+   */
+  public void collectDescriptionObjects(Map<Sip, List<String>> descriptionObjects,
+    Map<SipPreview, List<String>> sipPreviews) {
+    collect(computeAncestors(), descriptionObjects, sipPreviews);
+  }
+
+  /*
+   * The ancestors are passed down the tree instead of being computed again for
+   * each node, and the list of each node is shared by all its SIPs.
+   */
+  private void collect(List<String> ancestors, Map<Sip, List<String>> descriptionObjects,
+    Map<SipPreview, List<String>> sipPreviews) {
+    if (descriptionObjects != null) {
+      descriptionObjects.put(dob, ancestors);
+    }
+
+    List<String> childrenAncestors = new ArrayList<>();
+    if (dob.getId() != null) {
+      childrenAncestors.add(dob.getId());
+      childrenAncestors.addAll(ancestors);
+    }
 
+    if (descriptionObjects != null && pendingSchemeChildren != null) {
+      // the children not created yet have no SIPs, only their description
+      // objects are needed
+      collectSchemeChildren(pendingSchemeChildren, dob.getId(), childrenAncestors, descriptionObjects);
+    }
+
+    // this node's sips
+    for (Rule r : ruleObjects.values()) {
+      for (SipPreview sp : r.getSips()) {
+        sipPreviews.put(sp, childrenAncestors);
+      }
+    }
+    sips.forEach((id, sipSet) -> sipSet.forEach(sip -> sipPreviews.put(sip, childrenAncestors)));
+
+    // the nodes created by rules replace the ancestors of their SIPs
+    ruleNodes.forEach((s, schNodes) -> schNodes
+      .forEach(schemaNode -> schemaNode.collect(childrenAncestors, descriptionObjects, sipPreviews)));
+
+    // children
     for (SchemaNode sn : schemaNodes) {
-      result.putAll(sn.getSipPreviews());
-      result.put(sn.getDob(), computeAncestorsOfSips());
-      result.putAll(sn.getDescriptionObjects());
+      sn.collect(childrenAncestors, descriptionObjects, sipPreviews);
     }
+  }
 
-    ruleNodes
-      .forEach((s, schNodes) -> schNodes.forEach(schemaNode -> result.putAll(schemaNode.getDescriptionObjects())));
-    return result;
+  /*
+   * Collects the description objects of the classification scheme under the
+   * given parent straight from the index, without creating their nodes.
+   */
+  private static void collectSchemeChildren(Map<String, List<Sip>> childrenIndex, String parentId,
+    List<String> ancestors, Map<Sip, List<String>> descriptionObjects) {
+    List<Sip> children = childrenIndex.get(parentId);
+    if (children == null) {
+      return;
+    }
+    for (Sip child : children) {
+      // like the nodes created by loadSchemeChildren
+      child.setUpdateSIP(true);
+      descriptionObjects.put(child, ancestors);
+      List<String> childrenAncestors = new ArrayList<>();
+      childrenAncestors.add(child.getId());
+      childrenAncestors.addAll(ancestors);
+      collectSchemeChildren(childrenIndex, child.getId(), childrenAncestors, descriptionObjects);
+    }
   }
 
   public List<String> computeAncestors() {
@@ -2,6 +2,7 @@ package org.roda.rodain.ui.schema.ui;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -16,6 +17,8 @@ import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.Constants.PathState;
 import org.roda.rodain.core.Controller;
 import org.roda.rodain.core.I18n;
+import org.roda.rodain.core.project.ProjectFile;
+import org.roda.rodain.core.project.ProjectNode;
 import org.roda.rodain.core.schema.ClassificationSchema;
 import org.roda.rodain.core.schema.DescriptiveMetadata;
 import org.roda.rodain.core.schema.Sip;
@@ -376,64 +379,46 @@ public class SchemaPane extends BorderPane {
     setBottom(bottom);
     rootNode.getChildren().clear();
     List<Sip> dos = cs.getDos();
-    Map<String, SchemaNode> nodes = new HashMap<>();
-    Set<SchemaNode> roots = new HashSet<>();
+    List<SchemaNode> roots = new ArrayList<>();
 
     try {
+      // index the description objects by id, so each parent is found in
+      // constant time
+      Map<String, Integer> idCount = new HashMap<>();
+      for (Sip descObj : dos) {
+        idCount.merge(descObj.getId(), 1, Integer::sum);
+      }
+      Map<String, List<Sip>> children = new HashMap<>();
+      Set<String> rootIds = new HashSet<>();
       for (Sip descObj : dos) {
         // Check if the node is a root node
         if (descObj.getParentId() == null) {
-          // Create a new node if it hasn't been created
-          if (!nodes.containsKey(descObj.getId())) {
+          if (rootIds.add(descObj.getId())) {
             SchemaNode root = new SchemaNode(descObj);
             root.setUpdateSIP(true);
-            nodes.put(descObj.getId(), root);
+            roots.add(root);
           }
-          roots.add(nodes.get(descObj.getId()));
         } else {
-          // Get a list with the items where the id equals the node's parent's
-          // id
-          List<Sip> parents = dos.stream().filter(p -> descObj.getParentId().equals(p.getId()))
-            .collect(Collectors.toList());
-          // If the input file is well formed, there should be one item in the
-          // list, no more and no less
-          if (parents.size() != 1) {
+          // If the input file is well formed, there should be one item with
+          // the node's parent's id, no more and no less
+          int parents = idCount.getOrDefault(descObj.getParentId(), 0);
+          if (parents != 1) {
             String format = "The node \"%s\" has %d parents";
-            String message = String.format(format, descObj.getTitle(), parents.size());
+            String message = String.format(format, descObj.getTitle(), parents);
             LOGGER.info("Error creating the scheme tree", new MalformedSchemaException(message));
             continue;
           }
-          Sip parent = parents.get(0);
-          SchemaNode parentNode;
-          // If the parent node hasn't been processed yet, add it to the nodes
-          // map
-          if (nodes.containsKey(parent.getId())) {
-            parentNode = nodes.get(parent.getId());
-          } else {
-            parentNode = new SchemaNode(parent);
-            parentNode.setUpdateSIP(true);
-            nodes.put(parent.getId(), parentNode);
-          }
-          SchemaNode node;
-          // If the node hasn't been added yet, create it and add it to the
-          // nodes map
-          if (nodes.containsKey(descObj.getId())) {
-            node = nodes.get(descObj.getId());
-          } else {
-            node = new SchemaNode(descObj);
-            node.setUpdateSIP(true);
-            nodes.put(descObj.getId(), node);
-          }
-          parentNode.getChildren().add(node);
-          parentNode.addChildrenNode(node);
+          children.computeIfAbsent(descObj.getParentId(), k -> new ArrayList<>()).add(descObj);
         }
       }
 
-      // Add all the root nodes as children of the hidden rootNode
+      // the nodes below the root nodes are only created when they're expanded
       for (SchemaNode sn : roots) {
-        rootNode.getChildren().add(sn);
+        sn.setSchemeChildren(children);
         schemaNodes.add(sn);
       }
+      // Add all the root nodes as children of the hidden rootNode
+      rootNode.getChildren().addAll(roots);
       // if there were no nodes in the file, show the help panel
       if (roots.isEmpty()) {
         setTop(topBox);
@@ -448,6 +433,57 @@ public class SchemaPane extends BorderPane {
     }
   }
 
+  /**
+   * Replaces the tree with the one of a saved project. The project is read in
+   * the background, and the content of its SIPs is only read when needed.
+   *
+   * @param file
+   *          The project file
+   */
+  public void loadProject(Path file) {
+    SchemaProject project = new SchemaProject();
+    Task<SchemaNode> task = new Task<SchemaNode>() {
+      @Override
+      protected SchemaNode call() throws Exception {
+        ProjectNode root = ProjectFile.load(file);
+        SchemaNode restored = new SchemaNode(root.getDob());
+        project.restore(restored, root);
+        return restored;
+      }
+    };
+    task.setOnSucceeded(event -> {
+      setTop(topBox);
+      setBottom(bottom);
+      rootNode.getChildren().clear();
+      schemaNodes.clear();
+      schemaNodes.addAll(SchemaProject.moveChildren(task.getValue(), rootNode));
+      sortRootChildren();
+      hasClassificationScheme.setValue(true);
+    });
+    task.setOnFailed(event -> LOGGER.error("Error loading the project", task.getException()));
+    new Thread(task).start();
+  }
+
+  /**
+   * Saves the tree, its rules and SIPs and the state of the paths to a
+   * project file, in the background.
+   *
+   * @param file
+   *          The project file
+   */
+  public void saveProject(Path file) {
+    ProjectNode root = SchemaProject.toProject(rootNode);
+    Task<Void> task = new Task<Void>() {
+      @Override
+      protected Void call() throws Exception {
+        ProjectFile.save(root, file);
+        return null;
+      }
+    };
+    task.setOnFailed(event -> LOGGER.error("Error saving the project", task.getException()));
+    new Thread(task).start();
+  }
+
   private void initializeTemplates(ClassificationSchema cs) {
     if (cs.getDos() != null) {
       for (Sip d : cs.getDos()) {
@@ -834,11 +870,10 @@ public class SchemaPane extends BorderPane {
               if (target != rootNode)
                 newParentID = target.getDob().getId();
               sourceSIP.getSip().setParentId(newParentID);
-              target.addChild(Controller.createID(), sourceSIP);
-              target.getChildren().add(sourceSIP);
-              target.sortChildren();
+              target.addSip(Controller.createID(), sourceSIP.getSip());
             }
           }
+          target.updateSipNodes();
         } else {
           if (treeItem != null) {
             // dropped on a SIP, associate to the parent of the SIP
@@ -934,23 +969,26 @@ public class SchemaPane extends BorderPane {
    *         each value is a list of that object's ancestors IDs.
    */
   public Map<Sip, List<String>> getAllDescriptionObjects() {
-    Set<SchemaNode> localSchemaNodes = new HashSet<>(schemaNodes);
-    localSchemaNodes.add(rootNode);
     Map<SipPreview, List<String>> sipsMap = new HashMap<>();
     Map<Sip, List<String>> descObjsMap = new HashMap<>();
 
-    for (SchemaNode sn : localSchemaNodes) {
-      sipsMap.putAll(sn.getSipPreviews());
-      descObjsMap.putAll(sn.getDescriptionObjects());
+    rootNode.collectDescriptionObjects(descObjsMap, sipsMap);
+    // the root nodes of a loaded classification scheme aren't registered as
+    // children nodes of the root, so they're collected on their own
+    for (SchemaNode sn : schemaNodes) {
+      if (!descObjsMap.containsKey(sn.getDob())) {
+        sn.collectDescriptionObjects(descObjsMap, sipsMap);
+      }
     }
     // we don't want to return the root, since its a hidden node that is only
     // useful for presentation
     descObjsMap.remove(rootNode.getDob());
     // filter out the SIPs marked as "removed"
-    sipsMap = sipsMap.entrySet().stream().parallel().filter(p -> !p.getKey().isRemoved())
-      .collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue()));
-
-    descObjsMap.putAll(sipsMap);
+    sipsMap.forEach((sip, ancestors) -> {
+      if (!sip.isRemoved()) {
+        descObjsMap.put(sip, ancestors);
+      }
+    });
     return descObjsMap;
   }
 
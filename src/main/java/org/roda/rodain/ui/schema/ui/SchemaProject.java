@@ -0,0 +1,203 @@
+package org.roda.rodain.ui.schema.ui;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.project.ProjectNode;
+import org.roda.rodain.core.project.ProjectRule;
+import org.roda.rodain.core.sip.SipPreview;
+import org.roda.rodain.ui.rules.Rule;
+import org.roda.rodain.ui.utils.FontAwesomeImageCreator;
+
+import javafx.scene.control.TreeItem;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Converts the classification scheme tree to the nodes of a saved project, and
+ * back.
+ * <p/>
+ * <p>
+ * The restored rules get new ids, so the children they created are added to
+ * their parents with the new ids. The children added with an id of a rule that
+ * wasn't saved (e.g. SIPs moved to another node) keep their id.
+ * </p>
+ */
+public class SchemaProject {
+  private Image dObjIconBlack, dObjIconWhite;
+
+  /**
+   * Creates a new SchemaProject object. Must be called in the JavaFX
+   * application thread, since it creates the icons of the restored nodes.
+   */
+  public SchemaProject() {
+    dObjIconBlack = FontAwesomeImageCreator
+      .generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_AGGREGATION));
+    dObjIconWhite = FontAwesomeImageCreator
+      .generate(ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_AGGREGATION), Color.WHITE);
+  }
+
+  /**
+   * Converts a tree to the nodes of a project. Must be called in the JavaFX
+   * application thread.
+   *
+   * @param schemaNode
+   *          The root of the tree
+   * @return The root of the project
+   */
+  public static ProjectNode toProject(SchemaNode schemaNode) {
+    return toProject(schemaNode, null);
+  }
+
+  private static ProjectNode toProject(SchemaNode schemaNode, String ruleKey) {
+    ProjectNode node = new ProjectNode(schemaNode.getDob(), ruleKey);
+    for (Rule rule : schemaNode.getRules()) {
+      node.getRules().add(toProjectRule(rule));
+    }
+    for (TreeItem<String> child : schemaNode.getChildren()) {
+      if (child instanceof SchemaNode) {
+        node.getChildren().add(toProject((SchemaNode) child, schemaNode.getRuleId(child)));
+      }
+    }
+    // the SIPs aren't all children of the node, only the shown ones
+    for (Map.Entry<String, Set<SipPreview>> entry : schemaNode.getSips().entrySet()) {
+      for (SipPreview sip : entry.getValue()) {
+        if (!sip.isRemoved()) {
+          node.getChildren().add(new ProjectNode(sip, entry.getKey()));
+        }
+      }
+    }
+    return node;
+  }
+
+  private static ProjectRule toProjectRule(Rule rule) {
+    ProjectRule result = new ProjectRule();
+    result.setKey(String.valueOf(rule.getId()));
+    result.setAssocType(rule.getAssocType());
+    result.setMetadataOption(rule.getMetadataOption());
+    result.setMetadataPath(rule.getMetadataPath() != null ? rule.getMetadataPath().toString() : null);
+    result.setTemplateType(rule.getTemplateType());
+    result.setMetadataType(rule.getMetadataType());
+    result.setMetadataVersion(rule.getMetadataVersion());
+    result.setParentId(rule.getParentID());
+    result.setSourcePaths(rule.getSourcePaths());
+    return result;
+  }
+
+  /**
+   * Restores the rules and the children of a project node into a SchemaNode
+   * that isn't in the tree yet, so it can be called outside of the JavaFX
+   * application thread.
+   *
+   * @param target
+   *          The SchemaNode
+   * @param node
+   *          The project node
+   */
+  public void restore(SchemaNode target, ProjectNode node) {
+    // map of saved rule key -> restored rule
+    Map<String, Rule> rules = new HashMap<>();
+    for (ProjectRule projectRule : node.getRules()) {
+      Rule rule = new Rule(projectRule.getSourcePaths(), projectRule.getAssocType(),
+        projectRule.getMetadataPath() != null ? Paths.get(projectRule.getMetadataPath()) : null,
+        projectRule.getTemplateType(), projectRule.getMetadataOption(), projectRule.getMetadataType(),
+        projectRule.getMetadataVersion(), projectRule.getParentId());
+      target.addRule(rule);
+      rule.addObserver(target);
+      rules.put(projectRule.getKey(), rule);
+    }
+    restoreChildren(target, node, rules, null);
+  }
+
+  /*
+   * The children created by a rule are added to the rule. Inside the nodes
+   * created by a rule (SIPs with structure), the children use the rule of the
+   * node where it was applied.
+   */
+  private void restoreChildren(SchemaNode target, ProjectNode node, Map<String, Rule> rules, Rule parentRule) {
+    List<TreeItem<String>> children = new ArrayList<>();
+    for (ProjectNode child : node.getChildren()) {
+      String key = child.getRuleKey();
+      Rule rule = key != null ? rules.get(key) : null;
+      boolean topLevel = rule != null;
+      if (rule == null && key != null) {
+        rule = parentRule;
+      }
+
+      if (child.isSip()) {
+        SipPreview sip = (SipPreview) child.getDob();
+        if (rule != null) {
+          rule.restoreSip(sip, topLevel);
+        }
+        target.addSip(rule != null ? String.valueOf(rule.getId()) : key, sip);
+        continue;
+      }
+
+      SchemaNode item;
+      if (key != null) {
+        SchemaNode schemaNode = new SchemaNode(child.getDob(), dObjIconBlack, dObjIconWhite);
+        if (topLevel) {
+          rule.restoreSchemaNode(schemaNode);
+        }
+        restoreChildren(schemaNode, child, new HashMap<>(), rule);
+        item = schemaNode;
+      } else {
+        SchemaNode schemaNode = new SchemaNode(child.getDob());
+        restore(schemaNode, child);
+        item = schemaNode;
+      }
+
+      if (key == null) {
+        target.addChildrenNode(item);
+      } else {
+        target.addChild(rule != null ? String.valueOf(rule.getId()) : key, item);
+      }
+      children.add(item);
+    }
+    target.getChildren().addAll(children);
+    target.updateSipNodes();
+  }
+
+  /**
+   * Moves the rules and the children restored into a SchemaNode that isn't in
+   * the tree to the root of the tree. Must be called in the JavaFX application
+   * thread.
+   *
+   * @param from
+   *          The SchemaNode where the project was restored
+   * @param to
+   *          The root of the tree
+   * @return The moved nodes of the classification scheme
+   */
+  public static List<SchemaNode> moveChildren(SchemaNode from, SchemaNode to) {
+    for (Rule rule : from.getRules()) {
+      rule.deleteObserver(from);
+      to.addRule(rule);
+      rule.addObserver(to);
+    }
+    // recycles the nodes of the SIPs, only the SIPs are moved
+    from.setExpanded(false);
+    from.getSips().forEach((key, sips) -> sips.forEach(sip -> to.addSip(key, sip)));
+
+    List<SchemaNode> schemeNodes = new ArrayList<>();
+    List<TreeItem<String>> children = new ArrayList<>(from.getChildren());
+    for (TreeItem<String> child : children) {
+      String key = from.getRuleId(child);
+      if (key == null) {
+        schemeNodes.add((SchemaNode) child);
+      } else {
+        to.addChild(key, child);
+      }
+    }
+    from.getChildren().clear();
+    to.getChildren().addAll(children);
+    to.updateSipNodes();
+    return schemeNodes;
+  }
+}
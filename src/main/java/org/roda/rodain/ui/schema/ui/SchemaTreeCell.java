@@ -67,6 +67,10 @@ public class SchemaTreeCell extends TreeCell<String> {
             setText("*");
           } else
             setText("");
+        } else if (treeItem instanceof SchemaLoadMoreNode) {
+          addHbox = true;
+          icon = new ImageView(SchemaLoadMoreNode.icon);
+          setText("");
         }
       }
       if (addHbox) {
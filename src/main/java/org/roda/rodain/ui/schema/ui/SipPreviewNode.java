@@ -1,5 +1,7 @@
 package org.roda.rodain.ui.schema.ui;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -21,6 +23,9 @@ import javafx.scene.paint.Color;
  * @since 05-10-2015.
  */
 public class SipPreviewNode extends TreeItem<String> implements Observer {
+  // the default icons, shared by all the nodes
+  private static final Map<String, Image> LEVEL_ICONS = new HashMap<>();
+
   private SipPreview sip;
   private Image iconBlack, iconWhite;
 
@@ -28,21 +33,15 @@ public class SipPreviewNode extends TreeItem<String> implements Observer {
   private static final Logger LOGGER = LoggerFactory.getLogger(SipPreviewNode.class.getName());
 
   /**
-   * Creates a new SipPreviewNode
+   * Creates a new SipPreviewNode. The icons are only created when the node is
+   * shown, and are shared with the other nodes.
    *
    * @param sip
    *          The SipPreview object to be wrapped
-   * @param iconBlack
-   *          The icon to be used in the SipPreviewNode, with the color black
-   * @param iconWhite
-   *          The icon to be used in the SipPreviewNode, with the color white
    */
-  public SipPreviewNode(SipPreview sip, Image iconBlack, Image iconWhite) {
+  public SipPreviewNode(SipPreview sip) {
     super(sip.getTitle());
     this.sip = sip;
-    this.iconBlack = iconBlack;
-    this.iconWhite = iconWhite;
-    setGraphic(new ImageView(iconBlack));
   }
 
   /**
@@ -57,13 +56,33 @@ public class SipPreviewNode extends TreeItem<String> implements Observer {
    */
   public Image getIcon() {
     if (blackIconSelected) {
-      return iconBlack;
+      return iconBlack != null ? iconBlack : getDefaultIcon(true);
     } else
-      return iconWhite;
+      return getIconWhite();
   }
 
   public Image getIconWhite() {
-    return iconWhite;
+    return iconWhite != null ? iconWhite : getDefaultIcon(false);
+  }
+
+  private Image getDefaultIcon(boolean black) {
+    String unicode;
+    if ("internal.itemLevel".equals(sip.getDescriptionlevel())) {
+      unicode = ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_ITEM);
+    } else {
+      unicode = ConfigurationManager.getConfig(Constants.CONF_K_LEVELS_ICON_FILE);
+    }
+    return getLevelIcon(unicode, black);
+  }
+
+  private static synchronized Image getLevelIcon(String unicode, boolean black) {
+    String key = (black ? "black-" : "white-") + unicode;
+    Image icon = LEVEL_ICONS.get(key);
+    if (icon == null) {
+      icon = black ? FontAwesomeImageCreator.generate(unicode) : FontAwesomeImageCreator.generate(unicode, Color.WHITE);
+      LEVEL_ICONS.put(key, icon);
+    }
+    return icon;
   }
 
   public void updateDescriptionLevel(String descLevel) {
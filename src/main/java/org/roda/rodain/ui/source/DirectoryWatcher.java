@@ -1,75 +1,230 @@
 package org.roda.rodain.ui.source;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants;
+import org.roda.rodain.core.PathCollection;
+import org.roda.rodain.core.source.FileSystemSnapshot;
+import org.roda.rodain.ui.source.items.SourceTreeDirectory;
+import org.roda.rodain.ui.source.items.SourceTreeItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javafx.application.Platform;
+
 /**
- * FIXME 20170310 hsilva: this class will/should/must be removed
- * 
+ * Watches the expanded directories of the file explorer and feeds the changes
+ * to the SourceTreeDirectory items and the PathCollection.
+ * <p/>
+ * <p>
+ * Only the directories that were expanded are registered, up to a configurable
+ * budget; when it's exceeded, the directory registered the longest time ago is
+ * no longer watched. The events are coalesced per directory and only applied
+ * after a quiet period, so a burst of changes results in a single update of
+ * each directory. A burst that never quiets down is applied anyway every five
+ * quiet periods, so the changes don't wait forever. When events are lost (OVERFLOW), only the affected directory
+ * is listed again.
+ * </p>
+ *
  * @author Andre Pereira apereira@keep.pt
  * @since 29-08-2016.
  */
-@Deprecated
 public class DirectoryWatcher extends Thread {
   private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryWatcher.class.getName());
+  private static final int DEFAULT_MAX_DIRECTORIES = 2000;
+  private static final int DEFAULT_DEBOUNCE = 500; // in milliseconds
+  // the changes are applied at most this many quiet periods after the first one
+  private static final int MAX_LATENCY_FACTOR = 5;
+
+  private final WatchService watchService;
+  private final int maxDirectories;
+  private final long debounce;
+  // access ordered, so the eldest entry is the least recently expanded
+  private final LinkedHashMap<Path, WatchKey> registered = new LinkedHashMap<>(16, 0.75f, true);
+  // changes waiting for the quiet period, per directory
+  private final Map<Path, DirectoryChanges> pending = new HashMap<>();
+
+  /**
+   * Creates a new DirectoryWatcher object.
+   *
+   * @throws IOException
+   *           If the WatchService can't be created
+   */
+  public DirectoryWatcher() throws IOException {
+    super("DirectoryWatcher");
+    setDaemon(true);
+    watchService = FileSystems.getDefault().newWatchService();
+    maxDirectories = ConfigurationManager.getConfigAsInteger(Constants.CONF_K_DIRECTORY_WATCHER_MAX_DIRECTORIES,
+      DEFAULT_MAX_DIRECTORIES);
+    debounce = ConfigurationManager.getConfigAsInteger(Constants.CONF_K_DIRECTORY_WATCHER_DEBOUNCE, DEFAULT_DEBOUNCE);
+  }
+
+  /**
+   * Starts watching a directory. If the budget of watched directories is
+   * exhausted, stops watching the directory registered the longest time ago.
+   *
+   * @param dir
+   *          The directory to watch
+   */
+  public synchronized void register(Path dir) {
+    if (registered.containsKey(dir)) {
+      // touch the entry, so it's the last one to be evicted
+      registered.get(dir);
+      return;
+    }
+    try {
+      registered.put(dir, dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE));
+    } catch (IOException | ClosedWatchServiceException e) {
+      LOGGER.warn("Can't register path to watcher. Will be unable to update the directory: {}", dir, e);
+      return;
+    }
+    Iterator<Map.Entry<Path, WatchKey>> iterator = registered.entrySet().iterator();
+    while (registered.size() > maxDirectories && iterator.hasNext()) {
+      Map.Entry<Path, WatchKey> eldest = iterator.next();
+      eldest.getValue().cancel();
+      iterator.remove();
+      LOGGER.debug("Watcher budget exceeded, no longer watching {}", eldest.getKey());
+    }
+  }
+
+  /**
+   * Stops watching a directory.
+   *
+   * @param dir
+   *          The directory
+   */
+  public synchronized void unregister(Path dir) {
+    WatchKey key = registered.remove(dir);
+    if (key != null) {
+      key.cancel();
+    }
+  }
+
+  /**
+   * @return The number of directories being watched
+   */
+  public synchronized int getWatchedCount() {
+    return registered.size();
+  }
+
+  /**
+   * Closes the WatchService, which stops the thread.
+   */
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOGGER.debug("Error closing file explorer watcher", e);
+    }
+  }
 
   @Override
   public void run() {
-    // 20170308 hsilva: disabled watchservice
-    // for (;;) {
-    //
-    // // wait for key to be signaled
-    // WatchKey key;
-    // try {
-    // key = watcher.take();
-    // } catch (InterruptedException | ClosedWatchServiceException x) {
-    // return;
-    // }
-    //
-    // // WatchKey watchable returns the calling Path object of Path.register
-    // Path watchedPath = (Path) key.watchable();
-    //
-    // for (WatchEvent<?> event : key.pollEvents()) {
-    // WatchEvent.Kind<?> kind = event.kind();
-    //
-    // // This key is registered only
-    // // for ENTRY_CREATE and ENTRY_DELETE events,
-    // // but an OVERFLOW event can
-    // // occur regardless if events
-    // // are lost or discarded.
-    // if (kind == OVERFLOW) {
-    // continue;
-    // }
-    //
-    // // The filename is the
-    // // context of the event.
-    // WatchEvent<Path> ev = (WatchEvent<Path>) event;
-    // Path filename = ev.context();
-    //
-    // String fullPath = watchedPath.resolve(filename).toString();
-    // SourceTreeItem sourceTreeItem = PathCollection.getItem(watchedPath);
-    // if (sourceTreeItem instanceof SourceTreeDirectory) {
-    // SourceTreeDirectory directory = ((SourceTreeDirectory) sourceTreeItem);
-    // if (kind == ENTRY_CREATE) {
-    // directory.addChild(fullPath);
-    // } else if (kind == ENTRY_DELETE) {
-    // SourceTreeItem itemToDelete =
-    // PathCollection.getItem(Paths.get(fullPath));
-    // if (itemToDelete != null) {
-    // directory.removeChild(itemToDelete);
-    // }
-    // PathCollection.removePathAndItem(Paths.get(fullPath));
-    // }
-    // }
-    // }
-    //
-    // // Reset the key -- this step is critical if you want to
-    // // receive further watch events. If the key is no longer valid,
-    // // the directory is inaccessible so exit the loop.
-    // boolean valid = key.reset();
-    // if (!valid) {
-    // break;
-    // }
-    // }
+    long lastEvent = 0;
+    long firstEvent = 0;
+    for (;;) {
+      // wait for key to be signaled, or for the quiet period to end when there
+      // are changes waiting
+      WatchKey key;
+      try {
+        if (pending.isEmpty()) {
+          key = watchService.take();
+        } else {
+          long deadline = Math.min(lastEvent + debounce, firstEvent + MAX_LATENCY_FACTOR * debounce);
+          long wait = deadline - System.currentTimeMillis();
+          key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+        }
+      } catch (InterruptedException | ClosedWatchServiceException x) {
+        return;
+      }
+
+      if (key == null) {
+        flush();
+        continue;
+      }
+
+      if (pending.isEmpty()) {
+        firstEvent = System.currentTimeMillis();
+      }
+      // WatchKey watchable returns the calling Path object of Path.register
+      Path watchedPath = (Path) key.watchable();
+      DirectoryChanges changes = pending.computeIfAbsent(watchedPath, p -> new DirectoryChanges());
+      for (WatchEvent<?> event : key.pollEvents()) {
+        WatchEvent.Kind<?> kind = event.kind();
+        if (kind == OVERFLOW) {
+          changes.overflow = true;
+          continue;
+        }
+        Path child = watchedPath.resolve((Path) event.context());
+        // a later event on the same child replaces the earlier one
+        if (kind == ENTRY_CREATE) {
+          changes.deleted.remove(child);
+          changes.created.add(child);
+        } else if (kind == ENTRY_DELETE) {
+          changes.created.remove(child);
+          changes.deleted.add(child);
+        }
+      }
+      lastEvent = System.currentTimeMillis();
+
+      // Reset the key -- this step is critical if you want to receive further
+      // watch events. If the key is no longer valid, the directory is
+      // inaccessible or was unregistered.
+      if (!key.reset()) {
+        synchronized (this) {
+          registered.remove(watchedPath);
+        }
+      }
+    }
+  }
+
+  private void flush() {
+    Map<Path, DirectoryChanges> toApply = new HashMap<>(pending);
+    pending.clear();
+    toApply.keySet().forEach(FileSystemSnapshot::invalidate);
+    Platform.runLater(() -> toApply.forEach(DirectoryWatcher::apply));
+  }
+
+  private static void apply(Path dir, DirectoryChanges changes) {
+    SourceTreeItem item = PathCollection.getItem(dir);
+    if (!(item instanceof SourceTreeDirectory)) {
+      return;
+    }
+    SourceTreeDirectory directory = (SourceTreeDirectory) item;
+    if (changes.overflow) {
+      // events were lost, list this directory again
+      directory.refresh();
+      return;
+    }
+    for (Path deleted : changes.deleted) {
+      directory.removeChildPath(deleted);
+    }
+    for (Path created : changes.created) {
+      directory.addChildPath(created);
+    }
+  }
+
+  private static final class DirectoryChanges {
+    private final Set<Path> created = new LinkedHashSet<>();
+    private final Set<Path> deleted = new LinkedHashSet<>();
+    private boolean overflow = false;
   }
 }
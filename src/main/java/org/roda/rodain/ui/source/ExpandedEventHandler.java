@@ -22,9 +22,12 @@ public class ExpandedEventHandler implements EventHandler<TreeItem.TreeModificat
       return;
     source.expanded = true;
 
-    // We only load new items if this hasn't been done before
+    // We only load new items if this hasn't been done before, otherwise we
+    // catch up with the changes made while the item was collapsed
     if (!source.getDirectory().isFirstLoaded()) {
       source.loadMore();
+    } else {
+      source.refresh();
     }
   }
 }
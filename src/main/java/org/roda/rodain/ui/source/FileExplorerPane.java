@@ -1,6 +1,7 @@
 package org.roda.rodain.ui.source;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -62,8 +63,6 @@ import javafx.stage.StageStyle;
  */
 public class FileExplorerPane extends BorderPane implements Observer {
   private static final Logger LOGGER = LoggerFactory.getLogger(FileExplorerPane.class.getName());
-  // 20170308 hsilva: disabled watchservice
-  // public static final WatchService watcher = createWatcher();
   private Stage stage;
   private HBox top;
   private StackPane fileExplorer;
@@ -594,29 +593,31 @@ public class FileExplorerPane extends BorderPane implements Observer {
     }
   }
 
-  // 20170308 hsilva: disabled watchservice
-  // private static WatchService createWatcher() {
-  // WatchService watchService = null;
-  // try {
-  // watchService = FileSystems.getDefault().newWatchService();
-  // directoryWatcher = new DirectoryWatcher();
-  // directoryWatcher.start();
-  // } catch (IOException e) {
-  // LOGGER.warn(
-  // "Can't create a WatchService. The application will be unable to update the
-  // files of the file explorer", e);
-  // }
-  // return watchService;
-  // }
-  //
-  // /**
-  // * Calls the close() method to close the WatchService
-  // */
-  // public void closeWatcher() {
-  // try {
-  // watcher.close();
-  // } catch (IOException e) {
-  // LOGGER.debug("Error closing file explorer watcher", e);
-  // }
-  // }
+  /**
+   * Gets the watcher that keeps the expanded directories up to date, creating
+   * and starting it the first time.
+   *
+   * @return The watcher, or null if it can't be created
+   */
+  public static synchronized DirectoryWatcher getDirectoryWatcher() {
+    if (directoryWatcher == null) {
+      try {
+        directoryWatcher = new DirectoryWatcher();
+        directoryWatcher.start();
+      } catch (IOException e) {
+        LOGGER.warn(
+          "Can't create a WatchService. The application will be unable to update the files of the file explorer", e);
+      }
+    }
+    return directoryWatcher;
+  }
+
+  /**
+   * Calls the close() method to close the WatchService
+   */
+  public static synchronized void closeWatcher() {
+    if (directoryWatcher != null) {
+      directoryWatcher.close();
+    }
+  }
 }
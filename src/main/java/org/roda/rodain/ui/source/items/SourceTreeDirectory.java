@@ -1,10 +1,8 @@
 package org.roda.rodain.ui.source.items;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.WatchKey;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -18,9 +16,11 @@ import org.roda.rodain.core.Constants;
 import org.roda.rodain.core.Constants.PathState;
 import org.roda.rodain.core.PathCollection;
 import org.roda.rodain.core.rules.filters.IgnoredFilter;
+import org.roda.rodain.core.source.FileSystemSnapshot;
 import org.roda.rodain.core.source.representation.SourceDirectory;
 import org.roda.rodain.core.source.representation.SourceItem;
 import org.roda.rodain.ui.rules.Rule;
+import org.roda.rodain.ui.source.DirectoryWatcher;
 import org.roda.rodain.ui.source.ExpandedEventHandler;
 import org.roda.rodain.ui.source.FileExplorerPane;
 import org.slf4j.Logger;
@@ -50,7 +50,6 @@ public class SourceTreeDirectory extends SourceTreeItem {
   public boolean expanded = false;
   private SourceDirectory directory;
   private String fullPath;
-  private WatchKey watchKey;
 
   private HashSet<SourceTreeItem> ignored;
   private HashSet<SourceTreeItem> mapped;
@@ -90,6 +89,7 @@ public class SourceTreeDirectory extends SourceTreeItem {
       SourceTreeDirectory source = SourceTreeDirectory.class.cast(event.getSource());
       if (!source.isExpanded()) {
         source.expanded = false;
+        source.removeFromWatcher();
       }
     });
   }
@@ -535,9 +535,10 @@ public class SourceTreeDirectory extends SourceTreeItem {
     }
 
     SourceTreeItem item;
-    if (Files.isDirectory(sourceItemPath)) {
+    SourceDirectory childDirectory = directory.getChildDirectory(sourceItemPath);
+    if (childDirectory != null) {
       if (newState != PathState.IGNORED) {
-        item = new SourceTreeDirectory(sourceItemPath, directory.getChildDirectory(sourceItemPath), newState, this);
+        item = new SourceTreeDirectory(sourceItemPath, childDirectory, newState, this);
       } else {
         item = null;
       }
@@ -663,16 +664,98 @@ public class SourceTreeDirectory extends SourceTreeItem {
     });
   }
 
+  /**
+   * Shows a path that was created in the directory. If there are still items to
+   * load, the path is shown by the next "Load More" instead.
+   *
+   * @param path
+   *          The created path
+   */
+  public synchronized void addChildPath(Path path) {
+    if (directory == null || !directory.isFirstLoaded() || directory.getChild(path) != null)
+      return;
+    if (directory.isStreamOpen()) {
+      directory.restartDirectoryStream();
+      return;
+    }
+    directory.loadChild(path);
+    ArrayList<TreeItem<String>> children = new ArrayList<>(getChildren());
+    addChild(children, path.toString());
+    Collections.sort(children, comparator);
+    getChildren().setAll(children);
+  }
+
+  /**
+   * Removes the item of a path that was deleted from the directory, and the
+   * path and its children from the PathCollection.
+   *
+   * @param path
+   *          The deleted path
+   */
+  public synchronized void removeChildPath(Path path) {
+    if (directory == null)
+      return;
+    // the remaining listing may still have the deleted path
+    if (directory.isFirstLoaded() && directory.isStreamOpen())
+      directory.restartDirectoryStream();
+    if (directory.removeChild(path) == null)
+      return;
+    SourceTreeItem item = PathCollection.getItem(path);
+    if (item != null) {
+      if (item instanceof SourceTreeDirectory)
+        ((SourceTreeDirectory) item).removeFromWatcher();
+      removeChild(item);
+    }
+    PathCollection.removePathAndItem(path);
+  }
+
+  /**
+   * Creates a task to list the directory again and update the children with
+   * the paths that were created or deleted since it was loaded. Used when the
+   * directory is expanded again, since it isn't watched while collapsed, and
+   * when the watcher lost events.
+   */
+  public void refresh() {
+    if (directory == null || !directory.isFirstLoaded())
+      return;
+    addToWatcher();
+
+    Task<Set<Path>> task = new Task<Set<Path>>() {
+      @Override
+      protected Set<Path> call() throws Exception {
+        Set<Path> current = new HashSet<>();
+        for (FileSystemSnapshot.Entry entry : FileSystemSnapshot.list(directory.getPath())) {
+          current.add(entry.getPath());
+        }
+        return current;
+      }
+    };
+
+    task.setOnSucceeded(event -> {
+      Set<Path> current = task.getValue();
+      for (String child : new ArrayList<>(directory.getChildren().keySet())) {
+        Path childPath = Paths.get(child);
+        if (!current.contains(childPath))
+          removeChildPath(childPath);
+      }
+      for (Path childPath : current) {
+        addChildPath(childPath);
+      }
+    });
+    task.setOnFailed(event -> LOGGER.debug("Unable to refresh the directory {}", fullPath, task.getException()));
+
+    new Thread(task).start();
+  }
+
   private void addToWatcher() {
-    // 20170308 hsilva: disabled watchservice
-    // try {
-    // if (watchKey == null) {
-    // watchKey = directory.getPath().register(FileExplorerPane.watcher,
-    // ENTRY_CREATE, ENTRY_DELETE);
-    // }
-    // } catch (IOException e) {
-    // LOGGER.warn("Can't register path to watcher. Will be unable to update the
-    // directory: " + directory.getPath(), e);
-    // }
+    DirectoryWatcher watcher = FileExplorerPane.getDirectoryWatcher();
+    if (watcher != null && directory != null)
+      watcher.register(directory.getPath());
+  }
+
+  private void removeFromWatcher() {
+    DirectoryWatcher watcher = FileExplorerPane.getDirectoryWatcher();
+    if (watcher != null && directory != null)
+      watcher.unregister(directory.getPath());
   }
 }
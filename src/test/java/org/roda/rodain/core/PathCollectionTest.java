@@ -0,0 +1,165 @@
+package org.roda.rodain.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.roda.rodain.core.Constants.PathState;
+
+public class PathCollectionTest {
+  // the paths don't exist, so unknown paths are NORMAL and never added
+  private static final Path BASE = Paths.get(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+
+  private Path dir;
+  private Path a;
+  private Path b;
+
+  public PathCollectionTest() {
+    // do nothing
+  }
+
+  @Before
+  public void setup() {
+    PathCollection.reset();
+    dir = BASE.resolve("dir");
+    a = dir.resolve("a.txt");
+    b = dir.resolve("b.txt");
+    PathCollection.simpleAddPaths(Arrays.asList(dir, a, b));
+  }
+
+  @After
+  public void shutdown() {
+    PathCollection.reset();
+  }
+
+  @Test
+  public void testUnknownPathIsNormal() {
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(BASE.resolve("unknown")));
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(a));
+  }
+
+  @Test
+  public void testMappingAllChildrenMapsTheParent() {
+    PathCollection.addPath(a, PathState.MAPPED);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+
+    PathCollection.addPath(b, PathState.MAPPED);
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(dir));
+
+    PathCollection.addPath(a, PathState.NORMAL);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(b));
+  }
+
+  @Test
+  public void testIgnoringAFolderKeepsTheMappedChildren() {
+    PathCollection.addPath(a, PathState.MAPPED);
+    PathCollection.addPath(dir, PathState.IGNORED);
+    Assert.assertEquals(PathState.IGNORED, PathCollection.getState(dir));
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(a));
+    Assert.assertEquals(PathState.IGNORED, PathCollection.getState(b));
+
+    PathCollection.addPath(dir, PathState.NORMAL);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(a));
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(b));
+  }
+
+  @Test
+  public void testRemovingAPathVerifiesTheParent() {
+    PathCollection.addPath(a, PathState.MAPPED);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+
+    PathCollection.removePathAndItem(b);
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(dir));
+    // the removed path is unknown again
+    PathCollection.removePathAndItem(dir);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(a));
+  }
+
+  @Test
+  public void testWriteAndReadStates() throws IOException {
+    PathCollection.addPath(a, PathState.MAPPED);
+    PathCollection.addPath(b, PathState.IGNORED);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PathCollection.writeStates(new DataOutputStream(bytes));
+
+    PathCollection.reset();
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(a));
+
+    PathCollection.readStates(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(dir));
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(a));
+    Assert.assertEquals(PathState.IGNORED, PathCollection.getState(b));
+  }
+
+  @Test
+  public void testStateOfTheParentFollowsTheChildCounters() {
+    PathCollection.addPath(a, PathState.IGNORED);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+
+    // only IGNORED children
+    PathCollection.addPath(b, PathState.IGNORED);
+    Assert.assertEquals(PathState.IGNORED, PathCollection.getState(dir));
+
+    // IGNORED and MAPPED children
+    PathCollection.addPath(b, PathState.MAPPED);
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(dir));
+
+    // setting the same state again can't count the child twice
+    PathCollection.addPath(b, PathState.MAPPED);
+    PathCollection.simpleAddPath(b);
+    PathCollection.addPath(b, PathState.NORMAL);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+  }
+
+  @Test
+  public void testStateIsVerifiedUntilTheRoot() {
+    Path sub = dir.resolve("sub");
+    Path deep = sub.resolve("deep.txt");
+    PathCollection.simpleAddPaths(Arrays.asList(sub, deep));
+    PathCollection.addPath(a, PathState.MAPPED);
+    PathCollection.addPath(b, PathState.MAPPED);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+
+    PathCollection.addPath(deep, PathState.MAPPED);
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(sub));
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(dir));
+
+    PathCollection.addPath(deep, PathState.NORMAL);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(sub));
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(dir));
+  }
+
+  @Test
+  public void testManyChildren() {
+    Path many = BASE.resolve("many");
+    PathCollection.simpleAddPath(many);
+    int count = 1000;
+    for (int i = 0; i < count; i++) {
+      PathCollection.simpleAddPath(many.resolve(i + ".txt"));
+    }
+    for (int i = 0; i < count - 1; i++) {
+      PathCollection.addPath(many.resolve(i + ".txt"), PathState.MAPPED);
+    }
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(many));
+
+    PathCollection.addPath(many.resolve((count - 1) + ".txt"), PathState.MAPPED);
+    Assert.assertEquals(PathState.MAPPED, PathCollection.getState(many));
+
+    PathCollection.addPath(many.resolve("0.txt"), PathState.NORMAL);
+    Assert.assertEquals(PathState.NORMAL, PathCollection.getState(many));
+  }
+
+}
@@ -0,0 +1,164 @@
+package org.roda.rodain.core.checksum;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.ControllerUtils;
+
+public class ChecksumCacheTest {
+  private static final String SHA256 = "SHA-256";
+  private static Path tempDir;
+
+  private Path cacheFile;
+  private Path source;
+
+  public ChecksumCacheTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    tempDir = Files.createTempDirectory(ChecksumCache.class.getSimpleName());
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    ChecksumCache.reset(null);
+    ControllerUtils.deleteQuietly(tempDir);
+  }
+
+  @Before
+  public void createCache() throws IOException {
+    cacheFile = Files.createTempFile(tempDir, "checksums", ".bin");
+    Files.delete(cacheFile);
+    source = Files.createTempFile(tempDir, "source", ".txt");
+    ChecksumCache.reset(cacheFile);
+  }
+
+  @After
+  public void closeCache() {
+    ChecksumCache.reset(null);
+  }
+
+  @Test
+  public void testPutAndGet() {
+    ChecksumCache.put(source, 10, 100, SHA256, "abc");
+    Assert.assertEquals(Optional.of("abc"), ChecksumCache.get(source, 10, 100, SHA256));
+    // a different size, modification time or algorithm is a miss
+    Assert.assertFalse(ChecksumCache.get(source, 11, 100, SHA256).isPresent());
+    Assert.assertFalse(ChecksumCache.get(source, 10, 101, SHA256).isPresent());
+    Assert.assertFalse(ChecksumCache.get(source, 10, 100, "MD5").isPresent());
+  }
+
+  @Test
+  public void testReloadFromFile() {
+    ChecksumCache.put(source, 10, 100, SHA256, "abc");
+    ChecksumCache.put(source, 10, 100, "MD5", "def");
+    ChecksumCache.put(source, 10, 200, SHA256, "ghi");
+
+    ChecksumCache.reset(cacheFile);
+    Assert.assertEquals(Optional.of("ghi"), ChecksumCache.get(source, 10, 200, SHA256));
+    Assert.assertEquals(Optional.of("def"), ChecksumCache.get(source, 10, 100, "MD5"));
+    Assert.assertFalse(ChecksumCache.get(source, 10, 100, SHA256).isPresent());
+  }
+
+  @Test
+  public void testTruncatedRecord() throws IOException {
+    Path other = tempDir.resolve("other.txt");
+    ChecksumCache.put(source, 10, 100, SHA256, "abc");
+    ChecksumCache.put(other, 20, 200, SHA256, "def");
+    ChecksumCache.reset(cacheFile);
+
+    // cut the last record short, like a crash in the middle of a write
+    try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    Assert.assertEquals(Optional.of("abc"), ChecksumCache.get(source, 10, 100, SHA256));
+    Assert.assertFalse(ChecksumCache.get(other, 20, 200, SHA256).isPresent());
+
+    // the records added after the cut one can be read back
+    ChecksumCache.put(other, 20, 200, SHA256, "ghi");
+    ChecksumCache.reset(cacheFile);
+    Assert.assertEquals(Optional.of("abc"), ChecksumCache.get(source, 10, 100, SHA256));
+    Assert.assertEquals(Optional.of("ghi"), ChecksumCache.get(other, 20, 200, SHA256));
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    for (int i = 0; i < 1500; i++) {
+      ChecksumCache.put(source, i, 100, SHA256, "checksum" + i);
+    }
+    ChecksumCache.reset(cacheFile);
+    long before = Files.size(cacheFile);
+
+    // loading the outdated records rewrites the file
+    Assert.assertEquals(Optional.of("checksum1499"), ChecksumCache.get(source, 1499, 100, SHA256));
+    Assert.assertTrue(Files.size(cacheFile) < before / 100);
+
+    ChecksumCache.reset(cacheFile);
+    Assert.assertEquals(Optional.of("checksum1499"), ChecksumCache.get(source, 1499, 100, SHA256));
+  }
+
+  @Test
+  public void testCompactionKeepsEveryPath() throws IOException {
+    int paths = 3000;
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < paths; i++) {
+        ChecksumCache.put(tempDir.resolve("file" + i), round, 100, SHA256, "checksum" + i + "-" + round);
+      }
+    }
+
+    ChecksumCache.reset(cacheFile);
+    long before = Files.size(cacheFile);
+
+    // the file is rewritten when loaded, with the last checksum of every path
+    for (int i = 0; i < paths; i++) {
+      Assert.assertEquals(Optional.of("checksum" + i + "-2"), ChecksumCache.get(tempDir.resolve("file" + i), 2, 100,
+        SHA256));
+    }
+    Assert.assertTrue(Files.size(cacheFile) < before / 2);
+    ChecksumCache.reset(cacheFile);
+    Assert.assertEquals(Optional.of("checksum0-2"), ChecksumCache.get(tempDir.resolve("file0"), 2, 100, SHA256));
+  }
+
+  @Test
+  public void testGetChecksums() throws IOException, NoSuchAlgorithmException {
+    byte[] content = "some content to digest".getBytes(StandardCharsets.UTF_8);
+    Files.write(source, content);
+
+    long misses = ChecksumCache.getMisses();
+    Map<String, String> checksums = ChecksumCache.getChecksums(source, Arrays.asList(SHA256, "MD5"));
+    Assert.assertEquals(hex(MessageDigest.getInstance(SHA256).digest(content)), checksums.get(SHA256));
+    Assert.assertEquals(hex(MessageDigest.getInstance("MD5").digest(content)), checksums.get("MD5"));
+    Assert.assertEquals(misses + 2, ChecksumCache.getMisses());
+
+    long hits = ChecksumCache.getHits();
+    Assert.assertEquals(checksums.get(SHA256), ChecksumCache.getChecksum(source, SHA256));
+    Assert.assertEquals(hits + 1, ChecksumCache.getHits());
+    Assert.assertEquals(misses + 2, ChecksumCache.getMisses());
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder result = new StringBuilder();
+    for (byte b : bytes) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+}
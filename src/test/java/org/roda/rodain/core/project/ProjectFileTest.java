@@ -0,0 +1,257 @@
+package org.roda.rodain.core.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.ConfigurationManager;
+import org.roda.rodain.core.Constants.RuleType;
+import org.roda.rodain.core.ControllerUtils;
+import org.roda.rodain.core.PathCollection;
+import org.roda.rodain.core.rules.TreeNode;
+import org.roda.rodain.core.schema.Sip;
+import org.roda.rodain.core.sip.SipPreview;
+import org.roda.rodain.core.sip.SipRepresentation;
+
+public class ProjectFileTest {
+  private static Path tempDir;
+
+  public ProjectFileTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    // the SIPs get their default title and ID from the configuration
+    ConfigurationManager.initialize();
+    tempDir = Files.createTempDirectory(ProjectFile.class.getSimpleName());
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    PathCollection.reset();
+    ControllerUtils.deleteQuietly(tempDir);
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    Path file = tempDir.resolve("project" + ProjectFile.EXTENSION);
+    ProjectFile.save(createProject(), file);
+
+    ProjectNode root = ProjectFile.load(file);
+    Assert.assertEquals(1, root.getChildren().size());
+    ProjectNode fonds = root.getChildren().get(0);
+    Assert.assertFalse(fonds.isSip());
+    Assert.assertNull(fonds.getRuleKey());
+    Assert.assertEquals("fonds-1", fonds.getDob().getId());
+    Assert.assertEquals("Fonds", fonds.getDob().getTitle());
+    Assert.assertEquals("fonds", fonds.getDob().getDescriptionlevel());
+
+    Assert.assertEquals(1, fonds.getRules().size());
+    ProjectRule rule = fonds.getRules().get(0);
+    Assert.assertEquals("rule-1", rule.getKey());
+    Assert.assertEquals(RuleType.SIP_PER_FILE, rule.getAssocType());
+    Assert.assertEquals("fonds-1", rule.getParentId());
+    Assert.assertEquals(Collections.singletonMap(tempDir.resolve("rep").toString(), true), rule.getSourcePaths());
+
+    Assert.assertEquals(1, fonds.getChildren().size());
+    ProjectNode sipNode = fonds.getChildren().get(0);
+    Assert.assertTrue(sipNode.isSip());
+    Assert.assertEquals("rule-1", sipNode.getRuleKey());
+    SipPreview sip = (SipPreview) sipNode.getDob();
+    Assert.assertEquals("sip-1", sip.getId());
+    Assert.assertEquals("SIP 1", sip.getTitle());
+    Assert.assertEquals("fonds-1", sip.getParentId());
+    Assert.assertTrue(sip.isUpdateSIP());
+
+    // the content is only read when it's needed
+    Assert.assertNotNull(sip.getContentLoader());
+    Assert.assertEquals(1, sip.getRepresentations().size());
+    Assert.assertNull(sip.getContentLoader());
+    SipRepresentation rep = sip.getRepresentations().iterator().next();
+    Assert.assertEquals("rep1", rep.getName());
+    Set<String> files = new HashSet<>();
+    for (TreeNode tn : rep.getFiles()) {
+      files.addAll(tn.getFullTreePaths());
+    }
+    Assert.assertEquals(representationPaths(), files);
+    Set<Path> documentation = new HashSet<>();
+    for (TreeNode tn : sip.getDocumentation()) {
+      documentation.add(tn.getPath());
+    }
+    Assert.assertEquals(Collections.singleton(tempDir.resolve("doc.txt")), documentation);
+  }
+
+  @Test
+  public void testSaveAgainWithoutLoadingTheContent() throws IOException {
+    Path file = tempDir.resolve("first" + ProjectFile.EXTENSION);
+    Path copy = tempDir.resolve("second" + ProjectFile.EXTENSION);
+    ProjectFile.save(createProject(), file);
+
+    ProjectNode root = ProjectFile.load(file);
+    // the content that wasn't loaded is copied from the first file
+    ProjectFile.save(root, copy);
+    SipPreview sip = getSip(root);
+    Assert.assertNotNull(sip.getContentLoader());
+    Files.delete(file);
+
+    SipPreview copied = getSip(ProjectFile.load(copy));
+    Assert.assertEquals(1, copied.getRepresentations().size());
+    // and the SIP of the saved project now reads it from the new file
+    Assert.assertEquals(1, sip.getRepresentations().size());
+  }
+
+  @Test
+  public void testContentThatCantBeRead() throws IOException {
+    Path file = tempDir.resolve("deleted" + ProjectFile.EXTENSION);
+    ProjectFile.save(createProject(), file);
+    ProjectNode root = ProjectFile.load(file);
+    SipPreview sip = getSip(root);
+    Files.delete(file);
+
+    try {
+      sip.getRepresentations();
+      Assert.fail("The content of the SIP was read from a deleted file");
+    } catch (UncheckedIOException e) {
+      // expected
+    }
+    // the content isn't mistaken for an empty one
+    Assert.assertNotNull(sip.getContentLoader());
+    try {
+      ProjectFile.save(root, tempDir.resolve("other" + ProjectFile.EXTENSION));
+      Assert.fail("The project was saved without the content of the SIP");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFileTypesAndSizes() throws IOException {
+    Path file = tempDir.resolve("attributes" + ProjectFile.EXTENSION);
+    ProjectNode project = createProject();
+    Files.write(tempDir.resolve("rep").resolve("a.txt"), "some content".getBytes(StandardCharsets.UTF_8));
+    Map<String, Long> sizes = new HashMap<>();
+    for (SipRepresentation sr : getSip(project).getRepresentations()) {
+      for (TreeNode tn : sr.getFiles()) {
+        collectSizes(tn, sizes);
+      }
+    }
+    ProjectFile.save(project, file);
+
+    Map<String, Long> loaded = new HashMap<>();
+    for (SipRepresentation sr : getSip(ProjectFile.load(file)).getRepresentations()) {
+      for (TreeNode tn : sr.getFiles()) {
+        collectKnownSizes(tn, loaded);
+      }
+    }
+    Assert.assertEquals(sizes, loaded);
+    Assert.assertEquals(Long.valueOf(12), loaded.get(tempDir.resolve("rep").resolve("a.txt").toString()));
+    // the documentation was never read, so its type and size are still unknown
+    TreeNode doc = getSip(ProjectFile.load(file)).getDocumentation().iterator().next();
+    Assert.assertFalse(doc.isTypeKnown());
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAProject() throws IOException {
+    Path file = tempDir.resolve("not a project" + ProjectFile.EXTENSION);
+    Files.write(file, "not a project".getBytes(StandardCharsets.UTF_8));
+    ProjectFile.load(file);
+  }
+
+  private static ProjectNode createProject() throws IOException {
+    Path rep = tempDir.resolve("rep");
+    Files.createDirectories(rep.resolve("sub"));
+    for (Path path : new Path[] {rep.resolve("a.txt"), rep.resolve("sub").resolve("b.txt"),
+      tempDir.resolve("doc.txt")}) {
+      if (!Files.exists(path)) {
+        Files.createFile(path);
+      }
+    }
+
+    Sip fondsDob = new Sip();
+    fondsDob.setId("fonds-1");
+    fondsDob.setTitle("Fonds");
+    fondsDob.setDescriptionlevel("fonds");
+    ProjectNode fonds = new ProjectNode(fondsDob, null);
+
+    ProjectRule rule = new ProjectRule();
+    rule.setKey("rule-1");
+    rule.setAssocType(RuleType.SIP_PER_FILE);
+    rule.setParentId("fonds-1");
+    Map<String, Boolean> sourcePaths = new LinkedHashMap<>();
+    sourcePaths.put(rep.toString(), true);
+    rule.setSourcePaths(sourcePaths);
+    fonds.getRules().add(rule);
+
+    SipPreview sip = new SipPreview(preview -> {
+      // the content is added below
+    });
+    sip.setId("sip-1");
+    sip.setTitle("SIP 1");
+    sip.setParentId("fonds-1");
+    sip.setUpdateSIP(true);
+    TreeNode repNode = new TreeNode(rep);
+    repNode.add(rep.resolve("a.txt"));
+    TreeNode sub = new TreeNode(rep.resolve("sub"));
+    sub.add(rep.resolve("sub").resolve("b.txt"));
+    repNode.add(sub);
+    SipRepresentation sr = new SipRepresentation("rep1");
+    sr.setFiles(new HashSet<>(Collections.singleton(repNode)));
+    sip.addRepresentation(sr);
+    sip.getDocumentation().add(new TreeNode(tempDir.resolve("doc.txt")));
+    fonds.getChildren().add(new ProjectNode(sip, "rule-1"));
+
+    ProjectNode root = new ProjectNode(new Sip(), null);
+    root.getChildren().add(fonds);
+    return root;
+  }
+
+  private static Set<String> representationPaths() {
+    Path rep = tempDir.resolve("rep");
+    Set<String> result = new HashSet<>();
+    result.add(rep.toString());
+    result.add(rep.resolve("a.txt").toString());
+    result.add(rep.resolve("sub").toString());
+    result.add(rep.resolve("sub").resolve("b.txt").toString());
+    return result;
+  }
+
+  /*
+   * The sizes of the node and its descendants, read from the file system if
+   * they aren't known yet.
+   */
+  private static void collectSizes(TreeNode tn, Map<String, Long> sizes) {
+    sizes.put(tn.getPath().toString(), tn.isDirectory() ? -1 : tn.getSize());
+    for (TreeNode child : tn.getChildren()) {
+      collectSizes(child, sizes);
+    }
+  }
+
+  /*
+   * The sizes of the node and its descendants, which must be known without
+   * reading the file system.
+   */
+  private static void collectKnownSizes(TreeNode tn, Map<String, Long> sizes) {
+    Assert.assertTrue(tn.isTypeKnown());
+    sizes.put(tn.getPath().toString(), tn.isDirectory() ? -1 : tn.getKnownSize());
+    for (TreeNode child : tn.getChildren()) {
+      collectKnownSizes(child, sizes);
+    }
+  }
+
+  private static SipPreview getSip(ProjectNode root) {
+    return (SipPreview) root.getChildren().get(0).getChildren().get(0).getDob();
+  }
+}
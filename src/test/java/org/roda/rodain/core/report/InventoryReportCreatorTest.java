@@ -0,0 +1,263 @@
+package org.roda.rodain.core.report;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.ControllerUtils;
+import org.roda_project.commons_ip.model.SIP;
+import org.roda_project.commons_ip.model.impl.eark.EARKSIP;
+import org.roda_project.commons_ip.utils.ZipEntryInfo;
+
+public class InventoryReportCreatorTest {
+  private static final String PARTIAL_REPORT = "inventory_report.csv.partial";
+  private static final String PARTIAL_EXPORT = "inventory_report.csv.export.partial";
+  private static final String PARTIAL_COMPRESSED_REPORT = "inventory_report.csv.gz.partial";
+  private static final String PARTIAL_COMPRESSED_INDEX = "inventory_report.csv.gz.idx.partial";
+  private static final String PARTIAL_COMPRESSED_EXPORT = "inventory_report.csv.gz.export.partial";
+  private static Path tempDir;
+
+  private final Map<Path, Long> fileSizes = new HashMap<>();
+
+  public InventoryReportCreatorTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    tempDir = Files.createTempDirectory(InventoryReportCreator.class.getSimpleName());
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    ControllerUtils.deleteQuietly(tempDir);
+  }
+
+  @Test
+  public void testSizesOfTheBuild() throws IOException {
+    Path output = Files.createTempDirectory(tempDir, "sizes");
+    InventoryReportCreator report = new InventoryReportCreator(output, "export", false);
+    report.open();
+    // the files don't exist, the sizes can only come from the build
+    report.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    report.close();
+
+    List<CSVRecord> records = readReport(findReport(output, ".csv"));
+    Assert.assertEquals(2, records.size());
+    for (CSVRecord record : records) {
+      Assert.assertEquals("sip1.zip", record.get(0));
+      Assert.assertEquals("SHA-256", record.get(3));
+      Assert.assertEquals(fileSizes.get(output.resolve(record.get(1))).toString(), record.get(5));
+    }
+    Assert.assertFalse(Files.exists(output.resolve(PARTIAL_REPORT)));
+    Assert.assertFalse(Files.exists(output.resolve(PARTIAL_EXPORT)));
+  }
+
+  @Test
+  public void testResumeSameExport() throws IOException {
+    Path output = Files.createTempDirectory(tempDir, "resume");
+    interruptedReport(output, "export");
+
+    InventoryReportCreator report = new InventoryReportCreator(output, "export", false);
+    report.open();
+    report.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    report.add(output.resolve("sip2.zip"), sip(output, "c.txt"), fileSizes);
+    report.close();
+
+    List<CSVRecord> records = readReport(findReport(output, ".csv"));
+    Assert.assertEquals(3, records.size());
+    Assert.assertEquals(2, records.stream().filter(r -> "sip1.zip".equals(r.get(0))).count());
+    Assert.assertEquals(1, records.stream().filter(r -> "sip2.zip".equals(r.get(0))).count());
+  }
+
+  @Test
+  public void testResumeCutInsideASip() throws IOException {
+    Path output = Files.createTempDirectory(tempDir, "resumeInsideSip");
+    InventoryReportCreator interrupted = new InventoryReportCreator(output, "export", false);
+    interrupted.open();
+    // characters of more than one byte before the cut
+    SIP first = sip(output, "a.txt", "b.txt");
+    first.getZipEntries().get("a.txt").setChecksum("çhecksum");
+    interrupted.add(output.resolve("sip1.zip"), first, fileSizes);
+    interrupted.add(output.resolve("sip2.zip"), sip(output, "c.txt", "d.txt"), fileSizes);
+    interrupted.close();
+    Files.move(findReport(output, ".csv"), output.resolve(PARTIAL_REPORT));
+    Files.write(output.resolve(PARTIAL_EXPORT), "export".getBytes(StandardCharsets.UTF_8));
+    // only the first line of sip2.zip was written
+    byte[] content = Files.readAllBytes(output.resolve(PARTIAL_REPORT));
+    int end = content.length - 1;
+    while (content[end - 1] != '\n') {
+      end--;
+    }
+    Files.write(output.resolve(PARTIAL_REPORT), Arrays.copyOf(content, end));
+
+    InventoryReportCreator report = new InventoryReportCreator(output, "export", false);
+    report.open();
+    report.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    report.add(output.resolve("sip2.zip"), sip(output, "c.txt", "d.txt"), fileSizes);
+    report.close();
+
+    List<CSVRecord> records = readReport(findReport(output, ".csv"));
+    Assert.assertEquals(4, records.size());
+    Assert.assertEquals(Arrays.asList("a.txt", "b.txt", "c.txt", "d.txt"),
+      records.stream().map(record -> record.get(1)).sorted().collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testDiscardOtherExport() throws IOException {
+    Path output = Files.createTempDirectory(tempDir, "discard");
+    interruptedReport(output, "another export");
+
+    InventoryReportCreator report = new InventoryReportCreator(output, "export", false);
+    report.open();
+    report.add(output.resolve("sip2.zip"), sip(output, "c.txt"), fileSizes);
+    report.close();
+
+    List<CSVRecord> records = readReport(findReport(output, ".csv"));
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals("sip2.zip", records.get(0).get(0));
+  }
+
+  @Test
+  public void testCompressedMembers() throws IOException {
+    Path output = Files.createTempDirectory(tempDir, "compressed");
+    InventoryReportCreator report = new InventoryReportCreator(output, "export", true);
+    report.open();
+    report.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    report.add(output.resolve("sip2.zip"), sip(output, "c.txt"), fileSizes);
+    report.close();
+
+    Path compressed = findReport(output, ".csv.gz");
+    // the members read as a single gzip file
+    try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(compressed)),
+      StandardCharsets.UTF_8)) {
+      Assert.assertEquals(3, readRecords(reader).size());
+    }
+
+    List<CSVRecord> index = readReport(findReport(output, ".csv.gz.idx"));
+    Assert.assertEquals(Arrays.asList("sip1.zip", "sip2.zip"),
+      index.stream().map(record -> record.get(0)).collect(Collectors.toList()));
+    byte[] content = Files.readAllBytes(compressed);
+    for (CSVRecord entry : index) {
+      List<CSVRecord> records = readMember(content, entry);
+      Assert.assertEquals(Integer.parseInt(entry.get(3)), records.size());
+      for (CSVRecord record : records) {
+        Assert.assertEquals(entry.get(0), record.get(0));
+      }
+    }
+  }
+
+  @Test
+  public void testResumeCompressed() throws IOException {
+    Path output = Files.createTempDirectory(tempDir, "resumeCompressed");
+    InventoryReportCreator interrupted = new InventoryReportCreator(output, "export", true);
+    interrupted.open();
+    interrupted.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    interrupted.close();
+    // a member written after the last one in the index
+    Files.move(findReport(output, ".csv.gz"), output.resolve(PARTIAL_COMPRESSED_REPORT));
+    Files.move(findReport(output, ".csv.gz.idx"), output.resolve(PARTIAL_COMPRESSED_INDEX));
+    Files.write(output.resolve(PARTIAL_COMPRESSED_EXPORT), "export".getBytes(StandardCharsets.UTF_8));
+    Files.write(output.resolve(PARTIAL_COMPRESSED_REPORT), new byte[] {0x1f, (byte) 0x8b, 8, 0},
+      StandardOpenOption.APPEND);
+
+    InventoryReportCreator report = new InventoryReportCreator(output, "export", true);
+    report.open();
+    report.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    report.add(output.resolve("sip2.zip"), sip(output, "c.txt"), fileSizes);
+    report.close();
+
+    List<CSVRecord> index = readReport(findReport(output, ".csv.gz.idx"));
+    Assert.assertEquals(Arrays.asList("sip1.zip", "sip2.zip"),
+      index.stream().map(record -> record.get(0)).collect(Collectors.toList()));
+    byte[] content = Files.readAllBytes(findReport(output, ".csv.gz"));
+    Assert.assertEquals(2, readMember(content, index.get(0)).size());
+    Assert.assertEquals(1, readMember(content, index.get(1)).size());
+  }
+
+  /*
+   * Leaves the partial report of an exportation interrupted while writing the
+   * line after the ones of sip1.zip.
+   */
+  private void interruptedReport(Path output, String exportId) throws IOException {
+    InventoryReportCreator report = new InventoryReportCreator(output, exportId, false);
+    report.open();
+    report.add(output.resolve("sip1.zip"), sip(output, "a.txt", "b.txt"), fileSizes);
+    report.close();
+
+    Files.move(findReport(output, ".csv"), output.resolve(PARTIAL_REPORT));
+    Files.write(output.resolve(PARTIAL_EXPORT), exportId.getBytes(StandardCharsets.UTF_8));
+    Files.write(output.resolve(PARTIAL_REPORT), "sip2.zip,c.txt,".getBytes(StandardCharsets.UTF_8),
+      StandardOpenOption.APPEND);
+  }
+
+  private SIP sip(Path output, String... files) {
+    SIP sip = new EARKSIP();
+    for (String file : files) {
+      Path path = output.resolve(file);
+      ZipEntryInfo entry = new ZipEntryInfo(file, path);
+      entry.setChecksumAlgorithm("SHA-256");
+      entry.setChecksum("checksum of " + file);
+      sip.getZipEntries().put(file, entry);
+      fileSizes.put(path, (long) (fileSizes.size() + 1) * 1000);
+    }
+    return sip;
+  }
+
+  private static Path findReport(Path output, String extension) throws IOException {
+    try (Stream<Path> files = Files.list(output)) {
+      List<Path> reports = files.filter(file -> {
+        String name = file.getFileName().toString();
+        return name.startsWith("inventory_report - ") && name.endsWith(extension);
+      }).collect(Collectors.toList());
+      Assert.assertEquals(1, reports.size());
+      return reports.get(0);
+    }
+  }
+
+  private static List<CSVRecord> readReport(Path report) throws IOException {
+    try (Reader reader = Files.newBufferedReader(report, StandardCharsets.UTF_8)) {
+      return readRecords(reader);
+    }
+  }
+
+  /*
+   * Decompresses only the member of a SIP, at the offset and length of its
+   * entry in the index.
+   */
+  private static List<CSVRecord> readMember(byte[] content, CSVRecord entry) throws IOException {
+    int offset = Integer.parseInt(entry.get(1));
+    int length = Integer.parseInt(entry.get(2));
+    try (Reader reader = new InputStreamReader(
+      new GZIPInputStream(new ByteArrayInputStream(content, offset, length)), StandardCharsets.UTF_8);
+      CSVParser parser = CSVFormat.DEFAULT.parse(reader)) {
+      return new ArrayList<>(parser.getRecords());
+    }
+  }
+
+  private static List<CSVRecord> readRecords(Reader reader) throws IOException {
+    try (CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)) {
+      return new ArrayList<>(parser.getRecords());
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package org.roda.rodain.core.rules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.ControllerUtils;
+
+public class TreeNodeTest {
+  private static Path tempDir;
+  private static Path dir;
+  private static Path a;
+  private static Path sub;
+  private static Path b;
+  private static Path deeper;
+  private static Path c;
+
+  public TreeNodeTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    tempDir = Files.createTempDirectory(TreeNode.class.getSimpleName());
+    dir = tempDir.resolve("dir");
+    a = dir.resolve("a.txt");
+    sub = dir.resolve("sub");
+    b = sub.resolve("b.txt");
+    deeper = sub.resolve("deeper");
+    c = deeper.resolve("c.txt");
+    Files.createDirectories(deeper);
+    for (Path file : Arrays.asList(a, b, c)) {
+      Files.createFile(file);
+    }
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    ControllerUtils.deleteQuietly(tempDir);
+  }
+
+  @Test
+  public void testGetChildrenIsACopy() {
+    TreeNode node = build(dir);
+    List<TreeNode> children = node.getChildren();
+    Assert.assertEquals(2, children.size());
+
+    node.remove(a);
+    Assert.assertEquals(1, node.getChildCount());
+    Assert.assertEquals(2, children.size());
+    Assert.assertFalse(children.contains(null));
+    try {
+      children.clear();
+      Assert.fail("The children can be modified");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testHasChild() {
+    TreeNode node = build(dir);
+    Assert.assertTrue(node.hasChild(a));
+    Assert.assertTrue(node.hasChild(sub));
+    // only the direct children
+    Assert.assertFalse(node.hasChild(b));
+
+    node.remove(a);
+    Assert.assertFalse(node.hasChild(a));
+  }
+
+  @Test
+  public void testSkip() {
+    TreeNode root = new TreeNode(tempDir);
+    TreeNode dirNode = build(dir);
+    root.add(dirNode);
+
+    // like skipping the folder in the SIP's content
+    root.remove(dir);
+    root.addAll(dirNode.getChildren());
+
+    Assert.assertEquals(2, root.getChildCount());
+    Assert.assertTrue(root.hasChild(a));
+    Assert.assertTrue(root.hasChild(sub));
+    Assert.assertFalse(root.hasChild(dir));
+    Assert.assertEquals(paths(tempDir, a, sub, b, deeper, c), root.getFullTreePaths());
+    Assert.assertEquals(6, root.getFullTreeSize());
+    for (int i = 0; i < root.getChildCount(); i++) {
+      TreeNode child = root.getChild(i);
+      Assert.assertEquals(child.getPath().equals(sub), child.isDirectory());
+    }
+  }
+
+  @Test
+  public void testFlatten() {
+    TreeNode node = build(dir);
+    node.flatten();
+
+    Assert.assertEquals(3, node.getChildCount());
+    Set<String> files = new HashSet<>();
+    for (int i = 0; i < node.getChildCount(); i++) {
+      TreeNode child = node.getChild(i);
+      Assert.assertFalse(child.isDirectory());
+      Assert.assertEquals(0, child.getChildCount());
+      files.add(child.getPath().toString());
+    }
+    Assert.assertEquals(paths(a, b, c), files);
+  }
+
+  @Test
+  public void testIgnoreContent() {
+    TreeNode node = build(dir);
+    Set<String> removed = node.ignoreContent(new HashSet<>(Arrays.asList(sub)));
+
+    Assert.assertEquals(paths(sub, b, deeper, c), removed);
+    Assert.assertEquals(paths(dir, a), node.getFullTreePaths());
+
+    node = build(dir);
+    removed = node.ignoreContent(new HashSet<>(Arrays.asList(deeper)));
+    Assert.assertEquals(paths(deeper, c), removed);
+    Assert.assertEquals(paths(dir, a, sub, b), node.getFullTreePaths());
+  }
+
+  @Test
+  public void testObserverOfAnAncestor() {
+    TreeNode node = build(dir);
+    List<Object> changes = new ArrayList<>();
+    node.addObserver((observable, changed) -> changes.add(changed));
+
+    TreeNode subNode = null;
+    for (int i = 0; i < node.getChildCount(); i++) {
+      if (node.getChild(i).getPath().equals(sub)) {
+        subNode = node.getChild(i);
+      }
+    }
+    Assert.assertNotNull(subNode);
+    subNode.remove(b);
+    Assert.assertEquals(1, changes.size());
+    Assert.assertSame(subNode, changes.get(0));
+  }
+
+  @Test
+  public void testSavedReadsCountedOncePerNode() {
+    TreeNode known = build(dir);
+    TreeNode unknown = new TreeNode(a);
+    TreeNode.takeSavedReads();
+
+    for (int i = 0; i < 3; i++) {
+      known.isDirectory();
+      known.getSize();
+      unknown.isDirectory();
+      unknown.getSize();
+    }
+    // the node without attributes read the file system
+    Assert.assertEquals(1, TreeNode.takeSavedReads());
+    Assert.assertEquals(0, TreeNode.takeSavedReads());
+  }
+
+  /*
+   * The TreeNode of a path and its descendants, with the attributes read from
+   * the file system.
+   */
+  private static TreeNode build(Path path) {
+    try {
+      TreeNode node = new TreeNode(path, Files.readAttributes(path, BasicFileAttributes.class));
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> entries = Files.list(path)) {
+          for (Path entry : entries.sorted().collect(Collectors.toList())) {
+            node.add(build(entry));
+          }
+        }
+      }
+      return node;
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static Set<String> paths(Path... paths) {
+    Set<String> result = new HashSet<>();
+    for (Path path : paths) {
+      result.add(path.toString());
+    }
+    return result;
+  }
+}
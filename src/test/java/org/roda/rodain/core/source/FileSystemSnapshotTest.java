@@ -0,0 +1,155 @@
+package org.roda.rodain.core.source;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.ControllerUtils;
+
+public class FileSystemSnapshotTest {
+  private static Path tempDir;
+
+  private Path storeFile;
+  private Path dir;
+
+  public FileSystemSnapshotTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    tempDir = Files.createTempDirectory(FileSystemSnapshot.class.getSimpleName());
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    FileSystemSnapshot.reset(null);
+    ControllerUtils.deleteQuietly(tempDir);
+  }
+
+  @Before
+  public void createSnapshots() throws IOException {
+    storeFile = Files.createTempFile(tempDir, "listings", ".bin");
+    Files.delete(storeFile);
+    dir = Files.createTempDirectory(tempDir, "dir");
+    Files.createFile(dir.resolve("a.txt"));
+    Files.createDirectory(dir.resolve("sub"));
+    FileSystemSnapshot.reset(storeFile);
+  }
+
+  @After
+  public void closeSnapshots() {
+    FileSystemSnapshot.reset(null);
+  }
+
+  @Test
+  public void testListAfterRestart() throws IOException {
+    Assert.assertEquals(names("a.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+    FileSystemSnapshot.reset(storeFile);
+
+    // a file added without changing the modification time of the directory
+    // isn't seen, so the listing comes from the snapshot
+    addWithoutModifying(dir, "b.txt");
+    List<FileSystemSnapshot.Entry> entries = FileSystemSnapshot.list(dir);
+    Assert.assertEquals(names("a.txt", "sub"), names(entries));
+    for (FileSystemSnapshot.Entry entry : entries) {
+      Assert.assertEquals(entry.getPath().endsWith("sub"), entry.isDirectory());
+      // the sizes aren't kept by default, they're read when asked for
+      Assert.assertFalse(FileSystemSnapshot.isSizeKnown(entry.getAttributes()));
+    }
+  }
+
+  @Test
+  public void testModifiedDirectory() throws IOException {
+    FileSystemSnapshot.list(dir);
+    Files.createFile(dir.resolve("b.txt"));
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(Files.getLastModifiedTime(dir).toMillis() + 10000));
+
+    Assert.assertEquals(names("a.txt", "b.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+    FileSystemSnapshot.reset(storeFile);
+    addWithoutModifying(dir, "c.txt");
+    Assert.assertEquals(names("a.txt", "b.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    FileSystemSnapshot.list(dir);
+    addWithoutModifying(dir, "b.txt");
+    FileSystemSnapshot.invalidate(dir);
+    FileSystemSnapshot.reset(storeFile);
+
+    Assert.assertEquals(names("a.txt", "b.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+  }
+
+  @Test
+  public void testTruncatedRecord() throws IOException {
+    Path other = Files.createTempDirectory(tempDir, "other");
+    FileSystemSnapshot.list(dir);
+    FileSystemSnapshot.list(other);
+    FileSystemSnapshot.reset(storeFile);
+
+    // cut the last record short, like a crash in the middle of a write
+    try (FileChannel channel = FileChannel.open(storeFile, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+    addWithoutModifying(dir, "b.txt");
+    addWithoutModifying(other, "c.txt");
+    Assert.assertEquals(names("a.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+    Assert.assertEquals(names("c.txt"), names(FileSystemSnapshot.list(other)));
+
+    // the records added after the cut one can be read back
+    FileSystemSnapshot.reset(storeFile);
+    addWithoutModifying(other, "d.txt");
+    Assert.assertEquals(names("a.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+    Assert.assertEquals(names("c.txt"), names(FileSystemSnapshot.list(other)));
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    for (int i = 0; i < 20000; i++) {
+      Files.setLastModifiedTime(dir, FileTime.fromMillis(1000000L * (i + 1)));
+      FileSystemSnapshot.list(dir);
+    }
+    long before = Files.size(storeFile);
+    addWithoutModifying(dir, "b.txt");
+
+    // opening a file with mostly outdated records rewrites it
+    FileSystemSnapshot.reset(storeFile);
+    Assert.assertEquals(names("a.txt", "sub"), names(FileSystemSnapshot.list(dir)));
+    Assert.assertTrue(Files.size(storeFile) < before / 100);
+  }
+
+  private static void addWithoutModifying(Path folder, String name) throws IOException {
+    FileTime modified = Files.getLastModifiedTime(folder);
+    Files.createFile(folder.resolve(name));
+    Files.setLastModifiedTime(folder, modified);
+  }
+
+  private static Set<String> names(String... names) {
+    Set<String> result = new HashSet<>();
+    for (String name : names) {
+      result.add(name);
+    }
+    return result;
+  }
+
+  private static Set<String> names(List<FileSystemSnapshot.Entry> entries) {
+    Set<String> result = new HashSet<>();
+    for (FileSystemSnapshot.Entry entry : entries) {
+      result.add(entry.getPath().getFileName().toString());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,157 @@
+package org.roda.rodain.core.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.ControllerUtils;
+
+public class WalkFileTreeTest {
+  private static Path tempDir;
+
+  public WalkFileTreeTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    tempDir = Files.createTempDirectory(WalkFileTree.class.getSimpleName());
+    Files.createDirectories(tempDir.resolve("a"));
+    Files.createFile(tempDir.resolve("a").resolve("a1.txt"));
+    Files.createFile(tempDir.resolve("a").resolve("a2.txt"));
+    Files.createDirectories(tempDir.resolve("b").resolve("b1"));
+    Files.createFile(tempDir.resolve("b").resolve("b1").resolve("x.txt"));
+    Files.createFile(tempDir.resolve("c.txt"));
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    ControllerUtils.deleteQuietly(tempDir);
+  }
+
+  @Test
+  public void testDepthFirstOrder() {
+    RecordingVisitor sequential = walk(1, false);
+    RecordingVisitor parallel = walk(4, false);
+
+    Assert.assertTrue(sequential.ended);
+    Assert.assertTrue(parallel.ended);
+    Assert.assertEquals(sequential.events, parallel.events);
+    Assert.assertEquals(4, sequential.files);
+    Assert.assertEquals(4, sequential.dirs);
+  }
+
+  @Test
+  public void testProcessedCounts() {
+    for (int parallelism : new int[] {1, 4}) {
+      WalkFileTree walker = new WalkFileTree(Collections.singleton(tempDir.toString()), new RecordingVisitor(false),
+        parallelism);
+      walker.run();
+      Assert.assertEquals(4, walker.getProcessedFiles());
+      Assert.assertEquals(4, walker.getProcessedDirs());
+    }
+  }
+
+  @Test
+  public void testCancel() {
+    for (int parallelism : new int[] {1, 4}) {
+      RecordingVisitor visitor = walk(parallelism, true);
+      Assert.assertEquals(1, visitor.files);
+      Assert.assertTrue(visitor.ended);
+    }
+  }
+
+  private static RecordingVisitor walk(int parallelism, boolean cancelOnFirstFile) {
+    RecordingVisitor visitor = new RecordingVisitor(cancelOnFirstFile);
+    WalkFileTree walker = new WalkFileTree(Collections.singleton(tempDir.toString()), visitor, parallelism);
+    visitor.walker = walker;
+    walker.run();
+    return visitor;
+  }
+
+  /*
+   * Records the visit and checks that the directories are visited as a stack:
+   * each directory is listed right before it's visited and each file is
+   * visited inside its parent directory.
+   */
+  private static final class RecordingVisitor implements TreeVisitor {
+    private final boolean cancelOnFirstFile;
+    private final List<String> events = new ArrayList<>();
+    private final Deque<Path> open = new ArrayDeque<>();
+    private WalkFileTree walker;
+    private Path listed;
+    private int files = 0;
+    private int dirs = 0;
+    private boolean ended = false;
+
+    RecordingVisitor(boolean cancelOnFirstFile) {
+      this.cancelOnFirstFile = cancelOnFirstFile;
+    }
+
+    @Override
+    public void directoryListed(Path path, List<Path> entries) {
+      Assert.assertNull(listed);
+      listed = path;
+      events.add("list " + path);
+    }
+
+    @Override
+    public void preVisitDirectory(Path path, BasicFileAttributes attrs) {
+      Assert.assertEquals(listed, path);
+      listed = null;
+      if (!open.isEmpty()) {
+        Assert.assertEquals(open.peek(), path.getParent());
+      }
+      open.push(path);
+      events.add("pre " + path);
+    }
+
+    @Override
+    public void postVisitDirectory(Path path) {
+      Assert.assertEquals(open.pop(), path);
+      dirs++;
+      events.add("post " + path);
+    }
+
+    @Override
+    public void visitFile(Path path, BasicFileAttributes attrs) {
+      Assert.assertNull(listed);
+      Assert.assertEquals(open.peek(), path.getParent());
+      files++;
+      events.add("file " + path);
+      if (cancelOnFirstFile) {
+        walker.cancel();
+      }
+    }
+
+    @Override
+    public void visitFileFailed(Path path) {
+      Assert.fail("Unexpected failure visiting " + path);
+    }
+
+    @Override
+    public void end() {
+      ended = true;
+    }
+
+    @Override
+    public String getId() {
+      return "recording";
+    }
+
+    @Override
+    public void setStartPath(String path) {
+      // do nothing
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package org.roda.rodain.ui.rules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roda.rodain.core.Constants.VisitorState;
+import org.roda.rodain.core.ControllerUtils;
+import org.roda.rodain.core.utils.TreeVisitor;
+
+import javafx.application.Platform;
+
+public class VisitorStackTest {
+  private static final long TIMEOUT = 10;
+  private static Path tempDir;
+
+  public VisitorStackTest() {
+    // do nothing
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    // the visitors run in JavaFX tasks, which need the toolkit
+    try {
+      Platform.startup(() -> {
+        // do nothing
+      });
+    } catch (IllegalStateException e) {
+      // already started
+    } catch (RuntimeException e) {
+      Assume.assumeNoException(e);
+    }
+    tempDir = Files.createTempDirectory(VisitorStack.class.getSimpleName());
+    Files.createDirectories(tempDir.resolve("a").resolve("sub"));
+    Files.createFile(tempDir.resolve("a").resolve("sub").resolve("file.txt"));
+    Files.createDirectories(tempDir.resolve("c"));
+    Files.createFile(tempDir.resolve("c").resolve("file.txt"));
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    VisitorStack.end();
+    if (tempDir != null) {
+      ControllerUtils.deleteQuietly(tempDir);
+    }
+  }
+
+  @Test
+  public void testOverlappingVisitorWaits() throws InterruptedException {
+    VisitorStack stack = new VisitorStack();
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    BlockingVisitor a = new BlockingVisitor("a", events, true);
+    BlockingVisitor b = new BlockingVisitor("b", events, false);
+    BlockingVisitor c = new BlockingVisitor("c", events, false);
+
+    stack.add(Collections.singleton(tempDir.resolve("a").toString()), a);
+    Assert.assertTrue(a.started.await(TIMEOUT, TimeUnit.SECONDS));
+    stack.add(Collections.singleton(tempDir.resolve("a").resolve("sub").toString()), b);
+    stack.add(Collections.singleton(tempDir.resolve("c").toString()), c);
+
+    // the disjoint visitor runs while the first one is blocked
+    Assert.assertTrue(c.ended.await(TIMEOUT, TimeUnit.SECONDS));
+    Assert.assertEquals(VisitorState.VISITOR_RUNNING, stack.getState("a"));
+    Assert.assertEquals(VisitorState.VISITOR_QUEUED, stack.getState("b"));
+    Assert.assertEquals(1, b.started.getCount());
+
+    a.release.countDown();
+    Assert.assertTrue(b.ended.await(TIMEOUT, TimeUnit.SECONDS));
+    Assert.assertTrue(events.indexOf("end a") < events.indexOf("start b"));
+    Assert.assertEquals(VisitorState.VISITOR_DONE, waitForDone(stack, "a"));
+    Assert.assertEquals(VisitorState.VISITOR_DONE, waitForDone(stack, "b"));
+    Assert.assertEquals(VisitorState.VISITOR_NOTSUBMITTED, stack.getState("unknown"));
+  }
+
+  @Test
+  public void testCancelQueuedVisitor() throws InterruptedException {
+    VisitorStack stack = new VisitorStack();
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    BlockingVisitor d = new BlockingVisitor("d", events, true);
+    BlockingVisitor e = new BlockingVisitor("e", events, false);
+    BlockingVisitor f = new BlockingVisitor("f", events, false);
+
+    stack.add(Collections.singleton(tempDir.resolve("a").toString()), d);
+    Assert.assertTrue(d.started.await(TIMEOUT, TimeUnit.SECONDS));
+    stack.add(Collections.singleton(tempDir.resolve("a").toString()), e);
+    stack.add(Collections.singleton(tempDir.resolve("a").toString()), f);
+
+    Assert.assertTrue(stack.cancel(e));
+    Assert.assertEquals(VisitorState.VISITOR_CANCELLED, stack.getState("e"));
+
+    d.release.countDown();
+    Assert.assertTrue(f.ended.await(TIMEOUT, TimeUnit.SECONDS));
+    Assert.assertFalse(events.contains("start e"));
+  }
+
+  private static VisitorState waitForDone(VisitorStack stack, String id) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+    VisitorState state = stack.getState(id);
+    while (state != VisitorState.VISITOR_DONE && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      state = stack.getState(id);
+    }
+    return state;
+  }
+
+  /*
+   * Records when it starts and ends and, if asked to, blocks on the first
+   * directory until it's released.
+   */
+  private static final class BlockingVisitor implements TreeVisitor {
+    private final String id;
+    private final List<String> events;
+    private final boolean block;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch ended = new CountDownLatch(1);
+
+    BlockingVisitor(String id, List<String> events, boolean block) {
+      this.id = id;
+      this.events = events;
+      this.block = block;
+    }
+
+    @Override
+    public void preVisitDirectory(Path path, BasicFileAttributes attrs) {
+      if (started.getCount() > 0) {
+        events.add("start " + id);
+        started.countDown();
+        if (block) {
+          try {
+            release.await(TIMEOUT, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    }
+
+    @Override
+    public void postVisitDirectory(Path path) {
+      // do nothing
+    }
+
+    @Override
+    public void visitFile(Path path, BasicFileAttributes attrs) {
+      // do nothing
+    }
+
+    @Override
+    public void visitFileFailed(Path path) {
+      // do nothing
+    }
+
+    @Override
+    public void end() {
+      events.add("end " + id);
+      ended.countDown();
+    }
+
+    @Override
+    public String getId() {
+      return id;
+    }
+
+    @Override
+    public void setStartPath(String path) {
+      // do nothing
+    }
+  }
+}